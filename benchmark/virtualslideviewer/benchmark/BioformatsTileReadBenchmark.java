@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import loci.formats.ChannelFiller;
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.in.FakeReader;
+import virtualslideviewer.bioformats.BioformatsVirtualSlideImage;
+import virtualslideviewer.bioformats.ReaderPool;
+import virtualslideviewer.core.Tile;
+
+/**
+ * Measures the time of reading a tile through Bioformats, including the conversion of its pixels to the 8-bit interleaved format.
+ * 
+ * The pixels are generated by the FakeReader of Bioformats, so no sample slides are needed.
+ * The generation of pixels is included in the measured time, but it is the same for every input format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BioformatsTileReadBenchmark
+{
+	private static final String IMAGE_SIZE = "&sizeX=2048&sizeY=2048";
+	
+	@Param({ "8-bit interleaved", "8-bit planar", "16-bit", "16-bit planar" })
+	public String                       inputFormat;
+	
+	private ReaderPool                  mReaderPool;
+	private BioformatsVirtualSlideImage mImage;
+	private Tile                        mTile;
+	private byte[]                      mDst;
+	
+	@Setup
+	public void setUp()
+	{
+		String readerID = "benchmark" + IMAGE_SIZE + getFormatKeys(inputFormat) + ".fake";
+		
+		mReaderPool = new ReaderPool(() -> createReader(readerID));
+		mImage      = new BioformatsVirtualSlideImage(inputFormat, "benchmark", 0, 1, mReaderPool);
+		mTile       = new Tile(0, 0, 0);
+		mDst        = new byte[mImage.getTileSize(0).width * mImage.getTileSize(0).height * (mImage.isRGB() ? 3 : 1)];
+	}
+	
+	private static String getFormatKeys(String inputFormat)
+	{
+		switch(inputFormat)
+		{
+			case "8-bit interleaved":
+				return "&sizeC=3&rgb=3&pixelType=uint8&interleaved=true";
+				
+			case "8-bit planar":
+				return "&sizeC=3&rgb=3&pixelType=uint8&interleaved=false";
+				
+			case "16-bit":
+				return "&sizeC=1&pixelType=uint16";
+				
+			case "16-bit planar":
+				return "&sizeC=3&rgb=3&pixelType=uint16&interleaved=false";
+				
+			default:
+				throw new IllegalArgumentException("Unknown input format: " + inputFormat);
+		}
+	}
+	
+	private static IFormatReader createReader(String readerID)
+	{
+		try
+		{
+			IFormatReader reader = new ChannelFiller(new FakeReader());
+			
+			reader.setFlattenedResolutions(false);
+			reader.setId(readerID);
+			
+			return reader;
+		}
+		catch(FormatException | IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		mReaderPool.close();
+	}
+	
+	@Benchmark
+	public byte[] getTileData()
+	{
+		mImage.getTileData(mDst, mTile);
+		
+		return mDst;
+	}
+}
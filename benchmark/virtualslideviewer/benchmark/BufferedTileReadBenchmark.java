@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.benchmark;
+
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.MemoryUnit;
+import virtualslideviewer.EhcacheTileCacheAdapter;
+import virtualslideviewer.cache.OffHeapTileCache;
+import virtualslideviewer.core.BufferedVirtualSlideImage;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileCache;
+
+/**
+ * Measures the time of reading a tile through the tile cache, both when the tile is in the cache and when it has to be loaded.
+ * 
+ * The tiles are loaded from a synthetic image, so a miss measures mostly the overhead of the cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BufferedTileReadBenchmark
+{
+	private static final long CACHE_SIZE = 64 * 1024 * 1024;
+	
+	@Param({ "offheap", "ehcache" })
+	public String                     cacheType;
+	
+	@Param({ "256" })
+	public int                        tileSize;
+	
+	private CacheManager              mCacheManager;
+	private TileCache                 mCache;
+	private BufferedVirtualSlideImage mImage;
+	private Tile                      mTile;
+	private byte[]                    mDst;
+	
+	@Setup
+	public void setUp()
+	{
+		mCache = createCache(cacheType);
+		mImage = new BufferedVirtualSlideImage(new SyntheticVirtualSlideImage("benchmark", new Dimension(16384, 16384),
+		                                                                      new Dimension(tileSize, tileSize), 5, true), mCache);
+		
+		// Tile from the highest resolution, so it is not pinned in the cache.
+		mTile = new Tile(1, 1, mImage.getResolutionCount() - 1);
+		mDst  = new byte[tileSize * tileSize * 3];
+		
+		mImage.getTileData(mDst, mTile);
+	}
+	
+	private TileCache createCache(String cacheType)
+	{
+		switch(cacheType)
+		{
+			case "offheap":
+				return new OffHeapTileCache(CACHE_SIZE);
+				
+			case "ehcache":
+				mCacheManager = new CacheManager(new Configuration().name("benchmark")
+				                                                    .maxBytesLocalHeap(CACHE_SIZE, MemoryUnit.BYTES));
+				mCacheManager.addCache(new Cache(new CacheConfiguration().name("Tiles").eternal(true)));
+				return new EhcacheTileCacheAdapter(mCacheManager.getCache("Tiles"));
+				
+			default:
+				throw new IllegalArgumentException("Unknown cache type: " + cacheType);
+		}
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		mCache.clear();
+		
+		if(mCacheManager != null)
+		{
+			mCacheManager.shutdown();
+		}
+	}
+	
+	@Benchmark
+	public byte[] getTileDataOnHit()
+	{
+		mImage.getTileData(mDst, mTile);
+		
+		return mDst;
+	}
+	
+	/**
+	 * Empties the cache before every invocation of {@link #getTileDataOnMiss()}.
+	 */
+	@State(Scope.Thread)
+	public static class EmptyCache
+	{
+		@Setup(Level.Invocation)
+		public void clearCache(BufferedTileReadBenchmark benchmark)
+		{
+			benchmark.mCache.clear();
+		}
+	}
+	
+	@Benchmark
+	public byte[] getTileDataOnMiss(EmptyCache emptyCache)
+	{
+		mImage.getTileData(mDst, mTile);
+		
+		return mDst;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.benchmark;
+
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import virtualslideviewer.util.ImageUtil;
+
+/**
+ * Measures the time of copying the part of a tile which intersects the destination region,
+ * both from an array and from a direct buffer as the one returned by the off-heap tile cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CopyIntersectingPartOfImageBenchmark
+{
+	private static final int TILE_SIZE = 512;
+	
+	@Param({ "1", "3" })
+	public int         channelCount;
+	
+	private byte[]     mSrcArray;
+	private ByteBuffer mSrcBuffer;
+	private Rectangle  mSrcBounds;
+	private byte[]     mDst;
+	private Rectangle  mDstBounds;
+	
+	@Setup
+	public void setUp()
+	{
+		mSrcArray  = new byte[TILE_SIZE * TILE_SIZE * channelCount];
+		mSrcBuffer = ByteBuffer.allocateDirect(mSrcArray.length);
+		mSrcBuffer.put(mSrcArray).flip();
+		mSrcBounds = new Rectangle(0, 0, TILE_SIZE, TILE_SIZE);
+		
+		// The destination region is shifted by a quarter of the tile, so only a part of every row of the tile is copied.
+		mDstBounds = new Rectangle(TILE_SIZE / 4, TILE_SIZE / 4, TILE_SIZE, TILE_SIZE);
+		mDst       = new byte[mDstBounds.width * mDstBounds.height * channelCount];
+	}
+	
+	@Benchmark
+	public byte[] copyFromArray()
+	{
+		ImageUtil.copyIntersectingPartOfImage(mSrcArray, mSrcBounds, mDst, mDstBounds, channelCount);
+		
+		return mDst;
+	}
+	
+	@Benchmark
+	public byte[] copyFromDirectBuffer()
+	{
+		ImageUtil.copyIntersectingPartOfImage(mSrcBuffer, mSrcBounds, mDst, mDstBounds, channelCount);
+		
+		return mDst;
+	}
+}
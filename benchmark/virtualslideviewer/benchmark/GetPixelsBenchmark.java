@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.benchmark;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.VirtualSlideImage;
+
+/**
+ * Measures the time of reading a part of an image which spans several tiles.
+ * 
+ * The region starts in the middle of a tile, so the tiles at its edges are copied only partially.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GetPixelsBenchmark
+{
+	private static final int TILE_SIZE = 256;
+	
+	@Param({ "1", "2", "4" })
+	public int                tilesPerSide;
+	
+	@Param({ "true", "false" })
+	public boolean            rgb;
+	
+	private VirtualSlideImage mImage;
+	private Rectangle         mRegion;
+	private ImageIndex        mImageIndex;
+	private byte[]            mDst;
+	
+	@Setup
+	public void setUp()
+	{
+		mImage      = new SyntheticVirtualSlideImage("benchmark", new Dimension(16384, 16384), new Dimension(TILE_SIZE, TILE_SIZE), 1, rgb);
+		mRegion     = new Rectangle(TILE_SIZE / 2, TILE_SIZE / 2, tilesPerSide * TILE_SIZE, tilesPerSide * TILE_SIZE);
+		mImageIndex = new ImageIndex(0);
+		mDst        = new byte[mRegion.width * mRegion.height * (rgb ? 3 : 1)];
+	}
+	
+	@Benchmark
+	public byte[] getPixels()
+	{
+		mImage.getPixels(mDst, mRegion, mImageIndex);
+		
+		return mDst;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.benchmark;
+
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import virtualslideviewer.util.PixelDataUtil;
+
+/**
+ * Measures the time of the pixel layout conversions of a single tile.
+ * 
+ * The conversion of planar pixels is compared with its straightforward per-pixel implementation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PixelDataUtilBenchmark
+{
+	@Param({ "512" })
+	public int        tileSize;
+	
+	@Param({ "3", "4" })
+	public int        channelCount;
+	
+	private Dimension mImageSize;
+	private byte[]    mSrc;
+	private byte[]    mDst;
+	
+	@Setup
+	public void setUp()
+	{
+		mImageSize = new Dimension(tileSize, tileSize);
+		mSrc       = new byte[tileSize * tileSize * channelCount];
+		mDst       = new byte[mSrc.length];
+	}
+	
+	@Benchmark
+	public byte[] convertPlanarToInterleaved()
+	{
+		PixelDataUtil.convertPlanarToInterleaved(mSrc, mDst, mImageSize, channelCount);
+		
+		return mDst;
+	}
+	
+	@Benchmark
+	public byte[] convertPlanarToInterleavedPerPixel()
+	{
+		int channelLength = mImageSize.width * mImageSize.height;
+		
+		for(int pixel = 0; pixel < channelLength; ++pixel)
+		{
+			for(int channel = 0; channel < channelCount; channel++)
+			{
+				mDst[pixel * channelCount + channel] = mSrc[pixel + channel * channelLength];
+			}
+		}
+		
+		return mDst;
+	}
+	
+	@Benchmark
+	public byte[] swapRgbColorComponents()
+	{
+		PixelDataUtil.swapRgbColorComponents(mDst);
+		
+		return mDst;
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.benchmark;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * In-memory virtual slide image with generated pixels, so the benchmarks do not need any sample slides.
+ * 
+ * Every resolution is half the size of the next one. The data of a tile is copied from a pregenerated buffer,
+ * thus reading a tile costs as little as possible and the benchmarks measure the code around it.
+ */
+public class SyntheticVirtualSlideImage extends VirtualSlideImage
+{
+	private final String          mID;
+	private final boolean         mRGB;
+	private final Dimension       mTileSize;
+	private final List<Dimension> mImageSizes = new ArrayList<>();
+	private final byte[]          mTileData;
+	
+	/**
+	 * @param id              The ID of the image and its slide.
+	 * @param imageSize       The size of the highest resolution.
+	 * @param tileSize        The size of tiles at every resolution.
+	 * @param resolutionCount The number of resolutions.
+	 * @param rgb             Whether the image has 3 channels per pixel.
+	 */
+	public SyntheticVirtualSlideImage(String id, Dimension imageSize, Dimension tileSize, int resolutionCount, boolean rgb)
+	{
+		ParameterValidator.throwIfNull(id, "id");
+		ParameterValidator.throwIfNull(imageSize, "imageSize");
+		ParameterValidator.throwIfNull(tileSize, "tileSize");
+		
+		if(resolutionCount <= 0)
+			throw new IllegalArgumentException("resolutionCount has to be positive.");
+		
+		mID       = id;
+		mRGB      = rgb;
+		mTileSize = new Dimension(tileSize);
+		
+		for(int i = resolutionCount - 1; i >= 0; i--)
+		{
+			mImageSizes.add(0, new Dimension(Math.max(imageSize.width >> i, 1), Math.max(imageSize.height >> i, 1)));
+		}
+		
+		mTileData = new byte[tileSize.width * tileSize.height * (rgb ? 3 : 1)];
+		for(int i = 0; i < mTileData.length; i++)
+		{
+			mTileData[i] = (byte)(i * 31);
+		}
+	}
+
+	@Override
+	public Dimension getImageSize(int resIndex)
+	{
+		return new Dimension(mImageSizes.get(resIndex));
+	}
+
+	@Override
+	public int getResolutionCount()
+	{
+		return mImageSizes.size();
+	}
+
+	@Override
+	public int getChannelCount()
+	{
+		return 1;
+	}
+
+	@Override
+	public int getZPlaneCount()
+	{
+		return 1;
+	}
+
+	@Override
+	public int getTimePointCount()
+	{
+		return 1;
+	}
+
+	@Override
+	public Dimension getTileSize(int resIndex)
+	{
+		return new Dimension(mTileSize);
+	}
+
+	@Override
+	public boolean isRGB()
+	{
+		return mRGB;
+	}
+
+	@Override
+	public void getTileData(byte[] dst, Tile tile)
+	{
+		ParameterValidator.throwIfNull(dst, "dst");
+		ParameterValidator.throwIfNull(tile, "tile");
+		
+		Rectangle tileBounds = tile.getBounds(this);
+		
+		System.arraycopy(mTileData, 0, dst, 0, tileBounds.width * tileBounds.height * (mRGB ? 3 : 1));
+	}
+
+	@Override
+	public String getName()
+	{
+		return mID;
+	}
+
+	@Override
+	public void setName(String newName)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getID()
+	{
+		return mID;
+	}
+
+	@Override
+	public String getSlideID()
+	{
+		return mID;
+	}
+
+	@Override
+	public void close()
+	{
+	}
+}
@@ -17,11 +17,17 @@
 
 package virtualslideviewer;
 
-import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import virtualslideviewer.core.Tile;
-import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.UniqueTileID;
 import virtualslideviewer.core.VirtualSlideImage;
 import virtualslideviewer.util.ParameterValidator;
 import net.sf.ehcache.Ehcache;
@@ -29,10 +35,19 @@ import net.sf.ehcache.Element;
 
 /**
  * Adapter for TileCache interface for ehcache library.
+ * 
+ * The pinned tiles can take only a quarter of the heap the cache is allowed to use - when there is no more space for them,
+ * they are cached as visible tiles. A cache without a limit of bytes on heap does not pin tiles at all.
  */
 public class EhcacheTileCacheAdapter implements TileCache
 {
-	private final Ehcache mCache;
+	private static final int PINNED_PART_OF_CAPACITY_DIVISOR = 4;
+	
+	private final Ehcache                    mCache;
+	private final long                       mMaxPinnedBytes;
+	
+	private final Map<UniqueTileID, Integer> mPinnedTileSizes = new HashMap<>();
+	private       long                       mPinnedBytes;
 
 	/**
 	 * @param cache Cache to use for storing tiles.
@@ -41,24 +56,84 @@ public class EhcacheTileCacheAdapter implements TileCache
 	{
 		ParameterValidator.throwIfNull(cache, "cache");
 		
-		mCache = cache;
+		mCache          = cache;
+		mMaxPinnedBytes = getMaxBytesLocalHeap(cache) / PINNED_PART_OF_CAPACITY_DIVISOR;
+	}
+	
+	/**
+	 * Returns the limit of heap used by the cache, or 0 when its size is not limited in bytes.
+	 */
+	private static long getMaxBytesLocalHeap(Ehcache cache)
+	{
+		long maxBytes = cache.getCacheConfiguration().getMaxBytesLocalHeap();
+		
+		// A cache without its own limit shares the pool of its cache manager.
+		if(maxBytes == 0 && cache.getCacheManager() != null)
+		{
+			maxBytes = cache.getCacheManager().getConfiguration().getMaxBytesLocalHeap();
+		}
+		
+		return maxBytes;
 	}
 	
 	@Override
-	public void addTile(VirtualSlideImage image, Tile tile, byte[] tileData)
+	public void addTile(VirtualSlideImage image, Tile tile, byte[] tileData, TilePriority priority)
 	{
 		ParameterValidator.throwIfNull(image, "image");
 		ParameterValidator.throwIfNull(tile, "tile");
 		ParameterValidator.throwIfNull(tileData, "tileData");
+		ParameterValidator.throwIfNull(priority, "priority");
 		
-		// Adding to cache should not update access statistics.
-		// It is needed in prefetching to prevent situation when prefetching removes just loaded tiles in very low memory situation.
-	//	mCache.putQuiet(new Element(new UniqueTileID(image.getID(), tile), tileData));
-		
-		// TODO That's not good either... putQuiet also causes problems when loading the tile.
-		// When the cache is full there are temporary artifacts during loading if using putQuiet().
-		// Probably different call will have to be used in the case of loading and different when prefetching.
-		mCache.put(new Element(new UniqueTileID(image.getID(), tile), tileData));
+		put(new Element(new UniqueTileID(image.getID(), tile), tileData), priority);
+	}
+	
+	private void put(Element element, TilePriority priority)
+	{
+		switch(priority)
+		{
+			case PREFETCHED:
+				// Adding prefetched tile should not update access statistics, so it is evicted before the tiles which were displayed.
+				// It prevents the situation when prefetching removes just loaded tiles in very low memory situation.
+				mCache.putQuiet(element);
+				break;
+				
+			case VISIBLE:
+				mCache.put(element);
+				break;
+				
+			case PINNED:
+				mCache.put(element);
+				pinIfThereIsSpace((UniqueTileID)element.getObjectKey(), ((byte[])element.getObjectValue()).length);
+				break;
+		}
+	}
+	
+	/**
+	 * Pins the tile, unless the pinned tiles would take more than their part of the capacity.
+	 */
+	private void pinIfThereIsSpace(UniqueTileID key, int tileDataSize)
+	{
+		synchronized(mPinnedTileSizes)
+		{
+			Integer oldTileDataSize = mPinnedTileSizes.get(key);
+			long    newPinnedBytes  = mPinnedBytes + tileDataSize - ((oldTileDataSize != null) ? oldTileDataSize : 0);
+			
+			if(newPinnedBytes > mMaxPinnedBytes)
+			{
+				if(oldTileDataSize != null)
+				{
+					mPinnedTileSizes.remove(key);
+					mPinnedBytes -= oldTileDataSize;
+					mCache.setPinned(key, false);
+				}
+				
+				return;
+			}
+			
+			mPinnedTileSizes.put(key, tileDataSize);
+			mPinnedBytes = newPinnedBytes;
+			mCache.setPinned(key, true);
+		}
 	}
 
 	@Override
@@ -73,58 +148,110 @@ public class EhcacheTileCacheAdapter implements TileCache
 	@Override
 	public byte[] getTileData(VirtualSlideImage image, Tile tile) throws NoSuchElementException
 	{
-		if(!hasTile(image, tile))
+		byte[] tileData = getTileDataIfPresent(image, tile);
+		if(tileData == null)
 			throw new NoSuchElementException(tile + " of \"" + image + "\" is not in cache.");
 		
-		return (byte[])mCache.get(new UniqueTileID(image.getID(), tile)).getObjectValue();
+		return tileData;
 	}
 	
 	@Override
-	public void clear()
+	public byte[] getTileDataIfPresent(VirtualSlideImage image, Tile tile)
 	{
-		mCache.removeAll();
+		ParameterValidator.throwIfNull(image, "image");
+		ParameterValidator.throwIfNull(tile, "tile");
+		
+		Element element = mCache.get(new UniqueTileID(image.getID(), tile));
+		
+		return (element != null) ? (byte[])element.getObjectValue() : null;
 	}
 	
-	/**
-	 * Tile ID unique to given image.
-	 * 
-	 * Tile with the same coordinates in two different images has different unique ID.
-	 */
-	private static class UniqueTileID implements Serializable
+	@Override
+	public byte[] computeTileDataIfAbsent(VirtualSlideImage image, Tile tile, TilePriority priority, Supplier<byte[]> loader)
 	{
-		private static final long serialVersionUID = -8405926210569156066L;
+		ParameterValidator.throwIfNull(image, "image");
+		ParameterValidator.throwIfNull(tile, "tile");
+		ParameterValidator.throwIfNull(priority, "priority");
+		ParameterValidator.throwIfNull(loader, "loader");
+		
+		UniqueTileID key     = new UniqueTileID(image.getID(), tile);
+		Element      element = mCache.get(key);
+		if(element != null)
+			return (byte[])element.getObjectValue();
 		
-		private final String mImageID;
-		private final Tile   mTile;
+		byte[] tileData = loader.get();
+		ParameterValidator.throwIfNull(tileData, "tileData");
 		
-		public UniqueTileID(String imageID, Tile tile)
+		if(priority == TilePriority.PREFETCHED)
 		{
-			mImageID = imageID;
-			mTile    = tile;
+			// putIfAbsent() would update the access statistics, thus a tile loaded in the meantime is simply overwritten.
+			mCache.putQuiet(new Element(key, tileData));
+			return tileData;
 		}
-
-		@Override
-		public int hashCode()
+		
+		Element elementAddedInTheMeantime = mCache.putIfAbsent(new Element(key, tileData));
+		if(elementAddedInTheMeantime != null)
+			return (byte[])elementAddedInTheMeantime.getObjectValue();
+		
+		if(priority == TilePriority.PINNED)
 		{
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + mImageID.hashCode();
-			result = prime * result + mTile.hashCode();
-			return result;
+			pinIfThereIsSpace(key, tileData.length);
 		}
-
-		@Override
-		public boolean equals(Object obj)
+		
+		return tileData;
+	}
+	
+	@Override
+	public boolean visitTileData(VirtualSlideImage image, Tile tile, Consumer<ByteBuffer> visitor)
+	{
+		ParameterValidator.throwIfNull(image, "image");
+		ParameterValidator.throwIfNull(tile, "tile");
+		ParameterValidator.throwIfNull(visitor, "visitor");
+		
+		Element element = mCache.get(new UniqueTileID(image.getID(), tile));
+		if(element == null)
+			return false;
+		
+		visitor.accept(ByteBuffer.wrap((byte[])element.getObjectValue()).asReadOnlyBuffer());
+		return true;
+	}
+	
+	@Override
+	public void removeTile(UniqueTileID tileID)
+	{
+		ParameterValidator.throwIfNull(tileID, "tileID");
+		
+		synchronized(mPinnedTileSizes)
+		{
+			Integer pinnedTileDataSize = mPinnedTileSizes.remove(tileID);
+			if(pinnedTileDataSize != null)
+			{
+				mPinnedBytes -= pinnedTileDataSize;
+				mCache.setPinned(tileID, false);
+			}
+			
+			mCache.remove(tileID);
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes the cache can use on heap, or 0 when its size is not limited in bytes.
+	 */
+	public long getCapacity()
+	{
+		return getMaxBytesLocalHeap(mCache);
+	}
+	
+	@Override
+	public void clear()
+	{
+		synchronized(mPinnedTileSizes)
 		{
-			if(this == obj)
-				return true;
-			if(obj == null)
-				return false;
-			if(getClass() != obj.getClass())
-				return false;
+			mCache.unpinAll();
+			mCache.removeAll();
 			
-			UniqueTileID other = (UniqueTileID)obj;
-			return mTile.equals(other.mTile) && mImageID.equals(other.mImageID);
+			mPinnedTileSizes.clear();
+			mPinnedBytes = 0;
 		}
 	}
 }
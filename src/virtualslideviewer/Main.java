@@ -18,6 +18,10 @@
 package virtualslideviewer;
 
 import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -28,16 +32,19 @@ import org.slf4j.LoggerFactory;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import virtualslideviewer.bioformats.*;
+import virtualslideviewer.cache.*;
 import virtualslideviewer.config.ApplicationConfiguration;
 import virtualslideviewer.core.*;
 import virtualslideviewer.core.persistence.VirtualSlidePersistenceService;
 import virtualslideviewer.imageviewing.*;
+import virtualslideviewer.metrics.TileMetrics;
 import virtualslideviewer.ui.*;
 import virtualslideviewer.ui.about.*;
 import virtualslideviewer.ui.config.*;
 import virtualslideviewer.ui.imagelist.ImageListPresenter;
 import virtualslideviewer.ui.imagelist.view.ImageListSwingPanel;
 import virtualslideviewer.ui.imageviewing.*;
+import virtualslideviewer.ui.imageviewing.view.ImageRenderingPanel;
 import virtualslideviewer.ui.progress.*;
 import virtualslideviewer.ui.utils.SwingUIThreadMarshaller;
 import virtualslideviewer.undo.UndoableActionSystem;
@@ -61,6 +68,7 @@ public class Main
 		
 		configureImagePresentationModel();
 		bindImagePresentationModelToApplicationConfiguration();
+		configureMetrics();
 		configurePersistenceService();
 		createMainWindow();
 	
@@ -74,16 +82,39 @@ public class Main
 	
 	private static void configureImagePresentationModel()
 	{
-		PrefetchingStrategy             prefetchingStrategy      = new NeighbourPrefetchingStrategy(512);
+		PrefetchingStrategy             prefetchingStrategy      = createPrefetchingStrategy();
 		TileLoadingPrioritizer          tilePrioritizer          = new DistanceToCenterTilePrioritizer();
 		LoadingTilePlaceholderGenerator tilePlaceholderGenerator = new DifferentResolutionsTileGenerator();
 		
-		VisibleImageLoader imageLoader = new AsyncVisibleImageLoader(mThreadPool, tilePlaceholderGenerator,
-		                                                             prefetchingStrategy, tilePrioritizer);
+		// One thread is always left for the visible tiles, so they do not wait for the prefetched ones.
+		int                             threadCount              = Runtime.getRuntime().availableProcessors();
+		TileLoadingScheduler            tileLoadingScheduler     = new TileLoadingScheduler(threadCount, Math.max(threadCount - 1, 1));
+		
+		VisibleImageLoader imageLoader = new AsyncVisibleImageLoader(tileLoadingScheduler, tilePlaceholderGenerator,
+		                                                             prefetchingStrategy,  tilePrioritizer,
+		                                                             TileMetrics.getInstance());
 		
 		mImageViewModel = new ImagePresentationModel(new Camera(), imageLoader);
 	}
 	
+	private static PrefetchingStrategy createPrefetchingStrategy()
+	{
+		PrefetchingStrategy strategy = mAppConfig.isMotionPredictivePrefetchingEnabled() ? new MotionPredictivePrefetchingStrategy(500, 256)
+		                                                                                 : new NeighbourPrefetchingStrategy(512);
+		
+		if(mAppConfig.getCrossResolutionPrefetchingTileBudget() > 0)
+		{
+			strategy = new CrossResolutionPrefetchingStrategy(strategy, mAppConfig.getCrossResolutionPrefetchingTileBudget());
+		}
+		
+		if(mAppConfig.getAdjacentPlanePrefetchingDepth() > 0)
+		{
+			strategy = new AdjacentPlanePrefetchingStrategy(strategy, mAppConfig.getAdjacentPlanePrefetchingDepth());
+		}
+		
+		return strategy;
+	}
+	
 	private static void bindImagePresentationModelToApplicationConfiguration()
 	{
 		mImageViewModel.setZoomIncrement(mAppConfig.getZoomIncrement());
@@ -100,24 +131,95 @@ public class Main
 		});	
 	}
 		
+	private static void configureMetrics()
+	{
+		TileMetrics metrics = TileMetrics.getInstance();
+		
+		metrics.registerMBean();
+		
+		if(mAppConfig.getMetricsLogInterval() > 0)
+		{
+			// The summary is written at the INFO level, which the root logger does not let through.
+			((Logger)LoggerFactory.getLogger(TileMetrics.class)).setLevel(Level.INFO);
+			metrics.startPeriodicLogging(mAppConfig.getMetricsLogInterval());
+		}
+	}
+	
 	private static void configurePersistenceService()
 	{
-		CacheManager.getInstance().addCache("DefaultCache");
-		mCache = new EhcacheTileCacheAdapter(CacheManager.getInstance().getCache("DefaultCache"));
+		mCache = createTileCache();
 		
-		mVirtualSlidePersistenceService = new VirtualSlidePersistenceService(mCache, mThreadPool);
+		mVirtualSlidePersistenceService = new VirtualSlidePersistenceService(mThreadPool);
 		
 		mVirtualSlidePersistenceService.addLoader(new OmeTiffLoader(new PaddingCalculator(mThreadPool)));
 		mVirtualSlidePersistenceService.addLoader(new BioformatsLoader(new PaddingCalculator(mThreadPool)));
 	}
 	
+	private static TileCache createTileCache()
+	{
+		TileCache cache = createMemoryTileCache();
+		
+		if(mAppConfig.isDiskTileCacheEnabled())
+		{
+			try
+			{
+				Path diskCacheDirectory = Paths.get(mAppConfig.getDiskTileCacheDirectory());
+				
+				cache = new TieredTileCache(cache, new DiskTileCache(diskCacheDirectory, mAppConfig.getDiskTileCacheSize()));
+			}
+			catch(IOException | InvalidPathException e)
+			{
+				LoggerFactory.getLogger(Main.class).warn("Disk tile cache is not available, only memory will be used.", e);
+			}
+		}
+		
+		return new InstrumentedTileCache(new CoalescingTileCache(cache), TileMetrics.getInstance());
+	}
+	
+	private static TileCache createMemoryTileCache()
+	{
+		TileCache cache;
+		long      capacity;
+		
+		if(mAppConfig.isOffHeapTileCacheEnabled())
+		{
+			capacity = mAppConfig.getOffHeapTileCacheSize();
+			cache    = new OffHeapTileCache(capacity);
+		}
+		else
+		{
+			CacheManager.getInstance().addCache("DefaultCache");
+			
+			EhcacheTileCacheAdapter ehcache = new EhcacheTileCacheAdapter(CacheManager.getInstance().getCache("DefaultCache"));
+			
+			// Without a limit of heap in ehcache.xml, the cache is bounded only by the heap itself.
+			capacity = (ehcache.getCapacity() > 0) ? ehcache.getCapacity() : Runtime.getRuntime().maxMemory();
+			cache    = ehcache;
+		}
+		
+		cache = new SlideQuotaTileCache(cache, capacity, mAppConfig.getTileCacheSlideCount());
+		
+		if(mAppConfig.isTileCacheCompressionEnabled())
+		{
+			cache = new CompressingTileCache(cache, TileMetrics.getInstance());
+		}
+		
+		return cache;
+	}
+	
+	private static ImageRenderingPanel.RenderingMode getRenderingMode()
+	{
+		return mAppConfig.isTileRenderingEnabled() ? ImageRenderingPanel.RenderingMode.TILES : ImageRenderingPanel.RenderingMode.VISIBLE_IMAGE;
+	}
+	
 	private static void createMainWindow()
 	{
 		UndoableActionSystem undoManager = new UndoableActionSystem();
 
 		FileMenu            fileMenu            = new FileMenu();
 		ImageListSwingPanel imageSelectionPanel = new ImageListSwingPanel(new Dimension(200, 150));
-		MainPanel           mainPanel           = new MainPanel(imageSelectionPanel, mImageViewModel);
+		MainPanel           mainPanel           = new MainPanel(imageSelectionPanel, mImageViewModel, getRenderingMode(),
+		                                                        mAppConfig.getMaxFrameRate());
 		                   mMainWindow          = new MainWindow(fileMenu);
 	
 		ProgressViewFactory progressViewFactory = new ProgressDialogFactory(mMainWindow);
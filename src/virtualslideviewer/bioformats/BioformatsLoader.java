@@ -21,6 +21,9 @@ import java.awt.Dimension;
 import java.io.IOException;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 import loci.formats.*;
 import loci.formats.meta.IMetadata;
@@ -28,6 +31,7 @@ import virtualslideviewer.UncheckedInterruptedException;
 import virtualslideviewer.core.VirtualSlide;
 import virtualslideviewer.core.persistence.VirtualSlideLoadException;
 import virtualslideviewer.core.persistence.VirtualSlideLoader;
+import virtualslideviewer.util.FileUtil;
 import virtualslideviewer.util.ParameterValidator;
 
 public class BioformatsLoader implements VirtualSlideLoader
@@ -69,7 +73,7 @@ public class BioformatsLoader implements VirtualSlideLoader
 		
 		try
 		{
-			BioformatsVirtualSlide newSlide = new BioformatsVirtualSlide(metadata, getFileFormat(readerPool));
+			BioformatsVirtualSlide newSlide = new BioformatsVirtualSlide(metadata, getFileFormat(readerPool), computeSlideID(readerPool));
 
 			loadImages(newSlide, readerPool);
 			
@@ -95,6 +99,32 @@ public class BioformatsLoader implements VirtualSlideLoader
 		return fileFormat;
 	}
 	
+	/**
+	 * Computes an ID identifying the files of virtual slide by their paths, sizes and modification times.
+	 * 
+	 * Thanks to the ID being stable between sessions, tiles cached on disk in previous sessions can be reused,
+	 * but they are never reused when the file has been changed.
+	 */
+	private String computeSlideID(ReaderPool readerPool)
+	{
+		String[] usedFiles;
+		
+		IFormatReader reader = readerPool.borrow();
+		{
+			usedFiles = reader.getUsedFiles();
+		}
+		readerPool.putBack(reader);
+		
+		try
+		{
+			return FileUtil.computeFilesIdentity(Arrays.stream(usedFiles).map(Paths::get).collect(Collectors.toList()));
+		}
+		catch(IOException e)
+		{
+			throw new VirtualSlideLoadException(e.getMessage(), e);
+		}
+	}
+	
 	/**
 	 * Adds all images found in a virtual slide file to a list of images.
 	 */
@@ -110,7 +140,7 @@ public class BioformatsLoader implements VirtualSlideLoader
 				String imageName = slide.getBioformatsMetadata().getImageName(seriesIndex);
 				int    resCount  = reader.getResolutionCount();
 				
-				BioformatsVirtualSlideImage image = new BioformatsVirtualSlideImage(imageName, seriesIndex, resCount, readerPool);
+				BioformatsVirtualSlideImage image = new BioformatsVirtualSlideImage(imageName, slide.getSlideID(), seriesIndex, resCount, readerPool);
 				
 				computePaddingForEveryResolutionOfImage(image);
 				
@@ -25,14 +25,22 @@ public class BioformatsVirtualSlide extends VirtualSlide
 {
 	private final IMetadata mMetadata;
 	private final String    mFormat;
+	private final String    mSlideID;
 	
-	public BioformatsVirtualSlide(IMetadata metadata, String format)
+	/**
+	 * @param metadata The metadata of the slide.
+	 * @param format   The name of the format of slide's file.
+	 * @param slideID  The ID identifying the slide's files.
+	 */
+	public BioformatsVirtualSlide(IMetadata metadata, String format, String slideID)
 	{
 		ParameterValidator.throwIfNull(metadata, "metadata");
 		ParameterValidator.throwIfNull(format, "format");
+		ParameterValidator.throwIfNull(slideID, "slideID");
 		
 		mMetadata = metadata;
 		mFormat   = format;
+		mSlideID  = slideID;
 	}
 	
 	public IMetadata getBioformatsMetadata()
@@ -40,6 +48,16 @@ public class BioformatsVirtualSlide extends VirtualSlide
 		return mMetadata;
 	}
 	
+	/**
+	 * Returns the ID identifying the slide's files.
+	 * 
+	 * The same unmodified files opened in different sessions have the same ID.
+	 */
+	public String getSlideID()
+	{
+		return mSlideID;
+	}
+	
 	@Override
 	public String getFormat()
 	{
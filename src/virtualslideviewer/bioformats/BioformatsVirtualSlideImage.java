@@ -28,9 +28,10 @@ import java.util.List;
 import virtualslideviewer.UncheckedInterruptedException;
 import virtualslideviewer.core.ImageIndex;
 import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileLoadingCancellation;
 import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.metrics.TileMetrics;
 import virtualslideviewer.util.*;
-import loci.common.DataTools;
 import loci.formats.*;
 
 public class BioformatsVirtualSlideImage extends VirtualSlideImage
@@ -39,6 +40,8 @@ public class BioformatsVirtualSlideImage extends VirtualSlideImage
 	private final ByteArrayPool   mCacheBuffersPool = new ByteArrayPool();
 	
 	private final int             mSeriesIndex;
+	private final String          mSlideID;
+	private final String          mID;
 	private       String          mName;
 	
 	private final int             mColorChannelCount;
@@ -55,19 +58,26 @@ public class BioformatsVirtualSlideImage extends VirtualSlideImage
 	private final int             mZPlanesCount;
 	private final int             mTimePointsCount;
 	
+	// Indexed by channel.
+	private final List<SampleConverter> mSampleConverters = new ArrayList<>();
+	
 	/**
 	 * @param metadata    Metadata of the virtual slide.
+	 * @param slideID     The ID of the virtual slide the image belongs to.
 	 * @param seriesIndex The index of series.
 	 * @param nameSuffix  The suffix to append to image name.
 	 */
-	public BioformatsVirtualSlideImage(String name, int seriesIndex, int resolutionCount, ReaderPool readerPool)
+	public BioformatsVirtualSlideImage(String name, String slideID, int seriesIndex, int resolutionCount, ReaderPool readerPool)
 	{
 		ParameterValidator.throwIfNull(name, "name");
+		ParameterValidator.throwIfNull(slideID, "slideID");
 		ParameterValidator.throwIfNull(readerPool, "readerPool");
 		
 		mReaderPool  = readerPool;
 		
 		mSeriesIndex = seriesIndex;
+		mSlideID     = slideID;
+		mID          = slideID + ":" + seriesIndex;
 		mName        = name;
 		
 		IFormatReader reader = mReaderPool.borrow();
@@ -94,6 +104,11 @@ public class BioformatsVirtualSlideImage extends VirtualSlideImage
 			}
 		}
 		mReaderPool.putBack(reader);
+		
+		for(int i = 0; i < mChannelCount; i++)
+		{
+			mSampleConverters.add(SampleConverter.createDefault(mPixelType, mBitsPerPixel, mLittleEndian, mColorChannelCount));
+		}
 	}
 	
 	@Override
@@ -105,43 +120,55 @@ public class BioformatsVirtualSlideImage extends VirtualSlideImage
 		
 		// TODO refactor the ifs to a strategy object?
 		
-		if(mBitsPerPixel != 8)
+		SampleConverter sampleConverter = mSampleConverters.get(tile.getImageIndex().getChannel());
+		
+		if(!sampleConverter.isIdentity())
 		{
 			byte[] rawDataTempBuffer = mCacheBuffersPool.borrow(getRawDataBufferMinimumSize(tile));
+			try
 			{		
 				readRawTileData(rawDataTempBuffer, tileBounds, tile.getImageIndex());
+				
+				TileLoadingCancellation.throwIfCancelled();
 	
 				if(isRGB() && !mInterleaved)
 				{
-					byte[] tempByteBufffer = mCacheBuffersPool.borrow(getOutputBufferMinimumSize(tile));
-					{
-						convertToBytes(tempByteBufffer, rawDataTempBuffer, tileBounds.getSize());
-						PixelDataUtil.convertPlanarToInterleaved(tempByteBufffer, dst, tileBounds.getSize(), mColorChannelCount);
-					}
-					mCacheBuffersPool.putBack(tempByteBufffer);
+					sampleConverter.convertPlanarToInterleaved(rawDataTempBuffer, dst, tileBounds.width * tileBounds.height);
 				}
 				else
 				{
-					convertToBytes(dst, rawDataTempBuffer, tileBounds.getSize());
+					sampleConverter.convert(rawDataTempBuffer, dst, tileBounds.width * tileBounds.height, mInterleaved);
 				}
 			}
-			mCacheBuffersPool.putBack(rawDataTempBuffer);
+			finally
+			{
+				mCacheBuffersPool.putBack(rawDataTempBuffer);
+			}
 		}
 		else
 		{
 			if(isRGB() && !mInterleaved)
 			{
 				byte[] tempBuffer = mCacheBuffersPool.borrow(getOutputBufferMinimumSize(tile));
+				try
 				{
 					readRawTileData(tempBuffer, tileBounds, tile.getImageIndex());
 	
+					TileLoadingCancellation.throwIfCancelled();
+					
 					PixelDataUtil.convertPlanarToInterleaved(tempBuffer, dst, tileBounds.getSize(), mColorChannelCount);
 				}
-				mCacheBuffersPool.putBack(tempBuffer);
+				finally
+				{
+					mCacheBuffersPool.putBack(tempBuffer);
+				}
 			}
 			else
 			{
 				readRawTileData(dst, tileBounds, tile.getImageIndex());
+				
+				// Nothing is left to do, but a tile cancelled during the read should not be returned as loaded.
+				TileLoadingCancellation.throwIfCancelled();
 			}
 		}
 	}
@@ -184,11 +211,19 @@ public class BioformatsVirtualSlideImage extends VirtualSlideImage
 			{
 				try
 				{
+					// Borrowing the reader may take a while, so the tile may be no longer needed.
+					// Abandoning the loading before reading leaves the reader usable, unlike interrupting it.
+					TileLoadingCancellation.throwIfCancelled();
+					
 					configureReader(reader, imageIndex.getResolutionIndex());
 			
 					int readerImageIndex = reader.getIndex(imageIndex.getZPlane(), imageIndex.getChannel(), imageIndex.getTimePoint());
 		
+					long decodingStartTime = System.nanoTime();
+					
 					reader.openBytes(readerImageIndex, dst, tileBounds.x, tileBounds.y, tileBounds.width, tileBounds.height);
+					
+					TileMetrics.getInstance().recordDecodeTime(imageIndex.getResolutionIndex(), System.nanoTime() - decodingStartTime);
 					break;
 				}
 				catch(ClosedByInterruptException e)
@@ -220,32 +255,6 @@ public class BioformatsVirtualSlideImage extends VirtualSlideImage
 		reader.setResolution(mResolutionCount - 1 - resIndex);
 	}
 	
-	/**
-	 * Converts pixels from native type to 8-bits per color component.
-	 * 
-	 * Based on loci.formats.ImageTools.autoscale().
-	 */
-	private void convertToBytes(byte[] dst, byte[] src, Dimension tileSize)
-	{
-		long[] minmax = FormatTools.defaultMinMax(mPixelType);
-		
-		int min = (int)minmax[0];
-		int max = (int)minmax[1];
-		
-		int bytesPerPixel = FormatTools.getBytesPerPixel(mPixelType);
-		int srcSize       = tileSize.width * tileSize.height * mColorChannelCount * bytesPerPixel;
-
-		for(int i = 0; i < srcSize; i += bytesPerPixel)
-		{
-			int s = DataTools.bytesToInt(src, i, bytesPerPixel, mLittleEndian);
-
-			float diff = max - min;
-			float dist = (s - min) / diff;
-
-			dst[i / bytesPerPixel] = (byte)(dist * 255);
-		}
-	}
-	
 	@Override
 	public Dimension getTileSize(int resIndex)
 	{
@@ -313,7 +322,13 @@ public class BioformatsVirtualSlideImage extends VirtualSlideImage
 	@Override
 	public String getID()
 	{
-		return Integer.toString(mSeriesIndex);
+		return mID;
+	}
+	
+	@Override
+	public String getSlideID()
+	{
+		return mSlideID;
 	}
 	
 	public int getSeriesIndex()
@@ -330,7 +345,7 @@ public class BioformatsVirtualSlideImage extends VirtualSlideImage
 		
 		mPadding.set(resIndex, new Dimension(padding));
 	}
-
+	
 	@Override
 	public void close()
 	{
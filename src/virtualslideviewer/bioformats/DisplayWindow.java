@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.bioformats;
+
+import loci.formats.FormatTools;
+
+/**
+ * The range of sample values which is mapped to the displayable range of 8-bit values.
+ * 
+ * The values not greater than the minimum are displayed as 0, the values not less than the maximum are displayed as 255,
+ * while the values between them are scaled linearly.
+ */
+public class DisplayWindow
+{
+	private final double mMin;
+	private final double mMax;
+	
+	/**
+	 * @param min The value displayed as black.
+	 * @param max The value displayed as white.
+	 */
+	public DisplayWindow(double min, double max)
+	{
+		if(Double.isNaN(min) || Double.isNaN(max))
+			throw new IllegalArgumentException("The bounds of window cannot be NaN.");
+		
+		if(max <= min)
+			throw new IllegalArgumentException("max has to be greater than min.");
+		
+		mMin = min;
+		mMax = max;
+	}
+	
+	/**
+	 * Creates a window from its level and width, as used in the window/level adjustment.
+	 * 
+	 * @param level The value at the center of the window.
+	 * @param width The width of the window.
+	 */
+	public static DisplayWindow fromLevelAndWidth(double level, double width)
+	{
+		return new DisplayWindow(level - width / 2, level + width / 2);
+	}
+	
+	/**
+	 * Returns the window containing the full range of values of specified pixel type.
+	 * 
+	 * For unsigned integer types whose samples use only a part of their bits, the window covers only the values
+	 * which can be stored in the used bits, so a 12-bit image stored as 16-bit is not displayed almost black.
+	 * The floating point values are expected to be normalized to the range [0, 1].
+	 * 
+	 * @param pixelType    The pixel type, as defined in {@link FormatTools}.
+	 * @param bitsPerPixel The number of bits used by a sample, as returned by IFormatReader.getBitsPerPixel().
+	 */
+	public static DisplayWindow getDefault(int pixelType, int bitsPerPixel)
+	{
+		if(FormatTools.isFloatingPoint(pixelType))
+			return new DisplayWindow(0.0, 1.0);
+		
+		int typeBits = FormatTools.getBytesPerPixel(pixelType) * 8;
+		if(!FormatTools.isSigned(pixelType) && bitsPerPixel > 0 && bitsPerPixel < typeBits)
+			return new DisplayWindow(0.0, (1L << bitsPerPixel) - 1);
+		
+		long[] minMax = FormatTools.defaultMinMax(pixelType);
+		return new DisplayWindow(minMax[0], minMax[1]);
+	}
+	
+	public double getMin()
+	{
+		return mMin;
+	}
+	
+	public double getMax()
+	{
+		return mMax;
+	}
+	
+	public double getLevel()
+	{
+		return (mMin + mMax) / 2;
+	}
+	
+	public double getWidth()
+	{
+		return mMax - mMin;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + Double.hashCode(mMin);
+		result = prime * result + Double.hashCode(mMax);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+			return true;
+		if(obj == null)
+			return false;
+		if(getClass() != obj.getClass())
+			return false;
+		
+		DisplayWindow other = (DisplayWindow)obj;
+		return (mMin == other.mMin) && (mMax == other.mMax);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("Window [%s, %s]", mMin, mMax);
+	}
+}
@@ -63,7 +63,7 @@ public class OmeTiffLoader extends BioformatsLoader
 				String imageName = slide.getBioformatsMetadata().getImageName(readerSeriesIndex);
 				int    resCount  = seriesResolutionCount.get(seriesIndex);
 				
-				OmeTiffVirtualSlideImage image = new OmeTiffVirtualSlideImage(imageName, readerSeriesIndex, resCount, readerPool);
+				OmeTiffVirtualSlideImage image = new OmeTiffVirtualSlideImage(imageName, slide.getSlideID(), readerSeriesIndex, resCount, readerPool);
 				
 				computePaddingForEveryResolutionOfImage(image);
 				
@@ -27,10 +27,10 @@ import loci.formats.IFormatReader;
  */
 public class OmeTiffVirtualSlideImage extends BioformatsVirtualSlideImage
 {	
-	public OmeTiffVirtualSlideImage(String name, int seriesIndex, int resolutionCount,
+	public OmeTiffVirtualSlideImage(String name, String slideID, int seriesIndex, int resolutionCount,
 	                                ReaderPool readerPool)
 	{
-		super(name, seriesIndex, resolutionCount, readerPool);
+		super(name, slideID, seriesIndex, resolutionCount, readerPool);
 	}
 	
 	@Override
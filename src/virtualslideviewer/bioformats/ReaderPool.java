@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.function.Supplier;
 
 import loci.formats.IFormatReader;
+import virtualslideviewer.metrics.TileMetrics;
 import virtualslideviewer.util.GrowableObjectPool;
 
 public class ReaderPool extends GrowableObjectPool<IFormatReader> implements AutoCloseable
@@ -29,6 +30,22 @@ public class ReaderPool extends GrowableObjectPool<IFormatReader> implements Aut
 	{
 		super(newReaderFactory);
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The time spent waiting for the pool and creating a new reader is recorded in the tile metrics.
+	 */
+	@Override
+	public IFormatReader borrow()
+	{
+		long startTime = System.nanoTime();
+		
+		IFormatReader reader = super.borrow();
+		
+		TileMetrics.getInstance().recordReaderPoolBorrowWait(System.nanoTime() - startTime);
+		return reader;
+	}
 
 	@Override
 	public void close()
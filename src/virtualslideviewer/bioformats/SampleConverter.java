@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.bioformats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import loci.formats.FormatTools;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Converts samples of pixels from the native pixel type of a virtual slide to 8 bits per sample.
+ *
+ * <p>
+ * Every color component has its own display window, which defines the range of values mapped to 8 bits.
+ *
+ * <p>
+ * The 8 and 16-bit samples are converted with lookup tables computed once for every window, so converting a sample
+ * costs only a single array read. The 32 and 64-bit samples have too many possible values for a lookup table,
+ * they are scaled by a precomputed factor instead.
+ * The 8 and 16-bit samples have a conversion loop for every byte order, so no checks are made for every sample.
+ *
+ * <p>
+ * The converter is immutable and thread-safe.
+ */
+public class SampleConverter
+{
+	// Block of 2048 pixels of three 16-bit planes and the output takes 18 KB, which fits in the L1 cache.
+	private static final int PLANAR_CONVERSION_BLOCK_SIZE = 2048;
+
+	private final int                 mPixelType;
+	private final int                 mBytesPerSample;
+	private final boolean             mLittleEndian;
+	private final List<DisplayWindow> mWindows;
+	private final boolean             mSameWindowForAllComponents;
+
+	// Indexed by the unsigned value of raw sample bits, null for pixel types which are not converted with lookup tables.
+	private final byte[][]            mLookupTables;
+
+	/**
+	 * @param pixelType    The pixel type of samples, as defined in {@link FormatTools}.
+	 * @param littleEndian Whether multi-byte samples are stored in the little-endian byte order.
+	 * @param windows      The display windows of every color component of a pixel.
+	 */
+	public SampleConverter(int pixelType, boolean littleEndian, List<DisplayWindow> windows)
+	{
+		ParameterValidator.throwIfNull(windows, "windows");
+
+		if(windows.isEmpty())
+			throw new IllegalArgumentException("At least one window is required.");
+
+		if(windows.contains(null))
+			throw new IllegalArgumentException("windows cannot contain null.");
+
+		mPixelType                  = pixelType;
+		mBytesPerSample             = FormatTools.getBytesPerPixel(pixelType);
+		mLittleEndian               = littleEndian;
+		mWindows                    = Collections.unmodifiableList(new ArrayList<>(windows));
+		mSameWindowForAllComponents = windows.stream().distinct().count() == 1;
+		mLookupTables               = usesLookupTables() ? createLookupTables() : null;
+	}
+
+	/**
+	 * Creates a converter using the default window of the pixel type for every color component.
+	 *
+	 * @see DisplayWindow#getDefault(int, int)
+	 */
+	public static SampleConverter createDefault(int pixelType, int bitsPerPixel, boolean littleEndian, int componentCount)
+	{
+		if(componentCount <= 0)
+			throw new IllegalArgumentException("componentCount has to be positive.");
+
+		DisplayWindow defaultWindow = DisplayWindow.getDefault(pixelType, bitsPerPixel);
+
+		return new SampleConverter(pixelType, littleEndian, Collections.nCopies(componentCount, defaultWindow));
+	}
+
+	private boolean usesLookupTables()
+	{
+		return mBytesPerSample <= 2 && mPixelType != FormatTools.FLOAT && mPixelType != FormatTools.DOUBLE;
+	}
+
+	private byte[][] createLookupTables()
+	{
+		Map<DisplayWindow, byte[]> tablesOfWindows = new HashMap<>();
+
+		byte[][] tables = new byte[mWindows.size()][];
+		for(int i = 0; i < tables.length; i++)
+		{
+			tables[i] = tablesOfWindows.computeIfAbsent(mWindows.get(i), this::createLookupTable);
+		}
+
+		return tables;
+	}
+
+	private byte[] createLookupTable(DisplayWindow window)
+	{
+		byte[] table = new byte[1 << (mBytesPerSample * 8)];
+
+		for(int rawValue = 0; rawValue < table.length; rawValue++)
+		{
+			table[rawValue] = toByte(getSampleValue(rawValue), window);
+		}
+
+		return table;
+	}
+
+	private double getSampleValue(int rawValue)
+	{
+		switch(mPixelType)
+		{
+			case FormatTools.INT8:  return (byte)rawValue;
+			case FormatTools.INT16: return (short)rawValue;
+			default:                return rawValue;
+		}
+	}
+
+	/**
+	 * The exact conversion used to fill the lookup tables.
+	 */
+	private static byte toByte(double value, DisplayWindow window)
+	{
+		if(value <= window.getMin())
+			return 0;
+
+		if(value >= window.getMax())
+			return (byte)255;
+
+		return (byte)((value - window.getMin()) * 255 / (window.getMax() - window.getMin()));
+	}
+
+	/**
+	 * Faster version of {@link #toByte(double, DisplayWindow)} for conversion loops, which multiplies by a precomputed scale instead of dividing.
+	 */
+	private static byte toByte(double value, double min, double max, double scale)
+	{
+		// Negated comparison maps NaN to 0.
+		if(!(value > min))
+			return 0;
+
+		if(value >= max)
+			return (byte)255;
+
+		return (byte)Math.min((value - min) * scale, 255.0);
+	}
+
+	public int getPixelType()
+	{
+		return mPixelType;
+	}
+
+	public boolean isLittleEndian()
+	{
+		return mLittleEndian;
+	}
+
+	public int getComponentCount()
+	{
+		return mWindows.size();
+	}
+
+	public List<DisplayWindow> getWindows()
+	{
+		return mWindows;
+	}
+
+	/**
+	 * Returns a converter which differs from this one only by the window of specified color component.
+	 */
+	public SampleConverter withWindow(int component, DisplayWindow window)
+	{
+		ParameterValidator.throwIfNull(window, "window");
+
+		if(component < 0 || component >= mWindows.size())
+			throw new IllegalArgumentException("Invalid color component.");
+
+		List<DisplayWindow> newWindows = new ArrayList<>(mWindows);
+		newWindows.set(component, window);
+
+		return new SampleConverter(mPixelType, mLittleEndian, newWindows);
+	}
+
+	/**
+	 * Checks whether the conversion does not change the samples, so the raw data can be used without any conversion.
+	 */
+	public boolean isIdentity()
+	{
+		return mPixelType == FormatTools.UINT8 && mSameWindowForAllComponents && mWindows.get(0).equals(new DisplayWindow(0, 255));
+	}
+
+	/**
+	 * Converts the samples of pixels to 8 bits per sample, keeping their layout.
+	 *
+	 * @param src         The raw samples.
+	 * @param dst         The buffer for converted samples.
+	 * @param pixelCount  The number of pixels to convert.
+	 * @param interleaved Whether the color components of a pixel are stored next to each other.
+	 *                    If false, the components are stored in separate planes of {@code pixelCount} samples.
+	 */
+	public void convert(byte[] src, byte[] dst, int pixelCount, boolean interleaved)
+	{
+		validateBuffers(src, dst, pixelCount);
+
+		int componentCount = mWindows.size();
+		int sampleCount    = pixelCount * componentCount;
+
+		if(mSameWindowForAllComponents)
+		{
+			convertSamples(src, 0, 1, dst, 0, 1, sampleCount, 0);
+		}
+		else if(interleaved)
+		{
+			for(int component = 0; component < componentCount; component++)
+			{
+				convertSamples(src, component, componentCount, dst, component, componentCount, pixelCount, component);
+			}
+		}
+		else
+		{
+			for(int component = 0; component < componentCount; component++)
+			{
+				convertSamples(src, component * pixelCount, 1, dst, component * pixelCount, 1, pixelCount, component);
+			}
+		}
+	}
+
+	private void validateBuffers(byte[] src, byte[] dst, int pixelCount)
+	{
+		ParameterValidator.throwIfNull(src, "src");
+		ParameterValidator.throwIfNull(dst, "dst");
+
+		if(pixelCount < 0)
+			throw new IllegalArgumentException("pixelCount cannot be negative.");
+
+		int sampleCount = pixelCount * mWindows.size();
+
+		if(src.length < sampleCount * mBytesPerSample || dst.length < sampleCount)
+			throw new IllegalArgumentException("The buffers are too small for " + pixelCount + " pixels.");
+	}
+
+	/**
+	 * Converts planar samples of pixels to 8 bits per sample, storing the result in the interleaved layout.
+	 *
+	 * It is equivalent to {@link #convert(byte[], byte[], int, boolean)} followed by PixelDataUtil.convertPlanarToInterleaved(),
+	 * but it makes only a single pass over the data without any intermediate buffer.
+	 * The pixels are processed in blocks, so the parts of all planes being read and the output being written stay in the CPU cache.
+	 *
+	 * @param src        The raw samples stored in separate planes of {@code pixelCount} samples.
+	 * @param dst        The buffer for converted interleaved samples.
+	 * @param pixelCount The number of pixels to convert.
+	 */
+	public void convertPlanarToInterleaved(byte[] src, byte[] dst, int pixelCount)
+	{
+		validateBuffers(src, dst, pixelCount);
+
+		int componentCount = mWindows.size();
+
+		for(int blockStart = 0; blockStart < pixelCount; blockStart += PLANAR_CONVERSION_BLOCK_SIZE)
+		{
+			int blockSize = Math.min(PLANAR_CONVERSION_BLOCK_SIZE, pixelCount - blockStart);
+
+			for(int component = 0; component < componentCount; component++)
+			{
+				convertSamples(src, component * pixelCount + blockStart, 1, dst, blockStart * componentCount + component, componentCount,
+				               blockSize, component);
+			}
+		}
+	}
+
+	/**
+	 * Converts a sequence of samples using the window of specified component.
+	 *
+	 * The offsets and steps between consecutive samples are expressed in samples, not bytes.
+	 */
+	private void convertSamples(byte[] src, int srcStart, int srcStep, byte[] dst, int dstStart, int dstStep, int count, int component)
+	{
+		int srcOffset = srcStart * mBytesPerSample;
+		int srcStride = srcStep * mBytesPerSample;
+
+		if(mLookupTables != null)
+		{
+			byte[] table = mLookupTables[component];
+
+			if(mBytesPerSample == 1)
+			{
+				convert8Bit(src, srcOffset, srcStride, dst, dstStart, dstStep, count, table);
+			}
+			else if(mLittleEndian)
+			{
+				convert16BitLittleEndian(src, srcOffset, srcStride, dst, dstStart, dstStep, count, table);
+			}
+			else
+			{
+				convert16BitBigEndian(src, srcOffset, srcStride, dst, dstStart, dstStep, count, table);
+			}
+
+			return;
+		}
+
+		DisplayWindow window = mWindows.get(component);
+		double        min    = window.getMin();
+		double        max    = window.getMax();
+		double        scale  = 255 / (max - min);
+
+		switch(mPixelType)
+		{
+			case FormatTools.INT32:
+			case FormatTools.UINT32:
+				convert32BitInteger(src, srcOffset, srcStride, dst, dstStart, dstStep, count, min, max, scale);
+				break;
+
+			case FormatTools.FLOAT:
+				convertFloat(src, srcOffset, srcStride, dst, dstStart, dstStep, count, min, max, scale);
+				break;
+
+			case FormatTools.DOUBLE:
+				convertDouble(src, srcOffset, srcStride, dst, dstStart, dstStep, count, min, max, scale);
+				break;
+
+			default:
+				throw new UnsupportedOperationException("Unsupported pixel type: " + FormatTools.getPixelTypeString(mPixelType));
+		}
+	}
+
+	private static void convert8Bit(byte[] src, int srcOffset, int srcStride, byte[] dst, int dstOffset, int dstStep, int count,
+	                                byte[] table)
+	{
+		for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStep)
+		{
+			dst[d] = table[src[s] & 0xFF];
+		}
+	}
+
+	private static void convert16BitLittleEndian(byte[] src, int srcOffset, int srcStride, byte[] dst, int dstOffset, int dstStep, int count,
+	                                             byte[] table)
+	{
+		for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStep)
+		{
+			dst[d] = table[(src[s] & 0xFF) | ((src[s + 1] & 0xFF) << 8)];
+		}
+	}
+
+	private static void convert16BitBigEndian(byte[] src, int srcOffset, int srcStride, byte[] dst, int dstOffset, int dstStep, int count,
+	                                          byte[] table)
+	{
+		for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStep)
+		{
+			dst[d] = table[((src[s] & 0xFF) << 8) | (src[s + 1] & 0xFF)];
+		}
+	}
+
+	private void convert32BitInteger(byte[] src, int srcOffset, int srcStride, byte[] dst, int dstOffset, int dstStep, int count,
+	                                 double min, double max, double scale)
+	{
+		// The sign extended value of a signed sample is kept whole, the value of an unsigned one is cut to 32 bits.
+		long valueMask = (mPixelType == FormatTools.UINT32) ? 0xFFFFFFFFL : -1L;
+
+		if(mLittleEndian)
+		{
+			for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStep)
+			{
+				dst[d] = toByte(read32BitsLittleEndian(src, s) & valueMask, min, max, scale);
+			}
+		}
+		else
+		{
+			for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStep)
+			{
+				dst[d] = toByte(read32BitsBigEndian(src, s) & valueMask, min, max, scale);
+			}
+		}
+	}
+
+	private void convertFloat(byte[] src, int srcOffset, int srcStride, byte[] dst, int dstOffset, int dstStep, int count,
+	                          double min, double max, double scale)
+	{
+		if(mLittleEndian)
+		{
+			for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStep)
+			{
+				dst[d] = toByte(Float.intBitsToFloat(read32BitsLittleEndian(src, s)), min, max, scale);
+			}
+		}
+		else
+		{
+			for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStep)
+			{
+				dst[d] = toByte(Float.intBitsToFloat(read32BitsBigEndian(src, s)), min, max, scale);
+			}
+		}
+	}
+
+	private void convertDouble(byte[] src, int srcOffset, int srcStride, byte[] dst, int dstOffset, int dstStep, int count,
+	                           double min, double max, double scale)
+	{
+		if(mLittleEndian)
+		{
+			for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStep)
+			{
+				long bits = ((long)read32BitsLittleEndian(src, s + 4) << 32) | (read32BitsLittleEndian(src, s) & 0xFFFFFFFFL);
+
+				dst[d] = toByte(Double.longBitsToDouble(bits), min, max, scale);
+			}
+		}
+		else
+		{
+			for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStep)
+			{
+				long bits = ((long)read32BitsBigEndian(src, s) << 32) | (read32BitsBigEndian(src, s + 4) & 0xFFFFFFFFL);
+
+				dst[d] = toByte(Double.longBitsToDouble(bits), min, max, scale);
+			}
+		}
+	}
+
+	private static int read32BitsLittleEndian(byte[] src, int offset)
+	{
+		return (src[offset] & 0xFF) | ((src[offset + 1] & 0xFF) << 8) | ((src[offset + 2] & 0xFF) << 16) | (src[offset + 3] << 24);
+	}
+
+	private static int read32BitsBigEndian(byte[] src, int offset)
+	{
+		return (src[offset] << 24) | ((src[offset + 1] & 0xFF) << 16) | ((src[offset + 2] & 0xFF) << 8) | (src[offset + 3] & 0xFF);
+	}
+}
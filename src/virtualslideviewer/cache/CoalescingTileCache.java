@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import virtualslideviewer.UncheckedInterruptedException;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TileLoadingCancelledException;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.UniqueTileID;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Tile cache decorator which makes sure that a tile missing in cache is loaded only once, even if it is requested
+ * by many threads at the same time.
+ *
+ * The first thread which requests the tile loads it, while all other threads requesting the same tile of the same image
+ * wait for the result of that load instead of loading the tile again.
+ * A thread which needs the tile with a higher priority than the thread loading it raises the priority of the loaded tile.
+ */
+public class CoalescingTileCache implements TileCache
+{
+	private static class PendingLoad
+	{
+		private final FutureTask<byte[]> mTask;
+		private final TilePriority       mPriority;
+
+		public PendingLoad(FutureTask<byte[]> task, TilePriority priority)
+		{
+			mTask     = task;
+			mPriority = priority;
+		}
+	}
+
+	private final TileCache                                mCache;
+	private final ConcurrentMap<UniqueTileID, PendingLoad> mLoadsInProgress = new ConcurrentHashMap<>();
+
+	/**
+	 * @param cache The cache to decorate.
+	 */
+	public CoalescingTileCache(TileCache cache)
+	{
+		ParameterValidator.throwIfNull(cache, "cache");
+
+		mCache = cache;
+	}
+
+	@Override
+	public void addTile(VirtualSlideImage image, Tile tile, byte[] tileData, TilePriority priority)
+	{
+		mCache.addTile(image, tile, tileData, priority);
+	}
+
+	@Override
+	public boolean hasTile(VirtualSlideImage image, Tile tile)
+	{
+		return mCache.hasTile(image, tile);
+	}
+
+	@Override
+	public byte[] getTileData(VirtualSlideImage image, Tile tile) throws NoSuchElementException
+	{
+		return mCache.getTileData(image, tile);
+	}
+
+	@Override
+	public byte[] getTileDataIfPresent(VirtualSlideImage image, Tile tile)
+	{
+		return mCache.getTileDataIfPresent(image, tile);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * When the same tile is already being loaded by another thread, the loader is not called and the method
+	 * waits for the data loaded by the other thread instead. If the tile has been loaded with a lower priority,
+	 * it is added again with the priority of this call.
+	 * If the other thread abandons the loading, because it no longer needs the tile, the tile is loaded again.
+	 *
+	 * @throws UncheckedInterruptedException When the thread has been interrupted while waiting for the data.
+	 */
+	@Override
+	public byte[] computeTileDataIfAbsent(VirtualSlideImage image, Tile tile, TilePriority priority, Supplier<byte[]> loader)
+	{
+		ParameterValidator.throwIfNull(loader, "loader");
+
+		byte[] tileData = mCache.getTileDataIfPresent(image, tile);
+		if(tileData != null)
+			return tileData;
+
+		UniqueTileID key = new UniqueTileID(image.getID(), tile);
+		while(true)
+		{
+			PendingLoad newLoad     = new PendingLoad(new FutureTask<>(() -> mCache.computeTileDataIfAbsent(image, tile, priority, loader)),
+			                                          priority);
+			PendingLoad pendingLoad = mLoadsInProgress.putIfAbsent(key, newLoad);
+
+			if(pendingLoad == null)
+			{
+				try
+				{
+					newLoad.mTask.run();
+				}
+				finally
+				{
+					mLoadsInProgress.remove(key, newLoad);
+				}
+				
+				return waitForLoad(newLoad.mTask);
+			}
+			
+			try
+			{
+				tileData = waitForLoad(pendingLoad.mTask);
+			}
+			catch(TileLoadingCancelledException e)
+			{
+				// The cancellation concerns the thread which has started the loading, this thread still needs the tile.
+				// The finished load is removed right away, so the next attempt does not find it again before its owner removes it.
+				mLoadsInProgress.remove(key, pendingLoad);
+				continue;
+			}
+			
+			if(priority.compareTo(pendingLoad.mPriority) > 0)
+			{
+				mCache.addTile(image, tile, tileData, priority);
+			}
+			
+			return tileData;
+		}
+	}
+
+	private byte[] waitForLoad(FutureTask<byte[]> load)
+	{
+		try
+		{
+			return load.get();
+		}
+		catch(InterruptedException e)
+		{
+			throw new UncheckedInterruptedException(e.getMessage());
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+
+			if(e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	@Override
+	public boolean visitTileData(VirtualSlideImage image, Tile tile, Consumer<ByteBuffer> visitor)
+	{
+		return mCache.visitTileData(image, tile, visitor);
+	}
+
+	@Override
+	public void removeTile(UniqueTileID tileID)
+	{
+		mCache.removeTile(tileID);
+	}
+
+	@Override
+	public void clear()
+	{
+		mCache.clear();
+	}
+}
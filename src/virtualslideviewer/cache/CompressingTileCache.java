@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.UniqueTileID;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.metrics.TileMetrics;
+import virtualslideviewer.util.ByteArrayPool;
+import virtualslideviewer.util.GrowableObjectPool;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Tile cache decorator which stores the data of tiles in compressed form, so more tiles fit into the same amount of memory
+ * at the cost of CPU time needed to compress and decompress the data.
+ *
+ * <p>
+ * The data is compressed with the fastest level of deflate, which works well with the large uniform areas typical for slides.
+ * The compression ratio and the time spent on compression and decompression are recorded in the tile metrics,
+ * which together with the hit rate of the cache allow to judge whether the better hit rate is worth the CPU time.
+ * Every tile is compressed once when it is added.
+ *
+ * <p>
+ * The visible tiles are visited on every redraw of the image, so the most recently visited tiles are kept decompressed
+ * in a small cache of their own. The compressed data is copied out of the decorated cache and decompressed after the visit
+ * of the decorated cache returns, so the decompression does not hold the locks of the decorated cache.
+ *
+ * <p>
+ * The size of compressed data is rounded up to one of a few size classes, two per every power of two,
+ * so the caches which allocate the memory by the size of tiles do not need a separate size class for almost every tile.
+ */
+public class CompressingTileCache implements TileCache
+{
+	private static final int  HEADER_SIZE                          = Integer.BYTES;
+	private static final int  MIN_COMPRESSED_SIZE                  = 8 * 1024;
+	private static final long DEFAULT_DECOMPRESSED_TILES_CACHE_SIZE = 16 * 1024 * 1024;
+
+	private final TileCache                    mCache;
+	private final TileMetrics                  mMetrics;
+
+	// The most recently visited tiles in decompressed form, ordered by the last access.
+	private final long                         mDecompressedTilesCapacity;
+	private long                               mDecompressedTilesSize = 0;
+	private final Map<UniqueTileID, byte[]>    mDecompressedTiles     = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final GrowableObjectPool<Deflater> mDeflaters         = new GrowableObjectPool<>(() -> new Deflater(Deflater.BEST_SPEED, true));
+	private final GrowableObjectPool<Inflater> mInflaters         = new GrowableObjectPool<>(() -> new Inflater(true));
+	private final ByteArrayPool                mBuffersPool       = new ByteArrayPool();
+
+	/**
+	 * @param cache   The cache which will store the compressed data.
+	 * @param metrics The metrics to which the statistics of compression will be recorded.
+	 */
+	public CompressingTileCache(TileCache cache, TileMetrics metrics)
+	{
+		this(cache, DEFAULT_DECOMPRESSED_TILES_CACHE_SIZE, metrics);
+	}
+
+	/**
+	 * @param cache                      The cache which will store the compressed data.
+	 * @param decompressedTilesCacheSize The maximum size in bytes of the recently visited tiles kept in decompressed form.
+	 * @param metrics                    The metrics to which the statistics of compression will be recorded.
+	 */
+	public CompressingTileCache(TileCache cache, long decompressedTilesCacheSize, TileMetrics metrics)
+	{
+		ParameterValidator.throwIfNull(cache, "cache");
+		ParameterValidator.throwIfNull(metrics, "metrics");
+
+		if(decompressedTilesCacheSize < 0)
+			throw new IllegalArgumentException("decompressedTilesCacheSize cannot be negative.");
+
+		mCache                     = cache;
+		mMetrics                   = metrics;
+		mDecompressedTilesCapacity = decompressedTilesCacheSize;
+	}
+
+	@Override
+	public void addTile(VirtualSlideImage image, Tile tile, byte[] tileData, TilePriority priority)
+	{
+		ParameterValidator.throwIfNull(tileData, "tileData");
+
+		removeDecompressedTile(new UniqueTileID(image.getID(), tile));
+
+		mCache.addTile(image, tile, compress(tileData), priority);
+	}
+
+	/**
+	 * Compresses the data and prepends it with a header containing the size of uncompressed data.
+	 */
+	private byte[] compress(byte[] data)
+	{
+		long startTime = System.nanoTime();
+
+		byte[]   buffer   = mBuffersPool.borrow(HEADER_SIZE + getMaxCompressedSize(data.length));
+		Deflater deflater = mDeflaters.borrow();
+		try
+		{
+			deflater.setInput(data);
+			deflater.finish();
+
+			int compressedSize = HEADER_SIZE;
+			while(!deflater.finished())
+			{
+				if(compressedSize == buffer.length)
+				{
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+
+				compressedSize += deflater.deflate(buffer, compressedSize, buffer.length - compressedSize);
+			}
+
+			ByteBuffer.wrap(buffer).putInt(0, data.length);
+
+			// The padding after the end of compressed stream is ignored by the decompression.
+			byte[] compressedData = Arrays.copyOf(buffer, getPaddedCompressedSize(compressedSize, data.length));
+
+			mMetrics.recordTileCompression(data.length, compressedData.length, System.nanoTime() - startTime);
+
+			return compressedData;
+		}
+		finally
+		{
+			deflater.reset();
+			mDeflaters.putBack(deflater);
+			mBuffersPool.putBack(buffer);
+		}
+	}
+
+	private int getMaxCompressedSize(int dataSize)
+	{
+		// Deflate adds at most 5 bytes for every 16 KB block of incompressible data.
+		return dataSize + (dataSize >> 12) + 64;
+	}
+
+	/**
+	 * Rounds the size of compressed data up to the nearest power of two or 1.5 times a power of two,
+	 * but never above the size of uncompressed data, unless the data could not be compressed at all.
+	 */
+	private static int getPaddedCompressedSize(int compressedSize, int uncompressedSize)
+	{
+		int sizeClass = MIN_COMPRESSED_SIZE;
+		if(compressedSize > MIN_COMPRESSED_SIZE)
+		{
+			int powerOfTwo = Integer.highestOneBit(compressedSize - 1);
+
+			sizeClass = (compressedSize <= powerOfTwo + powerOfTwo / 2) ? powerOfTwo + powerOfTwo / 2 : powerOfTwo * 2;
+		}
+
+		return Math.min(sizeClass, Math.max(compressedSize, HEADER_SIZE + uncompressedSize));
+	}
+
+	private void decompress(byte[] compressedData, int compressedSize, byte[] dst)
+	{
+		long startTime = System.nanoTime();
+
+		Inflater inflater = mInflaters.borrow();
+		try
+		{
+			inflater.setInput(compressedData, HEADER_SIZE, compressedSize - HEADER_SIZE);
+
+			int decompressedSize = 0;
+			while(!inflater.finished() && decompressedSize < dst.length)
+			{
+				int bytesInflated = inflater.inflate(dst, decompressedSize, dst.length - decompressedSize);
+				if(bytesInflated == 0 && inflater.needsInput())
+					throw new DataFormatException("Unexpected end of compressed data.");
+
+				decompressedSize += bytesInflated;
+			}
+		}
+		catch(DataFormatException e)
+		{
+			throw new IllegalStateException("The data of tile in cache is corrupted.", e);
+		}
+		finally
+		{
+			inflater.reset();
+			mInflaters.putBack(inflater);
+
+			mMetrics.recordTileDecompression(System.nanoTime() - startTime);
+		}
+	}
+
+	private int getDecompressedSize(byte[] compressedData)
+	{
+		return ByteBuffer.wrap(compressedData).getInt(0);
+	}
+
+	@Override
+	public boolean hasTile(VirtualSlideImage image, Tile tile)
+	{
+		return mCache.hasTile(image, tile);
+	}
+
+	@Override
+	public byte[] getTileData(VirtualSlideImage image, Tile tile) throws NoSuchElementException
+	{
+		byte[] tileData = getTileDataIfPresent(image, tile);
+		if(tileData == null)
+			throw new NoSuchElementException(tile + " of \"" + image + "\" is not in cache.");
+
+		return tileData;
+	}
+
+	@Override
+	public byte[] getTileDataIfPresent(VirtualSlideImage image, Tile tile)
+	{
+		byte[] compressedData = mCache.getTileDataIfPresent(image, tile);
+		if(compressedData == null)
+			return null;
+
+		byte[] tileData = new byte[getDecompressedSize(compressedData)];
+		decompress(compressedData, compressedData.length, tileData);
+		return tileData;
+	}
+
+	@Override
+	public byte[] computeTileDataIfAbsent(VirtualSlideImage image, Tile tile, TilePriority priority, Supplier<byte[]> loader)
+	{
+		ParameterValidator.throwIfNull(loader, "loader");
+
+		byte[][] loadedData = new byte[1][];
+
+		byte[] compressedData = mCache.computeTileDataIfAbsent(image, tile, priority, () ->
+		                        {
+		                           loadedData[0] = loader.get();
+
+		                           return compress(loadedData[0]);
+		                        });
+
+		if(loadedData[0] != null)
+			return loadedData[0];
+
+		byte[] tileData = new byte[getDecompressedSize(compressedData)];
+		decompress(compressedData, compressedData.length, tileData);
+		return tileData;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The recently visited tiles are passed to the visitor from the cache of decompressed tiles, the other ones are
+	 * decompressed outside of the visit of the decorated cache and added to the cache of decompressed tiles.
+	 * The decorated cache is visited in both cases, so it knows that the tile is still used.
+	 */
+	@Override
+	public boolean visitTileData(VirtualSlideImage image, Tile tile, Consumer<ByteBuffer> visitor)
+	{
+		ParameterValidator.throwIfNull(visitor, "visitor");
+
+		byte[] tileData = getDecompressedTile(image, tile);
+		if(tileData != null)
+		{
+			if(!mCache.visitTileData(image, tile, compressedDataView -> {}))
+			{
+				removeDecompressedTile(new UniqueTileID(image.getID(), tile));
+				return false;
+			}
+		}
+		else
+		{
+			// Inflater in Java 8 accepts only arrays.
+			byte[][] compressedData = new byte[1][];
+			int[]    compressedSize = new int[1];
+
+			boolean tileInCache = mCache.visitTileData(image, tile, compressedDataView ->
+			{
+				compressedSize[0] = compressedDataView.remaining();
+				compressedData[0] = mBuffersPool.borrow(compressedSize[0]);
+				compressedDataView.duplicate().get(compressedData[0], 0, compressedSize[0]);
+			});
+
+			if(!tileInCache)
+				return false;
+
+			try
+			{
+				tileData = new byte[getDecompressedSize(compressedData[0])];
+				decompress(compressedData[0], compressedSize[0], tileData);
+			}
+			finally
+			{
+				mBuffersPool.putBack(compressedData[0]);
+			}
+
+			putDecompressedTile(image, tile, tileData);
+		}
+
+		visitor.accept(ByteBuffer.wrap(tileData).asReadOnlyBuffer());
+		return true;
+	}
+
+	private byte[] getDecompressedTile(VirtualSlideImage image, Tile tile)
+	{
+		synchronized(mDecompressedTiles)
+		{
+			return mDecompressedTiles.get(new UniqueTileID(image.getID(), tile));
+		}
+	}
+
+	private void putDecompressedTile(VirtualSlideImage image, Tile tile, byte[] tileData)
+	{
+		if(tileData.length > mDecompressedTilesCapacity)
+			return;
+
+		synchronized(mDecompressedTiles)
+		{
+			byte[] previousData = mDecompressedTiles.put(new UniqueTileID(image.getID(), tile), tileData);
+			if(previousData != null)
+			{
+				mDecompressedTilesSize -= previousData.length;
+			}
+
+			mDecompressedTilesSize += tileData.length;
+
+			Iterator<byte[]> leastRecentlyUsedTiles = mDecompressedTiles.values().iterator();
+			while(mDecompressedTilesSize > mDecompressedTilesCapacity)
+			{
+				mDecompressedTilesSize -= leastRecentlyUsedTiles.next().length;
+				leastRecentlyUsedTiles.remove();
+			}
+		}
+	}
+
+	private void removeDecompressedTile(UniqueTileID tileID)
+	{
+		synchronized(mDecompressedTiles)
+		{
+			byte[] tileData = mDecompressedTiles.remove(tileID);
+			if(tileData != null)
+			{
+				mDecompressedTilesSize -= tileData.length;
+			}
+		}
+	}
+
+	@Override
+	public void removeTile(UniqueTileID tileID)
+	{
+		removeDecompressedTile(tileID);
+
+		mCache.removeTile(tileID);
+	}
+
+	@Override
+	public void clear()
+	{
+		synchronized(mDecompressedTiles)
+		{
+			mDecompressedTiles.clear();
+			mDecompressedTilesSize = 0;
+		}
+
+		mCache.clear();
+	}
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.UniqueTileID;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Tile cache which stores the data of tiles in files in a directory, so they are available in the next sessions.
+ *
+ * <p>
+ * Every tile is stored in a separate file whose name is derived from the ID of image and the tile.
+ * When the size of all files exceeds the capacity of the cache, the least recently used files are deleted.
+ * The last modification time of a file is updated on every access, thus the order of usage is preserved between sessions.
+ *
+ * <p>
+ * The files are written in background by a single thread, so adding a tile does not wait for the disk.
+ * When the disk cannot keep up with the tiles being added, some of them are not cached.
+ * Errors of disk operations are not propagated, a tile which could not be read or written is treated as not cached.
+ */
+public class DiskTileCache implements TileCache
+{
+	private static final Logger LOGGER              = LoggerFactory.getLogger(DiskTileCache.class);
+
+	private static final String TILE_FILE_EXTENSION = ".tile";
+	private static final String TEMP_FILE_EXTENSION = ".tmp";
+	private static final int    MAX_PENDING_WRITES  = 64;
+
+	private final Path                      mDirectory;
+	private final long                      mCapacity;
+	private       long                      mUsedBytes;
+
+	// Access ordered, so the least recently used file is the first one.
+	private final LinkedHashMap<Path, Long> mTileFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final ExecutorService           mWriter;
+
+	/**
+	 * @param directory The directory in which to store the tiles. It is created when it does not exist.
+	 * @param capacity  The maximum number of bytes the files of the cache can take.
+	 *
+	 * @throws IOException When the directory could not be created or read.
+	 */
+	public DiskTileCache(Path directory, long capacity) throws IOException
+	{
+		ParameterValidator.throwIfNull(directory, "directory");
+
+		if(capacity <= 0)
+			throw new IllegalArgumentException("capacity has to be positive.");
+
+		mDirectory = directory;
+		mCapacity  = capacity;
+
+		Files.createDirectories(mDirectory);
+
+		loadExistingTileFiles();
+
+		mWriter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_PENDING_WRITES), (task) ->
+		{
+			Thread writerThread = new Thread(task, "Disk tile cache writer");
+			writerThread.setDaemon(true);
+			return writerThread;
+		}, new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	private void loadExistingTileFiles() throws IOException
+	{
+		List<Path> tileFiles = new ArrayList<>();
+
+		try(DirectoryStream<Path> directoryContent = Files.newDirectoryStream(mDirectory))
+		{
+			for(Path file : directoryContent)
+			{
+				if(file.toString().endsWith(TILE_FILE_EXTENSION))
+				{
+					tileFiles.add(file);
+				}
+				else if(file.toString().endsWith(TEMP_FILE_EXTENSION))
+				{
+					// Left after the application has been closed while writing the file.
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+
+		Map<Path, FileTime> lastAccessTimes = new LinkedHashMap<>();
+		for(Path file : tileFiles)
+		{
+			lastAccessTimes.put(file, Files.getLastModifiedTime(file));
+		}
+
+		tileFiles.sort(Comparator.comparing(lastAccessTimes::get));
+
+		for(Path file : tileFiles)
+		{
+			long fileSize = Files.size(file);
+
+			mTileFiles.put(file, fileSize);
+			mUsedBytes += fileSize;
+		}
+
+		evictLeastRecentlyUsedFiles();
+	}
+
+	private Path getTileFile(VirtualSlideImage image, Tile tile)
+	{
+		ParameterValidator.throwIfNull(image, "image");
+
+		return getTileFile(new UniqueTileID(image.getID(), tile));
+	}
+
+	private Path getTileFile(UniqueTileID tileID)
+	{
+		ParameterValidator.throwIfNull(tileID, "tileID");
+
+		// The image ID can contain characters not allowed in file names.
+		String tileKey = tileID.toString();
+
+		return mDirectory.resolve(UUID.nameUUIDFromBytes(tileKey.getBytes(StandardCharsets.UTF_8)) + TILE_FILE_EXTENSION);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The tile is written to disk in background. The priority is ignored, all tiles are evicted in the order of their usage.
+	 */
+	@Override
+	public void addTile(VirtualSlideImage image, Tile tile, byte[] tileData, TilePriority priority)
+	{
+		ParameterValidator.throwIfNull(tileData, "tileData");
+
+		Path tileFile = getTileFile(image, tile);
+
+		synchronized(mTileFiles)
+		{
+			// The data of a tile with given ID never changes.
+			if(mTileFiles.containsKey(tileFile))
+				return;
+		}
+
+		mWriter.execute(() -> writeTileFile(tileFile, tileData));
+	}
+
+	private void writeTileFile(Path tileFile, byte[] tileData)
+	{
+		Path tempFile = tileFile.resolveSibling(tileFile.getFileName() + TEMP_FILE_EXTENSION);
+
+		try
+		{
+			Files.write(tempFile, tileData);
+			Files.move(tempFile, tileFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e)
+		{
+			LOGGER.warn("Could not write tile file " + tileFile + ".", e);
+			deleteFile(tempFile);
+			return;
+		}
+
+		synchronized(mTileFiles)
+		{
+			Long oldSize = mTileFiles.put(tileFile, (long)tileData.length);
+
+			mUsedBytes += tileData.length - ((oldSize != null) ? oldSize : 0);
+
+			evictLeastRecentlyUsedFiles();
+		}
+	}
+
+	private void evictLeastRecentlyUsedFiles()
+	{
+		Iterator<Map.Entry<Path, Long>> leastRecentlyUsedFirst = mTileFiles.entrySet().iterator();
+
+		while(mUsedBytes > mCapacity && leastRecentlyUsedFirst.hasNext())
+		{
+			Map.Entry<Path, Long> tileFile = leastRecentlyUsedFirst.next();
+
+			deleteFile(tileFile.getKey());
+
+			mUsedBytes -= tileFile.getValue();
+			leastRecentlyUsedFirst.remove();
+		}
+	}
+
+	private void deleteFile(Path file)
+	{
+		try
+		{
+			Files.deleteIfExists(file);
+		}
+		catch(IOException e)
+		{
+			LOGGER.warn("Could not delete file " + file + ".", e);
+		}
+	}
+
+	@Override
+	public boolean hasTile(VirtualSlideImage image, Tile tile)
+	{
+		Path tileFile = getTileFile(image, tile);
+
+		synchronized(mTileFiles)
+		{
+			return mTileFiles.containsKey(tileFile);
+		}
+	}
+
+	@Override
+	public byte[] getTileData(VirtualSlideImage image, Tile tile) throws NoSuchElementException
+	{
+		byte[] tileData = getTileDataIfPresent(image, tile);
+		if(tileData == null)
+			throw new NoSuchElementException(tile + " of \"" + image + "\" is not in cache.");
+
+		return tileData;
+	}
+
+	@Override
+	public byte[] getTileDataIfPresent(VirtualSlideImage image, Tile tile)
+	{
+		Path tileFile = getTileFile(image, tile);
+
+		synchronized(mTileFiles)
+		{
+			// Marks the file as the most recently used one.
+			if(mTileFiles.get(tileFile) == null)
+				return null;
+		}
+
+		try
+		{
+			byte[] tileData = Files.readAllBytes(tileFile);
+
+			Files.setLastModifiedTime(tileFile, FileTime.fromMillis(System.currentTimeMillis()));
+			return tileData;
+		}
+		catch(NoSuchFileException e)
+		{
+			// Evicted in the meantime.
+			return null;
+		}
+		catch(IOException e)
+		{
+			LOGGER.warn("Could not read tile file " + tileFile + ".", e);
+			return null;
+		}
+	}
+
+	@Override
+	public byte[] computeTileDataIfAbsent(VirtualSlideImage image, Tile tile, TilePriority priority, Supplier<byte[]> loader)
+	{
+		ParameterValidator.throwIfNull(loader, "loader");
+
+		byte[] tileData = getTileDataIfPresent(image, tile);
+		if(tileData != null)
+			return tileData;
+
+		tileData = loader.get();
+
+		addTile(image, tile, tileData, priority);
+		return tileData;
+	}
+
+	@Override
+	public boolean visitTileData(VirtualSlideImage image, Tile tile, Consumer<ByteBuffer> visitor)
+	{
+		ParameterValidator.throwIfNull(visitor, "visitor");
+
+		byte[] tileData = getTileDataIfPresent(image, tile);
+		if(tileData == null)
+			return false;
+
+		visitor.accept(ByteBuffer.wrap(tileData).asReadOnlyBuffer());
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * A tile which is still waiting to be written is not removed.
+	 */
+	@Override
+	public void removeTile(UniqueTileID tileID)
+	{
+		Path tileFile = getTileFile(tileID);
+
+		synchronized(mTileFiles)
+		{
+			Long fileSize = mTileFiles.remove(tileFile);
+			if(fileSize != null)
+			{
+				deleteFile(tileFile);
+				mUsedBytes -= fileSize;
+			}
+		}
+	}
+
+	/**
+	 * Deletes all files of the cache.
+	 */
+	@Override
+	public void clear()
+	{
+		synchronized(mTileFiles)
+		{
+			mTileFiles.keySet().forEach(this::deleteFile);
+			mTileFiles.clear();
+
+			mUsedBytes = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes taken by the files of the cache.
+	 */
+	public long getUsedBytes()
+	{
+		synchronized(mTileFiles)
+		{
+			return mUsedBytes;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.UniqueTileID;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.metrics.TileMetrics;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Tile cache decorator which records the hits and misses of the cache and the usage of prefetched tiles.
+ *
+ * <p>
+ * A hit is a tile served from cache, while a miss is a tile which had to be loaded by computeTileDataIfAbsent().
+ * A failed lookup by getTileDataIfPresent() or visitTileData() is not a miss, as it is followed by loading of the tile
+ * whenever the tile is needed. The lookups by hasTile() are not recorded at all.
+ *
+ * <p>
+ * The visits by visitTileData() are not recorded as hits, because the visible tiles are visited on every redraw of the image.
+ * The hits of visible tiles are recorded once per tile by the loader of the visible image instead.
+ *
+ * <p>
+ * The prefetched tiles are remembered until they are viewed, so the prefetched tiles which have never been used can be counted.
+ * Only a limited number of the most recently prefetched tiles is remembered.
+ */
+public class InstrumentedTileCache implements TileCache
+{
+	private static final int MAX_REMEMBERED_PREFETCHED_TILES = 100000;
+
+	private final TileCache                  mCache;
+	private final TileMetrics                mMetrics;
+	private final Map<UniqueTileID, Boolean> mPrefetchedTiles = new LinkedHashMap<UniqueTileID, Boolean>()
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<UniqueTileID, Boolean> eldest)
+		{
+			return size() > MAX_REMEMBERED_PREFETCHED_TILES;
+		}
+	};
+
+	/**
+	 * @param cache   The cache to decorate.
+	 * @param metrics The metrics to update.
+	 */
+	public InstrumentedTileCache(TileCache cache, TileMetrics metrics)
+	{
+		ParameterValidator.throwIfNull(cache, "cache");
+		ParameterValidator.throwIfNull(metrics, "metrics");
+
+		mCache   = cache;
+		mMetrics = metrics;
+	}
+
+	@Override
+	public void addTile(VirtualSlideImage image, Tile tile, byte[] tileData, TilePriority priority)
+	{
+		mCache.addTile(image, tile, tileData, priority);
+	}
+
+	@Override
+	public boolean hasTile(VirtualSlideImage image, Tile tile)
+	{
+		return mCache.hasTile(image, tile);
+	}
+
+	@Override
+	public byte[] getTileData(VirtualSlideImage image, Tile tile) throws NoSuchElementException
+	{
+		byte[] tileData = mCache.getTileData(image, tile);
+
+		recordHit(image, tile);
+		return tileData;
+	}
+
+	@Override
+	public byte[] getTileDataIfPresent(VirtualSlideImage image, Tile tile)
+	{
+		byte[] tileData = mCache.getTileDataIfPresent(image, tile);
+		if(tileData != null)
+		{
+			recordHit(image, tile);
+		}
+
+		return tileData;
+	}
+
+	@Override
+	public byte[] computeTileDataIfAbsent(VirtualSlideImage image, Tile tile, TilePriority priority, Supplier<byte[]> loader)
+	{
+		ParameterValidator.throwIfNull(loader, "loader");
+
+		boolean[] loaded = new boolean[1];
+
+		byte[] tileData = mCache.computeTileDataIfAbsent(image, tile, priority, () ->
+		                  {
+		                     loaded[0] = true;
+		                     return loader.get();
+		                  });
+
+		if(loaded[0])
+		{
+			recordMiss(image, tile, priority);
+		}
+		else if(priority == TilePriority.PREFETCHED)
+		{
+			// Prefetching a tile which is already in cache does not mean that the tile has been viewed.
+			mMetrics.recordCacheHit();
+		}
+		else
+		{
+			recordHit(image, tile);
+		}
+
+		return tileData;
+	}
+
+	@Override
+	public boolean visitTileData(VirtualSlideImage image, Tile tile, Consumer<ByteBuffer> visitor)
+	{
+		boolean tileInCache = mCache.visitTileData(image, tile, visitor);
+		if(tileInCache)
+		{
+			recordPrefetchedTileViewed(image, tile);
+		}
+
+		return tileInCache;
+	}
+
+	private void recordMiss(VirtualSlideImage image, Tile tile, TilePriority priority)
+	{
+		mMetrics.recordCacheMiss();
+
+		if(priority == TilePriority.PREFETCHED)
+		{
+			mMetrics.recordPrefetchedTile();
+
+			synchronized(mPrefetchedTiles)
+			{
+				mPrefetchedTiles.put(new UniqueTileID(image.getID(), tile), Boolean.TRUE);
+			}
+		}
+	}
+
+	private void recordHit(VirtualSlideImage image, Tile tile)
+	{
+		mMetrics.recordCacheHit();
+
+		recordPrefetchedTileViewed(image, tile);
+	}
+
+	private void recordPrefetchedTileViewed(VirtualSlideImage image, Tile tile)
+	{
+		boolean prefetched;
+		synchronized(mPrefetchedTiles)
+		{
+			prefetched = !mPrefetchedTiles.isEmpty() && mPrefetchedTiles.remove(new UniqueTileID(image.getID(), tile)) != null;
+		}
+
+		if(prefetched)
+		{
+			mMetrics.recordPrefetchedTileViewed();
+		}
+	}
+
+	@Override
+	public void removeTile(UniqueTileID tileID)
+	{
+		mCache.removeTile(tileID);
+	}
+
+	@Override
+	public void clear()
+	{
+		mCache.clear();
+	}
+}
@@ -0,0 +1,774 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.UniqueTileID;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Tile cache which stores the data of tiles outside of the Java heap.
+ *
+ * <p>
+ * The memory is allocated lazily in direct buffers (slabs) which are never released, so the amount of memory used
+ * by the cache does not grow the heap and does not have to be traced by the garbage collector, regardless of the capacity.
+ * Every slab is divided into equally sized slots and serves only the tiles of a single size class, thus the data of every tile
+ * is stored contiguously. The pinned tiles are stored in slabs of their own, so they never keep a slab of evictable tiles from
+ * being reused. A slab which became empty is reused for a size class which needs more space.
+ *
+ * <p>
+ * When there is no space for a new tile, a tile of the same size class is evicted using the CLOCK algorithm (an approximation
+ * of LRU), which allows reads to run concurrently as they do not have to reorder any list. The prefetched tiles and the visible
+ * tiles are kept on separate clocks and the prefetched ones are evicted first. A prefetched tile which has been read in the meantime
+ * is moved to the clock of the visible tiles instead of being evicted. Only when every tile of the size class has been read since
+ * the last sweep of the clock (or the size class has no tiles at all), the least occupied slab of another size class is emptied
+ * and given to the size class which needs it. The pinned tiles are never evicted, but they can take only a part of the capacity -
+ * when there is no more space for them, they are cached as visible tiles.
+ *
+ * <p>
+ * Beware that the maximum amount of direct memory the JVM is allowed to allocate (-XX:MaxDirectMemorySize) has to be at least
+ * as large as the capacity of the cache. If it is not, the cache will stop growing at the limit.
+ */
+public class OffHeapTileCache implements TileCache
+{
+	private static final int DEFAULT_SLAB_SIZE               = 4 * 1024 * 1024;
+	private static final int SLOT_ALIGNMENT                  = 4 * 1024;
+	private static final int PINNED_PART_OF_CAPACITY_DIVISOR = 4;
+
+	private final int                       mSlabSize;
+	private       long                      mCapacity;
+	private       long                      mAllocatedBytes;
+
+	private final List<Slab>                mEmptySlabs          = new ArrayList<>();
+	private final Map<Integer, SizeClass>   mSizeClasses         = new HashMap<>();
+	private final Map<Integer, SizeClass>   mPinnedSizeClasses   = new HashMap<>();
+	private final Map<UniqueTileID, Entry>  mEntries             = new HashMap<>();
+	private       int                       mPinnedSlabCount;
+
+	private final ReadWriteLock             mLock                = new ReentrantReadWriteLock();
+
+	/**
+	 * @param capacity The maximum number of bytes the cache can use.
+	 */
+	public OffHeapTileCache(long capacity)
+	{
+		this(capacity, (int)Math.min(capacity, DEFAULT_SLAB_SIZE));
+	}
+
+	/**
+	 * @param capacity The maximum number of bytes the cache can use.
+	 * @param slabSize The size of a single block of memory allocated at once. Tiles bigger than this size will not be cached.
+	 */
+	public OffHeapTileCache(long capacity, int slabSize)
+	{
+		if(capacity <= 0)
+			throw new IllegalArgumentException("capacity has to be positive.");
+
+		if(slabSize <= 0 || slabSize > capacity)
+			throw new IllegalArgumentException("slabSize has to be positive and not bigger than the capacity.");
+
+		mCapacity = capacity;
+		mSlabSize = slabSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * When the data is bigger than a single slab, the tile is silently not cached.
+	 * When the tile is already in cache, it keeps the higher of the old and the new priority.
+	 */
+	@Override
+	public void addTile(VirtualSlideImage image, Tile tile, byte[] tileData, TilePriority priority)
+	{
+		ParameterValidator.throwIfNull(image, "image");
+		ParameterValidator.throwIfNull(tile, "tile");
+		ParameterValidator.throwIfNull(tileData, "tileData");
+		ParameterValidator.throwIfNull(priority, "priority");
+
+		UniqueTileID key      = new UniqueTileID(image.getID(), tile);
+		int          slotSize = getSlotSize(tileData.length);
+
+		if(slotSize > mSlabSize)
+			return;
+
+		mLock.writeLock().lock();
+		try
+		{
+			Entry oldEntry = mEntries.get(key);
+			if(oldEntry != null)
+			{
+				priority = TilePriority.max(priority, oldEntry.mPriority);
+				removeEntry(oldEntry);
+			}
+
+			if(priority == TilePriority.PINNED && !canPin(slotSize))
+			{
+				priority = TilePriority.VISIBLE;
+			}
+
+			SizeClass sizeClass = getSizeClass(slotSize, priority == TilePriority.PINNED);
+
+			Slab slab = findSlabWithFreeSlot(sizeClass);
+			while(slab == null)
+			{
+				if(!makeRoom(sizeClass))
+					return;
+
+				slab = findSlabWithFreeSlot(sizeClass);
+			}
+
+			Entry entry = new Entry(key, slab, slab.allocateSlot(), tileData.length, priority);
+
+			slab.write(entry, tileData);
+
+			if(!slab.hasFreeSlot())
+			{
+				sizeClass.mSlabsWithSpace.remove(slab);
+			}
+
+			mEntries.put(key, entry);
+			sizeClass.insert(entry);
+		}
+		finally
+		{
+			mLock.writeLock().unlock();
+		}
+	}
+
+	private int getSlotSize(int dataLength)
+	{
+		return Math.max((dataLength + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT, 1) * SLOT_ALIGNMENT;
+	}
+
+	private boolean canPin(int slotSize)
+	{
+		SizeClass pinnedSizeClass = mPinnedSizeClasses.get(slotSize);
+		if(pinnedSizeClass != null && !pinnedSizeClass.mSlabsWithSpace.isEmpty())
+			return true;
+
+		return (long)(mPinnedSlabCount + 1) * mSlabSize <= mCapacity / PINNED_PART_OF_CAPACITY_DIVISOR;
+	}
+
+	private SizeClass getSizeClass(int slotSize, boolean pinned)
+	{
+		Map<Integer, SizeClass> sizeClasses = pinned ? mPinnedSizeClasses : mSizeClasses;
+
+		return sizeClasses.computeIfAbsent(slotSize, x -> new SizeClass(slotSize, pinned));
+	}
+
+	private Slab findSlabWithFreeSlot(SizeClass sizeClass)
+	{
+		if(!sizeClass.mSlabsWithSpace.isEmpty())
+			return sizeClass.mSlabsWithSpace.peekFirst();
+
+		Slab slab = !mEmptySlabs.isEmpty() ? mEmptySlabs.remove(mEmptySlabs.size() - 1) : allocateSlab();
+		if(slab != null)
+		{
+			sizeClass.addSlab(slab);
+
+			if(sizeClass.mPinned)
+			{
+				mPinnedSlabCount++;
+			}
+		}
+
+		return slab;
+	}
+
+	private Slab allocateSlab()
+	{
+		if(mAllocatedBytes + mSlabSize > mCapacity)
+			return null;
+
+		try
+		{
+			Slab newSlab = new Slab(ByteBuffer.allocateDirect(mSlabSize));
+
+			mAllocatedBytes += mSlabSize;
+			return newSlab;
+		}
+		catch(OutOfMemoryError e)
+		{
+			// The limit of direct memory is lower than the capacity of the cache, stop growing.
+			mCapacity = mAllocatedBytes;
+			return null;
+		}
+	}
+
+	/**
+	 * Frees a slot for a tile of specified size class.
+	 * 
+	 * A tile of the same size class is evicted, unless all of them are in use - then a slab of another size class is emptied.
+	 *
+	 * @return False, if there was nothing to evict.
+	 */
+	private boolean makeRoom(SizeClass sizeClass)
+	{
+		if(!sizeClass.mPinned && sizeClass.evictColdEntry())
+			return true;
+
+		if(emptyLeastOccupiedSlab(sizeClass))
+			return true;
+
+		// The sweep of the clock has cleared the referenced flags, so this time an entry will be found.
+		return !sizeClass.mPinned && sizeClass.evictColdEntry();
+	}
+
+	/**
+	 * Evicts all entries of the evictable slab with the least occupied slots, which does not belong to specified size class.
+	 * 
+	 * @return False, if there was no such slab.
+	 */
+	private boolean emptyLeastOccupiedSlab(SizeClass excludedSizeClass)
+	{
+		Slab leastOccupiedSlab = null;
+		for(SizeClass sizeClass : mSizeClasses.values())
+		{
+			if(sizeClass == excludedSizeClass)
+				continue;
+
+			for(Slab slab : sizeClass.mSlabs)
+			{
+				if(leastOccupiedSlab == null || slab.getUsedSlotCount() < leastOccupiedSlab.getUsedSlotCount())
+				{
+					leastOccupiedSlab = slab;
+				}
+			}
+		}
+
+		if(leastOccupiedSlab == null)
+			return false;
+
+		for(Entry entry : leastOccupiedSlab.getEntries())
+		{
+			removeEntry(entry);
+		}
+
+		return true;
+	}
+
+	private void removeEntry(Entry entry)
+	{
+		mEntries.remove(entry.mKey);
+
+		Slab      slab      = entry.mSlab;
+		SizeClass sizeClass = slab.getSizeClass();
+
+		sizeClass.remove(entry);
+
+		if(!slab.hasFreeSlot())
+		{
+			sizeClass.mSlabsWithSpace.addLast(slab);
+		}
+
+		slab.freeSlot(entry.mSlot);
+
+		if(slab.isEmpty())
+		{
+			sizeClass.removeSlab(slab);
+			mEmptySlabs.add(slab);
+
+			if(sizeClass.mPinned)
+			{
+				mPinnedSlabCount--;
+			}
+		}
+	}
+
+	@Override
+	public boolean hasTile(VirtualSlideImage image, Tile tile)
+	{
+		ParameterValidator.throwIfNull(image, "image");
+		ParameterValidator.throwIfNull(tile, "tile");
+
+		mLock.readLock().lock();
+		try
+		{
+			return mEntries.containsKey(new UniqueTileID(image.getID(), tile));
+		}
+		finally
+		{
+			mLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public byte[] getTileData(VirtualSlideImage image, Tile tile) throws NoSuchElementException
+	{
+		byte[] tileData = getTileDataIfPresent(image, tile);
+		if(tileData == null)
+			throw new NoSuchElementException(tile + " of \"" + image + "\" is not in cache.");
+
+		return tileData;
+	}
+
+	@Override
+	public byte[] getTileDataIfPresent(VirtualSlideImage image, Tile tile)
+	{
+		ParameterValidator.throwIfNull(image, "image");
+		ParameterValidator.throwIfNull(tile, "tile");
+
+		mLock.readLock().lock();
+		try
+		{
+			Entry entry = mEntries.get(new UniqueTileID(image.getID(), tile));
+			if(entry == null)
+				return null;
+
+			entry.mReferenced = true;
+
+			byte[] tileData = new byte[entry.mLength];
+			entry.mSlab.read(entry.mSlot, tileData);
+			return tileData;
+		}
+		finally
+		{
+			mLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The loader is called without holding any lock, so the tile can be loaded concurrently by more than one thread.
+	 */
+	@Override
+	public byte[] computeTileDataIfAbsent(VirtualSlideImage image, Tile tile, TilePriority priority, Supplier<byte[]> loader)
+	{
+		ParameterValidator.throwIfNull(loader, "loader");
+
+		byte[] tileData = getTileDataIfPresent(image, tile);
+		if(tileData != null)
+			return tileData;
+
+		tileData = loader.get();
+
+		addTile(image, tile, tileData, priority);
+		return tileData;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The view points directly to the memory outside of the Java heap.
+	 */
+	@Override
+	public boolean visitTileData(VirtualSlideImage image, Tile tile, Consumer<ByteBuffer> visitor)
+	{
+		ParameterValidator.throwIfNull(image, "image");
+		ParameterValidator.throwIfNull(tile, "tile");
+		ParameterValidator.throwIfNull(visitor, "visitor");
+
+		mLock.readLock().lock();
+		try
+		{
+			Entry entry = mEntries.get(new UniqueTileID(image.getID(), tile));
+			if(entry == null)
+				return false;
+
+			entry.mReferenced = true;
+
+			visitor.accept(entry.mSlab.view(entry.mSlot, entry.mLength));
+			return true;
+		}
+		finally
+		{
+			mLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeTile(UniqueTileID tileID)
+	{
+		ParameterValidator.throwIfNull(tileID, "tileID");
+
+		mLock.writeLock().lock();
+		try
+		{
+			Entry entry = mEntries.get(tileID);
+			if(entry != null)
+			{
+				removeEntry(entry);
+			}
+		}
+		finally
+		{
+			mLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void clear()
+	{
+		mLock.writeLock().lock();
+		try
+		{
+			for(Entry entry : new ArrayList<>(mEntries.values()))
+			{
+				removeEntry(entry);
+			}
+		}
+		finally
+		{
+			mLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes of direct memory allocated by the cache.
+	 */
+	public long getAllocatedBytes()
+	{
+		mLock.readLock().lock();
+		try
+		{
+			return mAllocatedBytes;
+		}
+		finally
+		{
+			mLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * A cached tile.
+	 *
+	 * The entries which can be evicted form a circular list traversed by the hand of the clock.
+	 */
+	private static class Entry
+	{
+		private final UniqueTileID mKey;
+		private final Slab         mSlab;
+		private final int          mSlot;
+		private final int          mLength;
+		private       TilePriority mPriority;
+
+		private volatile boolean   mReferenced;
+
+		private Entry              mPrevious;
+		private Entry              mNext;
+
+		public Entry(UniqueTileID key, Slab slab, int slot, int length, TilePriority priority)
+		{
+			mKey      = key;
+			mSlab     = slab;
+			mSlot     = slot;
+			mLength   = length;
+			mPriority = priority;
+		}
+	}
+
+	/**
+	 * A circular list of entries with the hand pointing to the next candidate for eviction.
+	 */
+	private static class Clock
+	{
+		private Entry mHand;
+		private int   mSize;
+
+		public boolean isEmpty()
+		{
+			return mHand == null;
+		}
+
+		public int size()
+		{
+			return mSize;
+		}
+
+		public Entry getHand()
+		{
+			return mHand;
+		}
+
+		public void advanceHand()
+		{
+			mHand = mHand.mNext;
+		}
+
+		/**
+		 * Inserts new entry just behind the hand of the clock, so it will be the last one to be checked for eviction.
+		 */
+		public void insert(Entry entry)
+		{
+			mSize++;
+
+			if(mHand == null)
+			{
+				entry.mNext     = entry;
+				entry.mPrevious = entry;
+				mHand           = entry;
+				return;
+			}
+
+			entry.mNext = mHand;
+			entry.mPrevious = mHand.mPrevious;
+			mHand.mPrevious.mNext = entry;
+			mHand.mPrevious = entry;
+		}
+
+		public void remove(Entry entry)
+		{
+			mSize--;
+
+			if(entry.mNext == entry)
+			{
+				mHand = null;
+				return;
+			}
+
+			if(mHand == entry)
+			{
+				mHand = entry.mNext;
+			}
+
+			entry.mPrevious.mNext = entry.mNext;
+			entry.mNext.mPrevious = entry.mPrevious;
+		}
+	}
+
+	/**
+	 * The slabs serving the tiles of a single slot size together with the clocks of their tiles.
+	 */
+	private class SizeClass
+	{
+		private final int         mSlotSize;
+		private final boolean     mPinned;
+
+		private final List<Slab>  mSlabs           = new ArrayList<>();
+		private final Deque<Slab> mSlabsWithSpace  = new ArrayDeque<>();
+		private final Clock       mPrefetchedClock = new Clock();
+		private final Clock       mVisibleClock    = new Clock();
+
+		public SizeClass(int slotSize, boolean pinned)
+		{
+			mSlotSize = slotSize;
+			mPinned   = pinned;
+		}
+
+		public void addSlab(Slab slab)
+		{
+			slab.assignToSizeClass(this);
+
+			mSlabs.add(slab);
+			mSlabsWithSpace.addFirst(slab);
+		}
+
+		public void removeSlab(Slab slab)
+		{
+			mSlabs.remove(slab);
+			mSlabsWithSpace.remove(slab);
+		}
+
+		public void insert(Entry entry)
+		{
+			switch(entry.mPriority)
+			{
+				case PREFETCHED:
+					mPrefetchedClock.insert(entry);
+					break;
+
+				case VISIBLE:
+					mVisibleClock.insert(entry);
+					break;
+
+				case PINNED:
+					break;
+			}
+		}
+
+		public void remove(Entry entry)
+		{
+			switch(entry.mPriority)
+			{
+				case PREFETCHED:
+					mPrefetchedClock.remove(entry);
+					break;
+
+				case VISIBLE:
+					mVisibleClock.remove(entry);
+					break;
+
+				case PINNED:
+					break;
+			}
+		}
+
+		/**
+		 * Evicts a single entry selected by the CLOCK algorithm, the prefetched tiles first.
+		 *
+		 * The hand of the visible tiles makes at most a single revolution, clearing the referenced flags on its way.
+		 *
+		 * @return False, if there was no entry which has not been referenced since the last sweep.
+		 */
+		public boolean evictColdEntry()
+		{
+			while(!mPrefetchedClock.isEmpty())
+			{
+				Entry entry = mPrefetchedClock.getHand();
+				if(!entry.mReferenced)
+				{
+					removeEntry(entry);
+					return true;
+				}
+
+				// The tile has been displayed since prefetching, so it has to be treated like any other visible tile.
+				mPrefetchedClock.remove(entry);
+				entry.mPriority = TilePriority.VISIBLE;
+				mVisibleClock.insert(entry);
+			}
+
+			for(int i = mVisibleClock.size(); i > 0; i--)
+			{
+				Entry entry = mVisibleClock.getHand();
+				if(!entry.mReferenced)
+				{
+					removeEntry(entry);
+					return true;
+				}
+
+				entry.mReferenced = false;
+				mVisibleClock.advanceHand();
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * A block of direct memory divided into equally sized slots.
+	 */
+	private static class Slab
+	{
+		private final ByteBuffer mMemory;
+
+		private SizeClass        mSizeClass;
+		private int              mSlotSize;
+		private int[]            mFreeSlots;
+		private int              mFreeSlotCount;
+		private Entry[]          mEntries;
+
+		public Slab(ByteBuffer memory)
+		{
+			mMemory = memory;
+		}
+
+		/**
+		 * Divides the slab into slots of the size of specified size class. The slab has to be empty.
+		 */
+		public void assignToSizeClass(SizeClass sizeClass)
+		{
+			mSizeClass     = sizeClass;
+			mSlotSize      = sizeClass.mSlotSize;
+			mFreeSlotCount = mMemory.capacity() / mSlotSize;
+			mFreeSlots     = new int[mFreeSlotCount];
+			mEntries       = new Entry[mFreeSlotCount];
+
+			for(int i = 0; i < mFreeSlotCount; i++)
+			{
+				mFreeSlots[i] = mFreeSlotCount - 1 - i;
+			}
+		}
+
+		public SizeClass getSizeClass()
+		{
+			return mSizeClass;
+		}
+
+		public boolean hasFreeSlot()
+		{
+			return mFreeSlotCount > 0;
+		}
+
+		public boolean isEmpty()
+		{
+			return mFreeSlotCount == mFreeSlots.length;
+		}
+
+		public int getUsedSlotCount()
+		{
+			return mFreeSlots.length - mFreeSlotCount;
+		}
+
+		public List<Entry> getEntries()
+		{
+			List<Entry> entries = new ArrayList<>(getUsedSlotCount());
+			for(Entry entry : mEntries)
+			{
+				if(entry != null)
+				{
+					entries.add(entry);
+				}
+			}
+
+			return entries;
+		}
+
+		public int allocateSlot()
+		{
+			return mFreeSlots[--mFreeSlotCount];
+		}
+
+		public void freeSlot(int slot)
+		{
+			mEntries[slot] = null;
+			mFreeSlots[mFreeSlotCount++] = slot;
+		}
+
+		public void write(Entry entry, byte[] data)
+		{
+			mEntries[entry.mSlot] = entry;
+
+			// A duplicate is used as the position of the buffer is not thread safe.
+			ByteBuffer slotBuffer = mMemory.duplicate();
+			slotBuffer.position(entry.mSlot * mSlotSize);
+			slotBuffer.put(data);
+		}
+
+		public void read(int slot, byte[] dst)
+		{
+			ByteBuffer slotBuffer = mMemory.duplicate();
+			slotBuffer.position(slot * mSlotSize);
+			slotBuffer.get(dst);
+		}
+
+		public ByteBuffer view(int slot, int length)
+		{
+			ByteBuffer slotBuffer = mMemory.duplicate();
+			slotBuffer.position(slot * mSlotSize);
+			slotBuffer.limit(slot * mSlotSize + length);
+			return slotBuffer.slice().asReadOnlyBuffer();
+		}
+	}
+}
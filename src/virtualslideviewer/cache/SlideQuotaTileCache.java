@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.UniqueTileID;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Tile cache decorator which shares the memory of a single cache between virtual slides, so the tiles of one slide do not push out
+ * the tiles of another one.
+ *
+ * <p>
+ * A slide can use the whole capacity as long as no other slide needs it. Every slide has a quota - an equal part of the capacity
+ * for every slide whose tiles are kept. When the capacity is exceeded, the tiles of the least recently used slide which takes more than
+ * its quota are evicted. Only when no other slide exceeds its quota, the slide which needs the space evicts its own tiles.
+ * Within a slide, the prefetched tiles which have not been used are evicted first, then the least recently used tiles.
+ * Thus switching back to a recently viewed slide does not start with a cold cache.
+ *
+ * <p>
+ * When a tile of a new slide is added and the tiles of the maximum number of slides are already kept, all tiles of the least recently
+ * used slide are removed.
+ *
+ * <p>
+ * The pinned tiles are left to the decorated cache - they are neither counted nor evicted. The decorated cache should be able to hold
+ * at least the capacity; a tile it evicts on its own is forgotten as soon as it is found missing.
+ */
+public class SlideQuotaTileCache implements TileCache
+{
+	private final TileCache                 mCache;
+	private final long                      mCapacity;
+	private final int                       mMaxSlideCount;
+	private       long                      mUsedBytes;
+
+	// Access ordered, so the least recently used slide is the first one.
+	private final Map<String, SlideTiles>   mSlides = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * @param cache         The cache to share between slides.
+	 * @param capacity      The maximum number of bytes of tile data the slides can take together.
+	 * @param maxSlideCount The number of slides whose tiles are kept at once.
+	 */
+	public SlideQuotaTileCache(TileCache cache, long capacity, int maxSlideCount)
+	{
+		ParameterValidator.throwIfNull(cache, "cache");
+
+		if(capacity <= 0)
+			throw new IllegalArgumentException("capacity has to be positive.");
+
+		if(maxSlideCount <= 0)
+			throw new IllegalArgumentException("maxSlideCount has to be positive.");
+
+		mCache         = cache;
+		mCapacity      = capacity;
+		mMaxSlideCount = maxSlideCount;
+	}
+
+	@Override
+	public void addTile(VirtualSlideImage image, Tile tile, byte[] tileData, TilePriority priority)
+	{
+		ParameterValidator.throwIfNull(tileData, "tileData");
+
+		mCache.addTile(image, tile, tileData, priority);
+
+		recordAddedTile(image, tile, tileData.length, priority);
+	}
+
+	/**
+	 * Accounts a tile added to the decorated cache and evicts the tiles which exceed the capacity.
+	 */
+	private void recordAddedTile(VirtualSlideImage image, Tile tile, int tileDataSize, TilePriority priority)
+	{
+		if(priority == TilePriority.PINNED)
+			return;
+
+		synchronized(mSlides)
+		{
+			SlideTiles slideTiles = mSlides.get(image.getSlideID());
+			if(slideTiles == null)
+			{
+				if(mSlides.size() >= mMaxSlideCount)
+				{
+					removeLeastRecentlyUsedSlide();
+				}
+
+				slideTiles = new SlideTiles();
+				mSlides.put(image.getSlideID(), slideTiles);
+			}
+
+			CachedTile oldTile = slideTiles.remove(new UniqueTileID(image.getID(), tile));
+			if(oldTile != null)
+			{
+				mUsedBytes -= oldTile.mSize;
+
+				// A tile keeps the higher of the old and the new priority, as in the decorated caches.
+				priority = TilePriority.max(priority, oldTile.mPriority);
+			}
+
+			slideTiles.add(new CachedTile(new UniqueTileID(image.getID(), tile), tileDataSize, priority));
+			mUsedBytes += tileDataSize;
+
+			evictTilesExceedingCapacity(slideTiles);
+		}
+	}
+
+	private void removeLeastRecentlyUsedSlide()
+	{
+		Iterator<SlideTiles> leastRecentlyUsedFirst = mSlides.values().iterator();
+
+		SlideTiles slideTiles = leastRecentlyUsedFirst.next();
+		leastRecentlyUsedFirst.remove();
+
+		// A tile of the removed slide being loaded at the moment can still be added afterwards.
+		// It is harmless, as the IDs of tiles are unique across slides, and it will be evicted as any other unused tile.
+		for(CachedTile cachedTile : slideTiles.getTiles())
+		{
+			mCache.removeTile(cachedTile.mID);
+		}
+
+		mUsedBytes -= slideTiles.mUsedBytes;
+	}
+
+	private void evictTilesExceedingCapacity(SlideTiles slideInNeed)
+	{
+		while(mUsedBytes > mCapacity)
+		{
+			SlideTiles victim = findSlideToEvictFrom(slideInNeed);
+			if(victim == null)
+				return;
+
+			CachedTile evictedTile = victim.removeEvictionCandidate();
+
+			mUsedBytes -= evictedTile.mSize;
+			mCache.removeTile(evictedTile.mID);
+		}
+	}
+
+	/**
+	 * Returns the least recently used other slide exceeding its quota, or the slide in need itself, when it has any tiles.
+	 * 
+	 * @return The slide or null, when there are no tiles to evict at all.
+	 */
+	private SlideTiles findSlideToEvictFrom(SlideTiles slideInNeed)
+	{
+		long quota = mCapacity / mMaxSlideCount;
+
+		for(SlideTiles slideTiles : mSlides.values())
+		{
+			if(slideTiles != slideInNeed && slideTiles.mUsedBytes > quota)
+				return slideTiles;
+		}
+
+		if(slideInNeed.mUsedBytes > 0)
+			return slideInNeed;
+
+		for(SlideTiles slideTiles : mSlides.values())
+		{
+			if(slideTiles.mUsedBytes > 0)
+				return slideTiles;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Marks a tile as used, or forgets it, when the decorated cache does not have it anymore.
+	 */
+	private void recordAccess(VirtualSlideImage image, Tile tile, boolean tileInCache)
+	{
+		synchronized(mSlides)
+		{
+			SlideTiles slideTiles = mSlides.get(image.getSlideID());
+			if(slideTiles == null)
+				return;
+
+			UniqueTileID key = new UniqueTileID(image.getID(), tile);
+
+			if(tileInCache)
+			{
+				slideTiles.markUsed(key);
+				return;
+			}
+
+			CachedTile evictedTile = slideTiles.remove(key);
+			if(evictedTile != null)
+			{
+				mUsedBytes -= evictedTile.mSize;
+			}
+		}
+	}
+
+	@Override
+	public void removeTile(UniqueTileID tileID)
+	{
+		mCache.removeTile(tileID);
+
+		synchronized(mSlides)
+		{
+			// There are at most a few slides, so it is cheaper to look for the tile than to keep the slide of every tile.
+			for(SlideTiles slideTiles : mSlides.values())
+			{
+				CachedTile removedTile = slideTiles.remove(tileID);
+				if(removedTile != null)
+				{
+					mUsedBytes -= removedTile.mSize;
+					return;
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean hasTile(VirtualSlideImage image, Tile tile)
+	{
+		return mCache.hasTile(image, tile);
+	}
+
+	@Override
+	public byte[] getTileData(VirtualSlideImage image, Tile tile) throws NoSuchElementException
+	{
+		byte[] tileData = getTileDataIfPresent(image, tile);
+		if(tileData == null)
+			throw new NoSuchElementException(tile + " of \"" + image + "\" is not in cache.");
+
+		return tileData;
+	}
+
+	@Override
+	public byte[] getTileDataIfPresent(VirtualSlideImage image, Tile tile)
+	{
+		byte[] tileData = mCache.getTileDataIfPresent(image, tile);
+
+		recordAccess(image, tile, tileData != null);
+		return tileData;
+	}
+
+	@Override
+	public byte[] computeTileDataIfAbsent(VirtualSlideImage image, Tile tile, TilePriority priority, Supplier<byte[]> loader)
+	{
+		ParameterValidator.throwIfNull(loader, "loader");
+
+		boolean[] loaded = new boolean[1];
+
+		byte[] tileData = mCache.computeTileDataIfAbsent(image, tile, priority, () ->
+		                  {
+		                     loaded[0] = true;
+		                     return loader.get();
+		                  });
+
+		if(loaded[0])
+		{
+			recordAddedTile(image, tile, tileData.length, priority);
+		}
+		else if(priority != TilePriority.PREFETCHED)
+		{
+			recordAccess(image, tile, true);
+		}
+
+		return tileData;
+	}
+
+	@Override
+	public boolean visitTileData(VirtualSlideImage image, Tile tile, Consumer<ByteBuffer> visitor)
+	{
+		boolean tileInCache = mCache.visitTileData(image, tile, visitor);
+
+		recordAccess(image, tile, tileInCache);
+		return tileInCache;
+	}
+
+	@Override
+	public void clear()
+	{
+		synchronized(mSlides)
+		{
+			mCache.clear();
+
+			mSlides.clear();
+			mUsedBytes = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes of tile data accounted to the slide of specified image.
+	 */
+	public long getUsedBytes(VirtualSlideImage image)
+	{
+		ParameterValidator.throwIfNull(image, "image");
+
+		synchronized(mSlides)
+		{
+			SlideTiles slideTiles = mSlides.get(image.getSlideID());
+
+			return (slideTiles != null) ? slideTiles.mUsedBytes : 0;
+		}
+	}
+
+	/**
+	 * A tile accounted to a slide.
+	 * 
+	 * Only the ID of the tile is kept, so the accounting does not keep the images of slides which are no longer viewed.
+	 */
+	private static class CachedTile
+	{
+		private final UniqueTileID mID;
+		private final int          mSize;
+		private final TilePriority mPriority;
+
+		public CachedTile(UniqueTileID id, int size, TilePriority priority)
+		{
+			mID       = id;
+			mSize     = size;
+			mPriority = priority;
+		}
+	}
+
+	/**
+	 * The tiles of a single slide in the order of eviction.
+	 */
+	private static class SlideTiles
+	{
+		// Insertion ordered, as reading a prefetched tile moves it to the used tiles.
+		private final Map<UniqueTileID, CachedTile> mPrefetchedTiles = new LinkedHashMap<>();
+
+		// Access ordered, so the least recently used tile is the first one.
+		private final Map<UniqueTileID, CachedTile> mUsedTiles       = new LinkedHashMap<>(16, 0.75f, true);
+
+		private       long                          mUsedBytes;
+
+		public void add(CachedTile tile)
+		{
+			if(tile.mPriority == TilePriority.PREFETCHED)
+			{
+				mPrefetchedTiles.put(tile.mID, tile);
+			}
+			else
+			{
+				mUsedTiles.put(tile.mID, tile);
+			}
+
+			mUsedBytes += tile.mSize;
+		}
+
+		public CachedTile remove(UniqueTileID key)
+		{
+			CachedTile tile = mPrefetchedTiles.remove(key);
+			if(tile == null)
+			{
+				tile = mUsedTiles.remove(key);
+			}
+
+			if(tile != null)
+			{
+				mUsedBytes -= tile.mSize;
+			}
+
+			return tile;
+		}
+
+		public void markUsed(UniqueTileID key)
+		{
+			CachedTile prefetchedTile = mPrefetchedTiles.remove(key);
+			if(prefetchedTile != null)
+			{
+				mUsedTiles.put(key, prefetchedTile);
+				return;
+			}
+
+			// Moves the tile to the end of the access order.
+			mUsedTiles.get(key);
+		}
+
+		/**
+		 * Removes and returns the tile which should be evicted first. The slide has to have any tiles.
+		 */
+		public CachedTile removeEvictionCandidate()
+		{
+			Map<UniqueTileID, CachedTile> tiles = !mPrefetchedTiles.isEmpty() ? mPrefetchedTiles : mUsedTiles;
+
+			return remove(tiles.keySet().iterator().next());
+		}
+
+		public List<CachedTile> getTiles()
+		{
+			List<CachedTile> tiles = new ArrayList<>(mPrefetchedTiles.values());
+			tiles.addAll(mUsedTiles.values());
+
+			return tiles;
+		}
+	}
+}
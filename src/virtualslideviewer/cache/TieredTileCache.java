@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.UniqueTileID;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Tile cache composed of a fast but small first level cache, usually in memory, and a slower but bigger second level cache,
+ * usually persistent.
+ *
+ * <p>
+ * Every tile added to the cache is added to both levels. A tile found only in the second level cache is copied into the first level
+ * when it is retrieved.
+ *
+ * <p>
+ * The methods which have to be fast, that is {@link #hasTile(VirtualSlideImage, Tile)} and
+ * {@link #visitTileData(VirtualSlideImage, Tile, Consumer)}, check only the first level cache. This way a tile which is only in the
+ * second level cache is treated as not loaded yet, and it is retrieved in background without waiting for the disk.
+ */
+public class TieredTileCache implements TileCache
+{
+	private final TileCache mFirstLevelCache;
+	private final TileCache mSecondLevelCache;
+
+	/**
+	 * @param firstLevelCache  The fast cache checked first.
+	 * @param secondLevelCache The slower cache checked when a tile is not in the first level cache.
+	 */
+	public TieredTileCache(TileCache firstLevelCache, TileCache secondLevelCache)
+	{
+		ParameterValidator.throwIfNull(firstLevelCache, "firstLevelCache");
+		ParameterValidator.throwIfNull(secondLevelCache, "secondLevelCache");
+
+		mFirstLevelCache  = firstLevelCache;
+		mSecondLevelCache = secondLevelCache;
+	}
+
+	@Override
+	public void addTile(VirtualSlideImage image, Tile tile, byte[] tileData, TilePriority priority)
+	{
+		mFirstLevelCache.addTile(image, tile, tileData, priority);
+		mSecondLevelCache.addTile(image, tile, tileData, priority);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Only the first level cache is checked.
+	 */
+	@Override
+	public boolean hasTile(VirtualSlideImage image, Tile tile)
+	{
+		return mFirstLevelCache.hasTile(image, tile);
+	}
+
+	@Override
+	public byte[] getTileData(VirtualSlideImage image, Tile tile) throws NoSuchElementException
+	{
+		byte[] tileData = getTileDataIfPresent(image, tile);
+		if(tileData == null)
+			throw new NoSuchElementException(tile + " of \"" + image + "\" is not in cache.");
+
+		return tileData;
+	}
+
+	@Override
+	public byte[] getTileDataIfPresent(VirtualSlideImage image, Tile tile)
+	{
+		byte[] tileData = mFirstLevelCache.getTileDataIfPresent(image, tile);
+		if(tileData != null)
+			return tileData;
+
+		tileData = mSecondLevelCache.getTileDataIfPresent(image, tile);
+		if(tileData != null)
+		{
+			mFirstLevelCache.addTile(image, tile, tileData, TilePriority.VISIBLE);
+		}
+
+		return tileData;
+	}
+
+	@Override
+	public byte[] computeTileDataIfAbsent(VirtualSlideImage image, Tile tile, TilePriority priority, Supplier<byte[]> loader)
+	{
+		ParameterValidator.throwIfNull(loader, "loader");
+
+		return mFirstLevelCache.computeTileDataIfAbsent(image, tile, priority,
+		                                                () -> mSecondLevelCache.computeTileDataIfAbsent(image, tile, priority, loader));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Only the first level cache is checked.
+	 */
+	@Override
+	public boolean visitTileData(VirtualSlideImage image, Tile tile, Consumer<ByteBuffer> visitor)
+	{
+		return mFirstLevelCache.visitTileData(image, tile, visitor);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The tile is removed from both levels.
+	 */
+	@Override
+	public void removeTile(UniqueTileID tileID)
+	{
+		mFirstLevelCache.removeTile(tileID);
+		mSecondLevelCache.removeTile(tileID);
+	}
+
+	/**
+	 * Clears the first level cache only.
+	 *
+	 * The second level cache is meant to keep the tiles between sessions, so it is not cleared.
+	 */
+	@Override
+	public void clear()
+	{
+		mFirstLevelCache.clear();
+	}
+}
@@ -20,6 +20,7 @@ package virtualslideviewer.config;
 import java.awt.Rectangle;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.nio.file.Paths;
 import java.util.prefs.Preferences;
 
 public class ApplicationConfiguration
@@ -104,4 +105,278 @@ public class ApplicationConfiguration
 		
 		mPropertyListeners.firePropertyChange("ResolutionTransitionThreshold", oldValue, threshold);
 	}
+	
+	/**
+	 * Informs whether the tiles should be cached outside of the Java heap instead of in ehcache.
+	 * 
+	 * The change takes effect after the restart of the application.
+	 */
+	public boolean isOffHeapTileCacheEnabled()
+	{
+		return mUserPreferences.getBoolean("OffHeapTileCacheEnabled", false);
+	}
+	
+	public void setOffHeapTileCacheEnabled(boolean enabled)
+	{
+		boolean oldValue = isOffHeapTileCacheEnabled();
+		
+		mUserPreferences.putBoolean("OffHeapTileCacheEnabled", enabled);
+		
+		mPropertyListeners.firePropertyChange("OffHeapTileCacheEnabled", oldValue, enabled);
+	}
+	
+	/**
+	 * Returns the maximum number of bytes which can be used by the off heap tile cache.
+	 */
+	public long getOffHeapTileCacheSize()
+	{
+		return mUserPreferences.getLong("OffHeapTileCacheSize", 1024L * 1024 * 1024);
+	}
+	
+	public void setOffHeapTileCacheSize(long size)
+	{
+		if(size <= 0)
+			throw new IllegalArgumentException("size has to be positive.");
+		
+		long oldValue = getOffHeapTileCacheSize();
+		
+		mUserPreferences.putLong("OffHeapTileCacheSize", size);
+		
+		mPropertyListeners.firePropertyChange("OffHeapTileCacheSize", oldValue, size);
+	}
+	
+	/**
+	 * Informs whether the tiles should be kept compressed in memory.
+	 * 
+	 * Compression allows to cache more tiles in the same amount of memory, but it costs CPU time on every access to a tile.
+	 * The change takes effect after the restart of the application.
+	 */
+	public boolean isTileCacheCompressionEnabled()
+	{
+		return mUserPreferences.getBoolean("TileCacheCompressionEnabled", false);
+	}
+	
+	public void setTileCacheCompressionEnabled(boolean enabled)
+	{
+		boolean oldValue = isTileCacheCompressionEnabled();
+		
+		mUserPreferences.putBoolean("TileCacheCompressionEnabled", enabled);
+		
+		mPropertyListeners.firePropertyChange("TileCacheCompressionEnabled", oldValue, enabled);
+	}
+	
+	/**
+	 * Returns the number of virtual slides whose tiles are kept in memory at once.
+	 * 
+	 * A single slide can use the whole memory tile cache, but when more slides are viewed, every slide is guaranteed an equal part of it,
+	 * so switching between recently viewed slides does not start with an empty cache. The change takes effect after the restart
+	 * of the application.
+	 */
+	public int getTileCacheSlideCount()
+	{
+		return mUserPreferences.getInt("TileCacheSlideCount", 2);
+	}
+	
+	public void setTileCacheSlideCount(int count)
+	{
+		if(count <= 0)
+			throw new IllegalArgumentException("count has to be positive.");
+		
+		int oldValue = getTileCacheSlideCount();
+		
+		mUserPreferences.putInt("TileCacheSlideCount", count);
+		
+		mPropertyListeners.firePropertyChange("TileCacheSlideCount", oldValue, count);
+	}
+	
+	/**
+	 * Informs whether the decoded tiles should be stored on disk, so they can be reused when the same slide is opened again.
+	 * 
+	 * The change takes effect after the restart of the application.
+	 */
+	public boolean isDiskTileCacheEnabled()
+	{
+		return mUserPreferences.getBoolean("DiskTileCacheEnabled", true);
+	}
+	
+	public void setDiskTileCacheEnabled(boolean enabled)
+	{
+		boolean oldValue = isDiskTileCacheEnabled();
+		
+		mUserPreferences.putBoolean("DiskTileCacheEnabled", enabled);
+		
+		mPropertyListeners.firePropertyChange("DiskTileCacheEnabled", oldValue, enabled);
+	}
+	
+	/**
+	 * Returns the maximum number of bytes which can be used by the tiles stored on disk.
+	 */
+	public long getDiskTileCacheSize()
+	{
+		return mUserPreferences.getLong("DiskTileCacheSize", 2L * 1024 * 1024 * 1024);
+	}
+	
+	public void setDiskTileCacheSize(long size)
+	{
+		if(size <= 0)
+			throw new IllegalArgumentException("size has to be positive.");
+		
+		long oldValue = getDiskTileCacheSize();
+		
+		mUserPreferences.putLong("DiskTileCacheSize", size);
+		
+		mPropertyListeners.firePropertyChange("DiskTileCacheSize", oldValue, size);
+	}
+	
+	/**
+	 * Returns the path of directory in which the tiles are stored on disk.
+	 */
+	public String getDiskTileCacheDirectory()
+	{
+		String defaultDirectory = Paths.get(System.getProperty("user.home"), ".VirtualSlideViewer", "TileCache").toString();
+		
+		return mUserPreferences.get("DiskTileCacheDirectory", defaultDirectory);
+	}
+	
+	public void setDiskTileCacheDirectory(String directory)
+	{
+		if(directory == null)
+			throw new IllegalArgumentException("directory cannot be null.");
+		
+		String oldValue = getDiskTileCacheDirectory();
+		
+		mUserPreferences.put("DiskTileCacheDirectory", directory);
+		
+		mPropertyListeners.firePropertyChange("DiskTileCacheDirectory", oldValue, directory);
+	}
+	
+	/**
+	 * Informs whether the visible tiles should be drawn separately from cached images of tiles, instead of being assembled
+	 * into a single image of the visible region on every repaint.
+	 * 
+	 * The change takes effect after the restart of the application.
+	 */
+	public boolean isTileRenderingEnabled()
+	{
+		return mUserPreferences.getBoolean("TileRenderingEnabled", false);
+	}
+	
+	public void setTileRenderingEnabled(boolean enabled)
+	{
+		boolean oldValue = isTileRenderingEnabled();
+		
+		mUserPreferences.putBoolean("TileRenderingEnabled", enabled);
+		
+		mPropertyListeners.firePropertyChange("TileRenderingEnabled", oldValue, enabled);
+	}
+	
+	/**
+	 * Informs whether the tiles should be prefetched along the predicted motion of the camera instead of in a fixed radius
+	 * around the visible region. The efficiency of both strategies can be compared with the prefetching statistics of the tile metrics.
+	 * 
+	 * The change takes effect after the restart of the application.
+	 */
+	public boolean isMotionPredictivePrefetchingEnabled()
+	{
+		return mUserPreferences.getBoolean("MotionPredictivePrefetchingEnabled", false);
+	}
+	
+	public void setMotionPredictivePrefetchingEnabled(boolean enabled)
+	{
+		boolean oldValue = isMotionPredictivePrefetchingEnabled();
+		
+		mUserPreferences.putBoolean("MotionPredictivePrefetchingEnabled", enabled);
+		
+		mPropertyListeners.firePropertyChange("MotionPredictivePrefetchingEnabled", oldValue, enabled);
+	}
+	
+	/**
+	 * Returns the maximum number of tiles of the neighbouring resolutions prefetched under the visible region,
+	 * so that the tiles are ready when the zoom crosses the resolution transition threshold. 0 disables the prefetching.
+	 * 
+	 * The change takes effect after the restart of the application.
+	 */
+	public int getCrossResolutionPrefetchingTileBudget()
+	{
+		return mUserPreferences.getInt("CrossResolutionPrefetchingTileBudget", 16);
+	}
+	
+	public void setCrossResolutionPrefetchingTileBudget(int tileBudget)
+	{
+		if(tileBudget < 0)
+			throw new IllegalArgumentException("tileBudget cannot be negative.");
+		
+		int oldValue = getCrossResolutionPrefetchingTileBudget();
+		
+		mUserPreferences.putInt("CrossResolutionPrefetchingTileBudget", tileBudget);
+		
+		mPropertyListeners.firePropertyChange("CrossResolutionPrefetchingTileBudget", oldValue, tileBudget);
+	}
+	
+	/**
+	 * Returns the number of adjacent Z planes, time points or channels prefetched in each direction after the user starts stepping
+	 * through them. 0 disables the prefetching.
+	 * 
+	 * The change takes effect after the restart of the application.
+	 */
+	public int getAdjacentPlanePrefetchingDepth()
+	{
+		return mUserPreferences.getInt("AdjacentPlanePrefetchingDepth", 2);
+	}
+	
+	public void setAdjacentPlanePrefetchingDepth(int depth)
+	{
+		if(depth < 0)
+			throw new IllegalArgumentException("depth cannot be negative.");
+		
+		int oldValue = getAdjacentPlanePrefetchingDepth();
+		
+		mUserPreferences.putInt("AdjacentPlanePrefetchingDepth", depth);
+		
+		mPropertyListeners.firePropertyChange("AdjacentPlanePrefetchingDepth", oldValue, depth);
+	}
+	
+	/**
+	 * Returns the maximum number of times per second the visible image is repainted when tiles are being loaded or the view changes.
+	 * 
+	 * The change takes effect after the restart of the application.
+	 */
+	public int getMaxFrameRate()
+	{
+		return mUserPreferences.getInt("MaxFrameRate", 60);
+	}
+	
+	public void setMaxFrameRate(int frameRate)
+	{
+		if(frameRate <= 0)
+			throw new IllegalArgumentException("frameRate has to be positive.");
+		
+		int oldValue = getMaxFrameRate();
+		
+		mUserPreferences.putInt("MaxFrameRate", frameRate);
+		
+		mPropertyListeners.firePropertyChange("MaxFrameRate", oldValue, frameRate);
+	}
+	
+	/**
+	 * Returns the interval in seconds between writes of the tile metrics to the log, or 0, when the metrics should not be logged.
+	 * 
+	 * The change takes effect after the restart of the application.
+	 */
+	public long getMetricsLogInterval()
+	{
+		return mUserPreferences.getLong("MetricsLogInterval", 60);
+	}
+	
+	public void setMetricsLogInterval(long intervalSeconds)
+	{
+		if(intervalSeconds < 0)
+			throw new IllegalArgumentException("intervalSeconds cannot be negative.");
+		
+		long oldValue = getMetricsLogInterval();
+		
+		mUserPreferences.putLong("MetricsLogInterval", intervalSeconds);
+		
+		mPropertyListeners.firePropertyChange("MetricsLogInterval", oldValue, intervalSeconds);
+	}
 }
@@ -17,18 +17,29 @@
 
 package virtualslideviewer.core;
 
+import java.awt.Dimension;
 import java.awt.Rectangle;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.Consumer;
 
 import virtualslideviewer.util.ImageUtil;
 import virtualslideviewer.util.ParameterValidator;
 
 /**
  * Virtual slide image decorator which adds buffering to functions retrieving image pixels.
+ * 
+ * The tiles of the low resolutions, which are used to generate placeholders of tiles being loaded, are pinned in cache.
  */
 public class BufferedVirtualSlideImage extends VirtualSlideImageDecorator
 {
+	/**
+	 * The maximum size in bytes of a single plane of the highest resolution whose tiles are pinned in cache.
+	 */
+	public static final long MAX_PINNED_RESOLUTION_SIZE = 1024 * 1024 * 3;
+	
 	private final TileCache mTileCache;
+	private final int       mHighestPinnedResolutionIndex;
 	
 	/**
 	 * @param imageToDecorate Image to which add buffering.
@@ -40,7 +51,18 @@ public class BufferedVirtualSlideImage extends VirtualSlideImageDecorator
 		
 		ParameterValidator.throwIfNull(tileCache, "tileCache");
 		
-		mTileCache = tileCache;
+		mTileCache                    = tileCache;
+		mHighestPinnedResolutionIndex = findHighestResolutionToPin(imageToDecorate);
+	}
+	
+	private static int findHighestResolutionToPin(VirtualSlideImage image)
+	{
+		int       resIndex     = ImageUtil.getResolutionIndexWithSizeNotBiggerThan(image, MAX_PINNED_RESOLUTION_SIZE);
+		Dimension size         = image.getImageSize(resIndex);
+		long      channelCount = image.isRGB() ? 3 : 1;
+		
+		// The lowest resolution is returned even if it is too big, in such case nothing is pinned.
+		return ((long)size.width * size.height * channelCount <= MAX_PINNED_RESOLUTION_SIZE) ? resIndex : -1;
 	}
 
 	@Override
@@ -48,28 +70,81 @@ public class BufferedVirtualSlideImage extends VirtualSlideImageDecorator
 	{
 		ParameterValidator.throwIfNull(dst, "dst");
 		
-		ensureTileDataCached(tile);
-		
-		byte[] cachedData = mTileCache.getTileData(this, tile);
+		byte[] cachedData = getCachedTileData(tile, TilePriority.VISIBLE);
 		
 		System.arraycopy(cachedData, 0, dst, 0, cachedData.length);
 	}
 
+	/**
+	 * Passes a read only view of the cached data of the tile to the visitor without copying it.
+	 * 
+	 * The tile is not loaded when it is not in cache.
+	 * The view is valid only during the call of the visitor and it must not be stored for a later use.
+	 * The cache can be locked during the call, so the visitor must only copy the data.
+	 * 
+	 * @param tile    Tile whose data to visit.
+	 * @param visitor Visitor which will receive the tile's data. The data spans from the position of the buffer to its limit.
+	 * 
+	 * @return True, if the tile was in cache and the visitor has been called, false in opposite case.
+	 */
+	public boolean visitCachedTileData(Tile tile, Consumer<ByteBuffer> visitor)
+	{
+		ParameterValidator.throwIfNull(tile, "tile");
+		ParameterValidator.throwIfNull(visitor, "visitor");
+		
+		return mTileCache.visitTileData(this, tile, visitor);
+	}
+
 	/**
 	 * Ensures that the tile is in cache by loading it if it's not there already.
 	 * 
+	 * When called within {@link TileLoadingCancellation#runCancellable(java.util.function.BooleanSupplier, Runnable)},
+	 * the loading is abandoned without inserting the tile into cache as soon as it's cancelled.
+	 * 
 	 * @param tile Tile which should be in cache.
+	 * 
+	 * @throws TileLoadingCancelledException When the loading has been cancelled.
 	 */
 	public void ensureTileDataCached(Tile tile)
+	{
+		getCachedTileData(tile, TilePriority.VISIBLE);
+	}
+	
+	/**
+	 * Loads the tile into cache in advance, if it's not there already.
+	 * 
+	 * Unlike with {@link #ensureTileDataCached(Tile)}, the tile will be evicted from cache before the tiles which have been displayed.
+	 * 
+	 * Like {@link #ensureTileDataCached(Tile)}, the prefetching can be cancelled cooperatively.
+	 * 
+	 * @param tile Tile which may be displayed soon.
+	 * 
+	 * @throws TileLoadingCancelledException When the prefetching has been cancelled.
+	 */
+	public void prefetchTile(Tile tile)
+	{
+		getCachedTileData(tile, TilePriority.PREFETCHED);
+	}
+	
+	private byte[] getCachedTileData(Tile tile, TilePriority priority)
 	{
 		ParameterValidator.throwIfNull(tile, "tile");
 		
-		if(!mTileCache.hasTile(this, tile))
+		if(tile.getImageIndex().getResolutionIndex() <= mHighestPinnedResolutionIndex)
 		{
-			byte[] tileData = mDecoratedImage.getTileData(tile);
-			
-			mTileCache.addTile(this, tile, tileData);
+			priority = TilePriority.PINNED;
 		}
+		
+		return mTileCache.computeTileDataIfAbsent(this, tile, priority, () ->
+		       {
+		          TileLoadingCancellation.throwIfCancelled();
+		          
+		          byte[] tileData = mDecoratedImage.getTileData(tile);
+		          
+		          // Throwing makes the cache drop the data of a tile which is no longer needed.
+		          TileLoadingCancellation.throwIfCancelled();
+		          return tileData;
+		       });
 	}
 	
 	/**
@@ -17,7 +17,10 @@
 
 package virtualslideviewer.core;
 
+import java.nio.ByteBuffer;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Cache for storing tile's data.
@@ -30,8 +33,9 @@ public interface TileCache
 	 * @param image    Image the tile belongs to.
 	 * @param tile     Tile ID.
 	 * @param tileData Tile data.
+	 * @param priority The priority of the tile determining the order of eviction.
 	 */
-	void addTile(VirtualSlideImage image, Tile tile, byte[] tileData);
+	void addTile(VirtualSlideImage image, Tile tile, byte[] tileData, TilePriority priority);
 	
 	/**
 	 * Checks whether the tile's data is in cache.
@@ -55,6 +59,58 @@ public interface TileCache
 	 */
 	byte[] getTileData(VirtualSlideImage image, Tile tile) throws NoSuchElementException;
 	
+	/**
+	 * Gets tile's data from cache, if it is there.
+	 * 
+	 * Contrary to calling {@link #hasTile(VirtualSlideImage, Tile)} followed by {@link #getTileData(VirtualSlideImage, Tile)},
+	 * it does a single lookup and the tile cannot be evicted between the check and the retrieval.
+	 * 
+	 * @param image Image the tile belongs to.
+	 * @param tile  Tile ID.
+	 * 
+	 * @return Data of tile with specified ID or null, if it is not in cache.
+	 */
+	byte[] getTileDataIfPresent(VirtualSlideImage image, Tile tile);
+	
+	/**
+	 * Gets tile's data from cache or, if it is not there, loads it using specified loader and adds it to cache.
+	 * 
+	 * @param image    Image the tile belongs to.
+	 * @param tile     Tile ID.
+	 * @param priority The priority with which to add the tile, if it is not in cache.
+	 * @param loader   The loader of tile's data, called only when the tile is not in cache.
+	 * 
+	 * @return Data of tile with specified ID.
+	 */
+	byte[] computeTileDataIfAbsent(VirtualSlideImage image, Tile tile, TilePriority priority, Supplier<byte[]> loader);
+	
+	/**
+	 * Passes a read only view of tile's data to the visitor without copying it.
+	 * 
+	 * The view is valid only during the call of the visitor and it must not be stored for a later use.
+	 * The visitor should not call any methods of the cache.
+	 * 
+	 * The cache can be locked during the call, so the visitor must only copy the data it needs, and process it, for example
+	 * draw it, after this method returns.
+	 * 
+	 * @param image   Image the tile belongs to.
+	 * @param tile    Tile ID.
+	 * @param visitor Visitor which will receive the tile's data. The data spans from the position of the buffer to its limit.
+	 * 
+	 * @return True, if data of tile with specified ID was in cache and the visitor has been called, false in opposite case.
+	 */
+	boolean visitTileData(VirtualSlideImage image, Tile tile, Consumer<ByteBuffer> visitor);
+	
+	/**
+	 * Removes tile's data from cache, if it is there.
+	 * 
+	 * The tile is identified without its image, so the tiles of an image which is no longer used can be removed
+	 * without keeping the image.
+	 * 
+	 * @param tileID The ID of the tile unique across images.
+	 */
+	void removeTile(UniqueTileID tileID);
+	
 	/**
 	 * Clears the cache.
 	 */
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.core;
+
+import java.util.function.BooleanSupplier;
+
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Cooperative cancellation of the tile loading which is already running.
+ * 
+ * Interrupting a thread which decodes a tile makes the Bio-Formats reader unusable, so the readers would have to be
+ * opened again after every cancellation. Instead, the loading code checks between the stages of the loading,
+ * such as reading, converting and inserting into cache, whether the tile is still needed and abandons the loading if it's not.
+ * 
+ * The cancellation check is bound to the thread running the loading, so it does not have to be passed through
+ * every VirtualSlideImage and TileCache implementation.
+ */
+public final class TileLoadingCancellation
+{
+	private static final ThreadLocal<BooleanSupplier> CANCELLATION_CHECK = new ThreadLocal<>();
+	
+	private TileLoadingCancellation()
+	{
+	}
+	
+	/**
+	 * Runs the loading of tiles which can be cancelled cooperatively.
+	 * 
+	 * @param cancellationCheck Returns true when the result of the loading is no longer needed.
+	 * @param loading           The loading to run in the current thread.
+	 * 
+	 * @throws TileLoadingCancelledException When the loading has been cancelled.
+	 */
+	public static void runCancellable(BooleanSupplier cancellationCheck, Runnable loading) throws TileLoadingCancelledException
+	{
+		ParameterValidator.throwIfNull(cancellationCheck, "cancellationCheck");
+		ParameterValidator.throwIfNull(loading, "loading");
+		
+		BooleanSupplier previousCancellationCheck = CANCELLATION_CHECK.get();
+		
+		CANCELLATION_CHECK.set(cancellationCheck);
+		try
+		{
+			loading.run();
+		}
+		finally
+		{
+			CANCELLATION_CHECK.set(previousCancellationCheck);
+		}
+	}
+	
+	/**
+	 * Abandons the loading running in the current thread if it has been cancelled.
+	 * 
+	 * Does nothing when called outside of {@link #runCancellable(BooleanSupplier, Runnable)}.
+	 * 
+	 * @throws TileLoadingCancelledException When the loading has been cancelled.
+	 */
+	public static void throwIfCancelled() throws TileLoadingCancelledException
+	{
+		BooleanSupplier cancellationCheck = CANCELLATION_CHECK.get();
+		
+		if(cancellationCheck != null && cancellationCheck.getAsBoolean())
+			throw new TileLoadingCancelledException("The loading of the tile has been cancelled.");
+	}
+}
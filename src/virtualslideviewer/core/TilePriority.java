@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.core;
+
+/**
+ * The importance of keeping a tile in cache, determined by the role of the tile.
+ * 
+ * When the cache is full, the tiles with lower priority are evicted first.
+ * The priorities are declared in the order from the least to the most important.
+ */
+public enum TilePriority
+{
+	/**
+	 * A tile loaded in advance, which may never be displayed.
+	 */
+	PREFETCHED,
+	
+	/**
+	 * A tile which has been displayed.
+	 */
+	VISIBLE,
+	
+	/**
+	 * A tile which should never be evicted, such as a tile of low resolution used to generate placeholders of other tiles.
+	 */
+	PINNED;
+	
+	/**
+	 * Returns the more important of the two priorities.
+	 */
+	public static TilePriority max(TilePriority first, TilePriority second)
+	{
+		return (first.compareTo(second) >= 0) ? first : second;
+	}
+}
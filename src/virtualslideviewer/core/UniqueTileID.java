@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.core;
+
+import java.io.Serializable;
+
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Tile ID unique to given image.
+ *
+ * Tile with the same coordinates in two different images has different unique ID.
+ */
+public class UniqueTileID implements Serializable
+{
+	private static final long serialVersionUID = -8405926210569156066L;
+
+	private final String mImageID;
+	private final Tile   mTile;
+
+	// The ID is created for every cache lookup, thus the hash is computed only once.
+	private final int    mHashCode;
+
+	/**
+	 * @param imageID The ID of image the tile belongs to.
+	 * @param tile    The tile.
+	 */
+	public UniqueTileID(String imageID, Tile tile)
+	{
+		ParameterValidator.throwIfNull(imageID, "imageID");
+		ParameterValidator.throwIfNull(tile, "tile");
+
+		mImageID = imageID;
+		mTile    = tile;
+
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + mImageID.hashCode();
+		result = prime * result + mTile.hashCode();
+		mHashCode = result;
+	}
+
+	public String getImageID()
+	{
+		return mImageID;
+	}
+
+	public Tile getTile()
+	{
+		return mTile;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return mHashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+			return true;
+		if(obj == null)
+			return false;
+		if(getClass() != obj.getClass())
+			return false;
+
+		UniqueTileID other = (UniqueTileID)obj;
+		return mHashCode == other.mHashCode && mTile.equals(other.mTile) && mImageID.equals(other.mImageID);
+	}
+
+	@Override
+	public String toString()
+	{
+		return mTile + " of image " + mImageID;
+	}
+}
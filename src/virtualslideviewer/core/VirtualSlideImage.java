@@ -208,10 +208,18 @@ public abstract class VirtualSlideImage implements AutoCloseable
 	 * This ID is used to identify the image during caching of image's data, so the following should apply:
 	 * - when two different instances of image returns identical data they should have identical ID,
 	 * - when pixels data returned by two instances of image are different, their IDs <b>must</b> be different,
-	 * - the ID does not have to be unique across different virtual slides, as the cache is cleared when a virtual slide is changed.
+	 * - the ID has to be unique across different virtual slides and should not change between sessions, as the cache can be
+	 *   stored on disk and reused when the virtual slide is opened again.
 	 */
 	public abstract String getID();
 	
+	/**
+	 * Returns the ID of virtual slide the image belongs to.
+	 * 
+	 * All images of the same virtual slide have the same slide ID. It is used to share the cache fairly between slides.
+	 */
+	public abstract String getSlideID();
+	
 	@Override
 	public abstract void close();
 	
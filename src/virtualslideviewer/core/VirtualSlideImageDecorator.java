@@ -111,6 +111,12 @@ public abstract class VirtualSlideImageDecorator extends VirtualSlideImage
 		return mDecoratedImage.getID();
 	}
 
+	@Override
+	public String getSlideID()
+	{
+		return mDecoratedImage.getSlideID();
+	}
+
 	@Override
 	public void close()
 	{
@@ -28,7 +28,6 @@ import java.util.concurrent.ExecutorService;
 import virtualslideviewer.UncheckedInterruptedException;
 import virtualslideviewer.bioformats.OmeTiffSavingService;
 import virtualslideviewer.core.SupportedFormatDescription;
-import virtualslideviewer.core.TileCache;
 import virtualslideviewer.core.VirtualSlide;
 import virtualslideviewer.util.ParameterValidator;
 
@@ -42,18 +41,15 @@ public class VirtualSlidePersistenceService
 		public void onVirtualSlideLoaded(VirtualSlide loadedSlide, Path loadedFilePath);
 	}
 	
-	private final TileCache                mCache;
 	private final OmeTiffSavingService     mOmeTiffSavingService;
 	private final List<VirtualSlideLoader> mLoaders = new ArrayList<>();
 
 	private final List<Listener> mListeners = new ArrayList<>();
 
-	public VirtualSlidePersistenceService(TileCache cache, ExecutorService threadPool)
+	public VirtualSlidePersistenceService(ExecutorService threadPool)
 	{
-		ParameterValidator.throwIfNull(cache, "cache");
 		ParameterValidator.throwIfNull(threadPool, "threadPool");
 		
-		mCache                = cache;
 		mOmeTiffSavingService = new OmeTiffSavingService(threadPool);
 	}
 	
@@ -92,8 +88,6 @@ public class VirtualSlidePersistenceService
 		
 		VirtualSlide virtualSlide = capableLoader.get().load(fileToOpen);
 		
-		mCache.clear();
-		
 		mListeners.forEach(l -> l.onVirtualSlideLoaded(virtualSlide, fileToOpen));
 		
 		return virtualSlide;
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import virtualslideviewer.core.BufferedVirtualSlideImage;
+import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.util.ImageUtil;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * A prefetching strategy decorator which, once the user starts stepping through the Z planes, time points or channels,
+ * prefetches the loaded part of the image at the adjacent indices of the stepped dimension.
+ *
+ * The indices are prefetched up to the specified depth, the ones in the direction of the last step first.
+ * While the user is stepping, the adjacent indices are prefetched before the tiles of the decorated strategy,
+ * as the next step is more likely than moving the camera.
+ * The stepping ends when the camera moves without a step, when another image is loaded or after a limited number of requests
+ * without a step. As the loader cancels the prefetching of the tiles which are no longer returned by the strategy,
+ * the prefetching of the planes follows the user and is cancelled when the user stops stepping.
+ */
+public class AdjacentPlanePrefetchingStrategy implements PrefetchingStrategy
+{
+	private enum Axis
+	{
+		CHANNEL,
+		Z_PLANE,
+		TIME_POINT;
+	}
+
+	private static final int MAX_REQUESTS_AFTER_STEP = 16;
+
+	private final PrefetchingStrategy mPrefetchingStrategy;
+	private final int                 mDepth;
+
+	private VirtualSlideImage         mPreviousImage           = null;
+	private Rectangle                 mPreviousLoadedImagePart = null;
+	private ImageIndex                mPreviousImageIndex      = null;
+	private Axis                      mSteppedAxis             = null;
+	private int                       mStepDirection           = 1;
+	private int                       mRequestsAfterStep       = 0;
+
+	/**
+	 * @param prefetchingStrategy The strategy whose tiles are prefetched at the image index of the loaded part.
+	 * @param depth               The number of adjacent indices prefetched in each direction.
+	 */
+	public AdjacentPlanePrefetchingStrategy(PrefetchingStrategy prefetchingStrategy, int depth)
+	{
+		ParameterValidator.throwIfNull(prefetchingStrategy, "prefetchingStrategy");
+
+		if(depth < 0)
+			throw new IllegalArgumentException("depth cannot be negative.");
+
+		mPrefetchingStrategy = prefetchingStrategy;
+		mDepth               = depth;
+	}
+
+	@Override
+	public synchronized List<Tile> getTilesToPrefetch(BufferedVirtualSlideImage image, Rectangle loadedImagePart, ImageIndex imageIndex)
+	{
+		Set<Tile> tilesToPrefetch = new LinkedHashSet<>();
+
+		updateSteppedAxis(image, loadedImagePart, imageIndex);
+
+		if(mSteppedAxis != null)
+		{
+			for(int distance = 1; distance <= mDepth; distance++)
+			{
+				addTilesAtAdjacentIndex(tilesToPrefetch, image, loadedImagePart, imageIndex,  mStepDirection * distance);
+				addTilesAtAdjacentIndex(tilesToPrefetch, image, loadedImagePart, imageIndex, -mStepDirection * distance);
+			}
+		}
+
+		tilesToPrefetch.addAll(mPrefetchingStrategy.getTilesToPrefetch(image, loadedImagePart, imageIndex));
+
+		return new ArrayList<>(tilesToPrefetch);
+	}
+
+	private void updateSteppedAxis(VirtualSlideImage image, Rectangle loadedImagePart, ImageIndex imageIndex)
+	{
+		if(image != mPreviousImage)
+		{
+			mSteppedAxis = null;
+		}
+		else if(recordStep(imageIndex))
+		{
+			mRequestsAfterStep = 0;
+		}
+		else if(isCameraMoved(loadedImagePart, imageIndex) || ++mRequestsAfterStep > MAX_REQUESTS_AFTER_STEP)
+		{
+			mSteppedAxis = null;
+		}
+
+		mPreviousImage           = image;
+		mPreviousLoadedImagePart = new Rectangle(loadedImagePart);
+		mPreviousImageIndex      = imageIndex;
+	}
+
+	private boolean recordStep(ImageIndex imageIndex)
+	{
+		boolean stepped = false;
+
+		for(Axis axis : Axis.values())
+		{
+			int step = getIndex(imageIndex, axis) - getIndex(mPreviousImageIndex, axis);
+			if(step != 0)
+			{
+				mSteppedAxis   = axis;
+				mStepDirection = Integer.signum(step);
+				stepped        = true;
+			}
+		}
+
+		return stepped;
+	}
+
+	private boolean isCameraMoved(Rectangle loadedImagePart, ImageIndex imageIndex)
+	{
+		return !loadedImagePart.equals(mPreviousLoadedImagePart) ||
+		       imageIndex.getResolutionIndex() != mPreviousImageIndex.getResolutionIndex();
+	}
+
+	private void addTilesAtAdjacentIndex(Set<Tile> tiles, VirtualSlideImage image, Rectangle loadedImagePart, ImageIndex imageIndex, int offset)
+	{
+		int index = getIndex(imageIndex, mSteppedAxis) + offset;
+		if(index < 0 || index >= getIndexCount(image, mSteppedAxis))
+			return;
+
+		ImageIndex adjacentImageIndex = withIndex(imageIndex, mSteppedAxis, index);
+
+		tiles.addAll(ImageUtil.getTilesInArea(loadedImagePart, image.getTileSize(imageIndex.getResolutionIndex()), adjacentImageIndex));
+	}
+
+	private static int getIndex(ImageIndex imageIndex, Axis axis)
+	{
+		switch(axis)
+		{
+			case CHANNEL:    return imageIndex.getChannel();
+			case Z_PLANE:    return imageIndex.getZPlane();
+			case TIME_POINT: return imageIndex.getTimePoint();
+			default:         throw new IllegalArgumentException("Unknown axis " + axis + ".");
+		}
+	}
+
+	private static int getIndexCount(VirtualSlideImage image, Axis axis)
+	{
+		switch(axis)
+		{
+			case CHANNEL:    return image.getChannelCount();
+			case Z_PLANE:    return image.getZPlaneCount();
+			case TIME_POINT: return image.getTimePointCount();
+			default:         throw new IllegalArgumentException("Unknown axis " + axis + ".");
+		}
+	}
+
+	private static ImageIndex withIndex(ImageIndex imageIndex, Axis axis, int index)
+	{
+		int channel   = (axis == Axis.CHANNEL)    ? index : imageIndex.getChannel();
+		int zPlane    = (axis == Axis.Z_PLANE)    ? index : imageIndex.getZPlane();
+		int timePoint = (axis == Axis.TIME_POINT) ? index : imageIndex.getTimePoint();
+
+		return new ImageIndex(imageIndex.getResolutionIndex(), channel, zPlane, timePoint);
+	}
+}
@@ -20,15 +20,26 @@ package virtualslideviewer.imageviewing;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import virtualslideviewer.core.BufferedVirtualSlideImage;
 import virtualslideviewer.core.ImageIndex;
 import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileLoadingCancellation;
+import virtualslideviewer.core.TileLoadingCancelledException;
 import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.imageviewing.TileLoadingScheduler.ScheduledTask;
+import virtualslideviewer.metrics.TileMetrics;
 import virtualslideviewer.util.ByteArrayPool;
 import virtualslideviewer.util.ImageUtil;
 import virtualslideviewer.util.ParameterValidator;
@@ -36,35 +47,51 @@ import virtualslideviewer.util.ParameterValidator;
 /**
  * Asynchronous loader for extracting a visible part from virtual slide image.
  * It uses threading, caching and prefetching to provide the best performance and is highly configurable.
+ * 
+ * The tiles are loaded by a TileLoadingScheduler, the visible tiles before the prefetched ones.
+ * When the visible part of the image changes, the tiles which are still needed are not loaded again, but their priority is changed
+ * to match the new visible part. Only the tiles which are no longer needed are cancelled.
+ * 
+ * The tasks which are already running are cancelled cooperatively: the loading is abandoned at the next stage of decoding
+ * without interrupting the thread, which would make the reader of the image unusable.
+ * 
+ * A visible tile is recorded in the tile metrics only once, when it becomes visible, not on every redraw of the image.
  */
 public class AsyncVisibleImageLoader implements VisibleImageLoader
 {
-	private final ExecutorService                 mThreadPool;
+	private final TileLoadingScheduler            mScheduler;
 	private final TileLoadingPrioritizer          mLoadingPrioritizer;
 	private final PrefetchingStrategy             mPrefetchingStrategy;
 	private final LoadingTilePlaceholderGenerator mPlaceholderGenerator;
+	private final TileMetrics                     mMetrics;
 	
-	private final ByteArrayPool                   mTempTileDataBufferPool   = new ByteArrayPool();
-	private final List<Future<?>>                 mPreviouslyLoadingFutures = new ArrayList<>();
+	private final ByteArrayPool                   mTempTileDataBufferPool = new ByteArrayPool();
+	private final Map<Tile, TileLoadingTask>      mScheduledTasks         = new HashMap<>();
+	private Set<Tile>                             mRecordedVisibleTiles   = new HashSet<>();
+	private BufferedVirtualSlideImage             mScheduledTasksImage    = null;
 
 	/**
-	 * @param tileLoadingExecutor  A thread pool which the loader will use to schedule tile loading tasks.
+	 * @param tileLoadingScheduler A scheduler which the loader will use to run tile loading tasks.
 	 * @param placeholderGenerator A data generator for tiles which has been not loaded yet.
 	 * @param prefetchingStrategy  A strategy to prefetch not visible yet but possibly soon needed tiles.
 	 * @param loadingPrioritizer   A prioritizer to select which parts of the image should be loaded first.
+	 * @param metrics              The metrics to which the served and cancelled tiles will be recorded.
 	 */
-	public AsyncVisibleImageLoader(ExecutorService tileLoadingExecutor,     LoadingTilePlaceholderGenerator placeholderGenerator,
-	                               PrefetchingStrategy prefetchingStrategy, TileLoadingPrioritizer          loadingPrioritizer)
+	public AsyncVisibleImageLoader(TileLoadingScheduler tileLoadingScheduler, LoadingTilePlaceholderGenerator placeholderGenerator,
+	                               PrefetchingStrategy prefetchingStrategy,   TileLoadingPrioritizer          loadingPrioritizer,
+	                               TileMetrics metrics)
 	{
-		ParameterValidator.throwIfNull(tileLoadingExecutor, "tileLoadingExecutor");
+		ParameterValidator.throwIfNull(tileLoadingScheduler, "tileLoadingScheduler");
 		ParameterValidator.throwIfNull(placeholderGenerator, "placeholderGenerator");
 		ParameterValidator.throwIfNull(prefetchingStrategy, "prefetchingStrategy");
 		ParameterValidator.throwIfNull(loadingPrioritizer, "loadingPrioritizer");
+		ParameterValidator.throwIfNull(metrics, "metrics");
 		
-		mThreadPool           = tileLoadingExecutor;
+		mScheduler            = tileLoadingScheduler;
 		mPlaceholderGenerator = placeholderGenerator;
 		mPrefetchingStrategy  = prefetchingStrategy;
 		mLoadingPrioritizer   = loadingPrioritizer;
+		mMetrics              = metrics;
 	}
 	
 	/**
@@ -75,33 +102,78 @@ public class AsyncVisibleImageLoader implements VisibleImageLoader
 	 * 
 	 * After the data is loaded, user specified callback will be called and real data can be retrieved by calling this function again.
 	 * 
-	 * Calling this function stops any not yet finished loading tasks started in previous call.
+	 * Calling this function stops any loading tasks of the previous call whose tiles are no longer needed.
 	 * 
 	 * @param image               Image from which visible part will be loaded.
-	 * @param dst                 Buffer which will receive already the data.
+	 * @param dst                 Raster which will receive already the data.
 	 * @param visibleImageBounds  The bounds of currently visible image.
 	 * @param imageIndex          The image index from which to retrieve data.
-	 * @param dataUpdatedCallback A callback which will be called once for every part of an image when is it made available.
+	 * @param dataUpdatedCallback A callback which will be called once for every tile of an image when is it made available.
 	 *                            The callback will be called from a <b>different thread</b>.
 	 */
 	@Override
-	public void getVisibleImageData(BufferedVirtualSlideImage image, byte[] dst, Rectangle visibleImageBounds, ImageIndex imageIndex,
-	                                Runnable dataUpdatedCallback)
+	public void getVisibleImageData(BufferedVirtualSlideImage image, WritableRaster dst, Rectangle visibleImageBounds, ImageIndex imageIndex,
+	                                Consumer<Tile> dataUpdatedCallback)
 	{
-		validateArguments(image, dst, visibleImageBounds, imageIndex, dataUpdatedCallback);
+		validateArguments(image, visibleImageBounds, imageIndex, dataUpdatedCallback);
+		validateDestination(image, dst, visibleImageBounds);
 		
-		cancelPreviousLoading();
+		VisibleTileConsumer copyingConsumer = new VisibleTileConsumer()
+		{
+			@Override
+			public boolean isTileDataNeeded(Tile tile, Rectangle tileBounds)
+			{
+				return true;
+			}
+			
+			@Override
+			public void acceptTileData(Tile tile, Rectangle tileBounds, ByteBuffer tileData, boolean placeholder)
+			{
+				ImageUtil.copyIntersectingPartOfImage(tileData, tileBounds, dst, visibleImageBounds);
+			}
+		};
 		
-		loadDataInto(image, dst, visibleImageBounds, imageIndex, dataUpdatedCallback);
+		getVisibleTiles(image, visibleImageBounds, imageIndex, copyingConsumer, dataUpdatedCallback);
+	}
+	
+	/**
+	 * Asynchronously loads visible part of the image tile by tile.
+	 * 
+	 * The consumer receives the original data of the tiles which are in cache and placeholders of the other tiles,
+	 * which are loaded in background. The tiles which the consumer does not need are skipped, even if they are not in cache.
+	 * 
+	 * Calling this function stops any loading tasks of the previous call whose tiles are no longer needed.
+	 * 
+	 * @param image               Image from which visible part will be loaded.
+	 * @param visibleImageBounds  The bounds of currently visible image.
+	 * @param imageIndex          The image index from which to retrieve data.
+	 * @param consumer            The consumer of the data of visible tiles.
+	 * @param dataUpdatedCallback A callback which will be called once for every tile of an image when is it made available.
+	 *                            The callback will be called from a <b>different thread</b>.
+	 */
+	@Override
+	public void getVisibleTiles(BufferedVirtualSlideImage image, Rectangle visibleImageBounds, ImageIndex imageIndex,
+	                            VisibleTileConsumer consumer, Consumer<Tile> dataUpdatedCallback)
+	{
+		validateArguments(image, visibleImageBounds, imageIndex, dataUpdatedCallback);
+		ParameterValidator.throwIfNull(consumer, "consumer");
+		
+		synchronized(mScheduledTasks)
+		{
+			Map<Tile, TileLoadingTask> previouslyScheduledTasks = takePreviouslyScheduledTasks(image);
+		
+			loadTiles(image, visibleImageBounds, imageIndex, consumer, dataUpdatedCallback, previouslyScheduledTasks);
 		
-		prefetchTiles(image, visibleImageBounds, imageIndex);
+			prefetchTiles(image, visibleImageBounds, imageIndex, previouslyScheduledTasks);
+			
+			cancelTasks(previouslyScheduledTasks.values());
+		}
 	}
 	
-	private void validateArguments(BufferedVirtualSlideImage image, byte[] dst, Rectangle visibleImageBounds, ImageIndex imageIndex,
-	                               Runnable dataUpdatedCallback)
+	private void validateArguments(BufferedVirtualSlideImage image, Rectangle visibleImageBounds, ImageIndex imageIndex,
+	                               Consumer<Tile> dataUpdatedCallback)
 	{
 		ParameterValidator.throwIfNull(image, "image");
-		ParameterValidator.throwIfNull(dst, "dst");
 		ParameterValidator.throwIfNull(visibleImageBounds, "visibleImageBounds");
 		ParameterValidator.throwIfNull(dataUpdatedCallback, "dataUpdatedCallback");
 
@@ -110,12 +182,19 @@ public class AsyncVisibleImageLoader implements VisibleImageLoader
 		
 		if(isNotASubImage(image, visibleImageBounds, imageIndex.getResolutionIndex()))
 			throw new IllegalArgumentException("Invalid visible image bounds.");
+	}
+	
+	private void validateDestination(VirtualSlideImage image, WritableRaster dst, Rectangle visibleImageBounds)
+	{
+		ParameterValidator.throwIfNull(dst, "dst");
 		
-		int minimumBufferSize = visibleImageBounds.width * visibleImageBounds.height * (image.isRGB() ? 3 : 1);
-		if(dst.length < minimumBufferSize)
+		if(dst.getNumBands() != (image.isRGB() ? 3 : 1))
+			throw new IllegalArgumentException("The number of bands of destination raster does not match the image.");
+		
+		if(dst.getWidth() < visibleImageBounds.width || dst.getHeight() < visibleImageBounds.height)
 		{
-			throw new IllegalArgumentException("Destination buffer is too small. Capacity of at least " +
-		                                      minimumBufferSize + " bytes is needed.");
+			throw new IllegalArgumentException("Destination raster is too small. Size of at least " +
+			                                   visibleImageBounds.width + "x" + visibleImageBounds.height + " is needed.");
 		}
 	}
 	
@@ -126,46 +205,149 @@ public class AsyncVisibleImageLoader implements VisibleImageLoader
 		return !fullImageBounds.contains(subImageBounds);
 	}
 	
-	private void cancelPreviousLoading()
+	/**
+	 * Returns the tasks scheduled by the previous call, which can be reused if they load tiles of the same image.
+	 */
+	private Map<Tile, TileLoadingTask> takePreviouslyScheduledTasks(BufferedVirtualSlideImage image)
 	{
-		for(Future<?> taskHandle : mPreviouslyLoadingFutures)
+		Map<Tile, TileLoadingTask> previouslyScheduledTasks = new HashMap<>(mScheduledTasks);
+		
+		mScheduledTasks.clear();
+		
+		if(image != mScheduledTasksImage)
 		{
-			taskHandle.cancel(false);
+			cancelTasks(previouslyScheduledTasks.values());
+			
+			previouslyScheduledTasks.clear();
+			mRecordedVisibleTiles.clear();
+			mScheduledTasksImage = image;
 		}
 		
-		mPreviouslyLoadingFutures.clear();
+		return previouslyScheduledTasks;
 	}
 
-	private void prefetchTiles(BufferedVirtualSlideImage image, Rectangle visibleImageBounds, ImageIndex imageIndex)
+	private void cancelTasks(Iterable<TileLoadingTask> tasks)
 	{
-		for(Tile tile : mPrefetchingStrategy.getTilesToPrefetch(image, visibleImageBounds, imageIndex))
+		for(TileLoadingTask task : tasks)
+		{
+			task.cancel();
+		}
+	}
+	
+	private void prefetchTiles(BufferedVirtualSlideImage image, Rectangle visibleImageBounds, ImageIndex imageIndex,
+	                           Map<Tile, TileLoadingTask> previouslyScheduledTasks)
+	{
+		List<Tile> tilesToPrefetch = sortTilesToPrefetch(mPrefetchingStrategy.getTilesToPrefetch(image, visibleImageBounds, imageIndex),
+		                                                 image, visibleImageBounds, imageIndex);
+		
+		int rank = 0;
+		for(Tile tile : tilesToPrefetch)
 		{
-			if(!image.isImageInCache(tile.getBounds(image), imageIndex))
+			// A tile which is visible is already being loaded with a higher priority.
+			if(mScheduledTasks.containsKey(tile))
+				continue;
+			
+			if(!image.isImageInCache(tile.getBounds(image), tile.getImageIndex()))
 			{
-				Future<?> taskHandle = mThreadPool.submit(() -> image.ensureTileDataCached(tile));
+				int resolutionDistance = Math.abs(tile.getImageIndex().getResolutionIndex() - imageIndex.getResolutionIndex());
 				
-				mPreviouslyLoadingFutures.add(taskHandle);
+				scheduleTileLoading(image, tile, TileLoadingPriority.prefetched(resolutionDistance, rank++), null, previouslyScheduledTasks);
 			}
 		}
 	}
+	
+	/**
+	 * Sorts the tiles to prefetch by their priority separately for each image index, because the prioritizer compares the tiles
+	 * with the visible image bounds. The tiles at resolutions closer to the resolution of the visible image come first,
+	 * otherwise the image indices keep the order in which the prefetching strategy returned them.
+	 */
+	private List<Tile> sortTilesToPrefetch(List<Tile> tilesToPrefetch, BufferedVirtualSlideImage image, Rectangle visibleImageBounds,
+	                                       ImageIndex imageIndex)
+	{
+		int visibleResIndex = imageIndex.getResolutionIndex();
+		
+		Map<ImageIndex, List<Tile>> tilesByImageIndex = new LinkedHashMap<>();
+		for(Tile tile : tilesToPrefetch)
+		{
+			tilesByImageIndex.computeIfAbsent(tile.getImageIndex(), index -> new ArrayList<>()).add(tile);
+		}
+		
+		List<ImageIndex> imageIndices = new ArrayList<>(tilesByImageIndex.keySet());
+		imageIndices.sort(Comparator.comparingInt(index -> Math.abs(index.getResolutionIndex() - visibleResIndex)));
+		
+		List<Tile> sortedTiles = new ArrayList<>(tilesToPrefetch.size());
+		for(ImageIndex tilesImageIndex : imageIndices)
+		{
+			List<Tile> tiles              = tilesByImageIndex.get(tilesImageIndex);
+			Rectangle  boundsAtResolution = ImageUtil.scaleBoundsToMatchDifferentResolution(image, visibleImageBounds, visibleResIndex,
+			                                                                                tilesImageIndex.getResolutionIndex());
+			
+			mLoadingPrioritizer.sortTilesByPriority(tiles, image, boundsAtResolution);
+			
+			sortedTiles.addAll(tiles);
+		}
+		
+		return sortedTiles;
+	}
 
-	private void loadDataInto(BufferedVirtualSlideImage image, byte[] dst, Rectangle visibleImageBounds, ImageIndex imageIndex,
-	                          Runnable dataUpdatedCallback)
+	private void loadTiles(BufferedVirtualSlideImage image, Rectangle visibleImageBounds, ImageIndex imageIndex,
+	                       VisibleTileConsumer consumer, Consumer<Tile> dataUpdatedCallback,
+	                       Map<Tile, TileLoadingTask> previouslyScheduledTasks)
 	{
 		List<Tile> tilesToLoad = ImageUtil.getTilesInArea(visibleImageBounds, image.getTileSize(imageIndex.getResolutionIndex()), imageIndex);
 		
 		mLoadingPrioritizer.sortTilesByPriority(tilesToLoad, image, visibleImageBounds);
 		
+		// The tiles which were visible already during the previous call have been recorded in the metrics.
+		Set<Tile> previouslyRecordedTiles = mRecordedVisibleTiles;
+		mRecordedVisibleTiles = new HashSet<>();
+		
 		byte[] tempTileBuffer = mTempTileDataBufferPool.borrow(getRequiredTileBufferSize(image, imageIndex.getResolutionIndex()));
 		{
+			int rank = 0;
 			for(Tile tile : tilesToLoad)
 			{
-				getTileData(image, tempTileBuffer, tile, dataUpdatedCallback);
-	
-				int imageChannelCount = (image.isRGB() ? 3 : 1);
-	
-				ImageUtil.copyIntersectingPartOfImage(tempTileBuffer, tile.getBounds(image),
-				                                      dst, visibleImageBounds, imageChannelCount);
+				Rectangle tileBounds = tile.getBounds(image);
+				boolean   recorded   = previouslyRecordedTiles.contains(tile);
+				
+				if(recorded)
+				{
+					mRecordedVisibleTiles.add(tile);
+				}
+				
+				if(!consumer.isTileDataNeeded(tile, tileBounds))
+					continue;
+				
+				// The cached data is passed directly to the consumer, without an intermediate copy.
+				boolean tileInCache = image.visitCachedTileData(tile, tileData -> consumer.acceptTileData(tile, tileBounds, tileData, false));
+				
+				if(tileInCache)
+				{
+					if(!recorded)
+					{
+						mMetrics.recordCacheHit();
+						mMetrics.recordCacheServedTile();
+					}
+				}
+				else
+				{
+					scheduleTileLoading(image, tile, TileLoadingPriority.visible(rank++), dataUpdatedCallback, previouslyScheduledTasks);
+					
+					if(consumer.isPlaceholderNeeded(tile, tileBounds))
+					{
+						mPlaceholderGenerator.getTilePlaceholder(tempTileBuffer, image, tile);
+						
+						consumer.acceptTileData(tile, tileBounds, ByteBuffer.wrap(tempTileBuffer), true);
+						
+						if(!recorded)
+						{
+							mMetrics.recordPlaceholderServedTile();
+						}
+					}
+				}
+				
+				// A tile which is being loaded is recorded as a miss by the cache, so it is not recorded as a hit when it's loaded.
+				mRecordedVisibleTiles.add(tile);
 			}
 		}
 		mTempTileDataBufferPool.putBack(tempTileBuffer);
@@ -178,28 +360,123 @@ public class AsyncVisibleImageLoader implements VisibleImageLoader
 		return fullTileSize.width * fullTileSize.height * (image.isRGB() ? 3 : 1);
 	}
 	
-	private void getTileData(BufferedVirtualSlideImage image, byte[] dst, Tile tile, Runnable dataUpdatedCallback)
+	/**
+	 * Schedules loading of a tile, reusing the task of the previous call if it has not finished yet.
+	 * 
+	 * @param dataUpdatedCallback The callback to call after the tile is loaded or null if the tile is only prefetched.
+	 */
+	private void scheduleTileLoading(BufferedVirtualSlideImage image, Tile tile, TileLoadingPriority priority,
+	                                 Consumer<Tile> dataUpdatedCallback, Map<Tile, TileLoadingTask> previouslyScheduledTasks)
 	{
-		if(image.isImageInCache(tile.getBounds(image), tile.getImageIndex()))
+		TileLoadingTask task = previouslyScheduledTasks.remove(tile);
+		                          
+		if(task == null || !task.reschedule(priority, dataUpdatedCallback))
 		{
-			image.getTileData(dst, tile);
-			return;
+			task = new TileLoadingTask(image, tile, dataUpdatedCallback, mMetrics);
+			task.schedule(mScheduler, priority);
 		}
 		
-		startTileLoading(image, tile, dataUpdatedCallback);
-		
-		mPlaceholderGenerator.getTilePlaceholder(dst, image, tile);
+		mScheduledTasks.put(tile, task);
 	}
-
-	private void startTileLoading(BufferedVirtualSlideImage image, Tile tile, Runnable dataUpdatedCallback)
+	
+	/**
+	 * A task which loads a visible tile or prefetches a tile.
+	 * 
+	 * A prefetching task becomes a visible tile loading task when it is given a callback and vice versa,
+	 * so a tile which changes its role is not loaded twice.
+	 * 
+	 * A cancelled task which is already running abandons the loading at the next cancellation check and does not call the callback.
+	 */
+	private static class TileLoadingTask implements Runnable
 	{
-		Future<?> taskHandle = mThreadPool.submit(() -> 
-		                       {
-		                          image.ensureTileDataCached(tile);
-		                          
-		                          dataUpdatedCallback.run();
-		                       });
+		private final BufferedVirtualSlideImage mImage;
+		private final Tile                      mTile;
+		private final TileMetrics               mMetrics;
+		
+		private ScheduledTask                   mScheduledTask;
+		private Consumer<Tile>                  mDataUpdatedCallback;
+		private boolean                         mFinished  = false;
+		private volatile boolean                mCancelled = false;
+		
+		public TileLoadingTask(BufferedVirtualSlideImage image, Tile tile, Consumer<Tile> dataUpdatedCallback, TileMetrics metrics)
+		{
+			mImage               = image;
+			mTile                = tile;
+			mDataUpdatedCallback = dataUpdatedCallback;
+			mMetrics             = metrics;
+		}
 		
-		mPreviouslyLoadingFutures.add(taskHandle);
+		public void schedule(TileLoadingScheduler scheduler, TileLoadingPriority priority)
+		{
+			mScheduledTask = scheduler.submit(this, priority);
+		}
+		
+		/**
+		 * Changes the priority and the callback of the task.
+		 * 
+		 * @return False if the task has already finished, so a new task has to be scheduled.
+		 */
+		public synchronized boolean reschedule(TileLoadingPriority priority, Consumer<Tile> dataUpdatedCallback)
+		{
+			if(mFinished)
+				return false;
+			
+			// The priority of a running task cannot be changed, but the new callback will be called when it finishes.
+			mScheduledTask.reprioritize(priority);
+			mDataUpdatedCallback = dataUpdatedCallback;
+			return true;
+		}
+		
+		public void cancel()
+		{
+			if(!mScheduledTask.cancel())
+			{
+				mCancelled = true;
+			}
+		}
+		
+		@Override
+		public void run()
+		{
+			Consumer<Tile> dataUpdatedCallback = null;
+			try
+			{
+				TileLoadingCancellation.runCancellable(() -> mCancelled, () ->
+				{
+					if(getDataUpdatedCallback() != null)
+					{
+						mImage.ensureTileDataCached(mTile);
+					}
+					else
+					{
+						mImage.prefetchTile(mTile);
+					}
+				});
+			}
+			catch(TileLoadingCancelledException e)
+			{
+				// Nobody waits for the tile anymore, so the callback is not called.
+				mMetrics.recordCancelledTileLoad();
+				return;
+			}
+			finally
+			{
+				synchronized(this)
+				{
+					mFinished           = true;
+					dataUpdatedCallback = mDataUpdatedCallback;
+				}
+			}
+			
+			if(dataUpdatedCallback != null)
+			{
+				dataUpdatedCallback.accept(mTile);
+			}
+		}
+		
+		private synchronized Consumer<Tile> getDataUpdatedCallback()
+		{
+			return mDataUpdatedCallback;
+		}
 	}
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import virtualslideviewer.core.BufferedVirtualSlideImage;
+import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.util.ImageUtil;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * A prefetching strategy decorator which additionally prefetches the loaded part of the image at the neighbouring resolutions,
+ * so that zooming past the resolution transition does not start with the tiles of the new resolution missing.
+ *
+ * The number of the additional tiles is limited by a budget. The tiles of the coarser resolution are taken first, as there are fewer
+ * of them and they are also used to generate the placeholders, followed by the tiles of the finer resolution.
+ * At each resolution the tiles closest to the center of the loaded part come first.
+ */
+public class CrossResolutionPrefetchingStrategy implements PrefetchingStrategy
+{
+	private final PrefetchingStrategy mPrefetchingStrategy;
+	private final int                 mTileBudget;
+
+	/**
+	 * @param prefetchingStrategy The strategy whose tiles are prefetched at the resolution of the loaded part.
+	 * @param tileBudget          The maximum number of tiles prefetched at the neighbouring resolutions.
+	 */
+	public CrossResolutionPrefetchingStrategy(PrefetchingStrategy prefetchingStrategy, int tileBudget)
+	{
+		ParameterValidator.throwIfNull(prefetchingStrategy, "prefetchingStrategy");
+
+		if(tileBudget < 0)
+			throw new IllegalArgumentException("tileBudget cannot be negative.");
+
+		mPrefetchingStrategy = prefetchingStrategy;
+		mTileBudget          = tileBudget;
+	}
+
+	@Override
+	public List<Tile> getTilesToPrefetch(BufferedVirtualSlideImage image, Rectangle loadedImagePart, ImageIndex imageIndex)
+	{
+		Set<Tile> tilesToPrefetch = new LinkedHashSet<>(mPrefetchingStrategy.getTilesToPrefetch(image, loadedImagePart, imageIndex));
+
+		int remainingBudget = mTileBudget;
+		for(int resolutionChange : new int[] { -1, 1 })
+		{
+			int resIndex = imageIndex.getResolutionIndex() + resolutionChange;
+			if(resIndex < 0 || resIndex >= image.getResolutionCount())
+				continue;
+
+			for(Tile tile : getTilesAtResolution(image, loadedImagePart, imageIndex, resIndex))
+			{
+				if(remainingBudget == 0)
+					break;
+
+				if(tilesToPrefetch.add(tile))
+				{
+					remainingBudget--;
+				}
+			}
+		}
+
+		return new ArrayList<>(tilesToPrefetch);
+	}
+
+	/**
+	 * Returns the tiles of the loaded part of the image at different resolution, sorted by their distance to the center of the part.
+	 */
+	private List<Tile> getTilesAtResolution(BufferedVirtualSlideImage image, Rectangle loadedImagePart, ImageIndex imageIndex, int resIndex)
+	{
+		Rectangle partBounds = ImageUtil.scaleBoundsToMatchDifferentResolution(image, loadedImagePart, imageIndex.getResolutionIndex(), resIndex);
+		partBounds = partBounds.intersection(new Rectangle(image.getImageSize(resIndex)));
+
+		if(partBounds.isEmpty())
+			return Collections.emptyList();
+
+		ImageIndex resImageIndex = new ImageIndex(resIndex, imageIndex.getChannel(), imageIndex.getZPlane(), imageIndex.getTimePoint());
+		List<Tile> tiles         = ImageUtil.getTilesInArea(partBounds, image.getTileSize(resIndex), resImageIndex);
+
+		Point partCenter = new Point((int)partBounds.getCenterX(), (int)partBounds.getCenterY());
+
+		Collections.sort(tiles, Comparator.comparingDouble(tile ->
+		{
+			Rectangle tileBounds = tile.getBounds(image);
+
+			return partCenter.distanceSq(tileBounds.getCenterX(), tileBounds.getCenterY());
+		}));
+
+		return tiles;
+	}
+}
@@ -56,8 +56,8 @@ public class DifferentResolutionsTileGenerator implements LoadingTilePlaceholder
 		for(int currentRes = highestResToCheck; currentRes >= thumbnailResIndex; currentRes--)
 		{
 			Rectangle originalTileBounds  = tileToGenerate.getBounds(tileSource);
-			Rectangle tileBoundsInThisRes = scaleBoundsToMatchDifferentResolution(tileSource, originalTileBounds,
-			                                                                      tileToGenerate.getImageIndex().getResolutionIndex(), currentRes);
+			Rectangle tileBoundsInThisRes = ImageUtil.scaleBoundsToMatchDifferentResolution(tileSource, originalTileBounds,
+			                                                                                tileToGenerate.getImageIndex().getResolutionIndex(), currentRes);
 			
 			ImageIndex imageIndexAtThisRes = new ImageIndex(currentRes,
 			                                                tileToGenerate.getImageIndex().getChannel(),
@@ -84,8 +84,8 @@ public class DifferentResolutionsTileGenerator implements LoadingTilePlaceholder
 		int thumbnailResIndex           = ImageUtil.getResolutionIndexWithSizeNotBiggerThan(source, MAX_THUMBNAIL_SIZE);
 		
 		Rectangle tileBounds            = tileToGenerate.getBounds(source);
-		Rectangle tileBoundsInThumbnail = scaleBoundsToMatchDifferentResolution(source, tileBounds, tileToGenerate.getImageIndex().getResolutionIndex(),
-		                                                                        thumbnailResIndex);
+		Rectangle tileBoundsInThumbnail = ImageUtil.scaleBoundsToMatchDifferentResolution(source, tileBounds, tileToGenerate.getImageIndex().getResolutionIndex(),
+		                                                                                  thumbnailResIndex);
 		
 		ImageIndex thumbnailImageIndex = new ImageIndex(thumbnailResIndex,
 		                                                tileToGenerate.getImageIndex().getChannel(),
@@ -97,23 +97,6 @@ public class DifferentResolutionsTileGenerator implements LoadingTilePlaceholder
 		System.arraycopy(generatedTile, 0, dst, 0, generatedTile.length);	
 	}
 	
-	/**
-	 * Scales given bounds in original resolution to match the same region in different resolution.
-	 */
-	private Rectangle scaleBoundsToMatchDifferentResolution(VirtualSlideImage sourceImage, Rectangle originalBounds,
-	                                                        int originalResIndex, int newResIndex)
-	{
-		double scaleX = sourceImage.getImageSize(newResIndex).getWidth()  / sourceImage.getImageSize(originalResIndex).getWidth();
-		double scaleY = sourceImage.getImageSize(newResIndex).getHeight() / sourceImage.getImageSize(originalResIndex).getHeight();
-
-		int x      = (int)(originalBounds.x * scaleX);
-		int y      = (int)(originalBounds.y * scaleY);
-		int width  = (int)Math.ceil(originalBounds.width  * scaleX);
-		int height = (int)Math.ceil(originalBounds.height * scaleY);
-		
-		return new Rectangle(x, y, width, height);		
-	}
-	
 	private byte[] getScaledPixels(VirtualSlideImage source, Rectangle originalPixelsBounds, ImageIndex imageIndex, Dimension newSize)
 	{
 		BufferedImage originalImage = new BufferedImage(originalPixelsBounds.width, originalPixelsBounds.height,
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import virtualslideviewer.core.BufferedVirtualSlideImage;
+import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.util.ImageUtil;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * A prefetching strategy which predicts where the camera is heading and prefetches the tiles along the predicted trajectory.
+ *
+ * The motion of the camera is tracked from the changes of the loaded part of the image between the calls.
+ * The velocity of panning and the rate of zooming are smoothed over the recent changes and extrapolated over the prediction time.
+ * The tiles between the loaded part and its predicted position are prefetched, together with a margin around them.
+ * While zooming, the tiles at the predicted position are prefetched also at the next finer or coarser resolution,
+ * which will be displayed if the zooming continues.
+ *
+ * When the camera does not move, only the margin around the loaded part is prefetched.
+ */
+public class MotionPredictivePrefetchingStrategy implements PrefetchingStrategy
+{
+	private static final double SMOOTHING_FACTOR                = 0.5;
+
+	/**
+	 * A change after a longer pause starts a new motion instead of continuing the previous one.
+	 */
+	private static final long   MAX_MOTION_PAUSE_MILLIS         = 500;
+
+	/**
+	 * The maximum distance of the predicted position from the loaded part, in the sizes of the loaded part.
+	 */
+	private static final double MAX_PREDICTED_DISPLACEMENT      = 2.0;
+	private static final double MAX_PREDICTED_ZOOM_CHANGE       = 4.0;
+	private static final double RESOLUTION_CHANGE_ZOOM_CHANGE   = 1.25;
+	private static final double ROUNDING_TOLERANCE              = 1e-6;
+
+	private final long          mPredictionTimeMillis;
+	private final int           mMarginRadius;
+	private final LongSupplier  mClock;
+
+	private VirtualSlideImage   mPreviousImage        = null;
+	private ImageIndex          mPreviousImageIndex   = null;
+	private Rectangle2D         mPreviousRegion       = null;
+	private long                mPreviousChangeMillis = 0;
+
+	// In the sizes of the image per millisecond.
+	private double              mVelocityX            = 0;
+	private double              mVelocityY            = 0;
+
+	// The logarithm of zoom change per millisecond, positive when zooming in.
+	private double              mZoomRate             = 0;
+
+	/**
+	 * @param predictionTimeMillis How far into the future the motion of the camera is extrapolated.
+	 * @param marginRadius         The radius in pixels of the area prefetched around the predicted trajectory.
+	 */
+	public MotionPredictivePrefetchingStrategy(long predictionTimeMillis, int marginRadius)
+	{
+		this(predictionTimeMillis, marginRadius, System::currentTimeMillis);
+	}
+
+	MotionPredictivePrefetchingStrategy(long predictionTimeMillis, int marginRadius, LongSupplier clock)
+	{
+		if(predictionTimeMillis < 0)
+			throw new IllegalArgumentException("predictionTimeMillis cannot be negative.");
+
+		if(marginRadius < 0)
+			throw new IllegalArgumentException("marginRadius cannot be negative.");
+
+		ParameterValidator.throwIfNull(clock, "clock");
+
+		mPredictionTimeMillis = predictionTimeMillis;
+		mMarginRadius         = marginRadius;
+		mClock                = clock;
+	}
+
+	@Override
+	public synchronized List<Tile> getTilesToPrefetch(BufferedVirtualSlideImage image, Rectangle loadedImagePart, ImageIndex imageIndex)
+	{
+		Rectangle2D loadedRegion = toRelativeBounds(loadedImagePart, image.getImageSize(imageIndex.getResolutionIndex()));
+
+		updateMotion(image, imageIndex, loadedRegion);
+
+		Rectangle2D predictedRegion = predictRegion(loadedRegion);
+
+		List<Tile> tilesToPrefetch = new ArrayList<>();
+
+		addTilesInRegion(tilesToPrefetch, image, loadedRegion.createUnion(predictedRegion), imageIndex, loadedImagePart);
+
+		int nextResIndex = imageIndex.getResolutionIndex() + getPredictedResolutionChange();
+		if(nextResIndex != imageIndex.getResolutionIndex() && nextResIndex >= 0 && nextResIndex < image.getResolutionCount())
+		{
+			ImageIndex nextImageIndex = new ImageIndex(nextResIndex, imageIndex.getChannel(), imageIndex.getZPlane(), imageIndex.getTimePoint());
+
+			addTilesInRegion(tilesToPrefetch, image, predictedRegion, nextImageIndex, null);
+		}
+
+		return tilesToPrefetch;
+	}
+
+	private void updateMotion(VirtualSlideImage image, ImageIndex imageIndex, Rectangle2D loadedRegion)
+	{
+		long now = mClock.getAsLong();
+
+		if(!isSameView(image, imageIndex))
+		{
+			stopMotion();
+		}
+		else if(loadedRegion.equals(mPreviousRegion))
+		{
+			// The image is only being reloaded, for example after a tile has been loaded.
+			if(now - mPreviousChangeMillis > MAX_MOTION_PAUSE_MILLIS)
+			{
+				stopMotion();
+			}
+
+			return;
+		}
+		else if(now - mPreviousChangeMillis > MAX_MOTION_PAUSE_MILLIS)
+		{
+			stopMotion();
+		}
+		else
+		{
+			double elapsedMillis = Math.max(now - mPreviousChangeMillis, 1);
+
+			double velocityX = (loadedRegion.getCenterX() - mPreviousRegion.getCenterX()) / elapsedMillis;
+			double velocityY = (loadedRegion.getCenterY() - mPreviousRegion.getCenterY()) / elapsedMillis;
+			double zoomRate  = Math.log(mPreviousRegion.getWidth() / loadedRegion.getWidth()) / elapsedMillis;
+
+			mVelocityX = smooth(mVelocityX, velocityX);
+			mVelocityY = smooth(mVelocityY, velocityY);
+			mZoomRate  = smooth(mZoomRate,  zoomRate);
+		}
+
+		mPreviousImage        = image;
+		mPreviousImageIndex   = imageIndex;
+		mPreviousRegion       = loadedRegion;
+		mPreviousChangeMillis = now;
+	}
+
+	/**
+	 * Returns true if the image is the same as in the previous call and only its resolution could have changed.
+	 */
+	private boolean isSameView(VirtualSlideImage image, ImageIndex imageIndex)
+	{
+		return image                     == mPreviousImage                     &&
+		       imageIndex.getChannel()   == mPreviousImageIndex.getChannel()   &&
+		       imageIndex.getZPlane()    == mPreviousImageIndex.getZPlane()    &&
+		       imageIndex.getTimePoint() == mPreviousImageIndex.getTimePoint();
+	}
+
+	private void stopMotion()
+	{
+		mVelocityX = 0;
+		mVelocityY = 0;
+		mZoomRate  = 0;
+	}
+
+	private double smooth(double previousValue, double newValue)
+	{
+		return SMOOTHING_FACTOR * newValue + (1 - SMOOTHING_FACTOR) * previousValue;
+	}
+
+	private Rectangle2D predictRegion(Rectangle2D loadedRegion)
+	{
+		double maxDisplacementX = MAX_PREDICTED_DISPLACEMENT * loadedRegion.getWidth();
+		double maxDisplacementY = MAX_PREDICTED_DISPLACEMENT * loadedRegion.getHeight();
+
+		double displacementX = clamp(mVelocityX * mPredictionTimeMillis, -maxDisplacementX, maxDisplacementX);
+		double displacementY = clamp(mVelocityY * mPredictionTimeMillis, -maxDisplacementY, maxDisplacementY);
+		double zoomChange    = getPredictedZoomChange();
+
+		double width  = loadedRegion.getWidth()  / zoomChange;
+		double height = loadedRegion.getHeight() / zoomChange;
+
+		return new Rectangle2D.Double(loadedRegion.getCenterX() + displacementX - width  / 2,
+		                              loadedRegion.getCenterY() + displacementY - height / 2, width, height);
+	}
+
+	private double getPredictedZoomChange()
+	{
+		return clamp(Math.exp(mZoomRate * mPredictionTimeMillis), 1 / MAX_PREDICTED_ZOOM_CHANGE, MAX_PREDICTED_ZOOM_CHANGE);
+	}
+
+	/**
+	 * Returns 1 when the camera is zooming in, so that the next finer resolution will be needed, -1 when it is zooming out and 0 otherwise.
+	 */
+	private int getPredictedResolutionChange()
+	{
+		double zoomChange = getPredictedZoomChange();
+
+		if(zoomChange >= RESOLUTION_CHANGE_ZOOM_CHANGE)
+			return 1;
+
+		if(zoomChange <= 1 / RESOLUTION_CHANGE_ZOOM_CHANGE)
+			return -1;
+
+		return 0;
+	}
+
+	private double clamp(double value, double min, double max)
+	{
+		return Math.max(min, Math.min(value, max));
+	}
+
+	/**
+	 * Adds the tiles in the region extended by the margin, except the tiles intersecting the loaded part of the image.
+	 *
+	 * @param loadedImagePart The loaded part at the resolution of the image index or null if no tiles are excluded.
+	 */
+	private void addTilesInRegion(List<Tile> tiles, BufferedVirtualSlideImage image, Rectangle2D relativeRegion, ImageIndex imageIndex,
+	                              Rectangle loadedImagePart)
+	{
+		Dimension imageSize = image.getImageSize(imageIndex.getResolutionIndex());
+		Dimension tileSize  = image.getTileSize(imageIndex.getResolutionIndex());
+
+		Rectangle region = toAbsoluteBounds(relativeRegion, imageSize);
+		region.grow(mMarginRadius, mMarginRadius);
+		region = region.intersection(new Rectangle(imageSize));
+
+		if(region.isEmpty())
+			return;
+
+		Set<Tile> loadedTiles = new HashSet<>();
+		if(loadedImagePart != null)
+		{
+			loadedTiles.addAll(ImageUtil.getTilesInArea(loadedImagePart, tileSize, imageIndex));
+		}
+
+		for(Tile tile : ImageUtil.getTilesInArea(region, tileSize, imageIndex))
+		{
+			if(!loadedTiles.contains(tile))
+			{
+				tiles.add(tile);
+			}
+		}
+	}
+
+	private Rectangle2D toRelativeBounds(Rectangle bounds, Dimension imageSize)
+	{
+		return new Rectangle2D.Double(bounds.getX()      / imageSize.getWidth(), bounds.getY()      / imageSize.getHeight(),
+		                              bounds.getWidth()  / imageSize.getWidth(), bounds.getHeight() / imageSize.getHeight());
+	}
+
+	private Rectangle toAbsoluteBounds(Rectangle2D relativeBounds, Dimension imageSize)
+	{
+		// The rounding errors are ignored, so the bounds of a region which has not moved do not grow.
+		int x1 = (int)Math.floor(relativeBounds.getMinX() * imageSize.getWidth()  + ROUNDING_TOLERANCE);
+		int y1 = (int)Math.floor(relativeBounds.getMinY() * imageSize.getHeight() + ROUNDING_TOLERANCE);
+		int x2 = (int)Math.ceil(relativeBounds.getMaxX()  * imageSize.getWidth()  - ROUNDING_TOLERANCE);
+		int y2 = (int)Math.ceil(relativeBounds.getMaxY()  * imageSize.getHeight() - ROUNDING_TOLERANCE);
+
+		return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+	}
+}
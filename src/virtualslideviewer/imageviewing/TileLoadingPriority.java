@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * The order in which a tile is loaded by TileLoadingScheduler.
+ *
+ * The visible tiles are always loaded before the prefetched ones.
+ * Among the tiles of the same kind, the tiles at the resolution being displayed come first, followed by the tiles at
+ * the resolutions further and further from it. Finally, the tiles are ordered by their rank, such as the position
+ * in the order determined by TileLoadingPrioritizer.
+ */
+public class TileLoadingPriority implements Comparable<TileLoadingPriority>
+{
+	private final TilePriority mTilePriority;
+	private final int          mResolutionDistance;
+	private final int          mRank;
+
+	/**
+	 * @param tilePriority       The role of the tile, either visible or prefetched.
+	 * @param resolutionDistance The number of resolution levels between the resolution of the tile and the displayed resolution.
+	 * @param rank               The rank of the tile among the tiles of the same role and resolution distance. Lower rank is loaded first.
+	 */
+	public TileLoadingPriority(TilePriority tilePriority, int resolutionDistance, int rank)
+	{
+		ParameterValidator.throwIfNull(tilePriority, "tilePriority");
+
+		if(resolutionDistance < 0)
+			throw new IllegalArgumentException("resolutionDistance cannot be negative.");
+
+		mTilePriority       = tilePriority;
+		mResolutionDistance = resolutionDistance;
+		mRank               = rank;
+	}
+
+	/**
+	 * Returns the priority of a visible tile at the displayed resolution.
+	 */
+	public static TileLoadingPriority visible(int rank)
+	{
+		return new TileLoadingPriority(TilePriority.VISIBLE, 0, rank);
+	}
+
+	/**
+	 * Returns the priority of a prefetched tile.
+	 */
+	public static TileLoadingPriority prefetched(int resolutionDistance, int rank)
+	{
+		return new TileLoadingPriority(TilePriority.PREFETCHED, resolutionDistance, rank);
+	}
+
+	/**
+	 * Returns the role of the tile, which also determines the priority of the tile in cache.
+	 */
+	public TilePriority getTilePriority()
+	{
+		return mTilePriority;
+	}
+
+	/**
+	 * Returns true if the tile is needed to display the visible image.
+	 */
+	public boolean isVisible()
+	{
+		return mTilePriority.compareTo(TilePriority.VISIBLE) >= 0;
+	}
+
+	public int getResolutionDistance()
+	{
+		return mResolutionDistance;
+	}
+
+	public int getRank()
+	{
+		return mRank;
+	}
+
+	/**
+	 * Compares the priorities in the order of loading, i.e. the priority of a tile which should be loaded first is the lesser one.
+	 */
+	@Override
+	public int compareTo(TileLoadingPriority other)
+	{
+		if(mTilePriority != other.mTilePriority)
+			return other.mTilePriority.compareTo(mTilePriority);
+
+		if(mResolutionDistance != other.mResolutionDistance)
+			return Integer.compare(mResolutionDistance, other.mResolutionDistance);
+
+		return Integer.compare(mRank, other.mRank);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + mRank;
+		result = prime * result + mResolutionDistance;
+		result = prime * result + mTilePriority.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+			return true;
+		if(obj == null)
+			return false;
+		if(getClass() != obj.getClass())
+			return false;
+
+		TileLoadingPriority other = (TileLoadingPriority)obj;
+		return (mTilePriority == other.mTilePriority) && (mResolutionDistance == other.mResolutionDistance) && (mRank == other.mRank);
+	}
+
+	@Override
+	public String toString()
+	{
+		return mTilePriority + " (resolution distance " + mResolutionDistance + ", rank " + mRank + ")";
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * A pool of threads dedicated to loading tiles, which runs the tasks in the order of their priority instead of the order of submission.
+ *
+ * The priority of a task can be changed as long as the task has not been started, so the tasks can follow the camera
+ * without being cancelled and submitted again.
+ *
+ * The prefetching tasks are run only when there are no visible tiles waiting to be loaded. Moreover, the number of threads
+ * running prefetching tasks at the same time is limited, so that a visible tile requested while the tiles are being
+ * prefetched can be loaded without waiting for the prefetching to finish.
+ */
+public class TileLoadingScheduler
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(TileLoadingScheduler.class);
+
+	private final PriorityQueue<ScheduledTask> mQueue = new PriorityQueue<>();
+	private final int                          mMaxPrefetchingThreadCount;
+
+	private int                                mRunningPrefetchingTaskCount = 0;
+	private long                               mNextSequenceNumber          = 0;
+	private boolean                            mShutdown                    = false;
+
+	/**
+	 * @param threadCount               The number of threads loading the tiles.
+	 * @param maxPrefetchingThreadCount The maximum number of threads which can prefetch tiles at the same time.
+	 */
+	public TileLoadingScheduler(int threadCount, int maxPrefetchingThreadCount)
+	{
+		if(threadCount <= 0)
+			throw new IllegalArgumentException("threadCount has to be positive.");
+
+		if(maxPrefetchingThreadCount <= 0 || maxPrefetchingThreadCount > threadCount)
+			throw new IllegalArgumentException("maxPrefetchingThreadCount has to be positive and not greater than threadCount.");
+
+		mMaxPrefetchingThreadCount = maxPrefetchingThreadCount;
+
+		for(int i = 0; i < threadCount; i++)
+		{
+			Thread worker = new Thread(this::runTasks, "Tile loader " + (i + 1));
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Schedules a task for execution.
+	 *
+	 * @param task     The task to run.
+	 * @param priority The initial priority of the task.
+	 *
+	 * @return The handle which can be used to change the priority of the task or to cancel it.
+	 */
+	public ScheduledTask submit(Runnable task, TileLoadingPriority priority)
+	{
+		ParameterValidator.throwIfNull(task, "task");
+		ParameterValidator.throwIfNull(priority, "priority");
+
+		synchronized(mQueue)
+		{
+			if(mShutdown)
+				throw new IllegalStateException("The scheduler has been shut down.");
+
+			ScheduledTask scheduledTask = new ScheduledTask(this, task, priority, mNextSequenceNumber++);
+
+			mQueue.add(scheduledTask);
+			mQueue.notifyAll();
+
+			return scheduledTask;
+		}
+	}
+
+	/**
+	 * Discards all not yet started tasks and stops the threads after they finish their current tasks.
+	 */
+	public void shutdown()
+	{
+		synchronized(mQueue)
+		{
+			mShutdown = true;
+
+			for(ScheduledTask task : mQueue)
+			{
+				task.mQueued = false;
+			}
+
+			mQueue.clear();
+			mQueue.notifyAll();
+		}
+	}
+
+	private void runTasks()
+	{
+		try
+		{
+			ScheduledTask task;
+			while((task = takeNextTask()) != null)
+			{
+				try
+				{
+					task.mTask.run();
+				}
+				catch(RuntimeException e)
+				{
+					LOGGER.error("Loading of a tile failed.", e);
+				}
+				finally
+				{
+					finishTask(task);
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private ScheduledTask takeNextTask() throws InterruptedException
+	{
+		synchronized(mQueue)
+		{
+			while(!mShutdown)
+			{
+				ScheduledTask task = mQueue.peek();
+
+				if(task != null && (task.mPriority.isVisible() || mRunningPrefetchingTaskCount < mMaxPrefetchingThreadCount))
+				{
+					mQueue.poll();
+
+					task.mQueued             = false;
+					task.mRunningPrefetching = !task.mPriority.isVisible();
+
+					if(task.mRunningPrefetching)
+					{
+						mRunningPrefetchingTaskCount++;
+					}
+
+					return task;
+				}
+
+				mQueue.wait();
+			}
+
+			return null;
+		}
+	}
+
+	private void finishTask(ScheduledTask task)
+	{
+		if(!task.mRunningPrefetching)
+			return;
+
+		synchronized(mQueue)
+		{
+			mRunningPrefetchingTaskCount--;
+			mQueue.notifyAll();
+		}
+	}
+
+	/**
+	 * A handle of a task submitted to the scheduler.
+	 */
+	public static class ScheduledTask implements Comparable<ScheduledTask>
+	{
+		private final TileLoadingScheduler mScheduler;
+		private final Runnable             mTask;
+		private final long                 mSequenceNumber;
+
+		// Guarded by the queue of the scheduler.
+		private TileLoadingPriority        mPriority;
+		private boolean                    mQueued             = true;
+		private boolean                    mRunningPrefetching = false;
+
+		private ScheduledTask(TileLoadingScheduler scheduler, Runnable task, TileLoadingPriority priority, long sequenceNumber)
+		{
+			mScheduler      = scheduler;
+			mTask           = task;
+			mPriority       = priority;
+			mSequenceNumber = sequenceNumber;
+		}
+
+		/**
+		 * Changes the priority of the task.
+		 *
+		 * @return False if the task has been already started or cancelled, so its priority could not be changed.
+		 */
+		public boolean reprioritize(TileLoadingPriority newPriority)
+		{
+			ParameterValidator.throwIfNull(newPriority, "newPriority");
+
+			PriorityQueue<ScheduledTask> queue = mScheduler.mQueue;
+			synchronized(queue)
+			{
+				if(!mQueued)
+					return false;
+
+				if(!mPriority.equals(newPriority))
+				{
+					queue.remove(this);
+					mPriority = newPriority;
+					queue.add(this);
+					queue.notifyAll();
+				}
+
+				return true;
+			}
+		}
+
+		/**
+		 * Removes the task from the queue if it has not been started yet.
+		 *
+		 * A task which is already running is not interrupted.
+		 *
+		 * @return False if the task has been already started or cancelled.
+		 */
+		public boolean cancel()
+		{
+			PriorityQueue<ScheduledTask> queue = mScheduler.mQueue;
+			synchronized(queue)
+			{
+				if(!mQueued)
+					return false;
+
+				queue.remove(this);
+				mQueued = false;
+				return true;
+			}
+		}
+
+		/**
+		 * Returns the current priority of the task.
+		 */
+		public TileLoadingPriority getPriority()
+		{
+			synchronized(mScheduler.mQueue)
+			{
+				return mPriority;
+			}
+		}
+
+		@Override
+		public int compareTo(ScheduledTask other)
+		{
+			int priorityComparison = mPriority.compareTo(other.mPriority);
+			if(priorityComparison != 0)
+				return priorityComparison;
+
+			return Long.compare(mSequenceNumber, other.mSequenceNumber);
+		}
+	}
+}
@@ -17,10 +17,16 @@
 
 package virtualslideviewer.imageviewing;
 
-import java.awt.Rectangle;
+import java.awt.Rectangle;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.function.Consumer;
 
 import virtualslideviewer.core.BufferedVirtualSlideImage;
 import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.util.ParameterValidator;
 
 /**
  * An interface for objects which can be used to load currently visible part of a virtual slide image.
@@ -40,9 +46,52 @@ public interface VisibleImageLoader
 	 * @param dst                 Buffer which will receive already the data.
 	 * @param visibleImageBounds  The bounds of currently visible image.
 	 * @param imageIndex          The image index from which to retrieve data.
-	 * @param dataUpdatedCallback A callback which will be called when new data has been made available.
+	 * @param dataUpdatedCallback A callback which will be called with a tile whose data has been made available.
 	 *                            The callback may be called from a <b>different thread</b>.
 	 */
-	void getVisibleImageData(BufferedVirtualSlideImage image, byte[] dst, Rectangle visibleImageBounds, ImageIndex imageIndex,
-	                         Runnable dataUpdatedCallback);
+	default void getVisibleImageData(BufferedVirtualSlideImage image, byte[] dst, Rectangle visibleImageBounds, ImageIndex imageIndex,
+	                                 Consumer<Tile> dataUpdatedCallback)
+	{
+		ParameterValidator.throwIfNull(image, "image");
+		ParameterValidator.throwIfNull(dst, "dst");
+		ParameterValidator.throwIfNull(visibleImageBounds, "visibleImageBounds");
+		
+		int   channelCount = (image.isRGB() ? 3 : 1);
+		int[] bandOffsets  = (image.isRGB() ? new int[] { 0, 1, 2 } : new int[] { 0 });
+		
+		if(dst.length < visibleImageBounds.width * visibleImageBounds.height * channelCount)
+			throw new IllegalArgumentException("Destination buffer is too small.");
+		
+		WritableRaster dstRaster = Raster.createInterleavedRaster(new DataBufferByte(dst, dst.length),
+		                                                          visibleImageBounds.width, visibleImageBounds.height,
+		                                                          visibleImageBounds.width * channelCount, channelCount, bandOffsets, null);
+		
+		getVisibleImageData(image, dstRaster, visibleImageBounds, imageIndex, dataUpdatedCallback);
+	}
+	
+	/**
+	 * Loads visible part of pixels from the image directly into a raster, such as the raster of an image used for rendering.
+	 * 
+	 * The raster has to store its pixels interleaved in bytes, in RGB or BGR order for RGB images.
+	 * Its rows can be longer than the visible image, so it can be a part of a bigger image.
+	 * 
+	 * @param dst Raster which will receive the data. Its upper left pixel receives the upper left pixel of visible image.
+	 * 
+	 * @see #getVisibleImageData(BufferedVirtualSlideImage, byte[], Rectangle, ImageIndex, Consumer)
+	 */
+	void getVisibleImageData(BufferedVirtualSlideImage image, WritableRaster dst, Rectangle visibleImageBounds, ImageIndex imageIndex,
+	                         Consumer<Tile> dataUpdatedCallback);
+	
+	/**
+	 * Loads visible part of the image tile by tile, passing the data of every visible tile to the consumer.
+	 * 
+	 * It works the same way as loading into a buffer, but the consumer decides what to do with the data of each tile
+	 * and which tiles it needs at all.
+	 * 
+	 * @param consumer The consumer of the data of visible tiles. It is called only during this call.
+	 * 
+	 * @see #getVisibleImageData(BufferedVirtualSlideImage, byte[], Rectangle, ImageIndex, Consumer)
+	 */
+	void getVisibleTiles(BufferedVirtualSlideImage image, Rectangle visibleImageBounds, ImageIndex imageIndex,
+	                     VisibleTileConsumer consumer, Consumer<Tile> dataUpdatedCallback);
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+
+import virtualslideviewer.core.Tile;
+
+/**
+ * A receiver of the data of visible tiles, used to process the visible image tile by tile instead of as a single buffer.
+ * 
+ * @see VisibleImageLoader#getVisibleTiles(virtualslideviewer.core.BufferedVirtualSlideImage, Rectangle,
+ *      virtualslideviewer.core.ImageIndex, VisibleTileConsumer, java.util.function.Consumer)
+ */
+public interface VisibleTileConsumer
+{
+	/**
+	 * Called for every visible tile, in the order in which the tiles are loaded, to check whether the data of the tile is needed.
+	 * 
+	 * It allows the consumer to skip the tiles whose data it already has, without accessing the cache.
+	 * 
+	 * @param tile       The visible tile.
+	 * @param tileBounds The bounds of the tile in the image.
+	 * 
+	 * @return True if the data of the tile should be passed to {@link #acceptTileData(Tile, Rectangle, ByteBuffer, boolean)}.
+	 */
+	boolean isTileDataNeeded(Tile tile, Rectangle tileBounds);
+	
+	/**
+	 * Called for every needed tile which is not in cache, to check whether a placeholder should be generated for the tile.
+	 * 
+	 * It allows the consumer to skip generating placeholders of the tiles which it can show in another way until they are loaded.
+	 * The tile is loaded regardless of the result.
+	 * 
+	 * @param tile       The visible tile.
+	 * @param tileBounds The bounds of the tile in the image.
+	 * 
+	 * @return True if a placeholder of the tile should be passed to {@link #acceptTileData(Tile, Rectangle, ByteBuffer, boolean)}.
+	 */
+	default boolean isPlaceholderNeeded(Tile tile, Rectangle tileBounds)
+	{
+		return true;
+	}
+	
+	/**
+	 * Receives the data of a visible tile.
+	 * 
+	 * The data of a cached tile is passed while the cache can be locked, so the method must only copy the data.
+	 * Any further processing, like drawing the tile, should be done after the data has been copied, out of this method.
+	 * 
+	 * @param tile        The visible tile.
+	 * @param tileBounds  The bounds of the tile in the image.
+	 * @param tileData    The data of the tile, starting at current position of the buffer.
+	 *                    The buffer is valid only during the call.
+	 * @param placeholder True if the data is a placeholder generated while the tile is being loaded.
+	 */
+	void acceptTileData(Tile tile, Rectangle tileBounds, ByteBuffer tileData, boolean placeholder);
+}
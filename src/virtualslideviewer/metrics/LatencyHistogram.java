@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of durations with buckets whose bounds are successive powers of two nanoseconds.
+ *
+ * Recording a value only increments a few atomic counters, so it can be used on hot paths.
+ * The percentiles are approximate - they are the upper bounds of the buckets the percentiles fall into.
+ */
+public class LatencyHistogram
+{
+	private static final int BUCKET_COUNT = Long.SIZE;
+
+	// Bucket i holds the durations in the range [2^(i-1), 2^i) nanoseconds, bucket 0 holds zeros.
+	private final AtomicLongArray mBuckets    = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong      mCount      = new AtomicLong();
+	private final AtomicLong      mTotalNanos = new AtomicLong();
+	private final AtomicLong      mMaxNanos   = new AtomicLong();
+
+	/**
+	 * Records a single duration.
+	 *
+	 * @param nanos Duration in nanoseconds. Negative values are treated as zero.
+	 */
+	public void record(long nanos)
+	{
+		nanos = Math.max(nanos, 0);
+
+		mBuckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+		mCount.incrementAndGet();
+		mTotalNanos.addAndGet(nanos);
+		mMaxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public long getCount()
+	{
+		return mCount.get();
+	}
+
+	public long getTotalNanos()
+	{
+		return mTotalNanos.get();
+	}
+
+	public long getMaxNanos()
+	{
+		return mMaxNanos.get();
+	}
+
+	public long getMeanNanos()
+	{
+		long count = getCount();
+
+		return (count > 0) ? getTotalNanos() / count : 0;
+	}
+
+	/**
+	 * Returns an upper bound of the specified percentile of the recorded durations.
+	 *
+	 * @param percentile Percentile in the range (0, 100].
+	 *
+	 * @return Duration in nanoseconds, or 0 when nothing has been recorded.
+	 */
+	public long getPercentileNanos(double percentile)
+	{
+		if(percentile <= 0 || percentile > 100)
+			throw new IllegalArgumentException("percentile has to be in range (0, 100].");
+
+		long count = getCount();
+		if(count == 0)
+			return 0;
+
+		long rank       = (long)Math.ceil(count * percentile / 100);
+		long cumulative = 0;
+
+		for(int i = 0; i < BUCKET_COUNT; i++)
+		{
+			cumulative += mBuckets.get(i);
+			if(cumulative >= rank)
+				return Math.min(getBucketUpperBound(i), getMaxNanos());
+		}
+
+		// The counters are updated independently, so a concurrent record() can make the count ahead of the buckets.
+		return getMaxNanos();
+	}
+
+	private static long getBucketUpperBound(int bucketIndex)
+	{
+		return (bucketIndex < Long.SIZE - 1) ? (1L << bucketIndex) - 1 : Long.MAX_VALUE;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("count = %d, mean = %.3f ms, p50 <= %.3f ms, p99 <= %.3f ms, max = %.3f ms", getCount(),
+		                     toMillis(getMeanNanos()), toMillis(getPercentileNanos(50)), toMillis(getPercentileNanos(99)),
+		                     toMillis(getMaxNanos()));
+	}
+
+	private static double toMillis(long nanos)
+	{
+		return (double)nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters and latency histograms of the tile loading path.
+ *
+ * <p>
+ * The metrics show how well the cache and the prefetching work: the hit rate of the tile cache, the time of decoding tiles
+ * at every resolution, the contention on the pool of readers, how many tiles were displayed as placeholders, how many
+ * prefetched tiles were never displayed and how much the compression of cached tiles gains and costs.
+ *
+ * <p>
+ * The metrics of the application are collected in a single global instance. They can be read through JMX
+ * and periodically written to the log.
+ */
+public class TileMetrics implements TileMetricsMBean
+{
+	private static final Logger      LOGGER      = LoggerFactory.getLogger(TileMetrics.class);
+	private static final String      OBJECT_NAME = "virtualslideviewer:type=TileMetrics";
+	private static final TileMetrics INSTANCE    = new TileMetrics();
+
+	private final AtomicLong                                mCacheHitCount              = new AtomicLong();
+	private final AtomicLong                                mCacheMissCount             = new AtomicLong();
+	private final AtomicLong                                mCacheServedTileCount       = new AtomicLong();
+	private final AtomicLong                                mPlaceholderServedTileCount = new AtomicLong();
+	private final AtomicLong                                mPrefetchedTileCount        = new AtomicLong();
+	private final AtomicLong                                mPrefetchedTileViewedCount  = new AtomicLong();
+	private final AtomicLong                                mCancelledTileLoadCount     = new AtomicLong();
+	private final AtomicLong                                mUncompressedTileBytes      = new AtomicLong();
+	private final AtomicLong                                mCompressedTileBytes        = new AtomicLong();
+
+	private final LatencyHistogram                          mReaderPoolBorrowWait       = new LatencyHistogram();
+	private final ConcurrentMap<Integer, LatencyHistogram> mDecodeTimes                = new ConcurrentHashMap<>();
+	private final LatencyHistogram                          mCompressionTime            = new LatencyHistogram();
+	private final LatencyHistogram                          mDecompressionTime          = new LatencyHistogram();
+
+	/**
+	 * Returns the metrics of the application.
+	 */
+	public static TileMetrics getInstance()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * Records a tile served from the tile cache without decoding it.
+	 */
+	public void recordCacheHit()
+	{
+		mCacheHitCount.incrementAndGet();
+	}
+
+	/**
+	 * Records a tile which had to be decoded, as it was not in the tile cache.
+	 */
+	public void recordCacheMiss()
+	{
+		mCacheMissCount.incrementAndGet();
+	}
+
+	/**
+	 * Records a tile which became visible and was displayed using the cached data.
+	 */
+	public void recordCacheServedTile()
+	{
+		mCacheServedTileCount.incrementAndGet();
+	}
+
+	/**
+	 * Records a tile which became visible and was displayed as a placeholder, as its data was not in cache yet.
+	 */
+	public void recordPlaceholderServedTile()
+	{
+		mPlaceholderServedTileCount.incrementAndGet();
+	}
+
+	/**
+	 * Records a tile decoded by prefetching.
+	 */
+	public void recordPrefetchedTile()
+	{
+		mPrefetchedTileCount.incrementAndGet();
+	}
+
+	/**
+	 * Records the first use of a prefetched tile.
+	 */
+	public void recordPrefetchedTileViewed()
+	{
+		mPrefetchedTileViewedCount.incrementAndGet();
+	}
+	
+	/**
+	 * Records a loading of a tile abandoned while running, because the tile was no longer needed.
+	 */
+	public void recordCancelledTileLoad()
+	{
+		mCancelledTileLoadCount.incrementAndGet();
+	}
+
+	/**
+	 * Records the time spent waiting for a reader from the pool of readers.
+	 */
+	public void recordReaderPoolBorrowWait(long nanos)
+	{
+		mReaderPoolBorrowWait.record(nanos);
+	}
+
+	/**
+	 * Records the time of decoding a tile of specified resolution.
+	 */
+	public void recordDecodeTime(int resIndex, long nanos)
+	{
+		mDecodeTimes.computeIfAbsent(resIndex, x -> new LatencyHistogram()).record(nanos);
+	}
+
+	/**
+	 * Records a compression of a tile added to the cache.
+	 */
+	public void recordTileCompression(int uncompressedBytes, int compressedBytes, long nanos)
+	{
+		mUncompressedTileBytes.addAndGet(uncompressedBytes);
+		mCompressedTileBytes.addAndGet(compressedBytes);
+		mCompressionTime.record(nanos);
+	}
+
+	/**
+	 * Records a decompression of a tile read from the cache.
+	 */
+	public void recordTileDecompression(long nanos)
+	{
+		mDecompressionTime.record(nanos);
+	}
+
+	@Override
+	public long getCacheHitCount()
+	{
+		return mCacheHitCount.get();
+	}
+
+	@Override
+	public long getCacheMissCount()
+	{
+		return mCacheMissCount.get();
+	}
+
+	@Override
+	public double getCacheHitRate()
+	{
+		long hitCount    = getCacheHitCount();
+		long lookupCount = hitCount + getCacheMissCount();
+
+		return (lookupCount > 0) ? (double)hitCount / lookupCount : 0.0;
+	}
+
+	@Override
+	public long getCacheServedTileCount()
+	{
+		return mCacheServedTileCount.get();
+	}
+
+	@Override
+	public long getPlaceholderServedTileCount()
+	{
+		return mPlaceholderServedTileCount.get();
+	}
+
+	@Override
+	public long getPrefetchedTileCount()
+	{
+		return mPrefetchedTileCount.get();
+	}
+
+	/**
+	 * Returns the number of prefetched tiles which have not been used so far.
+	 */
+	@Override
+	public long getPrefetchedTileNotViewedCount()
+	{
+		return Math.max(getPrefetchedTileCount() - mPrefetchedTileViewedCount.get(), 0);
+	}
+
+	@Override
+	public long getCancelledTileLoadCount()
+	{
+		return mCancelledTileLoadCount.get();
+	}
+	
+	@Override
+	public long getReaderPoolBorrowCount()
+	{
+		return mReaderPoolBorrowWait.getCount();
+	}
+
+	@Override
+	public long getReaderPoolBorrowWaitMeanMicros()
+	{
+		return TimeUnit.NANOSECONDS.toMicros(mReaderPoolBorrowWait.getMeanNanos());
+	}
+
+	@Override
+	public long getReaderPoolBorrowWaitMaxMicros()
+	{
+		return TimeUnit.NANOSECONDS.toMicros(mReaderPoolBorrowWait.getMaxNanos());
+	}
+
+	@Override
+	public long getDecodedTileCount()
+	{
+		return mDecodeTimes.values().stream().mapToLong(LatencyHistogram::getCount).sum();
+	}
+
+	@Override
+	public long getDecodeTimeMeanMicros()
+	{
+		long count      = getDecodedTileCount();
+		long totalNanos = mDecodeTimes.values().stream().mapToLong(LatencyHistogram::getTotalNanos).sum();
+
+		return (count > 0) ? TimeUnit.NANOSECONDS.toMicros(totalNanos / count) : 0;
+	}
+
+	@Override
+	public String getDecodeTimesPerResolution()
+	{
+		StringBuilder summary = new StringBuilder();
+
+		for(Map.Entry<Integer, LatencyHistogram> decodeTime : new TreeMap<>(mDecodeTimes).entrySet())
+		{
+			summary.append(String.format("%n  res %d: %s", decodeTime.getKey(), decodeTime.getValue()));
+		}
+
+		return summary.toString();
+	}
+
+	@Override
+	public long getCompressedTileCount()
+	{
+		return mCompressionTime.getCount();
+	}
+
+	/**
+	 * Returns how many times the data of tiles added to the cache has been made smaller by the compression.
+	 */
+	@Override
+	public double getCompressionRatio()
+	{
+		long compressedBytes = mCompressedTileBytes.get();
+
+		return (compressedBytes > 0) ? (double)mUncompressedTileBytes.get() / compressedBytes : 1.0;
+	}
+
+	@Override
+	public long getCompressionTimeMeanMicros()
+	{
+		return TimeUnit.NANOSECONDS.toMicros(mCompressionTime.getMeanNanos());
+	}
+
+	@Override
+	public long getDecompressedTileCount()
+	{
+		return mDecompressionTime.getCount();
+	}
+
+	@Override
+	public long getDecompressionTimeMeanMicros()
+	{
+		return TimeUnit.NANOSECONDS.toMicros(mDecompressionTime.getMeanNanos());
+	}
+
+	@Override
+	public String getSummary()
+	{
+		return String.format("Tile cache: %d hits, %d misses, hit rate %.1f%%%n" +
+		                     "Visible tiles: %d served from cache, %d served as placeholders%n" +
+		                     "Prefetched tiles: %d, not viewed so far %d%n" +
+		                     "Tile loads cancelled while running: %d%n" +
+		                     "Reader pool borrow wait: %s%n" +
+		                     "Decode time per resolution:%s%n" +
+		                     "Tile compression ratio %.2f%n" +
+		                     "Tile compression time: %s%n" +
+		                     "Tile decompression time: %s",
+		                     getCacheHitCount(), getCacheMissCount(), getCacheHitRate() * 100,
+		                     getCacheServedTileCount(), getPlaceholderServedTileCount(),
+		                     getPrefetchedTileCount(), getPrefetchedTileNotViewedCount(),
+		                     getCancelledTileLoadCount(),
+		                     mReaderPoolBorrowWait, getDecodeTimesPerResolution(),
+		                     getCompressionRatio(), mCompressionTime, mDecompressionTime);
+	}
+
+	/**
+	 * Makes the metrics available through JMX.
+	 */
+	public void registerMBean()
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		}
+		catch(JMException e)
+		{
+			LOGGER.warn("Tile metrics could not be registered in JMX.", e);
+		}
+	}
+
+	/**
+	 * Starts writing the summary of metrics to the log at the INFO level in a background thread.
+	 *
+	 * @param intervalSeconds The interval between consecutive writes in seconds.
+	 */
+	public void startPeriodicLogging(long intervalSeconds)
+	{
+		if(intervalSeconds <= 0)
+			throw new IllegalArgumentException("intervalSeconds has to be positive.");
+
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task ->
+		                                     {
+		                                        Thread thread = new Thread(task, "Tile metrics logger");
+		                                        thread.setDaemon(true);
+		                                        return thread;
+		                                     });
+
+		scheduler.scheduleAtFixedRate(() -> LOGGER.info("Tile metrics:{}{}", System.lineSeparator(), getSummary()),
+		                              intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.metrics;
+
+/**
+ * JMX view of the tile metrics.
+ *
+ * The durations are in microseconds.
+ */
+public interface TileMetricsMBean
+{
+	long getCacheHitCount();
+	long getCacheMissCount();
+	double getCacheHitRate();
+
+	long getCacheServedTileCount();
+	long getPlaceholderServedTileCount();
+
+	long getPrefetchedTileCount();
+	long getPrefetchedTileNotViewedCount();
+
+	long getCancelledTileLoadCount();
+	
+	long getReaderPoolBorrowCount();
+	long getReaderPoolBorrowWaitMeanMicros();
+	long getReaderPoolBorrowWaitMaxMicros();
+
+	long getDecodedTileCount();
+	long getDecodeTimeMeanMicros();
+
+	/**
+	 * Returns the summary of decode times of every resolution.
+	 */
+	String getDecodeTimesPerResolution();
+
+	long getCompressedTileCount();
+	double getCompressionRatio();
+	long getCompressionTimeMeanMicros();
+	long getDecompressedTileCount();
+	long getDecompressionTimeMeanMicros();
+
+	/**
+	 * Returns the summary of all metrics.
+	 */
+	String getSummary();
+}
@@ -44,12 +44,13 @@ public class MainPanel extends JPanel
 
 	private final ImagePresentationModel mImagePresentationModel;
 	
-	public MainPanel(JComponent imageListPanel, ImagePresentationModel imagePresentationModel)
+	public MainPanel(JComponent imageListPanel, ImagePresentationModel imagePresentationModel,
+	                 ImageRenderingPanel.RenderingMode renderingMode, int maxFrameRate)
 	{
 		mImagePresentationModel = imagePresentationModel;
 		
 		mImageIndexControlPanel = new ImageIndexControlPanel(mImagePresentationModel);
-		mImageRenderingPanel    = new ImageRenderingPanel(mImagePresentationModel);
+		mImageRenderingPanel    = new ImageRenderingPanel(mImagePresentationModel, renderingMode, maxFrameRate);
 		mImageListPanel         = imageListPanel;
 		mImagePreviewPanel      = new ImagePreviewPanel(mImagePresentationModel);		
 		
@@ -21,12 +21,15 @@ import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 
 import virtualslideviewer.core.BufferedVirtualSlideImage;
 import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
 import virtualslideviewer.imageviewing.VisibleImageLoader;
+import virtualslideviewer.imageviewing.VisibleTileConsumer;
 import virtualslideviewer.util.ImageUtil;
 import virtualslideviewer.util.ParameterValidator;
 
@@ -38,16 +41,210 @@ public class ImagePresentationModel
 	public interface Listener
 	{
 		/**
-		 * Called when content of visible part of an image has changed either due to camera movement or new data availability.
+		 * Called when content of visible part of an image has changed due to camera movement.
 		 */
 		public void onVisibleImageContentUpdate();
 		
+		/**
+		 * Called when the data of a tile requested during loading of visible image has been loaded.
+		 * 
+		 * The call can come from a <b>different thread</b>. The tile might be no longer visible when the call arrives,
+		 * {@link Snapshot#getTileBoundsInViewport(Tile)} tells where the tile is visible.
+		 * 
+		 * @param tile The loaded tile.
+		 */
+		public default void onVisibleTileUpdate(Tile tile) {}
+		
 		/**
 		 * Called when the image to render has been changed.
 		 */
 		public void onImageChange();
 	}
 	
+	/**
+	 * An immutable snapshot of the state of visible image.
+	 * 
+	 * The snapshot allows to load and render the visible image outside of the Event Dispatch Thread,
+	 * while the camera is being moved by the Event Dispatch Thread.
+	 * 
+	 * @see ImagePresentationModel#getVisibleImageSnapshot()
+	 */
+	public static class Snapshot
+	{
+		private final BufferedVirtualSlideImage mImage;
+		private final ImageIndex                mImageIndex;
+		private final Rectangle                 mImageDataBounds;
+		private final Dimension                 mVisibleImageRegionSize;
+		private final Dimension                 mViewportSize;
+		
+		private Snapshot(BufferedVirtualSlideImage image, ImageIndex imageIndex, Rectangle imageDataBounds,
+		                 Dimension visibleImageRegionSize, Dimension viewportSize)
+		{
+			mImage                  = image;
+			mImageIndex             = imageIndex;
+			mImageDataBounds        = imageDataBounds;
+			mVisibleImageRegionSize = visibleImageRegionSize;
+			mViewportSize           = viewportSize;
+		}
+		
+		/**
+		 * Gets the index of the image, including the resolution, from which the visible image is loaded.
+		 */
+		public ImageIndex getImageIndex()
+		{
+			return mImageIndex;
+		}
+		
+		/**
+		 * @see ImagePresentationModel#getImageDataBounds()
+		 */
+		public Rectangle getImageDataBounds()
+		{
+			return new Rectangle(mImageDataBounds);
+		}
+		
+		/**
+		 * @see ImagePresentationModel#getImageDataSize()
+		 */
+		public Dimension getImageDataSize()
+		{
+			return mImageDataBounds.getSize();
+		}
+		
+		/**
+		 * @see ImagePresentationModel#getVisibleImageRegionSize()
+		 */
+		public Dimension getVisibleImageRegionSize()
+		{
+			return new Dimension(mVisibleImageRegionSize);
+		}
+		
+		/**
+		 * Gets the size of the viewport into which the visible part of image is rendered.
+		 */
+		public Dimension getViewportSize()
+		{
+			return new Dimension(mViewportSize);
+		}
+		
+		/**
+		 * @see ImagePresentationModel#isImageRGB()
+		 */
+		public boolean isImageRGB()
+		{
+			return mImage.isRGB();
+		}
+		
+		/**
+		 * Gets the bounds of a tile in the viewport.
+		 * 
+		 * @return The bounds of the part of viewport covered by the tile, or null if the tile is not visible.
+		 */
+		public Rectangle getTileBoundsInViewport(Tile tile)
+		{
+			ParameterValidator.throwIfNull(tile, "tile");
+			
+			if(!tile.getImageIndex().equals(mImageIndex))
+				return null;
+			
+			Rectangle tileBounds = tile.getBounds(mImage);
+			if(!tileBounds.intersects(mImageDataBounds))
+				return null;
+			
+			return imageDataToViewportBounds(tileBounds);
+		}
+		
+		/**
+		 * Converts bounds in the coordinates of image data into the bounds in the viewport in which the visible image is rendered.
+		 * 
+		 * The visible image is scaled to {@link #getVisibleImageRegionSize()} and centered in the viewport.
+		 * The edges are rounded to whole pixels independently, so adjacent bounds are converted into adjacent bounds.
+		 * 
+		 * @param boundsInImageData Bounds in the same coordinates as {@link #getImageDataBounds()}.
+		 */
+		public Rectangle imageDataToViewportBounds(Rectangle boundsInImageData)
+		{
+			ParameterValidator.throwIfNull(boundsInImageData, "boundsInImageData");
+			
+			Point imagePos = ImageUtil.getCenteredPosition(mVisibleImageRegionSize, mViewportSize);
+			
+			double scaleX = mVisibleImageRegionSize.getWidth()  / mImageDataBounds.getWidth();
+			double scaleY = mVisibleImageRegionSize.getHeight() / mImageDataBounds.getHeight();
+			
+			int left   = imagePos.x + (int)Math.round((boundsInImageData.x - mImageDataBounds.x) * scaleX);
+			int top    = imagePos.y + (int)Math.round((boundsInImageData.y - mImageDataBounds.y) * scaleY);
+			int right  = imagePos.x + (int)Math.round((boundsInImageData.x + boundsInImageData.width  - mImageDataBounds.x) * scaleX);
+			int bottom = imagePos.y + (int)Math.round((boundsInImageData.y + boundsInImageData.height - mImageDataBounds.y) * scaleY);
+			
+			return new Rectangle(left, top, right - left, bottom - top);
+		}
+		
+		/**
+		 * Gets the bounds of the part of the viewport into which the visible image is rendered.
+		 */
+		public Rectangle getVisibleImageRegionBoundsInViewport()
+		{
+			return new Rectangle(ImageUtil.getCenteredPosition(mVisibleImageRegionSize, mViewportSize), mVisibleImageRegionSize);
+		}
+		
+		/**
+		 * Checks whether another snapshot shows the same image, possibly at a different resolution and in a different part.
+		 */
+		public boolean showsSameImageAs(Snapshot other)
+		{
+			ParameterValidator.throwIfNull(other, "other");
+			
+			return mImage == other.mImage && mImageIndex.getChannel()   == other.mImageIndex.getChannel() &&
+			                                 mImageIndex.getZPlane()    == other.mImageIndex.getZPlane() &&
+			                                 mImageIndex.getTimePoint() == other.mImageIndex.getTimePoint();
+		}
+		
+		/**
+		 * Converts bounds in the viewport of another snapshot of the same image into the bounds in the viewport of this snapshot
+		 * covering the same part of the image.
+		 * 
+		 * It allows to move and scale the image rendered for the other snapshot to its place in this snapshot.
+		 * 
+		 * @param other                 A snapshot showing the same image.
+		 * @param boundsInOtherViewport Bounds in the viewport of the other snapshot.
+		 */
+		public Rectangle convertViewportBoundsFrom(Snapshot other, Rectangle boundsInOtherViewport)
+		{
+			ParameterValidator.throwIfNull(other, "other");
+			ParameterValidator.throwIfNull(boundsInOtherViewport, "boundsInOtherViewport");
+			
+			Rectangle2D otherImageRegionBounds = other.getVisibleImageRegionBoundsInViewport();
+			Rectangle2D imageRegionBounds      = getVisibleImageRegionBoundsInViewport();
+			Rectangle2D otherVisibleRegion     = other.getRelativeVisibleRegionBounds();
+			Rectangle2D visibleRegion          = getRelativeVisibleRegionBounds();
+			
+			// From the other viewport to the relative coordinates in the image and then to this viewport.
+			double scaleX = (otherVisibleRegion.getWidth()  / otherImageRegionBounds.getWidth())  * (imageRegionBounds.getWidth()  / visibleRegion.getWidth());
+			double scaleY = (otherVisibleRegion.getHeight() / otherImageRegionBounds.getHeight()) * (imageRegionBounds.getHeight() / visibleRegion.getHeight());
+			
+			double offsetX = imageRegionBounds.getX() + (otherVisibleRegion.getX() - visibleRegion.getX()) * imageRegionBounds.getWidth()  / visibleRegion.getWidth();
+			double offsetY = imageRegionBounds.getY() + (otherVisibleRegion.getY() - visibleRegion.getY()) * imageRegionBounds.getHeight() / visibleRegion.getHeight();
+			
+			int left   = (int)Math.round(offsetX + (boundsInOtherViewport.getMinX() - otherImageRegionBounds.getX()) * scaleX);
+			int top    = (int)Math.round(offsetY + (boundsInOtherViewport.getMinY() - otherImageRegionBounds.getY()) * scaleY);
+			int right  = (int)Math.round(offsetX + (boundsInOtherViewport.getMaxX() - otherImageRegionBounds.getX()) * scaleX);
+			int bottom = (int)Math.round(offsetY + (boundsInOtherViewport.getMaxY() - otherImageRegionBounds.getY()) * scaleY);
+			
+			return new Rectangle(left, top, right - left, bottom - top);
+		}
+		
+		/**
+		 * Gets the bounds of the visible part of the image relative to the size of the image, i.e. in the range 0.0 - 1.0.
+		 */
+		private Rectangle2D getRelativeVisibleRegionBounds()
+		{
+			Dimension imageSize = mImage.getImageSize(mImageIndex.getResolutionIndex());
+			
+			return new Rectangle2D.Double(mImageDataBounds.getX()     / imageSize.getWidth(),  mImageDataBounds.getY()      / imageSize.getHeight(),
+			                              mImageDataBounds.getWidth() / imageSize.getWidth(),  mImageDataBounds.getHeight() / imageSize.getHeight());
+		}
+	}
+	
 	private static final long         MAX_THUMBNAIL_SIZE      = 1024 * 1024 * 3;
 	private static final double       MAX_ZOOM                = 4.0;
 	
@@ -205,35 +402,82 @@ public class ImagePresentationModel
 	}
 
 	/**
-	 * Gets the size of image data returned by a call to {@link #loadImageDataInto(byte[])}.
+	 * Gets the size of image data loaded by a call to {@link #loadVisibleTiles(Snapshot, VisibleTileConsumer)}.
 	 * 
 	 * Because the returned image is NOT scaled to a destination size the result from a call to this function will most of the time differ
 	 * from the result of a {@link #getVisibleImageRegionSize()} call.
 	 */
 	public Dimension getImageDataSize()
+	{
+		return getImageDataBounds().getSize();
+	}
+	
+	/**
+	 * Gets the bounds of visible part of the image at the resolution used during loading.
+	 * 
+	 * The bounds are in the coordinates of the image at that resolution, the same as the bounds of tiles
+	 * passed to {@link #loadVisibleTiles(Snapshot, VisibleTileConsumer)}.
+	 */
+	public Rectangle getImageDataBounds()
 	{
 		Dimension imageSize = mImage.getImageSize(getResolutionToUseDuringLoading());
 		
-		return Camera.relativeToAbsoluteBounds(mCamera.getVisibleRegionBounds(), imageSize).getSize();
+		return Camera.relativeToAbsoluteBounds(mCamera.getVisibleRegionBounds(), imageSize);
 	}
 	
 	/**
-	 * Loads the data of currently visible part of the image.
+	 * Loads the visible part of the image described by a snapshot tile by tile.
 	 * 
-	 * The image is <b>NOT</b> scaled to destination size due to performance reasons, because the only purpose of returned image
-	 * is to be rendered, it is more efficient to do the scaling on the fly during rendering.
+	 * The tiles cover the bounds returned by {@link Snapshot#getImageDataBounds()} at the resolution of the snapshot.
+	 * The tiles are <b>NOT</b> scaled to the size of the visible image region, it is more efficient to do the scaling
+	 * on the fly during rendering.
 	 * 
-	 * @param dst The buffer to load data into.
+	 * The method can be called from any thread, but the calls must not be made concurrently with each other.
 	 * 
-	 * @see #getImageDataSize()
+	 * @param snapshot The state of the visible image to load.
+	 * @param consumer The consumer of the data of visible tiles.
 	 */
-	public void loadImageDataInto(byte[] dst)
+	public void loadVisibleTiles(Snapshot snapshot, VisibleTileConsumer consumer)
 	{
-		int       bestResIndex       = getResolutionToUseDuringLoading();
-		Rectangle visibleImageBounds = Camera.relativeToAbsoluteBounds(mCamera.getVisibleRegionBounds(), mImage.getImageSize(bestResIndex));
-
-		mImageLoader.getVisibleImageData(mImage, dst, visibleImageBounds, getCurrentImageIndexForResolution(bestResIndex),
-		                                 () -> mListeners.forEach(l -> l.onVisibleImageContentUpdate()));
+		ParameterValidator.throwIfNull(snapshot, "snapshot");
+		
+		mImageLoader.getVisibleTiles(snapshot.mImage, snapshot.getImageDataBounds(), snapshot.mImageIndex, consumer,
+		                             tile -> mListeners.forEach(l -> l.onVisibleTileUpdate(tile)));
+	}
+	
+	/**
+	 * Passes the cached data of a single tile visible in a snapshot to the consumer, without loading the rest of visible image.
+	 * 
+	 * It allows to update only the part of already rendered image which contains a tile announced
+	 * by {@link Listener#onVisibleTileUpdate(Tile)}. The method can be called from any thread.
+	 * 
+	 * @return False if the tile is not visible in the snapshot or its data is not in cache.
+	 */
+	public boolean loadCachedVisibleTile(Snapshot snapshot, Tile tile, VisibleTileConsumer consumer)
+	{
+		ParameterValidator.throwIfNull(snapshot, "snapshot");
+		ParameterValidator.throwIfNull(tile, "tile");
+		ParameterValidator.throwIfNull(consumer, "consumer");
+		
+		if(snapshot.getTileBoundsInViewport(tile) == null)
+			return false;
+		
+		Rectangle tileBounds = tile.getBounds(snapshot.mImage);
+		
+		return snapshot.mImage.visitCachedTileData(tile, tileData -> consumer.acceptTileData(tile, tileBounds, tileData, false));
+	}
+	
+	/**
+	 * Captures the current state of the visible image.
+	 * 
+	 * The snapshot is not affected by the later changes of the camera or the image index.
+	 */
+	public Snapshot getVisibleImageSnapshot()
+	{
+		int resIndex = getResolutionToUseDuringLoading();
+		
+		return new Snapshot(mImage, getCurrentImageIndexForResolution(resIndex), getImageDataBounds(),
+		                    getVisibleImageRegionSize(), new Dimension(mCamera.getViewportSize()));
 	}
 	
 	private int getResolutionToUseDuringLoading()
@@ -424,7 +668,7 @@ public class ImagePresentationModel
 	 * 
 	 * This threshold is used to determine from which resolution level to get pixels at zoom level in between 2 resolutions.
 	 * After the percentage of distance from lower to higher resolution level is higher than specified threshold, the function
-	 * {@link #loadImageDataInto(byte[])} will use pixels from higher resolution.
+	 * {@link #loadVisibleTiles(Snapshot, VisibleTileConsumer)} will use pixels from higher resolution.
 	 * 
 	 * The lower the threshold the sooner the controller will retrieve pixels from higher resolution of image resulting in better
 	 * quality and less visible transition, but beware that fetching pixels from higher resolution means that a lot more pixels
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.ui.imageviewing.view;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * Coalesces requests of rendering a frame into at most one frame per frame interval.
+ *
+ * A frame can be requested from any thread, while the frames are always rendered by the Event Dispatch Thread.
+ * Requests made while a frame is pending are merged into the pending frame. A frame requested after the frame interval
+ * has passed since the last frame is rendered immediately, so a single request is not delayed, while a burst of requests
+ * results in at most one frame per interval.
+ */
+public class FrameScheduler
+{
+	private final Runnable      mFrameRenderer;
+	private final long          mFrameIntervalNanos;
+	private final Timer         mTimer;
+	private final AtomicBoolean mFramePending   = new AtomicBoolean(false);
+	private long                mLastFrameNanos;
+
+	/**
+	 * @param maxFrameRate  The maximum number of frames per second.
+	 * @param frameRenderer A task which renders a frame. It is run by the Event Dispatch Thread.
+	 */
+	public FrameScheduler(int maxFrameRate, Runnable frameRenderer)
+	{
+		if(maxFrameRate <= 0)
+			throw new IllegalArgumentException("maxFrameRate has to be positive.");
+
+		ParameterValidator.throwIfNull(frameRenderer, "frameRenderer");
+
+		mFrameRenderer      = frameRenderer;
+		mFrameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / maxFrameRate;
+		mLastFrameNanos     = System.nanoTime() - mFrameIntervalNanos;
+
+		mTimer = new Timer(0, e -> renderFrame());
+		mTimer.setRepeats(false);
+	}
+
+	/**
+	 * Requests rendering of a frame.
+	 *
+	 * The method can be called from any thread.
+	 */
+	public void requestFrame()
+	{
+		if(mFramePending.compareAndSet(false, true))
+		{
+			SwingUtilities.invokeLater(this::scheduleFrame);
+		}
+	}
+
+	private void scheduleFrame()
+	{
+		long delayNanos = mLastFrameNanos + mFrameIntervalNanos - System.nanoTime();
+		if(delayNanos <= 0)
+		{
+			renderFrame();
+		}
+		else
+		{
+			// Rounded up, so the frame is never rendered before the interval has passed.
+			mTimer.setInitialDelay((int)TimeUnit.NANOSECONDS.toMillis(delayNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+			mTimer.restart();
+		}
+	}
+
+	private void renderFrame()
+	{
+		mLastFrameNanos = System.nanoTime();
+
+		// Cleared before rendering, so the requests made during rendering result in the next frame.
+		mFramePending.set(false);
+
+		mFrameRenderer.run();
+	}
+}
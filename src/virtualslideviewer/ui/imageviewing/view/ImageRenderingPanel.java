@@ -17,53 +17,186 @@
 
 package virtualslideviewer.ui.imageviewing.view;
 
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Image;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
-import java.awt.image.BufferedImage;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
-import javax.swing.JPanel;
-import javax.swing.SwingUtilities;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.imageviewing.VisibleTileConsumer;
 import virtualslideviewer.ui.imageviewing.ImagePresentationModel;
 import virtualslideviewer.ui.imageviewing.ImagePresentationModel.Listener;
+import virtualslideviewer.ui.imageviewing.ImagePresentationModel.Snapshot;
 import virtualslideviewer.util.ImageUtil;
-
-/**
- * A JPanel which handles rendering of a virtual slide image.
- */
-public class ImageRenderingPanel extends JPanel
-{
-	private static final long serialVersionUID = 1L;
-	
-	private final ImagePresentationModel mUIModel;
-	private BufferedImage                mCachedImage = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
-	
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * A JPanel which handles rendering of a virtual slide image.
+ * 
+ * The frames are composed by a background compositor thread from snapshots of the visible image,
+ * so loading of the visible image does not block the Event Dispatch Thread, which only draws the last composed frame.
+ */
+public class ImageRenderingPanel extends JPanel
+{
+	/**
+	 * The way in which the visible image is rendered.
+	 */
+	public enum RenderingMode
+	{
+		/**
+		 * The visible image is loaded into a single image, which is scaled to the panel on every repaint.
+		 */
+		VISIBLE_IMAGE,
+		
+		/**
+		 * Every visible tile is drawn as a separate image, scaled to its place in the panel.
+		 * 
+		 * The images of tiles are cached in a format compatible with the screen, so Java2D can keep them in video memory,
+		 * and only the tiles which have not been drawn before have to be loaded during panning.
+		 */
+		TILES
+	}
+	
 	/**
-	 * @param presentationModel A presentation model with panel's logic.
+	 * The state of the panel needed to compose a frame, captured by the Event Dispatch Thread.
 	 */
-	public ImageRenderingPanel(ImagePresentationModel presentationModel)
+	private static class FrameRequest
 	{
-		if(presentationModel == null)
-			throw new IllegalArgumentException("presentationModel cannot be null.");
+		private final Snapshot              mSnapshot;
+		private final GraphicsConfiguration mGraphicsConfiguration;
+		private final Color                 mBackground;
 		
-		mUIModel = presentationModel;
-		mUIModel.addListener(new Listener()
+		public FrameRequest(Snapshot snapshot, GraphicsConfiguration graphicsConfiguration, Color background)
 		{
-			@Override
-			public void onVisibleImageContentUpdate() { SwingUtilities.invokeLater(() -> repaint()); }
+			mSnapshot              = snapshot;
+			mGraphicsConfiguration = graphicsConfiguration;
+			mBackground            = background;
+		}
+	}
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageRenderingPanel.class);
+	
+	private static final long TILE_IMAGE_CACHE_SIZE  = 64 * 1024 * 1024;
+	private static final int  DEFAULT_MAX_FRAME_RATE = 60;
+	
+	private final ImagePresentationModel mUIModel;
+	private final RenderingMode          mRenderingMode;
+	
+	// Used only by the compositor thread.
+	private BufferedImage                mCachedImage    = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+	private BufferedImage                mVisibleImage;
+	private final TileImageCache         mTileImageCache = new TileImageCache(TILE_IMAGE_CACHE_SIZE);
+	
+	// The frame retained between compositions, so that a loaded tile can be rendered without rendering the rest of the image.
+	private BufferedImage                mFrame;
+	private FrameRequest                 mFrameRequest;
+	private BufferedImage                mBackBuffer;
+	
+	// The part of the retained frame which has changed since the back buffer was presented last time.
+	private Rectangle                    mBackBufferStaleBounds;
+	
+	// The frame composed before the current one. It is moved to the place of current frame as the placeholder of the tiles
+	// which are being loaded, which are remembered to not overwrite the placeholder until they are loaded.
+	private BufferedImage                mPreviousFrame;
+	private final Set<Tile>              mMissingTiles = new HashSet<>();
+	
+	// The last composed frame drawn by the Event Dispatch Thread. It is swapped with the back buffer under the lock.
+	private final Object                 mFrontBufferLock = new Object();
+	private BufferedImage                mFrontBuffer;
+	
+	// The changes of the model which have not been rendered yet. They are collected from any thread until the next frame.
+	private final FrameScheduler         mFrameScheduler;
+	private final AtomicBoolean          mContentUpdated        = new AtomicBoolean(false);
+	private final AtomicBoolean          mTileImagesInvalidated = new AtomicBoolean(false);
+	private final Set<Tile>              mLoadedTiles           = ConcurrentHashMap.newKeySet();
+	
+	private final ExecutorService               mCompositor;
+	private final AtomicReference<FrameRequest> mPendingFrameRequest  = new AtomicReference<>();
+	private final AtomicBoolean                 mCompositionScheduled = new AtomicBoolean(false);
+	
+	/**
+	 * @param presentationModel A presentation model with panel's logic.
+	 */
+	public ImageRenderingPanel(ImagePresentationModel presentationModel)
+	{
+		this(presentationModel, RenderingMode.VISIBLE_IMAGE, DEFAULT_MAX_FRAME_RATE);
+	}
+	
+	/**
+	 * @param presentationModel A presentation model with panel's logic.
+	 * @param renderingMode     The way in which the image will be rendered.
+	 * @param maxFrameRate      The maximum number of repaints per second caused by the changes of the visible image.
+	 */
+	public ImageRenderingPanel(ImagePresentationModel presentationModel, RenderingMode renderingMode, int maxFrameRate)
+	{
+		if(presentationModel == null)
+			throw new IllegalArgumentException("presentationModel cannot be null.");
+		
+		ParameterValidator.throwIfNull(renderingMode, "renderingMode");
+		
+		mUIModel        = presentationModel;
+		mRenderingMode  = renderingMode;
+		mFrameScheduler = new FrameScheduler(maxFrameRate, this::renderChanges);
+		mCompositor     = Executors.newSingleThreadExecutor(task ->
+		                  {
+		                     Thread compositorThread = new Thread(task, "Frame compositor");
+		                     compositorThread.setDaemon(true);
+		                     return compositorThread;
+		                  });
+		
+		mUIModel.addListener(new Listener()
+		{
+			@Override
+			public void onVisibleImageContentUpdate()
+			{
+				mContentUpdated.set(true);
+				mFrameScheduler.requestFrame();
+			}
 			
 			@Override
-			public void onImageChange() { SwingUtilities.invokeLater(() -> repaint()); }
-		});
+			public void onVisibleTileUpdate(Tile tile)
+			{
+				mLoadedTiles.add(tile);
+				mFrameScheduler.requestFrame();
+			}
+			
+			@Override
+			public void onImageChange()
+			{
+				mTileImagesInvalidated.set(true);
+				mContentUpdated.set(true);
+				mFrameScheduler.requestFrame();
+			}
+		});
 		
 		MouseHandler handler = new MouseHandler();
 		
@@ -73,6 +206,67 @@ public class ImageRenderingPanel extends JPanel
 		super.addComponentListener(new ResizeHandler());
 	}
 
+	/**
+	 * Passes the changes of the model collected since the last frame to the compositor thread.
+	 * 
+	 * A change of the visible region requires composing the entire frame from a new snapshot of the visible image,
+	 * otherwise only the loaded tiles are rendered into the last frame.
+	 */
+	private void renderChanges()
+	{
+		if(!mUIModel.isImageLoaded())
+			return;
+		
+		if(mContentUpdated.getAndSet(false))
+		{
+			mPendingFrameRequest.set(new FrameRequest(mUIModel.getVisibleImageSnapshot(), super.getGraphicsConfiguration(),
+			                                          super.getBackground()));
+		}
+		
+		// The compositions are not queued, a single composition renders all changes made until it starts.
+		if(mCompositionScheduled.compareAndSet(false, true))
+		{
+			mCompositor.execute(this::composeNextFrame);
+		}
+	}
+	
+	/**
+	 * Renders the pending changes into the retained frame and presents the frame.
+	 * 
+	 * Runs on the compositor thread.
+	 */
+	private void composeNextFrame()
+	{
+		mCompositionScheduled.set(false);
+		
+		try
+		{
+			if(mTileImagesInvalidated.getAndSet(false))
+			{
+				mTileImageCache.clear();
+			}
+		
+			FrameRequest frameRequest = mPendingFrameRequest.getAndSet(null);
+			if(frameRequest != null)
+			{
+				composeFrame(frameRequest);
+				presentFrame(null);
+			}
+			else if(mFrameRequest != null)
+			{
+				Rectangle updatedBounds = updateFrame();
+				if(updatedBounds != null)
+				{
+					presentFrame(updatedBounds);
+				}
+			}
+		}
+		catch(RuntimeException e)
+		{
+			LOGGER.error("Composing a frame of the visible image failed.", e);
+		}
+	}
+	
 	@Override
 	protected void paintComponent(Graphics graphics)
 	{
@@ -81,44 +275,350 @@ public class ImageRenderingPanel extends JPanel
 		if(!mUIModel.isImageLoaded())
 			return;
 		
-		renderImage((Graphics2D)graphics, loadImage());
+		synchronized(mFrontBufferLock)
+		{
+			if(mFrontBuffer != null)
+			{
+				graphics.drawImage(mFrontBuffer, 0, 0, null);
+			}
+		}
+	}
+	
+	/**
+	 * Copies the changed part of the retained frame into the back buffer, swaps it with the front buffer
+	 * and repaints the changed part of the panel.
+	 * 
+	 * The back buffer has missed the changes of the frame presented by the front buffer, so these changes are copied too,
+	 * but the rest of the back buffer is up to date.
+	 * 
+	 * @param updatedBounds The bounds of the changed part of the frame, or null if the entire frame has changed.
+	 */
+	private void presentFrame(Rectangle updatedBounds)
+	{
+		Rectangle frameBounds   = new Rectangle(0, 0, mFrame.getWidth(), mFrame.getHeight());
+		Rectangle changedBounds = (updatedBounds != null) ? updatedBounds.intersection(frameBounds) : frameBounds;
+		
+		if(mBackBuffer == null || mBackBuffer.getWidth() != mFrame.getWidth() || mBackBuffer.getHeight() != mFrame.getHeight())
+		{
+			mBackBuffer            = createCompatibleImage(mFrameRequest.mGraphicsConfiguration, mFrame.getWidth(), mFrame.getHeight());
+			mBackBufferStaleBounds = frameBounds;
+		}
+		else if(!changedBounds.isEmpty())
+		{
+			mBackBufferStaleBounds = mBackBufferStaleBounds.isEmpty() ? changedBounds : mBackBufferStaleBounds.union(changedBounds);
+		}
+		
+		if(!mBackBufferStaleBounds.isEmpty())
+		{
+			Graphics2D backBufferGraphics = mBackBuffer.createGraphics();
+			backBufferGraphics.clip(mBackBufferStaleBounds);
+			backBufferGraphics.drawImage(mFrame, 0, 0, null);
+			backBufferGraphics.dispose();
+		}
+		
+		synchronized(mFrontBufferLock)
+		{
+			BufferedImage presentedFrame = mBackBuffer;
+			
+			mBackBuffer  = mFrontBuffer;
+			mFrontBuffer = presentedFrame;
+		}
+		
+		mBackBufferStaleBounds = changedBounds;
+		
+		SwingUtilities.invokeLater(() ->
+		{
+			if(updatedBounds != null)
+			{
+				super.repaint(updatedBounds);
+			}
+			else
+			{
+				super.repaint();
+			}
+		});
+	}
+	
+	/**
+	 * Renders the entire visible image into the retained frame.
+	 */
+	private void composeFrame(FrameRequest frameRequest)
+	{
+		Dimension frameSize = frameRequest.mSnapshot.getViewportSize();
+		frameSize.width  = Math.max(frameSize.width,  1);
+		frameSize.height = Math.max(frameSize.height, 1);
+		
+		FrameRequest  previousFrameRequest = mFrameRequest;
+		BufferedImage previousFrame        = mFrame;
+		
+		mFrame         = mPreviousFrame;
+		mPreviousFrame = previousFrame;
+		
+		if(mFrame == null || mFrame.getWidth() != frameSize.width || mFrame.getHeight() != frameSize.height)
+		{
+			mFrame = createCompatibleImage(frameRequest.mGraphicsConfiguration, frameSize.width, frameSize.height);
+		}
+		
+		mFrameRequest = frameRequest;
+		mMissingTiles.clear();
+		
+		Graphics2D frameGraphics = mFrame.createGraphics();
+		
+		frameGraphics.setColor(frameRequest.mBackground);
+		frameGraphics.fillRect(0, 0, mFrame.getWidth(), mFrame.getHeight());
+		
+		Rectangle previousFrameBounds = renderPreviousFrame(frameGraphics, previousFrame, previousFrameRequest);
+		
+		if(mRenderingMode == RenderingMode.TILES)
+		{
+			renderTiles(frameGraphics, previousFrameBounds);
+		}
+		else
+		{
+			Image visibleImage = loadImage(previousFrameBounds);
+			
+			frameGraphics.clip(excludeMissingTiles(frameRequest.mSnapshot.getVisibleImageRegionBoundsInViewport()));
+			renderImage(frameGraphics, visibleImage);
+		}
+		
+		frameGraphics.dispose();
+	}
+	
+	/**
+	 * Renders the image of previous frame moved and scaled to its place in the current frame.
+	 * 
+	 * Drawing the previous frame is much cheaper than generating the placeholders of tiles being loaded,
+	 * which matters especially during continuous zooming, when none of the visible tiles is in cache.
+	 * 
+	 * @return The bounds of the part of the current frame covered by the previous frame, or null if the previous frame
+	 *         shows a different image.
+	 */
+	private Rectangle renderPreviousFrame(Graphics2D graphics, BufferedImage previousFrame, FrameRequest previousFrameRequest)
+	{
+		if(previousFrame == null || !mFrameRequest.mSnapshot.showsSameImageAs(previousFrameRequest.mSnapshot))
+			return null;
+		
+		Snapshot  snapshot            = mFrameRequest.mSnapshot;
+		Rectangle imageBounds         = snapshot.getVisibleImageRegionBoundsInViewport();
+		Rectangle previousImageBounds = previousFrameRequest.mSnapshot.getVisibleImageRegionBoundsInViewport();
+		if(imageBounds.isEmpty() || previousImageBounds.isEmpty())
+			return null;
+		
+		Rectangle previousImageBoundsInFrame = snapshot.convertViewportBoundsFrom(previousFrameRequest.mSnapshot, previousImageBounds);
+		
+		Graphics2D previousFrameGraphics = (Graphics2D)graphics.create();
+		previousFrameGraphics.clip(imageBounds);
+		previousFrameGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		previousFrameGraphics.drawImage(previousFrame,
+		                                previousImageBoundsInFrame.x, previousImageBoundsInFrame.y,
+		                                previousImageBoundsInFrame.x + previousImageBoundsInFrame.width,
+		                                previousImageBoundsInFrame.y + previousImageBoundsInFrame.height,
+		                                previousImageBounds.x, previousImageBounds.y,
+		                                previousImageBounds.x + previousImageBounds.width,
+		                                previousImageBounds.y + previousImageBounds.height, null);
+		previousFrameGraphics.dispose();
+		
+		return previousImageBoundsInFrame.intersection(imageBounds);
+	}
+	
+	/**
+	 * Checks whether the visible part of a tile is covered by the previous frame, so the tile needs no placeholder.
+	 * 
+	 * The tiles without placeholder are remembered as missing until they are loaded.
+	 */
+	private boolean isPlaceholderNeeded(Tile tile, Rectangle tileBounds, Rectangle previousFrameBounds)
+	{
+		if(previousFrameBounds == null)
+			return true;
+		
+		Snapshot  snapshot          = mFrameRequest.mSnapshot;
+		Rectangle visibleTileBounds = snapshot.imageDataToViewportBounds(tileBounds).intersection(snapshot.getVisibleImageRegionBoundsInViewport());
+		
+		if(!previousFrameBounds.contains(visibleTileBounds))
+			return true;
+		
+		mMissingTiles.add(tile);
+		return false;
+	}
+	
+	/**
+	 * Returns the area of specified bounds which is not covered by the tiles still being loaded,
+	 * so that rendering does not overwrite their part of the previous frame.
+	 */
+	private Area excludeMissingTiles(Rectangle bounds)
+	{
+		Area area = new Area(bounds);
+		
+		for(Tile missingTile : mMissingTiles)
+		{
+			Rectangle missingTileBounds = mFrameRequest.mSnapshot.getTileBoundsInViewport(missingTile);
+			if(missingTileBounds != null)
+			{
+				area.subtract(new Area(missingTileBounds));
+			}
+		}
+		
+		return area;
+	}
+	
+	/**
+	 * Renders into the retained frame only the tiles which have been loaded since the frame was rendered.
+	 * 
+	 * @return The bounds of the updated part of the frame, or null if no visible tile has been loaded.
+	 */
+	private Rectangle updateFrame()
+	{
+		Snapshot   snapshot      = mFrameRequest.mSnapshot;
+		Rectangle  updatedBounds = null;
+		Graphics2D frameGraphics = mFrame.createGraphics();
+		
+		for(Iterator<Tile> iterator = mLoadedTiles.iterator(); iterator.hasNext();)
+		{
+			Tile tile = iterator.next();
+			iterator.remove();
+			
+			Rectangle tileBoundsInViewport = snapshot.getTileBoundsInViewport(tile);
+			if(tileBoundsInViewport == null)
+				continue;
+			
+			// The pixels next to the tile are affected by the tile too because of the bilinear interpolation.
+			tileBoundsInViewport.grow(1, 1);
+			
+			mMissingTiles.remove(tile);
+			
+			Graphics2D tileGraphics = (Graphics2D)frameGraphics.create();
+			tileGraphics.clip(excludeMissingTiles(tileBoundsInViewport));
+			
+			boolean tileRendered = (mRenderingMode == RenderingMode.TILES) ? renderTile(tileGraphics, tile) : renderImagePart(tileGraphics, tile);
+			
+			tileGraphics.dispose();
+			
+			if(!tileRendered)
+			{
+				// The tile has been removed from cache in the meantime, so it has to be loaded again together with the rest of image.
+				frameGraphics.dispose();
+				composeFrame(mFrameRequest);
+				return new Rectangle(mFrame.getWidth(), mFrame.getHeight());
+			}
+			
+			updatedBounds = (updatedBounds != null) ? updatedBounds.union(tileBoundsInViewport) : tileBoundsInViewport;
+		}
+		
+		frameGraphics.dispose();
+		
+		return updatedBounds;
+	}
+	
+	private static BufferedImage createCompatibleImage(GraphicsConfiguration graphicsConfiguration, int width, int height)
+	{
+		if(graphicsConfiguration == null)
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		
+		return graphicsConfiguration.createCompatibleImage(width, height);
 	}
 	
 	private void renderImage(Graphics2D graphics, Image image)
 	{
-		Dimension imageSize = mUIModel.getVisibleImageRegionSize();
-		Point     imagePos  = ImageUtil.getCenteredPosition(imageSize, super.getSize());
+		Snapshot  snapshot  = mFrameRequest.mSnapshot;
+		Dimension imageSize = snapshot.getVisibleImageRegionSize();
+		Point     imagePos  = ImageUtil.getCenteredPosition(imageSize, snapshot.getViewportSize());
 		
 	   graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
 	   graphics.drawImage(image, imagePos.x, imagePos.y, imageSize.width, imageSize.height, null);
 	}
 	
-	private Image loadImage()
+	/**
+	 * Copies the data of a loaded tile into the visible image and renders the part of the visible image clipped by the graphics.
+	 */
+	private boolean renderImagePart(Graphics2D graphics, Tile tile)
 	{
-		reallocateCachedImageIfNeeded(mUIModel.getImageDataSize(), mUIModel.isImageRGB());
+		Rectangle imageDataBounds = mFrameRequest.mSnapshot.getImageDataBounds();
 		
-		ImageUtil.loadDataIntoBufferedImage(mCachedImage, (dst) -> mUIModel.loadImageDataInto(dst));
-
-		return mCachedImage;
+		boolean tileInCache = mUIModel.loadCachedVisibleTile(mFrameRequest.mSnapshot, tile, new VisibleTileConsumer()
+		{
+			@Override
+			public boolean isTileDataNeeded(Tile tile, Rectangle tileBounds)
+			{
+				return true;
+			}
+			
+			@Override
+			public void acceptTileData(Tile tile, Rectangle tileBounds, ByteBuffer tileData, boolean placeholder)
+			{
+				ImageUtil.copyIntersectingPartOfImage(tileData, tileBounds, mVisibleImage.getRaster(), imageDataBounds);
+			}
+		});
+		
+		if(tileInCache)
+		{
+			renderImage(graphics, mVisibleImage);
+		}
+		
+		return tileInCache;
 	}
 	
+	/**
+	 * Loads visible image directly into the raster of the cached image.
+	 * 
+	 * The returned image is a subimage of the cached one with the size of image data, sharing the data buffer of cached image.
+	 * The parts of the image covered by the missing tiles are left unchanged.
+	 * 
+	 * @param previousFrameBounds The bounds of the part of frame covered by the previous frame, or null.
+	 */
+	private Image loadImage(Rectangle previousFrameBounds)
+	{
+		Snapshot  snapshot        = mFrameRequest.mSnapshot;
+		Rectangle imageDataBounds = snapshot.getImageDataBounds();
+		
+		reallocateCachedImageIfNeeded(imageDataBounds.getSize(), snapshot.isImageRGB());
+		
+		mVisibleImage = mCachedImage.getSubimage(0, 0, imageDataBounds.width, imageDataBounds.height);
+		
+		mUIModel.loadVisibleTiles(snapshot, new VisibleTileConsumer()
+		{
+			@Override
+			public boolean isTileDataNeeded(Tile tile, Rectangle tileBounds)
+			{
+				return true;
+			}
+			
+			@Override
+			public boolean isPlaceholderNeeded(Tile tile, Rectangle tileBounds)
+			{
+				return ImageRenderingPanel.this.isPlaceholderNeeded(tile, tileBounds, previousFrameBounds);
+			}
+			
+			@Override
+			public void acceptTileData(Tile tile, Rectangle tileBounds, ByteBuffer tileData, boolean placeholder)
+			{
+				ImageUtil.copyIntersectingPartOfImage(tileData, tileBounds, mVisibleImage.getRaster(), imageDataBounds);
+			}
+		});
+
+		return mVisibleImage;
+	}
+
 	/**
 	 * Reallocates cached buffered image if is needed.
 	 * 
 	 * The image is cached in order to reduce the amount of unneeded allocations and gargabe collection runs.
+	 * It is reallocated only when it is too small to hold the image data, so the size of image data
+	 * can change during zooming and panning without allocating a new image every time.
 	 */
 	private void reallocateCachedImageIfNeeded(Dimension imageSize, boolean isRGB)
 	{
-		if(hasDifferentSize(mCachedImage, imageSize) || hasInvalidPixelType(mCachedImage, isRGB))
+		if(isTooSmall(mCachedImage, imageSize) || hasInvalidPixelType(mCachedImage, isRGB))
 		{
-			mCachedImage = new BufferedImage(imageSize.width, imageSize.height,
-			                                 isRGB ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY);
+			int width  = Math.max(imageSize.width,  (hasInvalidPixelType(mCachedImage, isRGB) ? 1 : mCachedImage.getWidth()));
+			int height = Math.max(imageSize.height, (hasInvalidPixelType(mCachedImage, isRGB) ? 1 : mCachedImage.getHeight()));
+			
+			mCachedImage = new BufferedImage(width, height, isRGB ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY);
 		}
 	}
 	
-	private boolean hasDifferentSize(BufferedImage image, Dimension size)
+	private boolean isTooSmall(BufferedImage image, Dimension size)
 	{
-		return image.getWidth() != size.width || image.getHeight() != size.height;
+		return image.getWidth() < size.width || image.getHeight() < size.height;
 	}
 	
 	private boolean hasInvalidPixelType(BufferedImage image, boolean shouldBeRGB)
@@ -128,6 +628,154 @@ public class ImageRenderingPanel extends JPanel
 		return shouldBeRGB != isRGB;
 	}
 	
+	/**
+	 * Draws every visible tile separately, using the cached images of tiles whenever possible.
+	 */
+	private void renderTiles(Graphics2D graphics, Rectangle previousFrameBounds)
+	{
+		TileDrawingConsumer tileDrawingConsumer = new TileDrawingConsumer(graphics, previousFrameBounds);
+		
+		mUIModel.loadVisibleTiles(mFrameRequest.mSnapshot, tileDrawingConsumer);
+		
+		tileDrawingConsumer.drawPendingTile();
+	}
+	
+	/**
+	 * Draws a single tile which has been loaded, replacing its placeholder.
+	 */
+	private boolean renderTile(Graphics2D graphics, Tile tile)
+	{
+		TileDrawingConsumer tileDrawingConsumer = new TileDrawingConsumer(graphics, null);
+		
+		boolean tileInCache = mUIModel.loadCachedVisibleTile(mFrameRequest.mSnapshot, tile, tileDrawingConsumer);
+		
+		tileDrawingConsumer.drawPendingTile();
+		
+		return tileInCache;
+	}
+	
+	/**
+	 * Draws a tile at its place in the panel.
+	 */
+	private void drawTile(Graphics2D graphics, Image tileImage, Rectangle tileBounds)
+	{
+		Rectangle tileBoundsInViewport = mFrameRequest.mSnapshot.imageDataToViewportBounds(tileBounds);
+		
+		graphics.drawImage(tileImage, tileBoundsInViewport.x, tileBoundsInViewport.y,
+		                   tileBoundsInViewport.width, tileBoundsInViewport.height, null);
+	}
+	
+	/**
+	 * Copies the data of a tile into an image with the pixel type of the data.
+	 */
+	private BufferedImage copyTileData(ByteBuffer tileData, Rectangle tileBounds)
+	{
+		BufferedImage tileDataImage = new BufferedImage(tileBounds.width, tileBounds.height,
+		                                                mFrameRequest.mSnapshot.isImageRGB() ? BufferedImage.TYPE_3BYTE_BGR
+		                                                                                     : BufferedImage.TYPE_BYTE_GRAY);
+		
+		ImageUtil.copyIntersectingPartOfImage(tileData, tileBounds, tileDataImage.getRaster(), tileBounds);
+		
+		return tileDataImage;
+	}
+	
+	/**
+	 * Creates an image of a tile from the image returned by {@link #copyTileData(ByteBuffer, Rectangle)}.
+	 * 
+	 * The tile data is copied into an image compatible with the screen instead of being used directly as the raster of the image,
+	 * because Java2D cannot cache in video memory the images whose data buffer has been accessed directly.
+	 */
+	private BufferedImage createTileImage(BufferedImage tileDataImage)
+	{
+		BufferedImage tileImage = createCompatibleImage(mFrameRequest.mGraphicsConfiguration, tileDataImage.getWidth(),
+		                                                tileDataImage.getHeight());
+		
+		Graphics2D tileImageGraphics = tileImage.createGraphics();
+		tileImageGraphics.drawImage(tileDataImage, 0, 0, null);
+		tileImageGraphics.dispose();
+		
+		return tileImage;
+	}
+	
+	/**
+	 * Draws the visible tiles, using the cached images of tiles whenever possible.
+	 * 
+	 * The data of a tile is passed while the cache is locked, so it is only copied then. The tile is drawn later,
+	 * before the next tile is checked, and the last one by {@link #drawPendingTile()} after the tiles have been loaded.
+	 */
+	private class TileDrawingConsumer implements VisibleTileConsumer
+	{
+		private final Graphics2D mGraphics;
+		private final Rectangle  mPreviousFrameBounds;
+		
+		private Tile             mPendingTile;
+		private Rectangle        mPendingTileBounds;
+		private BufferedImage    mPendingTileDataImage;
+		private boolean          mPendingTilePlaceholder;
+		
+		/**
+		 * @param previousFrameBounds The bounds of the part of frame covered by the previous frame, or null.
+		 */
+		public TileDrawingConsumer(Graphics2D graphics, Rectangle previousFrameBounds)
+		{
+			Snapshot  snapshot  = mFrameRequest.mSnapshot;
+			Dimension imageSize = snapshot.getVisibleImageRegionSize();
+			Point     imagePos  = ImageUtil.getCenteredPosition(imageSize, snapshot.getViewportSize());
+			
+			graphics.clipRect(imagePos.x, imagePos.y, imageSize.width, imageSize.height);
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			
+			mGraphics            = graphics;
+			mPreviousFrameBounds = previousFrameBounds;
+		}
+		
+		@Override
+		public boolean isTileDataNeeded(Tile tile, Rectangle tileBounds)
+		{
+			drawPendingTile();
+			
+			if(!mTileImageCache.hasRealTileImage(tile))
+				return true;
+			
+			drawTile(mGraphics, mTileImageCache.getTileImage(tile), tileBounds);
+			return false;
+		}
+		
+		@Override
+		public boolean isPlaceholderNeeded(Tile tile, Rectangle tileBounds)
+		{
+			return ImageRenderingPanel.this.isPlaceholderNeeded(tile, tileBounds, mPreviousFrameBounds);
+		}
+		
+		@Override
+		public void acceptTileData(Tile tile, Rectangle tileBounds, ByteBuffer tileData, boolean placeholder)
+		{
+			mPendingTile            = tile;
+			mPendingTileBounds      = tileBounds;
+			mPendingTileDataImage   = copyTileData(tileData, tileBounds);
+			mPendingTilePlaceholder = placeholder;
+		}
+		
+		/**
+		 * Draws the tile whose data has been passed last, if it has not been drawn yet.
+		 */
+		public void drawPendingTile()
+		{
+			if(mPendingTile == null)
+				return;
+			
+			BufferedImage tileImage = createTileImage(mPendingTileDataImage);
+			
+			mTileImageCache.putTileImage(mPendingTile, tileImage, mPendingTilePlaceholder);
+			
+			drawTile(mGraphics, tileImage, mPendingTileBounds);
+			
+			mPendingTile          = null;
+			mPendingTileBounds    = null;
+			mPendingTileDataImage = null;
+		}
+	}
+	
 	private class ResizeHandler extends ComponentAdapter
 	{
 		@Override
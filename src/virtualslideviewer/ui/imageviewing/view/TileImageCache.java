@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.ui.imageviewing.view;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.util.ParameterValidator;
+
+/**
+ * A cache of images of tiles ready to be drawn.
+ * 
+ * The least recently used images are removed when the size of the images exceeds the capacity of the cache.
+ * An image can be marked as a placeholder, which means that it should be replaced as soon as the real data of the tile is available.
+ * 
+ * The cache is not thread-safe, it has to be used by a single thread at a time. The ImageRenderingPanel uses it only from
+ * its frame compositor thread.
+ */
+public class TileImageCache
+{
+	private static class TileImage
+	{
+		private final BufferedImage mImage;
+		private final boolean       mPlaceholder;
+		private final long          mSizeInBytes;
+		
+		public TileImage(BufferedImage image, boolean placeholder)
+		{
+			DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+			
+			mImage       = image;
+			mPlaceholder = placeholder;
+			mSizeInBytes = (long)dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+		}
+	}
+	
+	private final long                 mCapacity;
+	private long                       mSize       = 0;
+	private final Map<Tile, TileImage> mTileImages = new LinkedHashMap<>(16, 0.75f, true);
+	
+	/**
+	 * @param capacity The maximum size in bytes of pixels of cached images.
+	 */
+	public TileImageCache(long capacity)
+	{
+		if(capacity <= 0)
+			throw new IllegalArgumentException("capacity has to be positive.");
+		
+		mCapacity = capacity;
+	}
+	
+	/**
+	 * Returns the image of a tile, or null when the image is not in cache.
+	 */
+	public BufferedImage getTileImage(Tile tile)
+	{
+		TileImage tileImage = mTileImages.get(tile);
+		
+		return (tileImage != null) ? tileImage.mImage : null;
+	}
+	
+	/**
+	 * Checks whether the cache contains the image of a tile made of its real data, not a placeholder.
+	 */
+	public boolean hasRealTileImage(Tile tile)
+	{
+		TileImage tileImage = mTileImages.get(tile);
+		
+		return tileImage != null && !tileImage.mPlaceholder;
+	}
+	
+	/**
+	 * Adds the image of a tile, replacing its previous image.
+	 * 
+	 * @param placeholder True if the image is only a placeholder of the tile.
+	 */
+	public void putTileImage(Tile tile, BufferedImage image, boolean placeholder)
+	{
+		ParameterValidator.throwIfNull(tile, "tile");
+		ParameterValidator.throwIfNull(image, "image");
+		
+		TileImage newImage = new TileImage(image, placeholder);
+		TileImage oldImage = mTileImages.put(tile, newImage);
+		
+		mSize += newImage.mSizeInBytes - ((oldImage != null) ? oldImage.mSizeInBytes : 0);
+		
+		removeLeastRecentlyUsedImages();
+	}
+	
+	private void removeLeastRecentlyUsedImages()
+	{
+		Iterator<TileImage> iterator = mTileImages.values().iterator();
+		
+		// The most recently added image is always kept, even if it alone exceeds the capacity.
+		while(mSize > mCapacity && mTileImages.size() > 1)
+		{
+			mSize -= iterator.next().mSizeInBytes;
+			iterator.remove();
+		}
+	}
+	
+	/**
+	 * Returns the size in bytes of pixels of all cached images.
+	 */
+	public long getSize()
+	{
+		return mSize;
+	}
+	
+	/**
+	 * Removes all images from the cache.
+	 */
+	public void clear()
+	{
+		mTileImages.clear();
+		mSize = 0;
+	}
+}
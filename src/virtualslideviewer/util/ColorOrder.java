@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.util;
+
+/**
+ * The order of color components of an RGB pixel in a buffer.
+ */
+public enum ColorOrder
+{
+	/**
+	 * The order used by virtual slide images.
+	 */
+	RGB,
+	
+	/**
+	 * The order used by BufferedImage.TYPE_3BYTE_BGR.
+	 */
+	BGR
+}
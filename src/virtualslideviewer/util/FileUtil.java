@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.util;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Helper functions related to files.
+ */
+public class FileUtil
+{
+	/**
+	 * Computes a hash identifying specified files by their paths, sizes and last modification times.
+	 * 
+	 * The content of the files is not read, as virtual slides have gigabytes and hashing their content would take too long.
+	 * The hash changes when any of the files is moved, resized or modified.
+	 * 
+	 * @param files The files to identify.
+	 * 
+	 * @return Hexadecimal string with the hash.
+	 */
+	public static String computeFilesIdentity(List<Path> files) throws IOException
+	{
+		ParameterValidator.throwIfNull(files, "files");
+		
+		MessageDigest digest = createDigest();
+		
+		for(Path file : files)
+		{
+			digest.update(file.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+			digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, Files.size(file)));
+			digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, Files.getLastModifiedTime(file).toMillis()));
+		}
+		
+		return String.format("%040x", new BigInteger(1, digest.digest()));
+	}
+	
+	private static MessageDigest createDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			// Every Java platform has to support SHA-1.
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -23,8 +23,13 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -89,10 +94,134 @@ public class ImageUtil
 	                                               byte[] dst, Rectangle dstBoundsInImageSpace, int imageChannelCount)
 	{
 		ParameterValidator.throwIfNull(src, "src");
+		
+		copyIntersectingPartOfImage(ByteBuffer.wrap(src), srcBoundsInImageSpace, dst, dstBoundsInImageSpace, imageChannelCount);
+	}
+	
+	/**
+	 * Copies part of image data into part of specified data buffer.
+	 * 
+	 * It works the same way as {@link #copyIntersectingPartOfImage(byte[], Rectangle, byte[], Rectangle, int)}, but the source data
+	 * is read from a buffer, which allows to copy the data directly from the memory not being a part of Java heap.
+	 * 
+	 * @param src                   source buffer, the image data starts at its current position, which is left unchanged
+	 * @param srcBoundsInImageSpace bounds of source buffer in image space
+	 * @param dst                   destination buffer
+	 * @param dstBoundsInImageSpace bounds of destination buffer in image space
+	 * @param imageChannelCount     number of channels in image
+	 */
+	public static void copyIntersectingPartOfImage(ByteBuffer src, Rectangle srcBoundsInImageSpace,
+	                                               byte[] dst, Rectangle dstBoundsInImageSpace, int imageChannelCount)
+	{
+		copyIntersectingPartOfImage(src, srcBoundsInImageSpace, dst, dstBoundsInImageSpace, imageChannelCount, ColorOrder.RGB);
+	}
+	
+	/**
+	 * Copies part of image data into part of specified data buffer, storing the pixels in specified color order.
+	 * 
+	 * It works the same way as {@link #copyIntersectingPartOfImage(ByteBuffer, Rectangle, byte[], Rectangle, int)}, but
+	 * the color components of RGB pixels are reordered during the copy, so the destination does not need a separate pass
+	 * over its data to change the order of colors.
+	 * 
+	 * @param src                   source buffer in RGB order, the image data starts at its current position, which is left unchanged
+	 * @param srcBoundsInImageSpace bounds of source buffer in image space
+	 * @param dst                   destination buffer
+	 * @param dstBoundsInImageSpace bounds of destination buffer in image space
+	 * @param imageChannelCount     number of channels in image
+	 * @param dstColorOrder         the order of color components in destination buffer, ignored if the image is not RGB
+	 */
+	public static void copyIntersectingPartOfImage(ByteBuffer src, Rectangle srcBoundsInImageSpace,
+	                                               byte[] dst, Rectangle dstBoundsInImageSpace, int imageChannelCount,
+	                                               ColorOrder dstColorOrder)
+	{
+		ParameterValidator.throwIfNull(src, "src");
 		ParameterValidator.throwIfNull(srcBoundsInImageSpace, "srcBoundsInImageSpace");
 		ParameterValidator.throwIfNull(dst, "dst");
 		ParameterValidator.throwIfNull(dstBoundsInImageSpace, "dstBoundsInImageSpace");
+		ParameterValidator.throwIfNull(dstColorOrder, "dstColorOrder");
+		
+		copyIntersectingPartOfImage(src, srcBoundsInImageSpace, dst, 0, dstBoundsInImageSpace.width * imageChannelCount,
+		                            dstBoundsInImageSpace, imageChannelCount, imageChannelCount == 3 && dstColorOrder == ColorOrder.BGR);
+	}
+	
+	/**
+	 * Copies part of image data directly into a raster, such as the raster of a BufferedImage.
+	 * 
+	 * It works the same way as {@link #copyIntersectingPartOfImage(ByteBuffer, Rectangle, byte[], Rectangle, int)}, but
+	 * the destination is described by the raster. The raster has to store its pixels interleaved in bytes, with a single band
+	 * for gray images and three bands in RGB or BGR order for RGB images, as the rasters of BufferedImage.TYPE_BYTE_GRAY
+	 * and BufferedImage.TYPE_3BYTE_BGR do. The rows of the raster can be longer than its width, so the raster
+	 * can be a part of a bigger image, such as the one returned by BufferedImage.getSubimage().
+	 * 
+	 * @param src                   source buffer in RGB order, the image data starts at its current position, which is left unchanged
+	 * @param srcBoundsInImageSpace bounds of source buffer in image space
+	 * @param dst                   destination raster, its upper left pixel corresponds to the location of dstBoundsInImageSpace
+	 * @param dstBoundsInImageSpace bounds of destination raster in image space, it cannot be bigger than the raster
+	 */
+	public static void copyIntersectingPartOfImage(ByteBuffer src, Rectangle srcBoundsInImageSpace,
+	                                               WritableRaster dst, Rectangle dstBoundsInImageSpace)
+	{
+		ParameterValidator.throwIfNull(src, "src");
+		ParameterValidator.throwIfNull(srcBoundsInImageSpace, "srcBoundsInImageSpace");
+		ParameterValidator.throwIfNull(dstBoundsInImageSpace, "dstBoundsInImageSpace");
 		
+		validateRasterLayout(dst);
+		
+		if(dstBoundsInImageSpace.width > dst.getWidth() || dstBoundsInImageSpace.height > dst.getHeight())
+			throw new IllegalArgumentException("dstBoundsInImageSpace cannot be bigger than the raster.");
+		
+		ComponentSampleModel sampleModel  = (ComponentSampleModel)dst.getSampleModel();
+		int                  channelCount = sampleModel.getNumBands();
+		int[]                bandOffsets  = sampleModel.getBandOffsets();
+		
+		int firstPixelStart = dst.getDataBuffer().getOffset() + Arrays.stream(bandOffsets).min().getAsInt() +
+		                      sampleModel.getOffset(dst.getMinX() - dst.getSampleModelTranslateX(),
+		                                            dst.getMinY() - dst.getSampleModelTranslateY()) - bandOffsets[0];
+		
+		copyIntersectingPartOfImage(src, srcBoundsInImageSpace, ((DataBufferByte)dst.getDataBuffer()).getData(),
+		                            firstPixelStart, sampleModel.getScanlineStride(), dstBoundsInImageSpace,
+		                            channelCount, getColorOrder(dst) == ColorOrder.BGR);
+	}
+	
+	private static void validateRasterLayout(Raster raster)
+	{
+		ParameterValidator.throwIfNull(raster, "raster");
+		
+		if(!(raster.getDataBuffer() instanceof DataBufferByte) || !(raster.getSampleModel() instanceof ComponentSampleModel))
+			throw new IllegalArgumentException("The raster has to store its pixels in bytes.");
+		
+		ComponentSampleModel sampleModel = (ComponentSampleModel)raster.getSampleModel();
+		
+		boolean grayLayout = Arrays.equals(sampleModel.getBandOffsets(), new int[] { 0 });
+		boolean rgbLayout  = Arrays.equals(sampleModel.getBandOffsets(), new int[] { 0, 1, 2 }) ||
+		                     Arrays.equals(sampleModel.getBandOffsets(), new int[] { 2, 1, 0 });
+		
+		if(!(grayLayout || rgbLayout) || sampleModel.getPixelStride() != sampleModel.getNumBands())
+			throw new IllegalArgumentException("The raster has to store its pixels interleaved in gray, RGB or BGR format.");
+	}
+	
+	/**
+	 * Returns the order of color components of the pixels stored in a raster with interleaved RGB pixels.
+	 */
+	public static ColorOrder getColorOrder(Raster raster)
+	{
+		validateRasterLayout(raster);
+		
+		int[] bandOffsets = ((ComponentSampleModel)raster.getSampleModel()).getBandOffsets();
+		
+		return (bandOffsets.length == 3 && bandOffsets[0] == 2) ? ColorOrder.BGR : ColorOrder.RGB;
+	}
+	
+	/**
+	 * Copies part of image data into part of a buffer whose rows can be longer than the destination region.
+	 * 
+	 * @param dstStart          the index in dst of the first byte of the upper left pixel of destination region
+	 * @param dstScanlineStride the distance in bytes between the starts of consecutive rows in dst
+	 */
+	private static void copyIntersectingPartOfImage(ByteBuffer src, Rectangle srcBoundsInImageSpace,
+	                                                byte[] dst, int dstStart, int dstScanlineStride, Rectangle dstBoundsInImageSpace,
+	                                                int imageChannelCount, boolean swapRgb)
+	{
 		Rectangle intersectionInImageSpace = srcBoundsInImageSpace.intersection(dstBoundsInImageSpace);
 		
 		Point srcOffset = new Point(intersectionInImageSpace.x - srcBoundsInImageSpace.x,
@@ -102,8 +231,8 @@ public class ImageUtil
 		                            intersectionInImageSpace.y - dstBoundsInImageSpace.y);
 		
 		copyPartOfImage(src, srcOffset, srcBoundsInImageSpace.width,
-		                dst, dstOffset, dstBoundsInImageSpace.width,
-		                imageChannelCount, intersectionInImageSpace.getSize());		
+		                dst, dstStart, dstOffset, dstScanlineStride,
+		                imageChannelCount, intersectionInImageSpace.getSize(), swapRgb);
 	}
 	
 	/**
@@ -113,32 +242,43 @@ public class ImageUtil
 	 * @param srcOffset         offset of a pixel in source buffer from which the copy will start
 	 * @param srcWidth          width of source buffer in pixels
 	 * @param dst               destination buffer with pixels
-	 * @param dstOffset         offset of a pixel in destination buffer
-	 * @param dstWidth          width of destination buffer in pixels
+	 * @param dstStart          index of the first byte of destination region in destination buffer
+	 * @param dstOffset         offset of a pixel in destination region
+	 * @param dstScanlineStride distance between the rows of destination buffer in bytes
 	 * @param imageChannelCount number of channels in the image
 	 * @param areaToCopy        area to copy
+	 * @param swapRgb           whether to swap the R and B components of copied pixels
 	 */
-	private static void copyPartOfImage(byte[] src, Point srcOffset, int srcWidth,
-	                                    byte[] dst, Point dstOffset, int dstWidth,
-	                                    int imageChannelCount, Dimension areaToCopy)
+	private static void copyPartOfImage(ByteBuffer src, Point srcOffset, int srcWidth,
+	                                    byte[] dst, int dstStart, Point dstOffset, int dstScanlineStride,
+	                                    int imageChannelCount, Dimension areaToCopy, boolean swapRgb)
 	{
 		int srcOffsetInBytes  = (srcOffset.y * srcWidth + srcOffset.x) * imageChannelCount;
-		int dstOffsetInBytes  = (dstOffset.y * dstWidth + dstOffset.x) * imageChannelCount;
+		int dstOffsetInBytes  = dstStart + dstOffset.y * dstScanlineStride + dstOffset.x * imageChannelCount;
 		
 		copyRectangleOfData(src, srcOffsetInBytes, srcWidth * imageChannelCount,
-		                    dst, dstOffsetInBytes, dstWidth * imageChannelCount,
-		                    new Dimension(areaToCopy.width * imageChannelCount, areaToCopy.height));
+		                    dst, dstOffsetInBytes, dstScanlineStride,
+		                    new Dimension(areaToCopy.width * imageChannelCount, areaToCopy.height), swapRgb);
 	}
 	
-	private static void copyRectangleOfData(byte[] src, int srcOffset, int srcWidth,
+	private static void copyRectangleOfData(ByteBuffer src, int srcOffset, int srcWidth,
 	                                        byte[] dst, int dstOffset, int dstWidth,
-	                                        Dimension areaToCopy)
+	                                        Dimension areaToCopy, boolean swapRgb)
 	{
+		// A duplicate is used to not change the position of the buffer passed by the caller.
+		ByteBuffer srcRows  = src.duplicate();
+		int        srcStart = src.position() + srcOffset;
+		
 		for(int y = 0; y < areaToCopy.height ;++y)
 		{
-			System.arraycopy(src, srcOffset + y * srcWidth,
-			                 dst, dstOffset + y * dstWidth,
-			                 areaToCopy.width);
+			srcRows.position(srcStart + y * srcWidth);
+			srcRows.get(dst, dstOffset + y * dstWidth, areaToCopy.width);
+			
+			// The row is swapped right after being copied, while it is still in the CPU cache.
+			if(swapRgb)
+			{
+				PixelDataUtil.swapRgbColorComponents(dst, dstOffset + y * dstWidth, areaToCopy.width);
+			}
 		}
 	}
 	
@@ -257,6 +397,26 @@ public class ImageUtil
 		}
 	}
 	
+	/**
+	 * Scales given bounds in original resolution to match the same region in different resolution.
+	 */
+	public static Rectangle scaleBoundsToMatchDifferentResolution(VirtualSlideImage image, Rectangle originalBounds,
+	                                                              int originalResIndex, int newResIndex)
+	{
+		ParameterValidator.throwIfNull(image, "image");
+		ParameterValidator.throwIfNull(originalBounds, "originalBounds");
+		
+		double scaleX = image.getImageSize(newResIndex).getWidth()  / image.getImageSize(originalResIndex).getWidth();
+		double scaleY = image.getImageSize(newResIndex).getHeight() / image.getImageSize(originalResIndex).getHeight();
+		
+		int x      = (int)(originalBounds.x * scaleX);
+		int y      = (int)(originalBounds.y * scaleY);
+		int width  = (int)Math.ceil(originalBounds.width  * scaleX);
+		int height = (int)Math.ceil(originalBounds.height * scaleY);
+		
+		return new Rectangle(x, y, width, height);
+	}
+	
 	/**
 	 * Gets the biggest resolution index of image whose size is at most the specified byte count.
 	 * 
@@ -30,7 +30,22 @@ public class PixelDataUtil
 	{
 		if(pixelArray == null) throw new IllegalArgumentException("pixelArray cannot be null.");
 		
-		for(int i = 0; i < pixelArray.length ;i += 3)
+		swapRgbColorComponents(pixelArray, 0, pixelArray.length);
+	}
+	
+	/**
+	 * Swaps R channel with B channel for every pixel in specified part of passed array.
+	 * 
+	 * @param pixelArray Pixel array which channels will be swapped.
+	 * @param offset     The index of the first byte of the first pixel to swap.
+	 * @param length     The number of bytes to swap, it has to be a multiple of 3.
+	 */
+	public static void swapRgbColorComponents(byte[] pixelArray, int offset, int length)
+	{
+		if(pixelArray == null) throw new IllegalArgumentException("pixelArray cannot be null.");
+		if(offset < 0 || length < 0 || offset + length > pixelArray.length) throw new IllegalArgumentException("Invalid range.");
+		
+		for(int i = offset; i < offset + length ;i += 3)
 		{
 			byte temp  = pixelArray[i];
 			
@@ -51,12 +66,74 @@ public class PixelDataUtil
 		
 		int channelLength = imageSize.width * imageSize.height;
 		
-		for(int pixel = 0; pixel < channelLength ;++pixel)
+		if(src.length < channelLength * channelCount || dst.length < channelLength * channelCount)
+			throw new IllegalArgumentException("The buffers are too small for an image of size " + imageSize + ".");
+		
+		switch(channelCount)
+		{
+			case 1:
+				System.arraycopy(src, 0, dst, 0, channelLength);
+				break;
+				
+			case 3:
+				convertPlanarRgbToInterleaved(src, dst, channelLength);
+				break;
+				
+			default:
+				convertPlanarToInterleaved(src, dst, channelLength, channelCount);
+				break;
+		}
+	}
+	
+	/**
+	 * Interleaves RGB planes reading all of them at once, 4 pixels per iteration.
+	 */
+	private static void convertPlanarRgbToInterleaved(byte[] src, byte[] dst, int channelLength)
+	{
+		int greenOffset = channelLength;
+		int blueOffset  = channelLength * 2;
+		int unrolledEnd = channelLength - channelLength % 4;
+		
+		int pixel = 0;
+		int d     = 0;
+		
+		for(; pixel < unrolledEnd; pixel += 4, d += 12)
+		{
+			dst[d]      = src[pixel];
+			dst[d + 1]  = src[pixel + greenOffset];
+			dst[d + 2]  = src[pixel + blueOffset];
+			dst[d + 3]  = src[pixel + 1];
+			dst[d + 4]  = src[pixel + 1 + greenOffset];
+			dst[d + 5]  = src[pixel + 1 + blueOffset];
+			dst[d + 6]  = src[pixel + 2];
+			dst[d + 7]  = src[pixel + 2 + greenOffset];
+			dst[d + 8]  = src[pixel + 2 + blueOffset];
+			dst[d + 9]  = src[pixel + 3];
+			dst[d + 10] = src[pixel + 3 + greenOffset];
+			dst[d + 11] = src[pixel + 3 + blueOffset];
+		}
+		
+		for(; pixel < channelLength; pixel++, d += 3)
+		{
+			dst[d]     = src[pixel];
+			dst[d + 1] = src[pixel + greenOffset];
+			dst[d + 2] = src[pixel + blueOffset];
+		}
+	}
+	
+	/**
+	 * Interleaves planes of any number of channels, reading every plane sequentially.
+	 */
+	private static void convertPlanarToInterleaved(byte[] src, byte[] dst, int channelLength, int channelCount)
+	{
+		for(int channel = 0; channel < channelCount; channel++)
 		{
-			for(int channel = 0; channel < channelCount; channel++)
+			int planeOffset = channel * channelLength;
+			
+			for(int pixel = 0, d = channel; pixel < channelLength; pixel++, d += channelCount)
 			{
-				dst[pixel * channelCount + channel] = src[pixel + channel * channelLength];
+				dst[d] = src[planeOffset + pixel];
 			}
-		}	
+		}
 	}
 }
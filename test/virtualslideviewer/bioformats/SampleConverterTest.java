@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.bioformats;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.awt.Dimension;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import loci.formats.FormatTools;
+
+import org.junit.Test;
+
+import virtualslideviewer.util.PixelDataUtil;
+
+public class SampleConverterTest
+{
+	@Test
+	public void testUnsigned16BitSamplesAreScaledToFullRangeInBothByteOrders()
+	{
+		for(ByteOrder byteOrder : Arrays.asList(ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN))
+		{
+			SampleConverter converter = SampleConverter.createDefault(FormatTools.UINT16, 16, byteOrder == ByteOrder.LITTLE_ENDIAN, 1);
+			
+			byte[] src = ByteBuffer.allocate(8).order(byteOrder).putShort((short)0).putShort((short)257)
+			                                                    .putShort((short)32768).putShort((short)65535).array();
+			byte[] dst = new byte[4];
+			
+			converter.convert(src, dst, 4, true);
+			
+			assertThat(dst, is(new byte[] { 0, 1, (byte)127, (byte)255 }));
+		}
+	}
+	
+	@Test
+	public void testSigned16BitSamplesAreShiftedToUnsignedRange()
+	{
+		SampleConverter converter = SampleConverter.createDefault(FormatTools.INT16, 16, true, 1);
+		
+		byte[] src = ByteBuffer.allocate(6).order(ByteOrder.LITTLE_ENDIAN).putShort((short)-32768).putShort((short)0)
+		                                                                  .putShort((short)32767).array();
+		byte[] dst = new byte[3];
+		
+		converter.convert(src, dst, 3, true);
+		
+		assertThat(dst, is(new byte[] { 0, (byte)127, (byte)255 }));
+	}
+	
+	@Test
+	public void testDefaultWindowUsesOnlyTheBitsUsedBySamples()
+	{
+		assertThat(DisplayWindow.getDefault(FormatTools.UINT16, 12), is(new DisplayWindow(0, 4095)));
+		assertThat(DisplayWindow.getDefault(FormatTools.UINT16, 16), is(new DisplayWindow(0, 65535)));
+	}
+	
+	@Test
+	public void testValuesOutsideOfWindowAreClamped()
+	{
+		SampleConverter converter = new SampleConverter(FormatTools.UINT16, false, Arrays.asList(new DisplayWindow(1000, 2000)));
+		
+		byte[] src = ByteBuffer.allocate(6).putShort((short)500).putShort((short)1500).putShort((short)2500).array();
+		byte[] dst = new byte[3];
+		
+		converter.convert(src, dst, 3, true);
+		
+		assertThat(dst, is(new byte[] { 0, (byte)127, (byte)255 }));
+	}
+	
+	@Test
+	public void testEveryComponentOfInterleavedPixelsUsesItsOwnWindow()
+	{
+		SampleConverter converter = new SampleConverter(FormatTools.UINT8, false, Arrays.asList(new DisplayWindow(0, 255),
+		                                                                                        new DisplayWindow(0, 100),
+		                                                                                        new DisplayWindow(100, 200)));
+		
+		byte[] src = { 50, 50, (byte)150, 100, 100, 100 };
+		byte[] dst = new byte[6];
+		
+		converter.convert(src, dst, 2, true);
+		
+		assertThat(dst, is(new byte[] { 50, (byte)127, (byte)127, 100, (byte)255, 0 }));
+	}
+	
+	@Test
+	public void testEveryPlaneOfPlanarPixelsUsesItsOwnWindow()
+	{
+		SampleConverter converter = new SampleConverter(FormatTools.UINT8, false, Arrays.asList(new DisplayWindow(0, 255),
+		                                                                                        new DisplayWindow(0, 100),
+		                                                                                        new DisplayWindow(100, 200)));
+		
+		byte[] src = { 50, 100, 50, 100, (byte)150, 100 };
+		byte[] dst = new byte[6];
+		
+		converter.convert(src, dst, 2, false);
+		
+		assertThat(dst, is(new byte[] { 50, 100, (byte)127, (byte)255, (byte)127, 0 }));
+	}
+	
+	@Test
+	public void testUnsigned32BitSamplesAreScaledToFullRange()
+	{
+		SampleConverter converter = SampleConverter.createDefault(FormatTools.UINT32, 32, true, 1);
+		
+		byte[] src = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN).putInt(0).putInt(0x80000000).putInt(0xFFFFFFFF).array();
+		byte[] dst = new byte[3];
+		
+		converter.convert(src, dst, 3, true);
+		
+		assertThat(dst, is(new byte[] { 0, (byte)127, (byte)255 }));
+	}
+	
+	@Test
+	public void testSigned32BitBigEndianSamplesAreScaledToFullRange()
+	{
+		SampleConverter converter = SampleConverter.createDefault(FormatTools.INT32, 32, false, 1);
+		
+		byte[] src = ByteBuffer.allocate(12).putInt(Integer.MIN_VALUE).putInt(0).putInt(Integer.MAX_VALUE).array();
+		byte[] dst = new byte[3];
+		
+		converter.convert(src, dst, 3, true);
+		
+		assertThat(dst, is(new byte[] { 0, (byte)127, (byte)255 }));
+	}
+	
+	@Test
+	public void testFloatingPointSamplesAreScaledFromNormalizedRange()
+	{
+		SampleConverter floatConverter  = SampleConverter.createDefault(FormatTools.FLOAT, 32, false, 1);
+		SampleConverter doubleConverter = SampleConverter.createDefault(FormatTools.DOUBLE, 64, true, 1);
+		
+		byte[] floatSrc  = ByteBuffer.allocate(16).putFloat(-1.0f).putFloat(0.5f).putFloat(2.0f).putFloat(Float.NaN).array();
+		byte[] doubleSrc = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN).putDouble(-1.0).putDouble(0.5)
+		                                                                         .putDouble(2.0).putDouble(Double.NaN).array();
+		byte[] floatDst  = new byte[4];
+		byte[] doubleDst = new byte[4];
+		
+		floatConverter.convert(floatSrc, floatDst, 4, true);
+		doubleConverter.convert(doubleSrc, doubleDst, 4, true);
+		
+		assertThat(floatDst, is(new byte[] { 0, (byte)127, (byte)255, 0 }));
+		assertThat(doubleDst, is(new byte[] { 0, (byte)127, (byte)255, 0 }));
+	}
+	
+	@Test
+	public void testOnlyDefaultUnsigned8BitConversionIsIdentity()
+	{
+		assertThat(SampleConverter.createDefault(FormatTools.UINT8, 8, true, 3).isIdentity(), is(true));
+		assertThat(SampleConverter.createDefault(FormatTools.INT8, 8, true, 3).isIdentity(), is(false));
+		assertThat(SampleConverter.createDefault(FormatTools.UINT8, 8, true, 3).withWindow(1, new DisplayWindow(0, 100)).isIdentity(), is(false));
+	}
+	
+	@Test
+	public void testPlanarToInterleavedConversionGivesTheSameResultAsConversionFollowedByInterleaving()
+	{
+		// More pixels than a single block of the conversion, with a different window for every component.
+		int pixelCount = 5000;
+		
+		SampleConverter converter = new SampleConverter(FormatTools.UINT16, true, Arrays.asList(new DisplayWindow(0, 65535),
+		                                                                                        new DisplayWindow(0, 4095),
+		                                                                                        new DisplayWindow(1000, 30000)));
+		
+		ByteBuffer src = ByteBuffer.allocate(pixelCount * 3 * 2).order(ByteOrder.LITTLE_ENDIAN);
+		for(int i = 0; i < pixelCount * 3; i++)
+		{
+			src.putShort((short)(i * 37));
+		}
+		
+		byte[] convertedPlanes = new byte[pixelCount * 3];
+		byte[] expected        = new byte[pixelCount * 3];
+		byte[] actual          = new byte[pixelCount * 3];
+		
+		converter.convert(src.array(), convertedPlanes, pixelCount, false);
+		PixelDataUtil.convertPlanarToInterleaved(convertedPlanes, expected, new Dimension(pixelCount, 1), 3);
+		
+		converter.convertPlanarToInterleaved(src.array(), actual, pixelCount);
+		
+		assertThat(actual, is(expected));
+	}
+}
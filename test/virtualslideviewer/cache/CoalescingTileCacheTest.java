@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileLoadingCancelledException;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.VirtualSlideImage;
+
+public class CoalescingTileCacheTest
+{
+	private VirtualSlideImage   mImageMock;
+	private ExecutorService     mThreadPool;
+	private CoalescingTileCache mTestedCache;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		mImageMock = Mockito.mock(VirtualSlideImage.class);
+		Mockito.when(mImageMock.getID()).thenReturn("Image");
+		
+		mThreadPool  = Executors.newFixedThreadPool(2);
+		mTestedCache = new CoalescingTileCache(new OffHeapTileCache(1024 * 1024));
+	}
+	
+	@After
+	public void tearDown() throws Exception
+	{
+		mThreadPool.shutdownNow();
+	}
+	
+	@Test
+	public void testConcurrentRequestsForTheSameTileLoadItOnlyOnce() throws Exception
+	{
+		CountDownLatch loadStarted = new CountDownLatch(1);
+		CountDownLatch finishLoad  = new CountDownLatch(1);
+		AtomicInteger  loaderCalls = new AtomicInteger();
+		
+		Future<byte[]> firstRequest = mThreadPool.submit(() -> mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () ->
+		{
+			loaderCalls.incrementAndGet();
+			loadStarted.countDown();
+			await(finishLoad);
+			return new byte[] { 1, 2 };
+		}));
+		
+		loadStarted.await();
+		
+		Future<byte[]> secondRequest = mThreadPool.submit(() -> mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () ->
+		{
+			loaderCalls.incrementAndGet();
+			return new byte[] { 3, 4 };
+		}));
+		
+		// Give the second request time to join the load in progress.
+		Thread.sleep(50);
+		finishLoad.countDown();
+		
+		assertThat(firstRequest.get(1, TimeUnit.SECONDS), is(new byte[] { 1, 2 }));
+		assertThat(secondRequest.get(1, TimeUnit.SECONDS), is(new byte[] { 1, 2 }));
+		assertThat(loaderCalls.get(), is(1));
+	}
+	
+	@Test
+	public void testRequestWaitingForAbandonedLoadLoadsTheTileItself() throws Exception
+	{
+		CountDownLatch loadStarted = new CountDownLatch(1);
+		CountDownLatch finishLoad  = new CountDownLatch(1);
+		
+		Future<byte[]> firstRequest = mThreadPool.submit(() -> mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.PREFETCHED, () ->
+		{
+			loadStarted.countDown();
+			await(finishLoad);
+			throw new TileLoadingCancelledException("Cancelled");
+		}));
+		
+		loadStarted.await();
+		
+		Future<byte[]> secondRequest = mThreadPool.submit(() -> mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE,
+		                                                                                            () -> new byte[] { 3, 4 }));
+		
+		// Give the second request time to join the load in progress.
+		Thread.sleep(50);
+		finishLoad.countDown();
+		
+		try
+		{
+			firstRequest.get(1, TimeUnit.SECONDS);
+			fail();
+		}
+		catch(ExecutionException e)
+		{
+			assertThat(e.getCause() instanceof TileLoadingCancelledException, is(true));
+		}
+		
+		assertThat(secondRequest.get(1, TimeUnit.SECONDS), is(new byte[] { 3, 4 }));
+	}
+	
+	@Test
+	public void testRequestJoiningPrefetchingOfTileRaisesPriorityOfTheTile() throws Exception
+	{
+		OffHeapTileCache decoratedCache = Mockito.spy(new OffHeapTileCache(1024 * 1024));
+		mTestedCache = new CoalescingTileCache(decoratedCache);
+		
+		CountDownLatch loadStarted = new CountDownLatch(1);
+		CountDownLatch finishLoad  = new CountDownLatch(1);
+		
+		Future<byte[]> firstRequest = mThreadPool.submit(() -> mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.PREFETCHED, () ->
+		{
+			loadStarted.countDown();
+			await(finishLoad);
+			return new byte[] { 1, 2 };
+		}));
+		
+		loadStarted.await();
+		
+		Future<byte[]> secondRequest = mThreadPool.submit(() -> mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE,
+		                                                                                            () -> new byte[] { 3, 4 }));
+		
+		// Give the second request time to join the load in progress.
+		Thread.sleep(50);
+		finishLoad.countDown();
+		
+		assertThat(firstRequest.get(1, TimeUnit.SECONDS), is(new byte[] { 1, 2 }));
+		assertThat(secondRequest.get(1, TimeUnit.SECONDS), is(new byte[] { 1, 2 }));
+		Mockito.verify(decoratedCache).addTile(Mockito.eq(mImageMock), Mockito.eq(new Tile(0, 0, 0)), Mockito.eq(new byte[] { 1, 2 }),
+		                                       Mockito.eq(TilePriority.VISIBLE));
+	}
+	
+	@Test
+	public void testTileIsLoadedAgainAfterFailedLoad()
+	{
+		try
+		{
+			mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> { throw new IllegalStateException(); });
+			fail();
+		}
+		catch(IllegalStateException e)
+		{
+		}
+		
+		byte[] tileData = mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> new byte[] { 5 });
+		
+		assertThat(tileData, is(new byte[] { 5 }));
+	}
+	
+	private static void await(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await();
+		}
+		catch(InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.UniqueTileID;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.metrics.TileMetrics;
+
+public class CompressingTileCacheTest
+{
+	private VirtualSlideImage    mImageMock;
+	private TileCache            mDecoratedCache;
+	private TileMetrics          mMetrics;
+	private CompressingTileCache mTestedCache;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		mImageMock = Mockito.mock(VirtualSlideImage.class);
+		Mockito.when(mImageMock.getID()).thenReturn("Image");
+		
+		mDecoratedCache = new OffHeapTileCache(16 * 1024 * 1024);
+		mMetrics        = new TileMetrics();
+		mTestedCache    = new CompressingTileCache(mDecoratedCache, mMetrics);
+	}
+	
+	@Test
+	public void testTileIsStoredCompressedAndRetrievedDecompressed()
+	{
+		byte[] uniformTile = new byte[512 * 512 * 3];
+		
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), uniformTile, TilePriority.VISIBLE);
+		
+		assertTrue(mDecoratedCache.getTileData(mImageMock, new Tile(0, 0, 0)).length < uniformTile.length / 10);
+		assertThat(mTestedCache.getTileData(mImageMock, new Tile(0, 0, 0)), is(uniformTile));
+		assertTrue(mMetrics.getCompressionRatio() > 10);
+	}
+	
+	@Test
+	public void testIncompressibleTileIsRetrievedUnchanged()
+	{
+		byte[] randomTile = new byte[256 * 256 * 3];
+		new Random(42).nextBytes(randomTile);
+		
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), randomTile, TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.getTileData(mImageMock, new Tile(0, 0, 0)), is(randomTile));
+	}
+	
+	@Test
+	public void testVisitTileDataPassesDecompressedData()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1, 2, 3, 4 }, TilePriority.VISIBLE);
+		
+		ByteBuffer[] visitedData = new ByteBuffer[1];
+		mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), (x) -> visitedData[0] = ByteBuffer.allocate(x.remaining()).put(x));
+		
+		assertThat(visitedData[0].array(), is(new byte[] { 1, 2, 3, 4 }));
+	}
+	
+	@Test
+	public void testTileIsCompressedOnceWhenLoadedAndDecompressedOnlyOnceWhenVisitedRepeatedly()
+	{
+		mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> new byte[] { 5 });
+		
+		byte[] tileData = mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> new byte[] { 6 });
+		mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), x -> {});
+		mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), x -> {});
+		mTestedCache.getTileDataIfPresent(mImageMock, new Tile(1, 0, 0));
+		
+		assertThat(tileData, is(new byte[] { 5 }));
+		assertThat(mMetrics.getCompressedTileCount(), is(1L));
+		assertThat(mMetrics.getDecompressedTileCount(), is(2L));
+	}
+	
+	@Test
+	public void testDecompressedTileIsNotVisitedAfterItHasBeenEvictedFromDecoratedCache()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), x -> {});
+		
+		mDecoratedCache.removeTile(new UniqueTileID("Image", new Tile(0, 0, 0)));
+		
+		assertThat(mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), x -> {}), is(false));
+	}
+	
+	@Test
+	public void testCompressedSizesAreRoundedUpToFewSizeClasses()
+	{
+		Random       random          = new Random(42);
+		Set<Integer> compressedSizes = new HashSet<>();
+		
+		for(int i = 0; i < 64; i++)
+		{
+			// Tiles with a random part of varying length compress to different sizes.
+			byte[] tileData = new byte[256 * 256 * 3];
+			byte[] noise    = new byte[1000 * i];
+			random.nextBytes(noise);
+			System.arraycopy(noise, 0, tileData, 0, noise.length);
+			
+			mTestedCache.addTile(mImageMock, new Tile(i, 0, 0), tileData, TilePriority.VISIBLE);
+			
+			compressedSizes.add(mDecoratedCache.getTileData(mImageMock, new Tile(i, 0, 0)).length);
+			assertThat(mTestedCache.getTileData(mImageMock, new Tile(i, 0, 0)), is(tileData));
+		}
+		
+		assertTrue(compressedSizes.size() <= 8);
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.VirtualSlideImage;
+
+public class DiskTileCacheTest
+{
+	@Rule
+	public TemporaryFolder    mTempFolder = new TemporaryFolder();
+	
+	private Path              mCacheDirectory;
+	private VirtualSlideImage mImageMock;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		mCacheDirectory = mTempFolder.getRoot().toPath().resolve("cache");
+		
+		mImageMock = Mockito.mock(VirtualSlideImage.class);
+		Mockito.when(mImageMock.getID()).thenReturn("Slide:0");
+	}
+	
+	@Test
+	public void testTilesAreAvailableInNewInstanceOfCacheUsingTheSameDirectory() throws Exception
+	{
+		DiskTileCache cache = new DiskTileCache(mCacheDirectory, 1024);
+		
+		cache.addTile(mImageMock, new Tile(1, 2, 0), new byte[] { 1, 2, 3 }, TilePriority.VISIBLE);
+		waitUntilTileIsWritten(cache, new Tile(1, 2, 0));
+		
+		DiskTileCache cacheInNextSession = new DiskTileCache(mCacheDirectory, 1024);
+		
+		assertThat(cacheInNextSession.getTileData(mImageMock, new Tile(1, 2, 0)), is(new byte[] { 1, 2, 3 }));
+		assertThat(cacheInNextSession.getUsedBytes(), is(3L));
+	}
+	
+	@Test
+	public void testGetTileDataIfPresentReturnsNullWhenTheTileIsNotInCache() throws Exception
+	{
+		DiskTileCache cache = new DiskTileCache(mCacheDirectory, 1024);
+		
+		assertNull(cache.getTileDataIfPresent(mImageMock, new Tile(0, 0, 0)));
+	}
+	
+	@Test
+	public void testTheLeastRecentlyUsedTilesAreDeletedWhenTheCapacityIsExceeded() throws Exception
+	{
+		DiskTileCache cache = new DiskTileCache(mCacheDirectory, 10);
+		
+		cache.addTile(mImageMock, new Tile(0, 0, 0), new byte[4], TilePriority.VISIBLE);
+		waitUntilTileIsWritten(cache, new Tile(0, 0, 0));
+		cache.addTile(mImageMock, new Tile(1, 0, 0), new byte[4], TilePriority.VISIBLE);
+		waitUntilTileIsWritten(cache, new Tile(1, 0, 0));
+		
+		cache.getTileData(mImageMock, new Tile(0, 0, 0));
+		
+		cache.addTile(mImageMock, new Tile(2, 0, 0), new byte[4], TilePriority.VISIBLE);
+		waitUntilTileIsWritten(cache, new Tile(2, 0, 0));
+		
+		assertThat(cache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(cache.hasTile(mImageMock, new Tile(1, 0, 0)), is(false));
+		assertThat(cache.getUsedBytes(), is(8L));
+	}
+	
+	@Test
+	public void testClearDeletesAllTiles() throws Exception
+	{
+		DiskTileCache cache = new DiskTileCache(mCacheDirectory, 1024);
+		
+		cache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		waitUntilTileIsWritten(cache, new Tile(0, 0, 0));
+		
+		cache.clear();
+		
+		assertThat(new DiskTileCache(mCacheDirectory, 1024).hasTile(mImageMock, new Tile(0, 0, 0)), is(false));
+	}
+	
+	private void waitUntilTileIsWritten(DiskTileCache cache, Tile tile) throws InterruptedException
+	{
+		for(int i = 0; i < 100 && !cache.hasTile(mImageMock, tile); i++)
+		{
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.VirtualSlideImage;
+import virtualslideviewer.metrics.TileMetrics;
+
+public class InstrumentedTileCacheTest
+{
+	private VirtualSlideImage     mImageMock;
+	private TileMetrics           mMetrics;
+	private InstrumentedTileCache mTestedCache;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		mImageMock = Mockito.mock(VirtualSlideImage.class);
+		Mockito.when(mImageMock.getID()).thenReturn("Image");
+		
+		mMetrics     = new TileMetrics();
+		mTestedCache = new InstrumentedTileCache(new OffHeapTileCache(1024 * 1024), mMetrics);
+	}
+	
+	@Test
+	public void testLoadingTileIsCountedAsMissAndReadingItAgainAsHit()
+	{
+		mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> new byte[] { 1 });
+		mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> new byte[] { 1 });
+		mTestedCache.getTileDataIfPresent(mImageMock, new Tile(0, 0, 0));
+		
+		assertThat(mMetrics.getCacheMissCount(), is(1L));
+		assertThat(mMetrics.getCacheHitCount(), is(2L));
+	}
+	
+	@Test
+	public void testVisitingTileIsNotCountedAsHit()
+	{
+		mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> new byte[] { 1 });
+		mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), x -> {});
+		mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), x -> {});
+		
+		assertThat(mMetrics.getCacheHitCount(), is(0L));
+	}
+	
+	@Test
+	public void testFailedLookupIsNotCountedAsMiss()
+	{
+		mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), x -> {});
+		mTestedCache.getTileDataIfPresent(mImageMock, new Tile(0, 0, 0));
+		
+		assertThat(mMetrics.getCacheMissCount(), is(0L));
+		assertThat(mMetrics.getCacheHitCount(), is(0L));
+	}
+	
+	@Test
+	public void testPrefetchedTileIsNotViewedUntilItIsReadWithoutPrefetching()
+	{
+		mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.PREFETCHED, () -> new byte[] { 1 });
+		mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(1, 0, 0), TilePriority.PREFETCHED, () -> new byte[] { 2 });
+		mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.PREFETCHED, () -> new byte[] { 1 });
+		
+		assertThat(mMetrics.getPrefetchedTileCount(), is(2L));
+		assertThat(mMetrics.getPrefetchedTileNotViewedCount(), is(2L));
+		
+		mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), x -> {});
+		mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), x -> {});
+		
+		assertThat(mMetrics.getPrefetchedTileNotViewedCount(), is(1L));
+	}
+}
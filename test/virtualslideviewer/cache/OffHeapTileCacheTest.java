@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.VirtualSlideImage;
+
+public class OffHeapTileCacheTest
+{
+	private static final int SLOT_SIZE = 4 * 1024;
+	
+	private VirtualSlideImage mImageMock;
+	private VirtualSlideImage mOtherImageMock;
+	private OffHeapTileCache  mTestedCache;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		mImageMock      = Mockito.mock(VirtualSlideImage.class);
+		mOtherImageMock = Mockito.mock(VirtualSlideImage.class);
+		
+		Mockito.when(mImageMock.getID()).thenReturn("Image1");
+		Mockito.when(mOtherImageMock.getID()).thenReturn("Image2");
+		
+		mTestedCache = new OffHeapTileCache(4 * SLOT_SIZE, 2 * SLOT_SIZE);
+	}
+	
+	@Test
+	public void testGetTileDataReturnsTheDataOfAddedTile()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(1, 2, 0), new byte[] { 1, 2, 3 }, TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(1, 2, 0)), is(true));
+		assertThat(mTestedCache.getTileData(mImageMock, new Tile(1, 2, 0)), is(new byte[] { 1, 2, 3 }));
+	}
+	
+	@Test
+	public void testTilesWithTheSameCoordinatesInDifferentImagesAreDistinguished()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		mTestedCache.addTile(mOtherImageMock, new Tile(0, 0, 0), new byte[] { 2 }, TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.getTileData(mImageMock, new Tile(0, 0, 0)), is(new byte[] { 1 }));
+		assertThat(mTestedCache.getTileData(mOtherImageMock, new Tile(0, 0, 0)), is(new byte[] { 2 }));
+	}
+	
+	@Test
+	public void testAddingTileAgainReplacesItsData()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1, 2, 3 }, TilePriority.VISIBLE);
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[SLOT_SIZE + 1], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.getTileData(mImageMock, new Tile(0, 0, 0)).length, is(SLOT_SIZE + 1));
+	}
+	
+	@Test
+	public void testGetTileDataIfPresentReturnsNullWhenTheTileIsNotInCache()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.getTileDataIfPresent(mImageMock, new Tile(0, 0, 0)), is(new byte[] { 1 }));
+		assertNull(mTestedCache.getTileDataIfPresent(mImageMock, new Tile(1, 0, 0)));
+	}
+	
+	@Test
+	public void testComputeTileDataIfAbsentLoadsAndCachesTheTileWhenItIsNotInCache()
+	{
+		byte[] tileData = mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> new byte[] { 7, 8 });
+		
+		assertThat(tileData, is(new byte[] { 7, 8 }));
+		assertThat(mTestedCache.getTileData(mImageMock, new Tile(0, 0, 0)), is(new byte[] { 7, 8 }));
+	}
+	
+	@Test
+	public void testComputeTileDataIfAbsentDoesNotCallTheLoaderWhenTheTileIsInCache()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		
+		byte[] tileData = mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> { fail(); return null; });
+		
+		assertThat(tileData, is(new byte[] { 1 }));
+	}
+	
+	@Test
+	public void testVisitTileDataPassesReadOnlyViewOfTheDataOfAddedTile()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 4, 5, 6 }, TilePriority.VISIBLE);
+		
+		List<ByteBuffer> visitedData = new ArrayList<>();
+		
+		boolean tileInCache = mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), visitedData::add);
+		
+		assertThat(tileInCache, is(true));
+		assertThat(visitedData.get(0).isReadOnly(), is(true));
+		assertThat(visitedData.get(0), is(ByteBuffer.wrap(new byte[] { 4, 5, 6 })));
+	}
+	
+	@Test
+	public void testVisitTileDataDoesNotCallVisitorWhenTheTileIsNotInCache()
+	{
+		boolean tileInCache = mTestedCache.visitTileData(mImageMock, new Tile(0, 0, 0), (x) -> fail());
+		
+		assertThat(tileInCache, is(false));
+	}
+	
+	@Test(expected = NoSuchElementException.class)
+	public void testGetTileDataThrowsWhenTheTileIsNotInCache()
+	{
+		mTestedCache.getTileData(mImageMock, new Tile(0, 0, 0));
+	}
+	
+	@Test
+	public void testTheLeastRecentlyReferencedTileIsEvictedWhenTheCacheIsFull()
+	{
+		for(int i = 0; i < 4; i++)
+		{
+			mTestedCache.addTile(mImageMock, new Tile(i, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		}
+		
+		mTestedCache.getTileData(mImageMock, new Tile(0, 0, 0));
+		
+		mTestedCache.addTile(mImageMock, new Tile(4, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(1, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(4, 0, 0)), is(true));
+		assertThat(mTestedCache.getAllocatedBytes(), is(4L * SLOT_SIZE));
+	}
+	
+	@Test
+	public void testPrefetchedTileIsEvictedBeforeVisibleTiles()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		mTestedCache.addTile(mImageMock, new Tile(1, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		mTestedCache.addTile(mImageMock, new Tile(2, 0, 0), new byte[SLOT_SIZE], TilePriority.PREFETCHED);
+		mTestedCache.addTile(mImageMock, new Tile(3, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		
+		mTestedCache.addTile(mImageMock, new Tile(4, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(2, 0, 0)), is(false));
+	}
+	
+	@Test
+	public void testPrefetchedTileWhichHasBeenReadIsNotEvictedBeforeOtherPrefetchedTiles()
+	{
+		for(int i = 0; i < 4; i++)
+		{
+			mTestedCache.addTile(mImageMock, new Tile(i, 0, 0), new byte[SLOT_SIZE], TilePriority.PREFETCHED);
+		}
+		
+		mTestedCache.getTileData(mImageMock, new Tile(0, 0, 0));
+		
+		mTestedCache.addTile(mImageMock, new Tile(4, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(1, 0, 0)), is(false));
+	}
+	
+	@Test
+	public void testPinnedTileIsNeverEvicted()
+	{
+		mTestedCache = new OffHeapTileCache(8 * SLOT_SIZE, 2 * SLOT_SIZE);
+		
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[SLOT_SIZE], TilePriority.PINNED);
+		
+		for(int i = 1; i < 16; i++)
+		{
+			mTestedCache.addTile(mImageMock, new Tile(i, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		}
+		
+		mTestedCache.addTile(mImageMock, new Tile(16, 0, 0), new byte[2 * SLOT_SIZE], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+	}
+	
+	@Test
+	public void testPinnedTileIsCachedAsVisibleWhenThereIsNoMoreSpaceForPinnedTiles()
+	{
+		mTestedCache = new OffHeapTileCache(8 * SLOT_SIZE, 2 * SLOT_SIZE);
+		
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[SLOT_SIZE], TilePriority.PINNED);
+		mTestedCache.addTile(mImageMock, new Tile(1, 0, 0), new byte[SLOT_SIZE], TilePriority.PINNED);
+		mTestedCache.addTile(mImageMock, new Tile(2, 0, 0), new byte[SLOT_SIZE], TilePriority.PINNED);
+		
+		for(int i = 3; i < 8; i++)
+		{
+			mTestedCache.addTile(mImageMock, new Tile(i, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		}
+		
+		mTestedCache.addTile(mImageMock, new Tile(8, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(1, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(2, 0, 0)), is(false));
+	}
+	
+	@Test
+	public void testEmptiedSlabIsReusedForTilesOfDifferentSize()
+	{
+		for(int i = 0; i < 4; i++)
+		{
+			mTestedCache.addTile(mImageMock, new Tile(i, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		}
+		
+		mTestedCache.addTile(mImageMock, new Tile(4, 0, 0), new byte[2 * SLOT_SIZE], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.getTileData(mImageMock, new Tile(4, 0, 0)).length, is(2 * SLOT_SIZE));
+		assertThat(mTestedCache.getAllocatedBytes(), is(4L * SLOT_SIZE));
+	}
+	
+	@Test
+	public void testTheLeastOccupiedSlabIsEmptiedForTileOfNewSize()
+	{
+		for(int i = 0; i < 3; i++)
+		{
+			mTestedCache.addTile(mImageMock, new Tile(i, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		}
+		
+		mTestedCache.addTile(mImageMock, new Tile(3, 0, 0), new byte[2 * SLOT_SIZE], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(1, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(2, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(3, 0, 0)), is(true));
+	}
+	
+	@Test
+	public void testTileOfCachedSizeEvictsOnlyTilesOfTheSameSize()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		mTestedCache.addTile(mImageMock, new Tile(1, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		mTestedCache.addTile(mImageMock, new Tile(2, 0, 0), new byte[2 * SLOT_SIZE], TilePriority.VISIBLE);
+		
+		mTestedCache.addTile(mImageMock, new Tile(3, 0, 0), new byte[2 * SLOT_SIZE], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(1, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(2, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(3, 0, 0)), is(true));
+	}
+	
+	@Test
+	public void testSlabOfOtherSizeIsEmptiedWhenAllTilesOfTheSameSizeHaveBeenReadSinceLastSweep()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		mTestedCache.addTile(mImageMock, new Tile(1, 0, 0), new byte[SLOT_SIZE], TilePriority.VISIBLE);
+		mTestedCache.addTile(mImageMock, new Tile(2, 0, 0), new byte[2 * SLOT_SIZE], TilePriority.VISIBLE);
+		
+		mTestedCache.getTileData(mImageMock, new Tile(2, 0, 0));
+		
+		mTestedCache.addTile(mImageMock, new Tile(3, 0, 0), new byte[2 * SLOT_SIZE], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(1, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(2, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(3, 0, 0)), is(true));
+	}
+	
+	@Test
+	public void testTileBiggerThanSlabIsNotCached()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[2 * SLOT_SIZE + 1], TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(false));
+	}
+	
+	@Test
+	public void testClearRemovesAllTiles()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		mTestedCache.addTile(mOtherImageMock, new Tile(1, 0, 0), new byte[] { 2 }, TilePriority.VISIBLE);
+		
+		mTestedCache.clear();
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mOtherImageMock, new Tile(1, 0, 0)), is(false));
+	}
+}
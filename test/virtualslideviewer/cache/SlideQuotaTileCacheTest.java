@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.UniqueTileID;
+import virtualslideviewer.core.VirtualSlideImage;
+
+public class SlideQuotaTileCacheTest
+{
+	private static final int TILE_SIZE = 4 * 1024;
+
+	private VirtualSlideImage   mFirstSlideImageMock;
+	private VirtualSlideImage   mSecondSlideImageMock;
+	private VirtualSlideImage   mThirdSlideImageMock;
+	private OffHeapTileCache    mDecoratedCache;
+	private SlideQuotaTileCache mTestedCache;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		mFirstSlideImageMock  = createImageMock("Slide1");
+		mSecondSlideImageMock = createImageMock("Slide2");
+		mThirdSlideImageMock  = createImageMock("Slide3");
+
+		mDecoratedCache = new OffHeapTileCache(16 * TILE_SIZE, TILE_SIZE);
+		mTestedCache    = new SlideQuotaTileCache(mDecoratedCache, 4 * TILE_SIZE, 2);
+	}
+
+	private VirtualSlideImage createImageMock(String slideID)
+	{
+		VirtualSlideImage imageMock = Mockito.mock(VirtualSlideImage.class);
+		Mockito.when(imageMock.getID()).thenReturn(slideID + ":0");
+		Mockito.when(imageMock.getSlideID()).thenReturn(slideID);
+
+		return imageMock;
+	}
+
+	@Test
+	public void testSingleSlideCanUseTheWholeCapacity()
+	{
+		for(int i = 0; i < 4; i++)
+		{
+			mTestedCache.addTile(mFirstSlideImageMock, new Tile(i, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+		}
+
+		assertThat(mTestedCache.getUsedBytes(mFirstSlideImageMock), is(4L * TILE_SIZE));
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(3, 0, 0)), is(true));
+	}
+
+	@Test
+	public void testTilesOfOneSlideDoNotEvictTilesOfAnotherSlideWithinItsQuota()
+	{
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(0, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(1, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+
+		for(int i = 0; i < 4; i++)
+		{
+			mTestedCache.addTile(mSecondSlideImageMock, new Tile(i, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+		}
+
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(1, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mSecondSlideImageMock, new Tile(0, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mSecondSlideImageMock, new Tile(3, 0, 0)), is(true));
+	}
+
+	@Test
+	public void testTilesOfSlideExceedingItsQuotaAreEvictedForAnotherSlide()
+	{
+		for(int i = 0; i < 4; i++)
+		{
+			mTestedCache.addTile(mFirstSlideImageMock, new Tile(i, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+		}
+
+		mTestedCache.getTileData(mFirstSlideImageMock, new Tile(0, 0, 0));
+
+		mTestedCache.addTile(mSecondSlideImageMock, new Tile(0, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+		mTestedCache.addTile(mSecondSlideImageMock, new Tile(1, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(1, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(2, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mSecondSlideImageMock, new Tile(1, 0, 0)), is(true));
+		assertThat(mTestedCache.getUsedBytes(mFirstSlideImageMock), is(2L * TILE_SIZE));
+	}
+
+	@Test
+	public void testPrefetchedTileWhichHasNotBeenUsedIsEvictedFirst()
+	{
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(0, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(1, 0, 0), new byte[TILE_SIZE], TilePriority.PREFETCHED);
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(2, 0, 0), new byte[TILE_SIZE], TilePriority.PREFETCHED);
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(3, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+
+		mTestedCache.visitTileData(mFirstSlideImageMock, new Tile(1, 0, 0), x -> {});
+
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(4, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(1, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(2, 0, 0)), is(false));
+	}
+
+	@Test
+	public void testTilesOfTheLeastRecentlyUsedSlideAreRemovedWhenTooManySlidesAreUsed()
+	{
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		mTestedCache.addTile(mSecondSlideImageMock, new Tile(0, 0, 0), new byte[] { 2 }, TilePriority.VISIBLE);
+
+		mTestedCache.getTileData(mFirstSlideImageMock, new Tile(0, 0, 0));
+
+		mTestedCache.addTile(mThirdSlideImageMock, new Tile(0, 0, 0), new byte[] { 3 }, TilePriority.VISIBLE);
+
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mSecondSlideImageMock, new Tile(0, 0, 0)), is(false));
+		assertThat(mTestedCache.hasTile(mThirdSlideImageMock, new Tile(0, 0, 0)), is(true));
+	}
+
+	@Test
+	public void testCheckingSlideWithoutTilesDoesNotRemoveTilesOfOtherSlides()
+	{
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		mTestedCache.addTile(mSecondSlideImageMock, new Tile(0, 0, 0), new byte[] { 2 }, TilePriority.VISIBLE);
+
+		assertThat(mTestedCache.getTileDataIfPresent(mThirdSlideImageMock, new Tile(0, 0, 0)), is((byte[])null));
+
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(0, 0, 0)), is(true));
+		assertThat(mTestedCache.hasTile(mSecondSlideImageMock, new Tile(0, 0, 0)), is(true));
+	}
+
+	@Test
+	public void testTileEvictedByTheDecoratedCacheIsForgottenWhenFoundMissing()
+	{
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(0, 0, 0), new byte[TILE_SIZE], TilePriority.VISIBLE);
+
+		mDecoratedCache.removeTile(new UniqueTileID(mFirstSlideImageMock.getID(), new Tile(0, 0, 0)));
+
+		mTestedCache.visitTileData(mFirstSlideImageMock, new Tile(0, 0, 0), x -> {});
+
+		assertThat(mTestedCache.getUsedBytes(mFirstSlideImageMock), is(0L));
+	}
+
+	@Test
+	public void testPinnedTilesAreNotAccounted()
+	{
+		mTestedCache.addTile(mFirstSlideImageMock, new Tile(0, 0, 0), new byte[TILE_SIZE], TilePriority.PINNED);
+
+		assertThat(mTestedCache.getUsedBytes(mFirstSlideImageMock), is(0L));
+		assertThat(mTestedCache.hasTile(mFirstSlideImageMock, new Tile(0, 0, 0)), is(true));
+	}
+}
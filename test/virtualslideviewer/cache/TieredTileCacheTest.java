@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TilePriority;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.VirtualSlideImage;
+
+public class TieredTileCacheTest
+{
+	private VirtualSlideImage mImageMock;
+	private TileCache         mFirstLevelCache;
+	private TileCache         mSecondLevelCache;
+	private TieredTileCache   mTestedCache;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		mImageMock = Mockito.mock(VirtualSlideImage.class);
+		Mockito.when(mImageMock.getID()).thenReturn("Image");
+		
+		mFirstLevelCache  = new OffHeapTileCache(1024 * 1024);
+		mSecondLevelCache = new OffHeapTileCache(1024 * 1024);
+		
+		mTestedCache = new TieredTileCache(mFirstLevelCache, mSecondLevelCache);
+	}
+	
+	@Test
+	public void testComputeTileDataIfAbsentReturnsTileFromSecondLevelWithoutLoadingAndCopiesItToFirstLevel()
+	{
+		mSecondLevelCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1, 2 }, TilePriority.VISIBLE);
+		
+		byte[] tileData = mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> { fail(); return null; });
+		
+		assertThat(tileData, is(new byte[] { 1, 2 }));
+		assertThat(mFirstLevelCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+	}
+	
+	@Test
+	public void testComputeTileDataIfAbsentAddsLoadedTileToBothLevels()
+	{
+		mTestedCache.computeTileDataIfAbsent(mImageMock, new Tile(0, 0, 0), TilePriority.VISIBLE, () -> new byte[] { 3 });
+		
+		assertThat(mFirstLevelCache.getTileData(mImageMock, new Tile(0, 0, 0)), is(new byte[] { 3 }));
+		assertThat(mSecondLevelCache.getTileData(mImageMock, new Tile(0, 0, 0)), is(new byte[] { 3 }));
+	}
+	
+	@Test
+	public void testHasTileChecksOnlyTheFirstLevel()
+	{
+		mSecondLevelCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		
+		assertThat(mTestedCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(false));
+	}
+	
+	@Test
+	public void testClearDoesNotClearTheSecondLevel()
+	{
+		mTestedCache.addTile(mImageMock, new Tile(0, 0, 0), new byte[] { 1 }, TilePriority.VISIBLE);
+		
+		mTestedCache.clear();
+		
+		assertThat(mFirstLevelCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(false));
+		assertThat(mSecondLevelCache.hasTile(mImageMock, new Tile(0, 0, 0)), is(true));
+	}
+}
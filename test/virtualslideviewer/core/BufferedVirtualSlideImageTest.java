@@ -22,6 +22,7 @@ import static org.junit.Assert.*;
 
 import java.awt.Dimension;
 import java.awt.Rectangle;
+import java.util.function.Supplier;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -30,7 +31,8 @@ import org.mockito.Mockito;
 import virtualslideviewer.core.BufferedVirtualSlideImage;
 import virtualslideviewer.core.ImageIndex;
 import virtualslideviewer.core.Tile;
-import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TileCache;
+import virtualslideviewer.core.TilePriority;
 import virtualslideviewer.core.VirtualSlideImage;
 
 public class BufferedVirtualSlideImageTest
@@ -40,14 +42,34 @@ public class BufferedVirtualSlideImageTest
 	private BufferedVirtualSlideImage mTestedImage;
 	
 	@Before
+	@SuppressWarnings("unchecked")
 	public void setUp() throws Exception
 	{
 		mImageMock = Mockito.mock(VirtualSlideImage.class);
 		mCacheMock = Mockito.mock(TileCache.class);
 		
+		Mockito.when(mImageMock.getResolutionCount()).thenReturn(2);
+		Mockito.when(mImageMock.getImageSize(0)).thenReturn(new Dimension(100, 100));
+		Mockito.when(mImageMock.getImageSize(1)).thenReturn(new Dimension(10000, 10000));
+		
 		mTestedImage = new BufferedVirtualSlideImage(mImageMock, mCacheMock);
 					
 		Mockito.when(mCacheMock.getTileData(Mockito.eq(mTestedImage), Mockito.any())).thenReturn(new byte[] { 1, 2, 3 });
+		
+		// Behave like a real cache on top of the stubbed hasTile() and getTileData().
+		Mockito.when(mCacheMock.computeTileDataIfAbsent(Mockito.eq(mTestedImage), Mockito.any(), Mockito.any(), Mockito.any())).then((x) ->
+		{
+			Tile             tile     = (Tile)x.getArguments()[1];
+			TilePriority     priority = (TilePriority)x.getArguments()[2];
+			Supplier<byte[]> loader   = (Supplier<byte[]>)x.getArguments()[3];
+			
+			if(!mCacheMock.hasTile(mTestedImage, tile))
+			{
+				mCacheMock.addTile(mTestedImage, tile, loader.get(), priority);
+			}
+			
+			return mCacheMock.getTileData(mTestedImage, tile);
+		});
 	}
 
 	@Test
@@ -61,7 +83,7 @@ public class BufferedVirtualSlideImageTest
 		mTestedImage.getTileData(returnedBytes, tileToGet);
 		
 		Mockito.verify(mImageMock).getTileData(Mockito.eq(tileToGet));
-		Mockito.verify(mCacheMock).addTile(Mockito.eq(mTestedImage), Mockito.eq(tileToGet), Mockito.any());
+		Mockito.verify(mCacheMock).addTile(Mockito.eq(mTestedImage), Mockito.eq(tileToGet), Mockito.any(), Mockito.any());
 		
 		assertThat(returnedBytes, is(new byte[] { 1, 2, 3 }));
 	}
@@ -101,7 +123,7 @@ public class BufferedVirtualSlideImageTest
 		mTestedImage.ensureTileDataCached(tile);
 		
 		Mockito.verify(mImageMock).getTileData(Mockito.eq(tile));
-		Mockito.verify(mCacheMock).addTile(Mockito.eq(mTestedImage), Mockito.eq(tile), Mockito.any());
+		Mockito.verify(mCacheMock).addTile(Mockito.eq(mTestedImage), Mockito.eq(tile), Mockito.any(), Mockito.any());
 	}
 
 	@Test
@@ -116,6 +138,77 @@ public class BufferedVirtualSlideImageTest
 		Mockito.verify(mImageMock, Mockito.never()).getTileData(Mockito.any());
 	}
 	
+	@Test
+	public void testPrefetchTileAddsTileToCacheWithPrefetchedPriority()
+	{
+		Tile tile = new Tile(0, 0, 1);
+		
+		mTestedImage.prefetchTile(tile);
+		
+		Mockito.verify(mCacheMock).addTile(Mockito.eq(mTestedImage), Mockito.eq(tile), Mockito.any(), Mockito.eq(TilePriority.PREFETCHED));
+	}
+	
+	@Test
+	public void testEnsureTileDataCachedAddsTileToCacheWithVisiblePriority()
+	{
+		Tile tile = new Tile(0, 0, 1);
+		
+		mTestedImage.ensureTileDataCached(tile);
+		
+		Mockito.verify(mCacheMock).addTile(Mockito.eq(mTestedImage), Mockito.eq(tile), Mockito.any(), Mockito.eq(TilePriority.VISIBLE));
+	}
+	
+	@Test
+	public void testCancelledLoadingDoesNotDecodeTile()
+	{
+		Tile tile = new Tile(0, 0, 1);
+		
+		try
+		{
+			TileLoadingCancellation.runCancellable(() -> true, () -> mTestedImage.ensureTileDataCached(tile));
+			fail();
+		}
+		catch(TileLoadingCancelledException e)
+		{
+		}
+		
+		Mockito.verify(mImageMock, Mockito.never()).getTileData(Mockito.any());
+	}
+	
+	@Test
+	public void testTileLoadingCancelledDuringDecodingIsNotAddedToCache()
+	{
+		Tile      tile      = new Tile(0, 0, 1);
+		boolean[] cancelled = { false };
+		
+		Mockito.when(mImageMock.getTileData(tile)).then((x) ->
+		{
+			cancelled[0] = true;
+			return new byte[] { 1, 2, 3 };
+		});
+		
+		try
+		{
+			TileLoadingCancellation.runCancellable(() -> cancelled[0], () -> mTestedImage.prefetchTile(tile));
+			fail();
+		}
+		catch(TileLoadingCancelledException e)
+		{
+		}
+		
+		Mockito.verify(mCacheMock, Mockito.never()).addTile(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+	}
+	
+	@Test
+	public void testTilesOfLowResolutionArePinnedInCache()
+	{
+		Tile tile = new Tile(0, 0, 0);
+		
+		mTestedImage.prefetchTile(tile);
+		
+		Mockito.verify(mCacheMock).addTile(Mockito.eq(mTestedImage), Mockito.eq(tile), Mockito.any(), Mockito.eq(TilePriority.PINNED));
+	}
+	
 	@Test
 	public void testIsImageInCacheReturnsTrueIfSingleTileIsInCache()
 	{
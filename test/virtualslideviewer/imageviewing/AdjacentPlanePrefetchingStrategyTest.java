@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.BufferedVirtualSlideImage;
+import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.testutils.TestUtil;
+
+public class AdjacentPlanePrefetchingStrategyTest
+{
+	private BufferedVirtualSlideImage        mImageMock;
+	private PrefetchingStrategy              mPrefetchingStrategyMock;
+
+	private AdjacentPlanePrefetchingStrategy mTestedStrategy;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		mImageMock               = TestUtil.createImageMockWithDefaultParameters();
+		mPrefetchingStrategyMock = Mockito.mock(PrefetchingStrategy.class);
+
+		Mockito.when(mImageMock.getZPlaneCount()).thenReturn(5);
+		Mockito.when(mImageMock.getTimePointCount()).thenReturn(3);
+		Mockito.when(mImageMock.getTileSize(0)).thenReturn(new Dimension(100, 100));
+
+		Mockito.when(mPrefetchingStrategyMock.getTilesToPrefetch(Mockito.any(), Mockito.any(), Mockito.any()))
+		       .thenReturn(Collections.emptyList());
+
+		mTestedStrategy = new AdjacentPlanePrefetchingStrategy(mPrefetchingStrategyMock, 2);
+	}
+
+	@Test
+	public void testStrategyDoesNotPrefetchOtherPlanesBeforeUserStartsStepping()
+	{
+		Tile decoratedStrategyTile = new Tile(5, 5, 0);
+		Mockito.when(mPrefetchingStrategyMock.getTilesToPrefetch(Mockito.any(), Mockito.any(), Mockito.any()))
+		       .thenReturn(Arrays.asList(decoratedStrategyTile));
+
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 2, 0));
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(50, 0, 100, 100), new ImageIndex(0, 0, 2, 0));
+
+		assertThat(returnedTiles, is(Arrays.asList(decoratedStrategyTile)));
+	}
+
+	@Test
+	public void testStrategyPrefetchesAdjacentZPlanesInDirectionOfStepFirst()
+	{
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 2, 0));
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 1, 0));
+
+		List<Tile> expectedResult = Arrays.asList(new Tile(0, 0, new ImageIndex(0, 0, 0, 0)),
+		                                          new Tile(0, 0, new ImageIndex(0, 0, 2, 0)),
+		                                          new Tile(0, 0, new ImageIndex(0, 0, 3, 0)));
+
+		assertThat(returnedTiles, is(expectedResult));
+	}
+
+	@Test
+	public void testStrategyKeepsPrefetchingSteppedDimensionWhileCameraDoesNotMove()
+	{
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 0, 1));
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 0, 2));
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 0, 2));
+
+		List<Tile> expectedResult = Arrays.asList(new Tile(0, 0, new ImageIndex(0, 0, 0, 1)),
+		                                          new Tile(0, 0, new ImageIndex(0, 0, 0, 0)));
+
+		assertThat(returnedTiles, is(expectedResult));
+	}
+
+	@Test
+	public void testStrategyStopsPrefetchingPlanesAfterPanningWithoutStep()
+	{
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 0, 1));
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 0, 2));
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(100, 0, 100, 100), new ImageIndex(0, 0, 0, 2));
+
+		assertThat(returnedTiles.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testStrategyStopsPrefetchingPlanesAfterZoomingWithoutStep()
+	{
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 2, 0));
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 3, 0));
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(1, 0, 3, 0));
+
+		assertThat(returnedTiles.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testStrategyStopsPrefetchingPlanesWhenUserDoesNotStepForLongTime()
+	{
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 2, 0));
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 3, 0));
+
+		List<Tile> returnedTiles = null;
+		for(int i = 0; i < 100; i++)
+		{
+			returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 3, 0));
+		}
+
+		assertThat(returnedTiles.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testStrategyStopsPrefetchingPlanesAfterChangeOfImage()
+	{
+		BufferedVirtualSlideImage otherImageMock = TestUtil.createImageMockWithDefaultParameters();
+		Mockito.when(otherImageMock.getZPlaneCount()).thenReturn(5);
+
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 2, 0));
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 3, 0));
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(otherImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0, 0, 3, 0));
+
+		assertThat(returnedTiles.isEmpty(), is(true));
+	}
+}
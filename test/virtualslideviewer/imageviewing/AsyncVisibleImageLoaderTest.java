@@ -22,10 +22,13 @@ import static org.junit.Assert.*;
 
 import java.awt.Dimension;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -35,69 +38,154 @@ import org.mockito.Mockito;
 import virtualslideviewer.core.BufferedVirtualSlideImage;
 import virtualslideviewer.core.ImageIndex;
 import virtualslideviewer.core.Tile;
+import virtualslideviewer.core.TileLoadingCancellation;
+import virtualslideviewer.core.TilePriority;
 import virtualslideviewer.imageviewing.AsyncVisibleImageLoader;
 import virtualslideviewer.imageviewing.LoadingTilePlaceholderGenerator;
 import virtualslideviewer.imageviewing.PrefetchingStrategy;
 import virtualslideviewer.imageviewing.TileLoadingPrioritizer;
+import virtualslideviewer.imageviewing.TileLoadingPriority;
+import virtualslideviewer.imageviewing.TileLoadingScheduler;
+import virtualslideviewer.imageviewing.TileLoadingScheduler.ScheduledTask;
 import virtualslideviewer.imageviewing.VisibleImageLoader;
-import virtualslideviewer.testutils.TestUtil;
+import virtualslideviewer.imageviewing.VisibleTileConsumer;
+import virtualslideviewer.metrics.TileMetrics;
+import virtualslideviewer.testutils.TestUtil;
 
 public class AsyncVisibleImageLoaderTest
 {
-	private ExecutorService                 mExecutorMock;
+	private TileLoadingScheduler            mSchedulerMock;
 	private TileLoadingPrioritizer          mLoadingPrioritizerMock;
 	private PrefetchingStrategy             mPrefetchingStrategyMock;
 	private LoadingTilePlaceholderGenerator mPlaceholderGeneratorMock;
 	private BufferedVirtualSlideImage       mImageMock;
+	private TileMetrics                     mMetrics;
 	
 	private VisibleImageLoader              mTestedLoader;
 
 	@Before
 	public void setUp() throws Exception
 	{
-		mExecutorMock             = Mockito.mock(ExecutorService.class);
+		mSchedulerMock            = Mockito.mock(TileLoadingScheduler.class);
 		mLoadingPrioritizerMock   = Mockito.mock(TileLoadingPrioritizer.class);
 		mPrefetchingStrategyMock  = Mockito.mock(PrefetchingStrategy.class);
 		mPlaceholderGeneratorMock = Mockito.mock(LoadingTilePlaceholderGenerator.class);
 		mImageMock                = TestUtil.createImageMockWithDefaultParameters();
+		mMetrics                  = new TileMetrics();
 		
 		// Execute submitted tasks synchronously
-		Mockito.when(mExecutorMock.submit(Mockito.any())).then((x) -> 
+		Mockito.when(mSchedulerMock.submit(Mockito.any(Runnable.class), Mockito.any())).then((x) -> 
 		{
 			Runnable task = (Runnable)x.getArguments()[0];
 			task.run();
-			return null;
+			return Mockito.mock(ScheduledTask.class);
 		});
 		
-		mTestedLoader = new AsyncVisibleImageLoader(mExecutorMock, mPlaceholderGeneratorMock, mPrefetchingStrategyMock, mLoadingPrioritizerMock);
+		mTestedLoader = new AsyncVisibleImageLoader(mSchedulerMock, mPlaceholderGeneratorMock, mPrefetchingStrategyMock, mLoadingPrioritizerMock,
+		                                            mMetrics);
 	}
 		
 	@Test(expected = IllegalArgumentException.class)
 	public void testLoaderThrowsOnTooSmallBuffer()
 	{
-		mTestedLoader.getVisibleImageData(mImageMock, new byte[2000], new Rectangle(0, 0, 1000, 1500), new ImageIndex(1), () -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[2000], new Rectangle(0, 0, 1000, 1500), new ImageIndex(1), tile -> {});
 	}
 	
 	@Test
-	public void testLoaderCancelsAllTasksFromPreviousCallToGetSubImageData()
+	public void testLoaderCancelsOnlyTasksOfTilesWhichAreNoLongerNeeded()
 	{
 		Mockito.when(mImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
 
-		Future<?>[] mockedFutures = { Mockito.mock(Future.class), Mockito.mock(Future.class), Mockito.mock(Future.class) } ;
+		ScheduledTask[] scheduledTasks = { Mockito.mock(ScheduledTask.class), Mockito.mock(ScheduledTask.class),
+		                                   Mockito.mock(ScheduledTask.class), Mockito.mock(ScheduledTask.class) };
 		
-		Mockito.doReturn(mockedFutures[0])
-		       .doReturn(mockedFutures[1])
-		       .doReturn(mockedFutures[2]).when(mExecutorMock).submit(Mockito.any());
+		Mockito.doReturn(scheduledTasks[0])
+		       .doReturn(scheduledTasks[1])
+		       .doReturn(scheduledTasks[2])
+		       .doReturn(scheduledTasks[3]).when(mSchedulerMock).submit(Mockito.any(Runnable.class), Mockito.any());
 	
 		Mockito.when(mPrefetchingStrategyMock.getTilesToPrefetch(Mockito.any(), Mockito.any(), Mockito.any()))
 		       .thenReturn(Arrays.asList(new Tile(1, 2, new ImageIndex(1))));
 		
-		mTestedLoader.getVisibleImageData(mImageMock, new byte[1100], new Rectangle(20, 120, 10, 60), new ImageIndex(1), () -> {});
-		mTestedLoader.getVisibleImageData(mImageMock, new byte[1200], new Rectangle(20, 120, 20, 60), new ImageIndex(1), () -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[1100], new Rectangle(20, 120, 10, 60), new ImageIndex(1), tile -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[1200], new Rectangle(20, 150, 10, 60), new ImageIndex(1), tile -> {});
+		
+		Mockito.verify(mSchedulerMock, Mockito.times(4)).submit(Mockito.any(Runnable.class), Mockito.any());
+		Mockito.verify(scheduledTasks[0]).cancel();
+		Mockito.verify(scheduledTasks[1], Mockito.never()).cancel();
+		Mockito.verify(scheduledTasks[1]).reprioritize(TileLoadingPriority.visible(0));
+		Mockito.verify(scheduledTasks[2], Mockito.never()).cancel();
+		Mockito.verify(scheduledTasks[2]).reprioritize(TileLoadingPriority.prefetched(0, 0));
+		Mockito.verify(scheduledTasks[3], Mockito.never()).cancel();
+	}
+	
+	@Test
+	public void testLoaderCancelsAllTasksWhenImageChanges()
+	{
+		Mockito.when(mImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
+		
+		BufferedVirtualSlideImage otherImageMock = TestUtil.createImageMockWithDefaultParameters();
+		Mockito.when(otherImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
+		
+		ScheduledTask scheduledTask = Mockito.mock(ScheduledTask.class);
+		Mockito.doReturn(scheduledTask).when(mSchedulerMock).submit(Mockito.any(Runnable.class), Mockito.any());
+		
+		mTestedLoader.getVisibleImageData(mImageMock,     new byte[1000], new Rectangle(20, 120, 10, 30), new ImageIndex(1), tile -> {});
+		mTestedLoader.getVisibleImageData(otherImageMock, new byte[1000], new Rectangle(20, 120, 10, 30), new ImageIndex(1), tile -> {});
+		
+		Mockito.verify(scheduledTask).cancel();
+		Mockito.verify(scheduledTask, Mockito.never()).reprioritize(Mockito.any());
+		Mockito.verify(mSchedulerMock, Mockito.times(2)).submit(Mockito.any(Runnable.class), Mockito.any());
+	}
+	
+	@Test
+	public void testLoaderAbandonsRunningTaskOfTileWhichIsNoLongerNeeded()
+	{
+		Mockito.when(mImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
+		
+		BufferedVirtualSlideImage otherImageMock = TestUtil.createImageMockWithDefaultParameters();
+		Mockito.when(otherImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
+		
+		List<Runnable> submittedTasks = new ArrayList<>();
+		Mockito.doAnswer((x) ->
+		{
+			submittedTasks.add((Runnable)x.getArguments()[0]);
+			return Mockito.mock(ScheduledTask.class);
+		}).when(mSchedulerMock).submit(Mockito.any(Runnable.class), Mockito.any());
+		
+		// The image changes while the tile is being decoded.
+		Mockito.doAnswer((x) ->
+		{
+			mTestedLoader.getVisibleImageData(otherImageMock, new byte[1000], new Rectangle(20, 120, 10, 30), new ImageIndex(1), tile -> {});
+			
+			TileLoadingCancellation.throwIfCancelled();
+			return null;
+		}).when(mImageMock).ensureTileDataCached(Mockito.any());
+		
+		List<Tile> updatedTiles = new ArrayList<>();
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], new Rectangle(20, 120, 10, 30), new ImageIndex(1), updatedTiles::add);
 		
-		Mockito.verify(mockedFutures[0]).cancel(Mockito.anyBoolean());
-		Mockito.verify(mockedFutures[1]).cancel(Mockito.anyBoolean());
-		Mockito.verify(mockedFutures[2]).cancel(Mockito.anyBoolean());
+		submittedTasks.get(0).run();
+		
+		assertThat(updatedTiles.isEmpty(), is(true));
+	}
+	
+	@Test
+	public void testLoaderSchedulesVisibleTilesInOrderOfPrioritizerBeforePrefetchedTiles()
+	{
+		Mockito.when(mImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
+		Mockito.doReturn(Mockito.mock(ScheduledTask.class)).when(mSchedulerMock).submit(Mockito.any(Runnable.class), Mockito.any());
+		
+		Mockito.when(mPrefetchingStrategyMock.getTilesToPrefetch(Mockito.any(), Mockito.any(), Mockito.any()))
+		       .thenReturn(Arrays.asList(new Tile(3, 2, new ImageIndex(1)), new Tile(3, 3, new ImageIndex(1))));
+		
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], new Rectangle(20, 60, 10, 60), new ImageIndex(1), tile -> {});
+		
+		InOrder inOrder = Mockito.inOrder(mSchedulerMock);
+		inOrder.verify(mSchedulerMock).submit(Mockito.any(), Mockito.eq(TileLoadingPriority.visible(0)));
+		inOrder.verify(mSchedulerMock).submit(Mockito.any(), Mockito.eq(TileLoadingPriority.visible(1)));
+		inOrder.verify(mSchedulerMock).submit(Mockito.any(), Mockito.eq(new TileLoadingPriority(TilePriority.PREFETCHED, 0, 0)));
+		inOrder.verify(mSchedulerMock).submit(Mockito.any(), Mockito.eq(new TileLoadingPriority(TilePriority.PREFETCHED, 0, 1)));
 	}
 	
 	@Test
@@ -113,12 +201,12 @@ public class AsyncVisibleImageLoaderTest
 		Mockito.when(mPrefetchingStrategyMock.getTilesToPrefetch(mImageMock, regionToLoad, new ImageIndex(1)))
 		       .thenReturn(tilesWhichShouldBePrefetched);
 		
-		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], regionToLoad, new ImageIndex(1), () -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], regionToLoad, new ImageIndex(1), tile -> {});
 		
 		Mockito.verify(mPrefetchingStrategyMock).getTilesToPrefetch(mImageMock, regionToLoad, new ImageIndex(1));
-		Mockito.verify(mImageMock).ensureTileDataCached(tilesWhichShouldBePrefetched.get(0));
-		Mockito.verify(mImageMock).ensureTileDataCached(tilesWhichShouldBePrefetched.get(1));
-		Mockito.verify(mImageMock).ensureTileDataCached(tilesWhichShouldBePrefetched.get(2));
+		Mockito.verify(mImageMock).prefetchTile(tilesWhichShouldBePrefetched.get(0));
+		Mockito.verify(mImageMock).prefetchTile(tilesWhichShouldBePrefetched.get(1));
+		Mockito.verify(mImageMock).prefetchTile(tilesWhichShouldBePrefetched.get(2));
 	}
 	
 	@Test
@@ -142,7 +230,7 @@ public class AsyncVisibleImageLoaderTest
 			return null;
 		}).when(mLoadingPrioritizerMock).sortTilesByPriority(Mockito.any(), Mockito.eq(mImageMock), Mockito.eq(regionToLoad));
 		
-		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], regionToLoad, new ImageIndex(1), () -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], regionToLoad, new ImageIndex(1), tile -> {});
 		
 		InOrder inOrder = Mockito.inOrder(mPlaceholderGeneratorMock);
 		inOrder.verify(mPlaceholderGeneratorMock).getTilePlaceholder(Mockito.any(), Mockito.eq(mImageMock), Mockito.eq(expectedTileOrder.get(0)));
@@ -152,18 +240,18 @@ public class AsyncVisibleImageLoaderTest
 	}
 	
 	@Test
-	public void testLoaderDoesNotCallPlaceholderGeneratorNorThreadPoolWhenAllTilesAreInCache()
+	public void testLoaderDoesNotCallPlaceholderGeneratorNorSchedulerWhenAllTilesAreInCache()
 	{
 		Mockito.when(mImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
 		
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(50,  90, 10, 30), new ImageIndex(1))).thenReturn(true);
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(60,  90, 10, 30), new ImageIndex(1))).thenReturn(true);
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(50, 120, 10, 30), new ImageIndex(1))).thenReturn(true);
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(60, 120, 10, 30), new ImageIndex(1))).thenReturn(true);
+		setCachedTileData(new Tile(5, 3, new ImageIndex(1)), new byte[10 * 30]);
+		setCachedTileData(new Tile(6, 3, new ImageIndex(1)), new byte[10 * 30]);
+		setCachedTileData(new Tile(5, 4, new ImageIndex(1)), new byte[10 * 30]);
+		setCachedTileData(new Tile(6, 4, new ImageIndex(1)), new byte[10 * 30]);
 		
-		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], new Rectangle(55, 110, 13, 20), new ImageIndex(1), () -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], new Rectangle(55, 110, 13, 20), new ImageIndex(1), tile -> {});
 		
-		Mockito.verifyZeroInteractions(mPlaceholderGeneratorMock, mExecutorMock);
+		Mockito.verifyZeroInteractions(mPlaceholderGeneratorMock, mSchedulerMock);
 	}
 	
 	@Test
@@ -171,31 +259,35 @@ public class AsyncVisibleImageLoaderTest
 	{
 		Mockito.when(mImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
 		
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(80, 150, 10, 30), new ImageIndex(1))).thenReturn(true);
+		setCachedTileData(new Tile(8, 5, new ImageIndex(1)), new byte[10 * 30]);
 		
-		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], new Rectangle(85, 160, 10, 40), new ImageIndex(1), () -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], new Rectangle(85, 160, 10, 40), new ImageIndex(1), tile -> {});
 		
-		Mockito.verify(mExecutorMock, Mockito.times(3)).submit(Mockito.any());
+		Mockito.verify(mSchedulerMock, Mockito.times(3)).submit(Mockito.any(Runnable.class), Mockito.any());
 		Mockito.verify(mImageMock).ensureTileDataCached(new Tile(8, 6, new ImageIndex(1)));
 		Mockito.verify(mImageMock).ensureTileDataCached(new Tile(9, 5, new ImageIndex(1)));
 		Mockito.verify(mImageMock).ensureTileDataCached(new Tile(9, 6, new ImageIndex(1)));
 	}
 	
 	@Test
+	@SuppressWarnings("unchecked")
 	public void testLoaderCallsCallbackAfterLoadingOnlyAndForAllLoadedTiles()
 	{
 		Mockito.when(mImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
 		
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(80, 150, 10, 30), new ImageIndex(1))).thenReturn(true);
+		setCachedTileData(new Tile(8, 5, new ImageIndex(1)), new byte[10 * 30]);
 		
 		Mockito.when(mPrefetchingStrategyMock.getTilesToPrefetch(Mockito.any(), Mockito.any(), Mockito.any()))
 		       .thenReturn(Arrays.asList(new Tile(1, 1, new ImageIndex(1)), new Tile(1, 2, new ImageIndex(1))));
 
-		Runnable callbackMock = Mockito.mock(Runnable.class);
+		Consumer<Tile> callbackMock = Mockito.mock(Consumer.class);
 
 		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], new Rectangle(75, 160, 12, 30), new ImageIndex(1), callbackMock);
 		
-		Mockito.verify(callbackMock, Mockito.times(3)).run();
+		Mockito.verify(callbackMock, Mockito.times(3)).accept(Mockito.any());
+		Mockito.verify(callbackMock).accept(new Tile(7, 5, new ImageIndex(1)));
+		Mockito.verify(callbackMock).accept(new Tile(7, 6, new ImageIndex(1)));
+		Mockito.verify(callbackMock).accept(new Tile(8, 6, new ImageIndex(1)));
 	}
 	
 	@Test
@@ -203,10 +295,10 @@ public class AsyncVisibleImageLoaderTest
 	{
 		Mockito.when(mImageMock.getTileSize(1)).thenReturn(new Dimension(10, 30));
 		
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(80, 150, 10, 30), new ImageIndex(1))).thenReturn(true);
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(90, 180, 10, 30), new ImageIndex(1))).thenReturn(true);
+		setCachedTileData(new Tile(8, 5, new ImageIndex(1)), new byte[10 * 30]);
+		setCachedTileData(new Tile(9, 6, new ImageIndex(1)), new byte[10 * 30]);
 		
-		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], new Rectangle(85, 170, 10, 30), new ImageIndex(1), () -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, new byte[1000], new Rectangle(85, 170, 10, 30), new ImageIndex(1), tile -> {});
 		
 		Mockito.verify(mPlaceholderGeneratorMock, Mockito.never()).getTilePlaceholder(Mockito.any(), Mockito.eq(mImageMock),
 		                                                                              Mockito.eq(new Tile(8, 5, new ImageIndex(1))));
@@ -217,10 +309,12 @@ public class AsyncVisibleImageLoaderTest
 		Mockito.verify(mPlaceholderGeneratorMock, Mockito.never()).getTilePlaceholder(Mockito.any(), Mockito.eq(mImageMock),
 		                                                                              Mockito.eq(new Tile(9, 6, new ImageIndex(1))));
 		
-		Mockito.verify(mImageMock).                 getTileData(Mockito.any(), Mockito.eq(new Tile(8, 5, new ImageIndex(1))));
-		Mockito.verify(mImageMock, Mockito.never()).getTileData(Mockito.any(), Mockito.eq(new Tile(8, 6, new ImageIndex(1))));
-		Mockito.verify(mImageMock, Mockito.never()).getTileData(Mockito.any(), Mockito.eq(new Tile(9, 5, new ImageIndex(1))));
-		Mockito.verify(mImageMock).                 getTileData(Mockito.any(), Mockito.eq(new Tile(9, 6, new ImageIndex(1))));
+		Mockito.verify(mImageMock, Mockito.never()).ensureTileDataCached(new Tile(8, 5, new ImageIndex(1)));
+		Mockito.verify(mImageMock).                 ensureTileDataCached(new Tile(8, 6, new ImageIndex(1)));
+		Mockito.verify(mImageMock).                 ensureTileDataCached(new Tile(9, 5, new ImageIndex(1)));
+		Mockito.verify(mImageMock, Mockito.never()).ensureTileDataCached(new Tile(9, 6, new ImageIndex(1)));
+		
+		Mockito.verify(mImageMock, Mockito.never()).getTileData(Mockito.any(), Mockito.any());
 	}
 	
 	@Test
@@ -228,11 +322,8 @@ public class AsyncVisibleImageLoaderTest
 	{
 		Mockito.when(mImageMock.getTileSize(0)).thenReturn(new Dimension(2, 3));
 		
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(14,  9, 2, 3), new ImageIndex(0))).thenReturn(true);
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(16, 12, 2, 3), new ImageIndex(0))).thenReturn(true);
-		
-		setImageTileDataToItsCoordsPlus100(new Tile(7, 3, new ImageIndex(0)), 2 * 3);
-		setImageTileDataToItsCoordsPlus100(new Tile(8, 4, new ImageIndex(0)), 2 * 3);
+		setCachedTileDataToItsCoordsPlus100(new Tile(7, 3, new ImageIndex(0)), 2 * 3);
+		setCachedTileDataToItsCoordsPlus100(new Tile(8, 4, new ImageIndex(0)), 2 * 3);
 		setPlaceholderTileDataToItsCoords( new Tile(6, 3, new ImageIndex(0)), 2 * 3);
 		setPlaceholderTileDataToItsCoords( new Tile(8, 3, new ImageIndex(0)), 2 * 3);
 		setPlaceholderTileDataToItsCoords( new Tile(6, 4, new ImageIndex(0)), 2 * 3);
@@ -247,7 +338,7 @@ public class AsyncVisibleImageLoaderTest
 		                        };
 		
 		byte[] result = new byte[4 * 5];
-		mTestedLoader.getVisibleImageData(mImageMock, result, new Rectangle(13, 9, 4, 5), new ImageIndex(0), () -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, result, new Rectangle(13, 9, 4, 5), new ImageIndex(0), tile -> {});
 		
 		assertThat(result, is(expectedResult));
 	}
@@ -258,11 +349,8 @@ public class AsyncVisibleImageLoaderTest
 		Mockito.when(mImageMock.isRGB()).thenReturn(true);
 		Mockito.when(mImageMock.getTileSize(0)).thenReturn(new Dimension(2, 3));
 		
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(2, 6, 2, 3), new ImageIndex(0))).thenReturn(true);
-		Mockito.when(mImageMock.isImageInCache(new Rectangle(2, 9, 2, 3), new ImageIndex(0))).thenReturn(true);
-		
-		setImageTileDataToItsCoordsPlus100(new Tile(1, 2, new ImageIndex(0)), 2 * 3 * 3);
-		setImageTileDataToItsCoordsPlus100(new Tile(1, 3, new ImageIndex(0)), 2 * 3 * 3);
+		setCachedTileDataToItsCoordsPlus100(new Tile(1, 2, new ImageIndex(0)), 2 * 3 * 3);
+		setCachedTileDataToItsCoordsPlus100(new Tile(1, 3, new ImageIndex(0)), 2 * 3 * 3);
 		setPlaceholderTileDataToItsCoords( new Tile(2, 2, new ImageIndex(0)), 2 * 3 * 3);
 		setPlaceholderTileDataToItsCoords( new Tile(2, 3, new ImageIndex(0)), 2 * 3 * 3);
 		
@@ -274,16 +362,111 @@ public class AsyncVisibleImageLoaderTest
 		                        };
 		
 		byte[] result = new byte[3 * 4 * 3];
-		mTestedLoader.getVisibleImageData(mImageMock, result, new Rectangle(2, 6, 3, 4), new ImageIndex(0), () -> {});
+		mTestedLoader.getVisibleImageData(mImageMock, result, new Rectangle(2, 6, 3, 4), new ImageIndex(0), tile -> {});
 		
 		assertThat(result, is(expectedResult));
 	}
 	
+	@Test
+	public void testLoaderStoresCachedAndPlaceholderDataDirectlyIntoPartOfBGRImage()
+	{
+		Mockito.when(mImageMock.isRGB()).thenReturn(true);
+		Mockito.when(mImageMock.getTileSize(0)).thenReturn(new Dimension(1, 1));
+		
+		setCachedTileData(new Tile(0, 0, new ImageIndex(0)), new byte[] { 1, 2, 3 });
+		TestUtil.copyToParameter(new byte[] { 4, 5, 6 }).when(mPlaceholderGeneratorMock)
+		        .getTilePlaceholder(Mockito.any(), Mockito.any(), Mockito.eq(new Tile(1, 0, new ImageIndex(0))));
+		
+		BufferedImage result = new BufferedImage(3, 2, BufferedImage.TYPE_3BYTE_BGR);
+		mTestedLoader.getVisibleImageData(mImageMock, result.getSubimage(1, 1, 2, 1).getRaster(), new Rectangle(0, 0, 2, 1),
+		                                  new ImageIndex(0), tile -> {});
+		
+		byte[] expectedResult = new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0,
+		                                     0, 0, 0, 3, 2, 1, 6, 5, 4 };
+		
+		assertThat(((DataBufferByte)result.getRaster().getDataBuffer()).getData(), is(expectedResult));
+	}
+	
+	@Test
+	public void testLoaderPassesTileDataToConsumerOnlyForNeededTilesAndMarksPlaceholders()
+	{
+		Mockito.when(mImageMock.getTileSize(0)).thenReturn(new Dimension(1, 1));
+		
+		Tile alreadyDrawnTile = new Tile(0, 0, new ImageIndex(0));
+		Tile cachedTile       = new Tile(1, 0, new ImageIndex(0));
+		Tile notCachedTile    = new Tile(2, 0, new ImageIndex(0));
+		
+		setCachedTileData(cachedTile, new byte[] { 1 });
+		
+		VisibleTileConsumer consumerMock = Mockito.mock(VisibleTileConsumer.class);
+		Mockito.when(consumerMock.isTileDataNeeded(Mockito.any(), Mockito.any())).thenReturn(true);
+		Mockito.when(consumerMock.isTileDataNeeded(Mockito.eq(alreadyDrawnTile), Mockito.any())).thenReturn(false);
+		Mockito.when(consumerMock.isPlaceholderNeeded(Mockito.any(), Mockito.any())).thenReturn(true);
+		
+		mTestedLoader.getVisibleTiles(mImageMock, new Rectangle(0, 0, 3, 1), new ImageIndex(0), consumerMock, tile -> {});
+		
+		Mockito.verify(mImageMock, Mockito.never()).visitCachedTileData(Mockito.eq(alreadyDrawnTile), Mockito.any());
+		Mockito.verify(mImageMock, Mockito.never()).ensureTileDataCached(alreadyDrawnTile);
+		Mockito.verify(mImageMock).ensureTileDataCached(notCachedTile);
+		
+		Mockito.verify(consumerMock, Mockito.never()).acceptTileData(Mockito.eq(alreadyDrawnTile), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+		Mockito.verify(consumerMock).acceptTileData(Mockito.eq(cachedTile), Mockito.eq(new Rectangle(1, 0, 1, 1)), Mockito.any(), Mockito.eq(false));
+		Mockito.verify(consumerMock).acceptTileData(Mockito.eq(notCachedTile), Mockito.eq(new Rectangle(2, 0, 1, 1)), Mockito.any(), Mockito.eq(true));
+	}
+	
+	@Test
+	public void testLoaderLoadsTileWithoutGeneratingPlaceholderWhenConsumerDoesNotNeedIt()
+	{
+		Mockito.when(mImageMock.getTileSize(0)).thenReturn(new Dimension(1, 1));
+		
+		Tile coveredTile    = new Tile(0, 0, new ImageIndex(0));
+		Tile notCoveredTile = new Tile(1, 0, new ImageIndex(0));
+		
+		VisibleTileConsumer consumerMock = Mockito.mock(VisibleTileConsumer.class);
+		Mockito.when(consumerMock.isTileDataNeeded(Mockito.any(), Mockito.any())).thenReturn(true);
+		Mockito.when(consumerMock.isPlaceholderNeeded(Mockito.eq(notCoveredTile), Mockito.any())).thenReturn(true);
+		
+		mTestedLoader.getVisibleTiles(mImageMock, new Rectangle(0, 0, 2, 1), new ImageIndex(0), consumerMock, tile -> {});
+		
+		Mockito.verify(mImageMock).ensureTileDataCached(coveredTile);
+		Mockito.verify(mImageMock).ensureTileDataCached(notCoveredTile);
+		
+		Mockito.verify(mPlaceholderGeneratorMock, Mockito.never()).getTilePlaceholder(Mockito.any(), Mockito.any(), Mockito.eq(coveredTile));
+		Mockito.verify(consumerMock, Mockito.never()).acceptTileData(Mockito.eq(coveredTile), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+		Mockito.verify(consumerMock).acceptTileData(Mockito.eq(notCoveredTile), Mockito.any(), Mockito.any(), Mockito.eq(true));
+	}
+	
+	@Test
+	public void testLoaderRecordsVisibleTileInMetricsOnlyOnceWhileItStaysVisible()
+	{
+		Mockito.when(mImageMock.getTileSize(0)).thenReturn(new Dimension(1, 1));
+		
+		Tile cachedTile     = new Tile(0, 0, new ImageIndex(0));
+		Tile notCachedTile  = new Tile(1, 0, new ImageIndex(0));
+		Tile notCoveredTile = new Tile(2, 0, new ImageIndex(0));
+		
+		setCachedTileData(cachedTile, new byte[] { 1 });
+		Mockito.doReturn(Mockito.mock(ScheduledTask.class)).when(mSchedulerMock).submit(Mockito.any(Runnable.class), Mockito.any());
+		
+		VisibleTileConsumer consumerMock = Mockito.mock(VisibleTileConsumer.class);
+		Mockito.when(consumerMock.isTileDataNeeded(Mockito.any(), Mockito.any())).thenReturn(true);
+		Mockito.when(consumerMock.isPlaceholderNeeded(Mockito.eq(notCachedTile), Mockito.any())).thenReturn(true);
+		
+		mTestedLoader.getVisibleTiles(mImageMock, new Rectangle(0, 0, 3, 1), new ImageIndex(0), consumerMock, tile -> {});
+		mTestedLoader.getVisibleTiles(mImageMock, new Rectangle(0, 0, 3, 1), new ImageIndex(0), consumerMock, tile -> {});
+		
+		Mockito.verify(mPlaceholderGeneratorMock, Mockito.never()).getTilePlaceholder(Mockito.any(), Mockito.any(), Mockito.eq(notCoveredTile));
+		
+		assertThat(mMetrics.getCacheHitCount(), is(1L));
+		assertThat(mMetrics.getCacheServedTileCount(), is(1L));
+		assertThat(mMetrics.getPlaceholderServedTileCount(), is(1L));
+	}
+	
 	/**
-	 * Sets data returned from mImageMock.getTileData() to tile's coordinates + 100, i. e. 
+	 * Marks the tile as cached and sets data passed to visitors of mImageMock.visitCachedTileData() to tile's coordinates + 100, i. e. 
 	 * tile with coordinates (4, 2) will have all its bytes set to 142, tile (1, 5) to 115 and so on.
 	 */
-	private void setImageTileDataToItsCoordsPlus100(Tile tile, int tileDataSize)
+	private void setCachedTileDataToItsCoordsPlus100(Tile tile, int tileDataSize)
 	{
 		byte[] tileData = new byte[tileDataSize];
 		
@@ -292,7 +475,22 @@ public class AsyncVisibleImageLoaderTest
 			tileData[i] = (byte)(100 + tile.getColumn() * 10 + tile.getRow());
 		}
 
-		TestUtil.copyToParameter(tileData).when(mImageMock).getTileData(Mockito.any(), Mockito.eq(tile));
+		setCachedTileData(tile, tileData);
+	}
+	
+	/**
+	 * Marks the tile as cached with specified data passed to visitors of mImageMock.visitCachedTileData().
+	 */
+	@SuppressWarnings("unchecked")
+	private void setCachedTileData(Tile tile, byte[] tileData)
+	{
+		Mockito.doAnswer((x) ->
+		{
+			Consumer<ByteBuffer> visitor = (Consumer<ByteBuffer>)x.getArguments()[1];
+			
+			visitor.accept(ByteBuffer.wrap(tileData).asReadOnlyBuffer());
+			return true;
+		}).when(mImageMock).visitCachedTileData(Mockito.eq(tile), Mockito.any());
 	}
 	
 	/**
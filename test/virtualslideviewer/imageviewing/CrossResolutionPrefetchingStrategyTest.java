@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.BufferedVirtualSlideImage;
+import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.testutils.TestUtil;
+
+public class CrossResolutionPrefetchingStrategyTest
+{
+	private BufferedVirtualSlideImage mImageMock;
+	private PrefetchingStrategy       mPrefetchingStrategyMock;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		mImageMock               = TestUtil.createImageMockWithDefaultParameters();
+		mPrefetchingStrategyMock = Mockito.mock(PrefetchingStrategy.class);
+
+		Mockito.when(mImageMock.getResolutionCount()).thenReturn(3);
+		Mockito.when(mImageMock.getImageSize(0)).thenReturn(new Dimension(100, 100));
+		Mockito.when(mImageMock.getImageSize(1)).thenReturn(new Dimension(200, 200));
+		Mockito.when(mImageMock.getImageSize(2)).thenReturn(new Dimension(400, 400));
+		Mockito.when(mImageMock.getTileSize(Mockito.anyInt())).thenReturn(new Dimension(50, 50));
+
+		Mockito.when(mPrefetchingStrategyMock.getTilesToPrefetch(Mockito.any(), Mockito.any(), Mockito.any()))
+		       .thenReturn(Collections.emptyList());
+	}
+
+	@Test
+	public void testStrategyPrefetchesLoadedPartAtNeighbouringResolutions()
+	{
+		List<Tile> returnedTiles = new CrossResolutionPrefetchingStrategy(mPrefetchingStrategyMock, 100)
+		                                 .getTilesToPrefetch(mImageMock, new Rectangle(50, 50, 50, 50), new ImageIndex(1));
+
+		List<Tile> expectedResult = Arrays.asList(new Tile(0, 0, 0),
+		                                          new Tile(2, 2, 2), new Tile(3, 2, 2), new Tile(2, 3, 2), new Tile(3, 3, 2));
+
+		assertThat(returnedTiles, is(expectedResult));
+	}
+
+	@Test
+	public void testStrategyKeepsTilesOfDecoratedStrategyAndLimitsAdditionalTilesToBudget()
+	{
+		Tile decoratedStrategyTile = new Tile(3, 3, 1);
+		Mockito.when(mPrefetchingStrategyMock.getTilesToPrefetch(Mockito.any(), Mockito.any(), Mockito.any()))
+		       .thenReturn(Arrays.asList(decoratedStrategyTile));
+
+		List<Tile> returnedTiles = new CrossResolutionPrefetchingStrategy(mPrefetchingStrategyMock, 3)
+		                                 .getTilesToPrefetch(mImageMock, new Rectangle(50, 50, 50, 50), new ImageIndex(1));
+
+		assertThat(returnedTiles.size(), is(4));
+		assertThat(returnedTiles.get(0), is(decoratedStrategyTile));
+		assertThat(returnedTiles.get(1), is(new Tile(0, 0, 0)));
+	}
+
+	@Test
+	public void testStrategyDoesNotPrefetchResolutionsOutsideOfImage()
+	{
+		List<Tile> returnedTiles = new CrossResolutionPrefetchingStrategy(mPrefetchingStrategyMock, 100)
+		                                 .getTilesToPrefetch(mImageMock, new Rectangle(0, 0, 100, 100), new ImageIndex(0));
+
+		for(Tile tile : returnedTiles)
+		{
+			assertThat(tile.getImageIndex().getResolutionIndex(), is(1));
+		}
+		assertThat(returnedTiles.size(), is(16));
+	}
+}
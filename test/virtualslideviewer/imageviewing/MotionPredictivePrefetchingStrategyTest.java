@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.BufferedVirtualSlideImage;
+import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.testutils.TestUtil;
+
+public class MotionPredictivePrefetchingStrategyTest
+{
+	private BufferedVirtualSlideImage           mImageMock;
+	private long                                mCurrentTimeMillis;
+
+	private MotionPredictivePrefetchingStrategy mTestedStrategy;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		mImageMock = TestUtil.createImageMockWithDefaultParameters();
+
+		Mockito.when(mImageMock.getResolutionCount()).thenReturn(3);
+		Mockito.when(mImageMock.getImageSize(1)).thenReturn(new Dimension(500, 500));
+		Mockito.when(mImageMock.getTileSize(1)).thenReturn(new Dimension(100, 100));
+		Mockito.when(mImageMock.getImageSize(2)).thenReturn(new Dimension(1000, 1000));
+		Mockito.when(mImageMock.getTileSize(2)).thenReturn(new Dimension(100, 100));
+
+		mCurrentTimeMillis = 0;
+		mTestedStrategy    = new MotionPredictivePrefetchingStrategy(400, 0, () -> mCurrentTimeMillis);
+	}
+
+	@Test
+	public void testStrategyPrefetchesOnlyMarginWhenCameraDoesNotMove()
+	{
+		MotionPredictivePrefetchingStrategy strategy = new MotionPredictivePrefetchingStrategy(400, 10, () -> mCurrentTimeMillis);
+
+		strategy.getTilesToPrefetch(mImageMock, new Rectangle(400, 400, 200, 200), new ImageIndex(2));
+		mCurrentTimeMillis += 100;
+		List<Tile> returnedTiles = strategy.getTilesToPrefetch(mImageMock, new Rectangle(400, 400, 200, 200), new ImageIndex(2));
+
+		assertThat(returnedTiles.size(), is(12));
+		for(Tile tile : returnedTiles)
+		{
+			assertThat(tile.getColumn() >= 3 && tile.getColumn() <= 6 && tile.getRow() >= 3 && tile.getRow() <= 6, is(true));
+		}
+	}
+
+	@Test
+	public void testStrategyPrefetchesTilesInDirectionOfPanning()
+	{
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(200, 400, 200, 200), new ImageIndex(2));
+		mCurrentTimeMillis += 100;
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(300, 400, 200, 200), new ImageIndex(2));
+		mCurrentTimeMillis += 100;
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(400, 400, 200, 200), new ImageIndex(2));
+
+		assertThat(returnedTiles.isEmpty(), is(false));
+		assertThat(returnedTiles.contains(new Tile(6, 4, new ImageIndex(2))), is(true));
+		for(Tile tile : returnedTiles)
+		{
+			assertThat(tile.getColumn() >= 6, is(true));
+			assertThat(tile.getRow() >= 4 && tile.getRow() <= 5, is(true));
+		}
+	}
+
+	@Test
+	public void testStrategyPrefetchesNextFinerResolutionWhenZoomingIn()
+	{
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(100, 100, 300, 300), new ImageIndex(1));
+		mCurrentTimeMillis += 100;
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(150, 150, 200, 200), new ImageIndex(1));
+
+		assertThat(returnedTiles.isEmpty(), is(false));
+		assertThat(returnedTiles.contains(new Tile(5, 5, new ImageIndex(2))), is(true));
+		for(Tile tile : returnedTiles)
+		{
+			assertThat(tile.getImageIndex(), is(new ImageIndex(2)));
+		}
+	}
+
+	@Test
+	public void testStrategyForgetsMotionAfterChangeOfZPlane()
+	{
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(200, 400, 200, 200), new ImageIndex(2, 0, 0, 0));
+		mCurrentTimeMillis += 100;
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(300, 400, 200, 200), new ImageIndex(2, 0, 0, 0));
+		mCurrentTimeMillis += 100;
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(400, 400, 200, 200), new ImageIndex(2, 0, 1, 0));
+
+		assertThat(returnedTiles.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testStrategyForgetsMotionAfterPause()
+	{
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(200, 400, 200, 200), new ImageIndex(2));
+		mCurrentTimeMillis += 100;
+		mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(300, 400, 200, 200), new ImageIndex(2));
+		mCurrentTimeMillis += 2000;
+		List<Tile> returnedTiles = mTestedStrategy.getTilesToPrefetch(mImageMock, new Rectangle(300, 400, 200, 200), new ImageIndex(2));
+
+		assertThat(returnedTiles.isEmpty(), is(true));
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.imageviewing;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import virtualslideviewer.imageviewing.TileLoadingScheduler.ScheduledTask;
+
+public class TileLoadingSchedulerTest
+{
+	private TileLoadingScheduler mTestedScheduler;
+
+	@After
+	public void tearDown()
+	{
+		if(mTestedScheduler != null)
+		{
+			mTestedScheduler.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSchedulerThrowsWhenPrefetchingThreadCountExceedsThreadCount()
+	{
+		new TileLoadingScheduler(2, 3);
+	}
+
+	@Test
+	public void testSchedulerRunsVisibleTasksBeforePrefetchingTasksAndInOrderOfRank() throws Exception
+	{
+		mTestedScheduler = new TileLoadingScheduler(1, 1);
+
+		CountDownLatch workerBlocked = blockWorker();
+
+		List<String> executionOrder = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch allFinished  = new CountDownLatch(4);
+
+		submitRecordingTask("prefetched 0", TileLoadingPriority.prefetched(0, 0), executionOrder, allFinished);
+		submitRecordingTask("visible 1",    TileLoadingPriority.visible(1),       executionOrder, allFinished);
+		submitRecordingTask("prefetched 1", TileLoadingPriority.prefetched(1, 0), executionOrder, allFinished);
+		submitRecordingTask("visible 0",    TileLoadingPriority.visible(0),       executionOrder, allFinished);
+
+		workerBlocked.countDown();
+
+		assertThat(allFinished.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(executionOrder, is(Arrays.asList("visible 0", "visible 1", "prefetched 0", "prefetched 1")));
+	}
+
+	@Test
+	public void testSchedulerRunsReprioritizedTaskAccordingToItsNewPriorityAndSkipsCancelledTask() throws Exception
+	{
+		mTestedScheduler = new TileLoadingScheduler(1, 1);
+
+		CountDownLatch workerBlocked = blockWorker();
+
+		List<String> executionOrder = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch allFinished  = new CountDownLatch(2);
+
+		ScheduledTask cancelled = submitRecordingTask("cancelled", TileLoadingPriority.visible(0), executionOrder, allFinished);
+		submitRecordingTask("visible", TileLoadingPriority.visible(1), executionOrder, allFinished);
+		ScheduledTask promoted  = submitRecordingTask("promoted", TileLoadingPriority.prefetched(0, 0), executionOrder, allFinished);
+
+		assertThat(cancelled.cancel(), is(true));
+		assertThat(promoted.reprioritize(TileLoadingPriority.visible(0)), is(true));
+
+		workerBlocked.countDown();
+
+		assertThat(allFinished.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(executionOrder, is(Arrays.asList("promoted", "visible")));
+		assertThat(promoted.reprioritize(TileLoadingPriority.visible(5)), is(false));
+	}
+
+	@Test
+	public void testSchedulerKeepsThreadsForVisibleTasksWhilePrefetching() throws Exception
+	{
+		mTestedScheduler = new TileLoadingScheduler(2, 1);
+
+		CountDownLatch prefetchingBlocked = new CountDownLatch(1);
+		CountDownLatch prefetchingStarted = new CountDownLatch(1);
+
+		mTestedScheduler.submit(() ->
+		{
+			prefetchingStarted.countDown();
+			awaitUninterruptibly(prefetchingBlocked);
+		}, TileLoadingPriority.prefetched(0, 0));
+
+		assertThat(prefetchingStarted.await(5, TimeUnit.SECONDS), is(true));
+
+		CountDownLatch secondPrefetchingFinished = new CountDownLatch(1);
+		CountDownLatch visibleFinished           = new CountDownLatch(1);
+
+		mTestedScheduler.submit(secondPrefetchingFinished::countDown, TileLoadingPriority.prefetched(0, 1));
+		mTestedScheduler.submit(visibleFinished::countDown, TileLoadingPriority.visible(0));
+
+		assertThat(visibleFinished.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(secondPrefetchingFinished.await(100, TimeUnit.MILLISECONDS), is(false));
+
+		prefetchingBlocked.countDown();
+
+		assertThat(secondPrefetchingFinished.await(5, TimeUnit.SECONDS), is(true));
+	}
+
+	/**
+	 * Occupies the only thread of the scheduler until the returned latch is counted down, so the tasks can be queued.
+	 */
+	private CountDownLatch blockWorker() throws InterruptedException
+	{
+		CountDownLatch workerBlocked = new CountDownLatch(1);
+		CountDownLatch workerStarted = new CountDownLatch(1);
+
+		mTestedScheduler.submit(() ->
+		{
+			workerStarted.countDown();
+			awaitUninterruptibly(workerBlocked);
+		}, TileLoadingPriority.visible(0));
+
+		assertThat(workerStarted.await(5, TimeUnit.SECONDS), is(true));
+		return workerBlocked;
+	}
+
+	private ScheduledTask submitRecordingTask(String name, TileLoadingPriority priority, List<String> executionOrder, CountDownLatch finished)
+	{
+		return mTestedScheduler.submit(() ->
+		{
+			executionOrder.add(name);
+			finished.countDown();
+		}, priority);
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
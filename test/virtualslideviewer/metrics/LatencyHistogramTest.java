@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+	private LatencyHistogram mTestedHistogram;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		mTestedHistogram = new LatencyHistogram();
+	}
+	
+	@Test
+	public void testEmptyHistogramReturnsZeros()
+	{
+		assertThat(mTestedHistogram.getCount(), is(0L));
+		assertThat(mTestedHistogram.getMeanNanos(), is(0L));
+		assertThat(mTestedHistogram.getPercentileNanos(50), is(0L));
+	}
+	
+	@Test
+	public void testMeanAndMaxAreComputedFromRecordedValues()
+	{
+		mTestedHistogram.record(100);
+		mTestedHistogram.record(300);
+		
+		assertThat(mTestedHistogram.getCount(), is(2L));
+		assertThat(mTestedHistogram.getMeanNanos(), is(200L));
+		assertThat(mTestedHistogram.getMaxNanos(), is(300L));
+	}
+	
+	@Test
+	public void testPercentileIsTheUpperBoundOfItsBucket()
+	{
+		for(int i = 0; i < 99; i++)
+		{
+			mTestedHistogram.record(1000);
+		}
+		mTestedHistogram.record(1000000);
+		
+		assertThat(mTestedHistogram.getPercentileNanos(50), is(1023L));
+		assertThat(mTestedHistogram.getPercentileNanos(99), is(1023L));
+		assertThat(mTestedHistogram.getPercentileNanos(100), is(1000000L));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testPercentileOutOfRangeThrows()
+	{
+		mTestedHistogram.getPercentileNanos(0);
+	}
+}
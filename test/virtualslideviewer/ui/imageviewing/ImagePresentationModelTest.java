@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.ui.imageviewing;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import virtualslideviewer.core.BufferedVirtualSlideImage;
+import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.imageviewing.VisibleImageLoader;
+import virtualslideviewer.imageviewing.VisibleTileConsumer;
+import virtualslideviewer.testutils.TestUtil;
+import virtualslideviewer.ui.imageviewing.ImagePresentationModel.Snapshot;
+
+public class ImagePresentationModelTest
+{
+	private VisibleImageLoader        mImageLoaderMock;
+	private BufferedVirtualSlideImage mImageMock;
+	
+	private ImagePresentationModel    mTestedModel;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		mImageLoaderMock = Mockito.mock(VisibleImageLoader.class);
+		mImageMock       = TestUtil.createImageMockWithDefaultParameters();
+		
+		mTestedModel = new ImagePresentationModel(new Camera(), mImageLoaderMock);
+		mTestedModel.setImage(mImageMock);
+		mTestedModel.setViewportSize(new Dimension(1000, 1000));
+		mTestedModel.setZoom(1.0);
+	}
+	
+	@Test
+	public void testSnapshotIsNotAffectedByLaterCameraMovement()
+	{
+		Snapshot  snapshot            = mTestedModel.getVisibleImageSnapshot();
+		Rectangle snapshotImageBounds = snapshot.getImageDataBounds();
+		
+		mTestedModel.pan(500, 0);
+		
+		assertThat(mTestedModel.getImageDataBounds(), is(not(snapshotImageBounds)));
+		assertThat(snapshot.getImageDataBounds(), is(snapshotImageBounds));
+		assertThat(snapshot.getViewportSize(), is(new Dimension(1000, 1000)));
+	}
+	
+	@Test
+	public void testLoadingVisibleTilesOfSnapshotUsesBoundsOfSnapshot()
+	{
+		Snapshot            snapshot     = mTestedModel.getVisibleImageSnapshot();
+		VisibleTileConsumer consumerMock = Mockito.mock(VisibleTileConsumer.class);
+		
+		mTestedModel.pan(500, 0);
+		mTestedModel.loadVisibleTiles(snapshot, consumerMock);
+		
+		Mockito.verify(mImageLoaderMock).getVisibleTiles(Mockito.eq(mImageMock), Mockito.eq(snapshot.getImageDataBounds()), Mockito.any(),
+		                                                 Mockito.eq(consumerMock), Mockito.any());
+	}
+	
+	@Test
+	public void testTileOfDifferentImageIndexIsNotVisibleInSnapshot()
+	{
+		Snapshot snapshot = mTestedModel.getVisibleImageSnapshot();
+		
+		Rectangle  imageDataBounds = snapshot.getImageDataBounds();
+		ImageIndex imageIndex      = snapshot.getImageIndex();
+		ImageIndex otherChannel    = new ImageIndex(imageIndex.getResolutionIndex(), 1, 0, 0);
+		
+		Tile visibleTile = new Tile(imageDataBounds.x / 1000, imageDataBounds.y / 1000, imageIndex);
+		Tile otherTile   = new Tile(imageDataBounds.x / 1000, imageDataBounds.y / 1000, otherChannel);
+		
+		assertThat(snapshot.getTileBoundsInViewport(visibleTile), is(notNullValue()));
+		assertThat(snapshot.getTileBoundsInViewport(otherTile), is(nullValue()));
+	}
+}
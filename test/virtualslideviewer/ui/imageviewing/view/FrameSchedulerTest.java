@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.ui.imageviewing.view;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+public class FrameSchedulerTest
+{
+	@Test
+	public void testSingleRequestIsRenderedWithoutWaitingForFrameInterval() throws Exception
+	{
+		CountDownLatch frameRendered = new CountDownLatch(1);
+		
+		FrameScheduler scheduler = new FrameScheduler(1, () -> frameRendered.countDown());
+		
+		scheduler.requestFrame();
+		
+		assertThat(frameRendered.await(500, TimeUnit.MILLISECONDS), is(true));
+	}
+	
+	@Test
+	public void testBurstOfRequestsFromManyThreadsIsCoalescedIntoFramesNotExceedingFrameRate() throws Exception
+	{
+		AtomicInteger frameCount       = new AtomicInteger();
+		AtomicLong    lastFrameTime    = new AtomicLong();
+		AtomicInteger framesOutsideEDT = new AtomicInteger();
+		AtomicLong    lastRequestTime  = new AtomicLong();
+		
+		FrameScheduler scheduler = new FrameScheduler(10, () ->
+		{
+			if(!SwingUtilities.isEventDispatchThread())
+			{
+				framesOutsideEDT.incrementAndGet();
+			}
+			
+			frameCount.incrementAndGet();
+			lastFrameTime.set(System.nanoTime());
+		});
+		
+		long     burstDuration = TimeUnit.MILLISECONDS.toNanos(300);
+		long     burstStart    = System.nanoTime();
+		Thread[] threads       = new Thread[4];
+		for(int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new Thread(() ->
+			{
+				while(System.nanoTime() - burstStart < burstDuration)
+				{
+					lastRequestTime.accumulateAndGet(System.nanoTime(), Math::max);
+					scheduler.requestFrame();
+				}
+			});
+			threads[i].start();
+		}
+		
+		for(Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		Thread.sleep(300);
+		
+		// A frame at the start of the burst, at most one per 100 ms during the burst and the last one after it.
+		assertThat(frameCount.get() <= 6, is(true));
+		assertThat(lastFrameTime.get() > lastRequestTime.get(), is(true));
+		assertThat(framesOutsideEDT.get(), is(0));
+	}
+}
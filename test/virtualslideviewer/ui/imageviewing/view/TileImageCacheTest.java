@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Patryk Strach
+ * 
+ * This file is part of Virtual Slide Viewer.
+ * 
+ * Virtual Slide Viewer is free software: you can redistribute it and/or modify it under 
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * 
+ * Virtual Slide Viewer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with Virtual Slide Viewer.
+ * If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package virtualslideviewer.ui.imageviewing.view;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import virtualslideviewer.core.ImageIndex;
+import virtualslideviewer.core.Tile;
+import virtualslideviewer.ui.imageviewing.view.TileImageCache;
+
+public class TileImageCacheTest
+{
+	// Every image used in the tests takes 100 bytes.
+	private static final long IMAGE_SIZE = 100;
+	
+	@Test
+	public void testCacheRemovesLeastRecentlyUsedImagesWhenCapacityIsExceeded()
+	{
+		TileImageCache cache = new TileImageCache(2 * IMAGE_SIZE);
+		
+		cache.putTileImage(createTile(0), createImage(), false);
+		cache.putTileImage(createTile(1), createImage(), false);
+		cache.getTileImage(createTile(0));
+		cache.putTileImage(createTile(2), createImage(), false);
+		
+		assertThat(cache.getTileImage(createTile(0)), is(notNullValue()));
+		assertThat(cache.getTileImage(createTile(1)), is(nullValue()));
+		assertThat(cache.getTileImage(createTile(2)), is(notNullValue()));
+		assertThat(cache.getSize(), is(2 * IMAGE_SIZE));
+	}
+	
+	@Test
+	public void testPlaceholderImageIsNotARealTileImageUntilReplaced()
+	{
+		TileImageCache cache = new TileImageCache(2 * IMAGE_SIZE);
+		
+		BufferedImage realImage = createImage();
+		
+		cache.putTileImage(createTile(0), createImage(), true);
+		assertThat(cache.hasRealTileImage(createTile(0)), is(false));
+		
+		cache.putTileImage(createTile(0), realImage, false);
+		assertThat(cache.hasRealTileImage(createTile(0)), is(true));
+		assertThat(cache.getTileImage(createTile(0)), is(sameInstance(realImage)));
+		assertThat(cache.getSize(), is(IMAGE_SIZE));
+	}
+	
+	@Test
+	public void testCacheKeepsLastAddedImageEvenIfItExceedsCapacity()
+	{
+		TileImageCache cache = new TileImageCache(IMAGE_SIZE / 2);
+		
+		cache.putTileImage(createTile(0), createImage(), false);
+		cache.putTileImage(createTile(1), createImage(), false);
+		
+		assertThat(cache.getTileImage(createTile(0)), is(nullValue()));
+		assertThat(cache.getTileImage(createTile(1)), is(notNullValue()));
+	}
+	
+	@Test
+	public void testClearRemovesAllImages()
+	{
+		TileImageCache cache = new TileImageCache(2 * IMAGE_SIZE);
+		
+		cache.putTileImage(createTile(0), createImage(), false);
+		cache.clear();
+		
+		assertThat(cache.getTileImage(createTile(0)), is(nullValue()));
+		assertThat(cache.getSize(), is(0L));
+	}
+	
+	private Tile createTile(int column)
+	{
+		return new Tile(column, 0, new ImageIndex(0));
+	}
+	
+	private BufferedImage createImage()
+	{
+		return new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+	}
+}
@@ -24,6 +24,8 @@ import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -150,6 +152,86 @@ public class ImageUtilTest
 		assertThat(dst, is(expectedResult));
 	}
 	
+	@Test
+	public void testCopyIntersectingPartOfImageSwapsColorComponentsOnlyOfCopiedPixelsWhenDestinationIsBGR()
+	{
+		byte[] src = {
+		               1, 2, 3, 4, 5, 6,
+		               7, 8, 9, 10, 11, 12
+		             };
+
+		byte[] dst = {
+		               90, 91, 92, 90, 91, 92, 90, 91, 92,
+		               90, 91, 92, 90, 91, 92, 90, 91, 92
+		             };
+		
+		ImageUtil.copyIntersectingPartOfImage(ByteBuffer.wrap(src), new Rectangle(1, 0, 2, 2), dst, new Rectangle(0, 0, 3, 2), 3,
+		                                      ColorOrder.BGR);
+		
+		byte[] expectedResult = {
+		                          90, 91, 92, 3, 2, 1, 6, 5, 4,
+		                          90, 91, 92, 9, 8, 7, 12, 11, 10
+		                        };
+		
+		assertThat(dst, is(expectedResult));
+	}
+	
+	@Test
+	public void testCopyIntersectingPartOfImageReadsDirectBufferFromItsPositionWithoutChangingIt()
+	{
+		ByteBuffer src = ByteBuffer.allocateDirect(6);
+		src.put(new byte[] { 99, 99, 5, 6, 9, 10 });
+		src.position(2);
+
+		byte[] dst = {
+		                0,  1,  2,  3,
+				          4,  0,  0,  7,
+				          8,  0,  0, 11,
+				         12, 13, 14, 15
+				       };
+		
+		ImageUtil.copyIntersectingPartOfImage(src, new Rectangle(11, 21, 2, 2), dst, new Rectangle(10, 20, 4, 4), 1);
+		
+		byte[] expectedResult = {
+                                  0,  1,  2,  3,
+		                            4,  5,  6,  7,
+		                            8,  9, 10, 11,
+		                           12, 13, 14, 15
+		                        };
+		
+		assertThat(dst, is(expectedResult));
+		assertThat(src.position(), is(2));
+	}
+	
+	@Test
+	public void testCopyIntersectingPartOfImageIntoRasterTakesIntoAccountRowsLongerThanRaster()
+	{
+		byte[] src = { 5, 6, 9, 10 };
+		
+		BufferedImage dstImage = new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_GRAY);
+		
+		ImageUtil.copyIntersectingPartOfImage(ByteBuffer.wrap(src), new Rectangle(10, 20, 2, 2),
+		                                      dstImage.getSubimage(1, 2, 2, 2).getRaster(), new Rectangle(11, 21, 2, 2));
+		
+		byte[] expectedResult = {
+		                          0,  0, 0, 0,
+		                          0,  0, 0, 0,
+		                          0, 10, 0, 0,
+		                          0,  0, 0, 0
+		                        };
+		
+		assertThat(((DataBufferByte)dstImage.getRaster().getDataBuffer()).getData(), is(expectedResult));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testCopyIntersectingPartOfImageIntoRasterThrowsWhenRasterDoesNotStorePixelsInterleavedInBytes()
+	{
+		BufferedImage dstImage = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+		
+		ImageUtil.copyIntersectingPartOfImage(ByteBuffer.allocate(12), new Rectangle(0, 0, 2, 2),
+		                                      dstImage.getRaster(), new Rectangle(0, 0, 2, 2));
+	}
+	
 	@Test
 	public void testGetScaleToFitReturnsLowerScaleWhenHeightsRatioIsLower()
 	{
@@ -20,6 +20,10 @@ package virtualslideviewer.util;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.awt.Dimension;
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.Test;
 
 import virtualslideviewer.util.PixelDataUtil;
@@ -45,4 +49,43 @@ public class PixelDataUtilTest
 		
 		assertThat(swappedArray, is(expectedArray));
 	}
+	
+	@Test
+	public void testConvertPlanarToInterleavedGivesTheSameResultAsReferenceImplementation()
+	{
+		Random random = new Random(0);
+		
+		for(int channelCount = 1; channelCount <= 5; channelCount++)
+		{
+			for(Dimension imageSize : Arrays.asList(new Dimension(1, 1), new Dimension(7, 3), new Dimension(256, 255)))
+			{
+				byte[] src = new byte[imageSize.width * imageSize.height * channelCount];
+				random.nextBytes(src);
+				
+				byte[] expected = new byte[src.length];
+				byte[] actual   = new byte[src.length];
+				
+				referenceConvertPlanarToInterleaved(src, expected, imageSize, channelCount);
+				PixelDataUtil.convertPlanarToInterleaved(src, actual, imageSize, channelCount);
+				
+				assertThat(actual, is(expected));
+			}
+		}
+	}
+	
+	/**
+	 * The straightforward implementation of {@link PixelDataUtil#convertPlanarToInterleaved(byte[], byte[], Dimension, int)}.
+	 */
+	private static void referenceConvertPlanarToInterleaved(byte[] src, byte[] dst, Dimension imageSize, int channelCount)
+	{
+		int channelLength = imageSize.width * imageSize.height;
+		
+		for(int pixel = 0; pixel < channelLength; ++pixel)
+		{
+			for(int channel = 0; channel < channelCount; channel++)
+			{
+				dst[pixel * channelCount + channel] = src[pixel + channel * channelLength];
+			}
+		}
+	}
 }